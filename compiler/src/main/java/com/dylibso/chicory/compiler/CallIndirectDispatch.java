@@ -0,0 +1,21 @@
+package com.dylibso.chicory.compiler;
+
+/**
+ * Enum representing how the compiled code finds the function called by a {@code call_indirect}
+ * in its own module.
+ */
+public enum CallIndirectDispatch {
+
+    /**
+     * A bridge shared by the calls of the same type switches on the function found in the table.
+     */
+    SWITCH,
+
+    /**
+     * A bridge shared by the calls of the same type looks up the function found in the table in
+     * an array of {@link java.lang.invoke.MethodHandle}s, one per function of that type, and
+     * invokes it. The modules with more than 1024 functions of a type, or compiled with fuel
+     * metering, keep the switch.
+     */
+    METHOD_HANDLES
+}
@@ -0,0 +1,286 @@
+package com.dylibso.chicory.compiler;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import com.dylibso.chicory.compiler.internal.ClassLoadingCollector;
+import com.dylibso.chicory.compiler.internal.CompilerFingerprint;
+import com.dylibso.chicory.compiler.internal.CompilerResult;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Machine;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * A directory keeping the classes compiled by {@link MachineFactoryCompiler}, so that the next
+ * JVM compiling the same module with the same options loads them instead.
+ * <p>
+ * The entries are keyed by a hash of the Wasm bytes, of the compiler options and of the compiler,
+ * runtime and wasm jars. The least recently used ones are deleted when the directory grows beyond
+ * its maximum size.
+ * <p>
+ * Several JVMs can share the directory: an entry is written to a temporary file and then renamed,
+ * so that it is never read partially, and an entry that can't be read is compiled again.
+ * <pre>
+ * var cache = CompilerCache.builder(Path.of("/var/cache/chicory")).build();
+ * var bytes = Files.readAllBytes(wasmFile);
+ * var module = Parser.parse(bytes);
+ * var instance = Instance.builder(module)
+ *         .withMachineFactory(
+ *             MachineFactoryCompiler.builder(module).withCache(cache, bytes).compile())
+ *         .build();
+ * </pre>
+ */
+public final class CompilerCache {
+
+    private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+    private static final int MAGIC = 0x43484943; // CHIC
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".classes";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // the temporary files of a JVM that died while writing them
+    private static final Duration STALE_TEMP_FILE = Duration.ofHours(1);
+
+    private final Path directory;
+    private final long maxSize;
+
+    private CompilerCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public static Builder builder(Path directory) {
+        return new Builder(directory);
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    Function<Instance, Machine> machineFactory(
+            byte[] wasm, String options, Supplier<CompilerResult> compiler) {
+        var file = directory.resolve(key(wasm, options) + SUFFIX);
+        var entry = read(file);
+        if (entry == null) {
+            var result = compiler.get();
+            entry = new Entry(result.collector().mainClassName(), result.classBytes());
+            write(file, entry);
+            evict();
+        } else {
+            touch(file);
+        }
+        return entry.load();
+    }
+
+    private static String key(byte[] wasm, String options) {
+        var digest = sha256();
+        digest.update(CompilerFingerprint.current());
+        digest.update(Integer.toString(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        digest.update(wasm);
+        return hex(digest.digest());
+    }
+
+    private static Entry read(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a compiled classes file: " + file);
+            }
+            var mainClass = in.readUTF();
+            int count = in.readInt();
+            var classBytes = new LinkedHashMap<String, byte[]>();
+            for (int i = 0; i < count; i++) {
+                var name = in.readUTF();
+                var bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classBytes.put(name, bytes);
+            }
+            if (!classBytes.containsKey(mainClass)) {
+                throw new IOException("Missing main class in: " + file);
+            }
+            return new Entry(mainClass, classBytes);
+        } catch (IOException e) {
+            // deleted by another JVM, or corrupted: compile again
+            deleteQuietly(file);
+            return null;
+        }
+    }
+
+    private void write(Path file, Entry entry) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, file.getFileName().toString(), TEMP_SUFFIX);
+            try (var out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(entry.mainClass);
+                out.writeInt(entry.classBytes.size());
+                for (var classBytes : entry.classBytes.entrySet()) {
+                    out.writeUTF(classBytes.getKey());
+                    out.writeInt(classBytes.getValue().length);
+                    out.write(classBytes.getValue());
+                }
+            }
+            Files.move(temp, file, ATOMIC_MOVE);
+        } catch (IOException e) {
+            // e.g. another JVM stored the same entry first: the cache is best effort
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            // evicted by another JVM in the meantime
+        }
+    }
+
+    // deletes the least recently used entries until the directory fits its maximum size
+    private void evict() {
+        List<Path> entries;
+        try (var files = Files.list(directory)) {
+            entries = files.collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            return;
+        }
+
+        var staleTempFile = Instant.now().minus(STALE_TEMP_FILE);
+        var attributes = new LinkedHashMap<Path, BasicFileAttributes>();
+        for (var entry : entries) {
+            try {
+                var attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                var name = entry.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    attributes.put(entry, attrs);
+                } else if (name.endsWith(TEMP_SUFFIX)
+                        && attrs.lastModifiedTime().toInstant().isBefore(staleTempFile)) {
+                    deleteQuietly(entry);
+                }
+            } catch (IOException e) {
+                // deleted by another JVM in the meantime
+            }
+        }
+
+        long size = attributes.values().stream().mapToLong(BasicFileAttributes::size).sum();
+        var leastRecentlyUsed =
+                attributes.entrySet().stream()
+                        .sorted(Comparator.comparing(e -> e.getValue().lastModifiedTime()))
+                        .collect(Collectors.toList());
+        for (var entry : leastRecentlyUsed) {
+            if (size <= maxSize) {
+                break;
+            }
+            deleteQuietly(entry.getKey());
+            size -= entry.getValue().size();
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // e.g. still open by another process on Windows: evicted later
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        var hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static final class Entry {
+        private final String mainClass;
+        private final Map<String, byte[]> classBytes;
+
+        private Entry(String mainClass, Map<String, byte[]> classBytes) {
+            this.mainClass = mainClass;
+            this.classBytes = classBytes;
+        }
+
+        // loads the classes in the order they were compiled, the main class last
+        Function<Instance, Machine> load() {
+            var collector = new ClassLoadingCollector();
+            for (var classBytes : this.classBytes.entrySet()) {
+                if (!classBytes.getKey().equals(mainClass)) {
+                    collector.put(classBytes.getKey(), classBytes.getValue());
+                }
+            }
+            collector.putMainClass(mainClass, classBytes.get(mainClass));
+            return collector.machineFactory();
+        }
+    }
+
+    public static final class Builder {
+        private final Path directory;
+        private long maxSize = DEFAULT_MAX_SIZE;
+
+        private Builder(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Sets the size in bytes beyond which the least recently used entries are deleted.
+         * Defaults to 256 MiB.
+         */
+        public Builder withMaxSize(long maxSize) {
+            if (maxSize < 0) {
+                throw new IllegalArgumentException("The maximum size must be positive: " + maxSize);
+            }
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public CompilerCache build() {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(
+                        "Could not create the compiler cache directory: " + directory, e);
+            }
+            return new CompilerCache(directory, maxSize);
+        }
+    }
+}
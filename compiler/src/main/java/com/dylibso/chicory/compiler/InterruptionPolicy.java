@@ -0,0 +1,26 @@
+package com.dylibso.chicory.compiler;
+
+/**
+ * Enum representing where the compiled code checks if its thread has been interrupted,
+ * so that a runaway execution can be stopped with {@link Thread#interrupt()}.
+ */
+public enum InterruptionPolicy {
+
+    /**
+     * The compiled code never checks the interruption, and can only be stopped by the host
+     * functions it calls.
+     */
+    NONE,
+
+    /**
+     * The compiled code checks the interruption at the back-edges of the loops, which is enough to
+     * stop a runaway loop, but not a deep recursion without loops.
+     */
+    LOOPS,
+
+    /**
+     * The compiled code checks the interruption at the back-edges of the loops and before every
+     * call.
+     */
+    CALLS_AND_LOOPS
+}
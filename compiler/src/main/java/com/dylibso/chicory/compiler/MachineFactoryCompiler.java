@@ -1,11 +1,19 @@
 package com.dylibso.chicory.compiler;
 
+import static java.util.Objects.requireNonNull;
+
+import com.dylibso.chicory.compiler.internal.ByteClassCollector;
 import com.dylibso.chicory.compiler.internal.ClassLoadingCollector;
 import com.dylibso.chicory.compiler.internal.MachineFactory;
+import com.dylibso.chicory.compiler.internal.TieredMachineFactory;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.runtime.Memory;
 import com.dylibso.chicory.wasm.WasmModule;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 
 /**
@@ -74,8 +82,15 @@ public final class MachineFactoryCompiler {
     }
 
     public static final class Builder {
+        private static final int DEFAULT_TIER_UP_THRESHOLD = 1000;
+
         private final WasmModule module;
         private final com.dylibso.chicory.compiler.internal.Compiler.Builder compilerBuilder;
+        private Set<Integer> interpretedFunctions = Set.of();
+        private int tierUpThreshold = DEFAULT_TIER_UP_THRESHOLD;
+        private Executor compilationExecutor;
+        private CompilerCache cache;
+        private byte[] wasm;
 
         private Builder(WasmModule module) {
             this.module = module;
@@ -99,10 +114,116 @@ public final class MachineFactoryCompiler {
 
         public Builder withInterpretedFunctions(Set<Integer> interpretedFunctions) {
             compilerBuilder.withInterpretedFunctions(interpretedFunctions);
+            this.interpretedFunctions =
+                    interpretedFunctions == null ? Set.of() : interpretedFunctions;
+            return this;
+        }
+
+        /**
+         * Specializes the loads and stores of the compiled code for one {@link Memory}
+         * implementation, so that they call it directly instead of going through the interface.
+         * Creating a machine for an instance with a different memory fails.
+         */
+        public Builder withMemoryKind(MemoryKind memoryKind) {
+            compilerBuilder.withMemoryKind(memoryKind);
+            return this;
+        }
+
+        /**
+         * Sets how the compiled code dispatches a {@code call_indirect} to the functions of its
+         * module. Defaults to {@link CallIndirectDispatch#SWITCH}.
+         */
+        public Builder withCallIndirectDispatch(CallIndirectDispatch callIndirectDispatch) {
+            compilerBuilder.withCallIndirectDispatch(callIndirectDispatch);
+            return this;
+        }
+
+        /**
+         * Sets where the compiled code checks if its thread has been interrupted.
+         * Defaults to {@link InterruptionPolicy#CALLS_AND_LOOPS}.
+         */
+        public Builder withInterruptionPolicy(InterruptionPolicy interruptionPolicy) {
+            compilerBuilder.withInterruptionPolicy(interruptionPolicy);
+            return this;
+        }
+
+        /**
+         * Makes the compiled code consume the fuel of the instances built with
+         * {@link Instance.Builder#withFuel(long)}: one unit on every function entry and on every
+         * loop back-edge, like the interpreters. Creating a machine for a metered instance
+         * fails when the module has been compiled without it.
+         */
+        public Builder withFuelMetering(boolean fuelMetering) {
+            compilerBuilder.withFuelMetering(fuelMetering);
+            return this;
+        }
+
+        /**
+         * Compiles the functions on the cores of {@link ForkJoinPool#commonPool()}.
+         * The compiled classes are the same either way. Defaults to {@code true}.
+         */
+        public Builder withParallelCompilation(boolean parallelCompilation) {
+            compilerBuilder.withParallelCompilation(parallelCompilation);
+            return this;
+        }
+
+        /**
+         * Simplifies the instructions of every function before compiling it: folds the constants
+         * and the branches on constant conditions, propagates the values stored in locals, and
+         * removes the dead stores and the unreachable code. Defaults to {@code true}.
+         */
+        public Builder withOptimizations(boolean optimize) {
+            compilerBuilder.withOptimizations(optimize);
+            return this;
+        }
+
+        /**
+         * Sets how many calls and loop iterations make a function hot, for {@link #compileLazily()}.
+         * Defaults to 1000.
+         */
+        public Builder withTierUpThreshold(int tierUpThreshold) {
+            if (tierUpThreshold < 1) {
+                throw new IllegalArgumentException(
+                        "The tier-up threshold must be positive: " + tierUpThreshold);
+            }
+            this.tierUpThreshold = tierUpThreshold;
+            return this;
+        }
+
+        /**
+         * Sets where {@link #compileLazily()} compiles the hot functions.
+         * Defaults to {@link ForkJoinPool#commonPool()}.
+         */
+        public Builder withCompilationExecutor(Executor compilationExecutor) {
+            this.compilationExecutor = compilationExecutor;
+            return this;
+        }
+
+        /**
+         * Makes {@link #compile()} load the classes from the cache when the module has already
+         * been compiled with the same options, and store them otherwise.
+         *
+         * @param wasm the bytes the module has been parsed from, as the module doesn't keep them
+         */
+        public Builder withCache(CompilerCache cache, byte[] wasm) {
+            this.cache = requireNonNull(cache);
+            this.wasm = requireNonNull(wasm);
             return this;
         }
 
         public Function<Instance, Machine> compile() {
+            if (cache != null) {
+                return new MachineFactory(
+                        module,
+                        cache.machineFactory(
+                                wasm,
+                                compilerBuilder.cacheKey(),
+                                () ->
+                                        compilerBuilder
+                                                .withClassCollectorFactory(ByteClassCollector::new)
+                                                .build()
+                                                .compile()));
+            }
             var result =
                     compilerBuilder
                             .withClassCollectorFactory(ClassLoadingCollector::new)
@@ -111,5 +232,40 @@ public final class MachineFactoryCompiler {
             var collector = (ClassLoadingCollector) result.collector();
             return new MachineFactory(module, collector.machineFactory());
         }
+
+        /**
+         * Creates a machine factory that interprets the module at first, without paying the cost
+         * of compiling it. The machines count the calls and the loop iterations of every function,
+         * and once one of them reaches the {@linkplain #withTierUpThreshold(int) threshold} the
+         * module is compiled on the {@linkplain #withCompilationExecutor(Executor) executor},
+         * leaving the functions that are not hot yet interpreted. The machines switch to the
+         * compiled code on their next call.
+         * <p>
+         * When more functions become hot, the module is compiled again. After a couple of
+         * compilations the whole module is compiled, so that the compilation work stays bounded.
+         * </p>
+         * <p>
+         * The compilations use the options set when this method is called: changing this builder
+         * afterwards doesn't affect them.
+         * </p>
+         */
+        public Function<Instance, Machine> compileLazily() {
+            // every compilation runs on the executor with a builder of its own
+            var options = compilerBuilder.copy();
+            var alwaysInterpreted = Set.copyOf(interpretedFunctions);
+            return new TieredMachineFactory(
+                    module,
+                    cold -> {
+                        var interpreted = new HashSet<>(cold);
+                        interpreted.addAll(alwaysInterpreted);
+                        return options.copy()
+                                .withInterpretedFunctions(interpreted)
+                                .withClassCollectorFactory(ClassLoadingCollector::new)
+                                .build()
+                                .compile();
+                    },
+                    compilationExecutor == null ? ForkJoinPool.commonPool() : compilationExecutor,
+                    tierUpThreshold);
+        }
     }
 }
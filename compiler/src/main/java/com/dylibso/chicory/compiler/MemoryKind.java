@@ -0,0 +1,29 @@
+package com.dylibso.chicory.compiler;
+
+import com.dylibso.chicory.runtime.ByteArrayMemory;
+import com.dylibso.chicory.runtime.ByteBufferMemory;
+import com.dylibso.chicory.runtime.Memory;
+
+/**
+ * Enum representing the {@link Memory} implementation the compiled code accesses.
+ * When it is known in advance, loads and stores call it directly instead of going
+ * through the {@link Memory} interface.
+ */
+public enum MemoryKind {
+
+    /**
+     * The compiled code works with any {@link Memory} implementation.
+     */
+    ANY,
+
+    /**
+     * The compiled code only works with a {@link ByteBufferMemory}, the default memory of an
+     * instance.
+     */
+    BYTE_BUFFER,
+
+    /**
+     * The compiled code only works with a {@link ByteArrayMemory}.
+     */
+    BYTE_ARRAY
+}
@@ -1,16 +1,17 @@
 package com.dylibso.chicory.compiler.internal;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * A simple {@link ClassCollector} that stores all the classes
- * in a map. It resolves a given class to bytes by looking into classpath.
+ * in a map, in the order they are compiled.
+ * It resolves a given class to bytes by looking into classpath.
  *
  */
 public class ByteClassCollector implements ClassCollector {
-    private final Map<String, byte[]> classBytes = new HashMap<>();
+    private final Map<String, byte[]> classBytes = new LinkedHashMap<>();
     private String mainClass;
 
     public ByteClassCollector() {}
@@ -2,6 +2,7 @@ package com.dylibso.chicory.compiler.internal;
 
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.asmType;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.callDispatchMethodName;
+import static com.dylibso.chicory.compiler.internal.CompilerUtil.callIndirectHandlesName;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.callIndirectMethodName;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.callIndirectMethodType;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.callMethodName;
@@ -13,29 +14,42 @@ import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitInvokeStati
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitInvokeVirtual;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitJvmToLong;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitLongToJvm;
+import static com.dylibso.chicory.compiler.internal.CompilerUtil.hasMultipleResults;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.hasTooManyParameters;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.internalClassName;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.jvmReturnType;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.localType;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.methodNameForFunc;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.methodTypeFor;
-import static com.dylibso.chicory.compiler.internal.CompilerUtil.rawMethodTypeFor;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.slotCount;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.valueMethodName;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.valueMethodType;
 import static com.dylibso.chicory.compiler.internal.EmitterMap.EMITTERS;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.AOT_INTERPRETER_MACHINE_CALL;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.ARRAYS_COPY_OF;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.CALL_HOST_FUNCTION;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.CALL_INDIRECT;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.CALL_INDIRECT_ON_INTERPRETER;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.CAUGHT_FUEL;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.CHECK_FUEL_METERING;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.CHECK_INTERRUPTION;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.CHECK_MEMORY_TYPE;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.INSTANCE_CONSUME_FUEL;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.INSTANCE_MACHINE;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.INSTANCE_MEMORY;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.INSTANCE_TABLE;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.LOAD_FUEL;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.READ_GLOBAL;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.REFUND_FUEL;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.STORE_FUEL;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.TABLE_INSTANCE;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.TABLE_REQUIRED_REF;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.THROW_CALL_STACK_EXHAUSTED;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.THROW_INDIRECT_CALL_TYPE_MISMATCH;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.THROW_OUT_OF_FUEL;
 import static com.dylibso.chicory.compiler.internal.ShadedRefs.THROW_UNKNOWN_FUNCTION;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.WRITE_GLOBAL;
+import static com.dylibso.chicory.compiler.internal.ShadedRefs.memoryType;
 import static com.dylibso.chicory.compiler.internal.Shader.createShadedClass;
 import static com.dylibso.chicory.compiler.internal.Shader.shadedClassRemapper;
 import static java.lang.Math.max;
@@ -43,6 +57,7 @@ import static java.lang.Math.min;
 import static java.lang.invoke.MethodType.methodType;
 import static java.util.Objects.requireNonNull;
 import static java.util.Objects.requireNonNullElse;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.objectweb.asm.Type.INT_TYPE;
 import static org.objectweb.asm.Type.LONG_TYPE;
@@ -53,7 +68,10 @@ import static org.objectweb.asm.Type.getMethodDescriptor;
 import static org.objectweb.asm.Type.getType;
 import static org.objectweb.asm.commons.InstructionAdapter.OBJECT_TYPE;
 
+import com.dylibso.chicory.compiler.CallIndirectDispatch;
 import com.dylibso.chicory.compiler.InterpreterFallback;
+import com.dylibso.chicory.compiler.InterruptionPolicy;
+import com.dylibso.chicory.compiler.MemoryKind;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.runtime.Machine;
 import com.dylibso.chicory.runtime.Memory;
@@ -64,21 +82,32 @@ import com.dylibso.chicory.wasm.WasmModule;
 import com.dylibso.chicory.wasm.types.ExternalType;
 import com.dylibso.chicory.wasm.types.FunctionBody;
 import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.OpCode;
 import com.dylibso.chicory.wasm.types.ValType;
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassTooLargeException;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.InstructionAdapter;
@@ -98,6 +127,13 @@ public final class Compiler {
     private static final MethodType MACHINE_CALL_METHOD_TYPE =
             methodType(long[].class, Instance.class, Memory.class, int.class, long[].class);
 
+    // static methods of the machine moving the globals kept in its fields,
+    // see GlobalAccess
+    private static final String RELOAD_GLOBALS = "reloadGlobals";
+    private static final String FLUSH_GLOBALS = "flushGlobals";
+    private static final String GLOBALS_METHOD_DESCRIPTOR =
+            getMethodDescriptor(VOID_TYPE, INSTANCE_TYPE);
+
     private static final int MAX_MACHINE_CALL_METHODS = 1024; // must be power of two
     // 1024*12 was empirically determined to work for the 50K small wasm functions.
     // So lets start there and halve it until we find a size that works.
@@ -114,6 +150,15 @@ public final class Compiler {
     private final ClassCollector collector;
     private int maxFunctionsPerClass;
     private final HashSet<Integer> interpretedFunctions;
+    private final MemoryKind memoryKind;
+    private final InterruptionPolicy interruptionPolicy;
+    private final boolean fuelMetering;
+    private final CallIndirectDispatch callIndirectDispatch;
+    private final boolean[] leafFunctions;
+    private final GlobalAccess globalAccess;
+    private final int maxResults;
+    private final boolean parallelCompilation;
+    private final boolean optimize;
 
     private Compiler(
             WasmModule module,
@@ -121,6 +166,12 @@ public final class Compiler {
             int maxFunctionsPerClass,
             InterpreterFallback interpreterFallback,
             Set<Integer> interpretedFunctions,
+            MemoryKind memoryKind,
+            InterruptionPolicy interruptionPolicy,
+            boolean fuelMetering,
+            CallIndirectDispatch callIndirectDispatch,
+            boolean parallelCompilation,
+            boolean optimize,
             Supplier<ClassCollector> classCollectorFactory) {
         this.className = requireNonNull(className, "className");
         this.module = requireNonNull(module, "module");
@@ -128,6 +179,16 @@ public final class Compiler {
         this.functionImports = module.importSection().count(ExternalType.FUNCTION);
         this.classCollectorFactory = classCollectorFactory;
         this.collector = classCollectorFactory.get();
+        this.memoryKind = requireNonNullElse(memoryKind, MemoryKind.ANY);
+        this.interruptionPolicy =
+                requireNonNullElse(interruptionPolicy, InterruptionPolicy.CALLS_AND_LOOPS);
+        this.fuelMetering = fuelMetering;
+        this.callIndirectDispatch =
+                requireNonNullElse(callIndirectDispatch, CallIndirectDispatch.SWITCH);
+        this.leafFunctions = leafFunctions(module, functionImports);
+        this.parallelCompilation = parallelCompilation;
+        this.optimize = optimize;
+        this.globalAccess = GlobalAccess.of(module);
 
         if (interpretedFunctions == null || interpretedFunctions.isEmpty()) {
             this.interpretedFunctions = new HashSet<>();
@@ -145,10 +206,48 @@ public final class Compiler {
         }
 
         this.functionTypes = analyzer.functionTypes();
+        this.maxResults = maxResults(module, functionTypes);
         this.maxFunctionsPerClass = maxFunctionsPerClass;
         compileExtraClasses();
     }
 
+    // the size of the long[] shared by the calls returning multiple values:
+    // a function can pass the one it got to its own calls before filling it
+    private static int maxResults(WasmModule module, List<FunctionType> functionTypes) {
+        return Stream.concat(functionTypes.stream(), Arrays.stream(module.typeSection().types()))
+                .mapToInt(type -> type.returns().size())
+                .max()
+                .orElse(0);
+    }
+
+    // the functions without calls and loops don't count the fuel in a local:
+    // their callers consume the fuel of their entry
+    private static boolean[] leafFunctions(WasmModule module, int functionImports) {
+        var code = module.codeSection();
+        var leaves = new boolean[functionImports + code.functionBodyCount()];
+        for (int i = 0; i < code.functionBodyCount(); i++) {
+            leaves[functionImports + i] =
+                    code.getFunctionBody(i).instructions().stream()
+                            .noneMatch(ins -> callsOrLoops(ins.opcode()));
+        }
+        return leaves;
+    }
+
+    private static boolean callsOrLoops(OpCode opcode) {
+        switch (opcode) {
+            case CALL:
+            case CALL_INDIRECT:
+            case CALL_REF:
+            case RETURN_CALL:
+            case RETURN_CALL_INDIRECT:
+            case RETURN_CALL_REF:
+            case LOOP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public static Builder builder(WasmModule module) {
         return new Builder(module);
     }
@@ -159,6 +258,12 @@ public final class Compiler {
         private int maxFunctionsPerClass;
         private InterpreterFallback interpreterFallback;
         private Set<Integer> interpretedFunctions;
+        private MemoryKind memoryKind;
+        private InterruptionPolicy interruptionPolicy;
+        private boolean fuelMetering;
+        private CallIndirectDispatch callIndirectDispatch;
+        private boolean parallelCompilation = true;
+        private boolean optimize = true;
         private Supplier<ClassCollector> classCollectorFactory;
 
         private Builder(WasmModule module) {
@@ -185,11 +290,82 @@ public final class Compiler {
             return this;
         }
 
+        public Builder withMemoryKind(MemoryKind memoryKind) {
+            this.memoryKind = memoryKind;
+            return this;
+        }
+
+        public Builder withInterruptionPolicy(InterruptionPolicy interruptionPolicy) {
+            this.interruptionPolicy = interruptionPolicy;
+            return this;
+        }
+
+        public Builder withFuelMetering(boolean fuelMetering) {
+            this.fuelMetering = fuelMetering;
+            return this;
+        }
+
+        public Builder withCallIndirectDispatch(CallIndirectDispatch callIndirectDispatch) {
+            this.callIndirectDispatch = callIndirectDispatch;
+            return this;
+        }
+
+        public Builder withParallelCompilation(boolean parallelCompilation) {
+            this.parallelCompilation = parallelCompilation;
+            return this;
+        }
+
+        public Builder withOptimizations(boolean optimize) {
+            this.optimize = optimize;
+            return this;
+        }
+
         public Builder withClassCollectorFactory(Supplier<ClassCollector> classCollectorFactory) {
             this.classCollectorFactory = classCollectorFactory;
             return this;
         }
 
+        /**
+         * @return the options that change the compiled classes, to tell apart the cached
+         *     compilations of a module
+         */
+        public String cacheKey() {
+            var interpreted =
+                    interpretedFunctions == null
+                            ? List.of()
+                            : interpretedFunctions.stream().sorted().collect(toList());
+            return String.join(
+                    ";",
+                    String.valueOf(className),
+                    String.valueOf(maxFunctionsPerClass),
+                    String.valueOf(interpreterFallback),
+                    String.valueOf(interpreted),
+                    String.valueOf(memoryKind),
+                    String.valueOf(interruptionPolicy),
+                    String.valueOf(fuelMetering),
+                    String.valueOf(callIndirectDispatch),
+                    String.valueOf(optimize));
+        }
+
+        /**
+         * @return a builder with the same options, that can be changed independently of this one
+         */
+        public Builder copy() {
+            var copy = new Builder(module);
+            copy.className = className;
+            copy.maxFunctionsPerClass = maxFunctionsPerClass;
+            copy.interpreterFallback = interpreterFallback;
+            copy.interpretedFunctions = interpretedFunctions;
+            copy.memoryKind = memoryKind;
+            copy.interruptionPolicy = interruptionPolicy;
+            copy.fuelMetering = fuelMetering;
+            copy.callIndirectDispatch = callIndirectDispatch;
+            copy.parallelCompilation = parallelCompilation;
+            copy.optimize = optimize;
+            copy.classCollectorFactory = classCollectorFactory;
+            return copy;
+        }
+
         public Compiler build() {
             var className = this.className;
             if (className == null) {
@@ -211,6 +387,12 @@ public final class Compiler {
                     maxFunctionsPerClass,
                     interpreterFallback,
                     interpretedFunctions,
+                    memoryKind,
+                    interruptionPolicy,
+                    fuelMetering,
+                    callIndirectDispatch,
+                    parallelCompilation,
+                    optimize,
                     classCollectorFactory);
         }
     }
@@ -254,11 +436,7 @@ public final class Compiler {
                                 (collector, start, end, chunkSize) -> {
                                     maxFunctionsPerClass = chunkSize;
                                     String className = classNameForFuncGroup(this.className, start);
-                                    compileExtraClass(
-                                            collector,
-                                            className,
-                                            emitFunctionGroup(
-                                                    start, end, internalClassName(this.className)));
+                                    compileFunctionGroup(collector, className, start, end);
                                 });
                 break;
             } catch (MethodTooLargeException e) {
@@ -322,37 +500,121 @@ public final class Compiler {
      * @return The final chunk size used for loading the class.
      */
     int loadChunkedClass(int size, int chunkSize, ChunkedClassEmitter emitter) {
-        // Create a temporary collector to verify class construction
-        // (if the collector supports throwing ClassTooLargeException).
-        ClassCollector collector = classCollectorFactory.get();
+        List<ClassCollector> collectors;
         while (true) {
             try {
                 int chunks = (size / chunkSize) + (size % chunkSize == 0 ? 0 : 1);
-                for (int i = 0; i < chunks; i++) {
-                    var start = i * chunkSize;
-                    var end = min(start + chunkSize, size);
-
-                    emitter.emit(collector, start, end, chunkSize);
-                }
+                int currentChunkSize = chunkSize;
+                // Create a temporary collector per chunk to verify class construction
+                // (if the collector supports throwing ClassTooLargeException).
+                collectors =
+                        compileInOrder(
+                                0,
+                                chunks,
+                                i -> {
+                                    var collector = classCollectorFactory.get();
+                                    var start = i * currentChunkSize;
+                                    var end = min(start + currentChunkSize, size);
+
+                                    emitter.emit(collector, start, end, currentChunkSize);
+                                    return collector;
+                                });
                 break;
             } catch (ClassTooLargeException e) {
                 chunkSize = chunkSize >> 1;
                 if (chunkSize == 0) {
                     throw e;
                 }
-                collector = classCollectorFactory.get();
             }
         }
 
         // Store the final results into the global collector.
-        this.collector.putAll(collector);
+        for (var collector : collectors) {
+            this.collector.putAll(collector);
+        }
         return chunkSize;
     }
 
+    // Runs the task for every index, on the common ForkJoinPool when the compilation is parallel,
+    // and throws the failure of the lowest index, like a loop would: the output and the errors
+    // don't depend on the parallelism, for reproducible builds.
+    private <T> List<T> compileInOrder(int start, int end, IntFunction<T> task) {
+        var indexes = IntStream.range(start, end);
+        // splitting the work only adds overhead on a single core
+        if (parallelCompilation && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            indexes = indexes.parallel();
+        }
+        var failures = new RuntimeException[end - start];
+        List<T> results =
+                indexes.mapToObj(
+                                i -> {
+                                    try {
+                                        return task.apply(i);
+                                    } catch (RuntimeException e) {
+                                        failures[i - start] = e;
+                                        return null;
+                                    }
+                                })
+                        .collect(toList());
+        for (var failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        return results;
+    }
+
+    // the interpreted functions access the globals through the instance,
+    // so the compiled ones can't keep them in fields
+    private GlobalAccess globalAccess() {
+        return interpretedFunctions.isEmpty() ? globalAccess : globalAccess.withoutFields();
+    }
+
     private String classNameForFuncGroup(String prefix, int funcId) {
         return prefix + "FuncGroup_" + (funcId / maxFunctionsPerClass);
     }
 
+    // The functions are compiled each in a class of their own, with their frames, and their
+    // methods are then copied in order into the class of the group.
+    private void compileFunctionGroup(ClassCollector collector, String name, int start, int end) {
+        String internalClassName = internalClassName(this.className);
+        List<byte[]> functionClasses =
+                compileInOrder(
+                        start,
+                        end,
+                        funcId ->
+                                compileExtraClass(
+                                        name,
+                                        emitFunctionGroup(funcId, funcId + 1, internalClassName)));
+
+        // the methods already have their frames and maxs
+        ClassWriter binaryWriter = new ClassWriter(0);
+        binaryWriter.visit(
+                Opcodes.V11,
+                Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                internalClassName(name),
+                null,
+                getInternalName(Object.class),
+                null);
+        var methodCopier =
+                new ClassVisitor(Opcodes.ASM9) {
+                    @Override
+                    public MethodVisitor visitMethod(
+                            int access,
+                            String name,
+                            String descriptor,
+                            String signature,
+                            String[] exceptions) {
+                        return binaryWriter.visitMethod(
+                                access, name, descriptor, signature, exceptions);
+                    }
+                };
+        for (var functionClass : functionClasses) {
+            new ClassReader(functionClass).accept(methodCopier, 0);
+        }
+        collector.put(name, binaryWriter.toByteArray());
+    }
+
     private Consumer<ClassVisitor> emitFunctionGroup(int start, int end, String internalClassName) {
         return (classWriter) -> {
             for (int i = start; i < end; i++) {
@@ -439,18 +701,69 @@ public final class Compiler {
                 asm -> compileConstructor(asm, internalClassName));
 
         // Machine.call() implementation
-        emitFunction(
-                classWriter,
-                "call",
-                methodType(long[].class, int.class, long[].class),
-                false,
-                asm -> compileMachineCall(internalClassName, asm));
+        var globalFields = globalAccess().fields();
+        if (globalFields.isEmpty()) {
+            emitFunction(
+                    classWriter,
+                    "call",
+                    methodType(long[].class, int.class, long[].class),
+                    false,
+                    asm -> compileMachineCall(internalClassName, asm));
+        } else {
+            var globalTypes = analyzer.globalTypes();
+            for (int idx : globalFields) {
+                classWriter.visitField(
+                        Opcodes.ACC_PUBLIC,
+                        GlobalAccess.fieldName(idx),
+                        asmType(globalTypes.get(idx)).getDescriptor(),
+                        null,
+                        null);
+            }
+            emitFunction(
+                    classWriter,
+                    "call",
+                    methodType(long[].class, int.class, long[].class),
+                    false,
+                    asm -> compileMachineCallWithGlobals(internalClassName, asm));
+            emitFunction(
+                    classWriter,
+                    "callCompiled",
+                    methodType(long[].class, int.class, long[].class),
+                    false,
+                    asm -> compileMachineCall(internalClassName, asm));
+            emitFunction(
+                    classWriter,
+                    RELOAD_GLOBALS,
+                    methodType(void.class, Instance.class),
+                    true,
+                    asm -> compileReloadGlobals(internalClassName, globalFields, asm));
+            emitFunction(
+                    classWriter,
+                    FLUSH_GLOBALS,
+                    methodType(void.class, Instance.class),
+                    true,
+                    asm -> compileFlushGlobals(internalClassName, globalFields, asm));
+        }
 
         // call_indirect_xxx() bridges for native CALL_INDIRECT
         var allTypes = module.typeSection().types();
         for (int i = 0; i < allTypes.length; i++) {
             var typeId = i;
             var type = allTypes[i];
+            if (dispatchesWithMethodHandles(type)) {
+                classWriter.visitField(
+                        Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_VOLATILE,
+                        callIndirectHandlesName(typeId),
+                        getDescriptor(MethodHandle[].class),
+                        null,
+                        null);
+                emitFunction(
+                        classWriter,
+                        callIndirectHandlesName(typeId),
+                        methodType(MethodHandle[].class),
+                        true,
+                        asm -> compileCallIndirectHandles(internalClassName, type, asm));
+            }
             emitFunction(
                     classWriter,
                     callIndirectMethodName(typeId),
@@ -471,10 +784,7 @@ public final class Compiler {
                     valueMethodName(types),
                     valueMethodType(types),
                     true,
-                    asm -> {
-                        emitBoxArguments(asm, types);
-                        asm.areturn(OBJECT_TYPE);
-                    });
+                    asm -> compileValue(types, asm));
         }
 
         classWriter.visitEnd();
@@ -486,6 +796,24 @@ public final class Compiler {
         }
     }
 
+    // implements the body of:
+    // public static long[] value_xxx(<TypeN> valueN..., long[] results)
+    private static void compileValue(List<ValType> types, InstructionAdapter asm) {
+        int results = types.stream().mapToInt(CompilerUtil::slotCount).sum();
+        int slot = 0;
+        for (int i = 0; i < types.size(); i++) {
+            ValType valType = types.get(i);
+            asm.load(results, OBJECT_TYPE);
+            asm.iconst(i);
+            asm.load(slot, asmType(valType));
+            emitJvmToLong(asm, valType);
+            asm.astore(LONG_TYPE);
+            slot += slotCount(valType);
+        }
+        asm.load(results, OBJECT_TYPE);
+        asm.areturn(OBJECT_TYPE);
+    }
+
     private static RuntimeException handleMethodTooLarge(
             MethodTooLargeException e, WasmModule module) {
         String name = e.getMethodName();
@@ -533,6 +861,147 @@ public final class Compiler {
                 OBJECT_TYPE.getInternalName(), "<init>", getMethodDescriptor(VOID_TYPE), false);
     }
 
+    // implements the body of:
+    // public long[] call(int var1, long[] var2) {
+    //     reloadGlobals(instance);
+    //     try {
+    //         return callCompiled(var1, var2);
+    //     } finally {
+    //         flushGlobals(instance);
+    //     }
+    // }
+    private static void compileMachineCallWithGlobals(
+            String internalClassName, InstructionAdapter asm) {
+        asm.load(0, OBJECT_TYPE);
+        asm.getfield(internalClassName, "instance", getDescriptor(Instance.class));
+        asm.invokestatic(internalClassName, RELOAD_GLOBALS, GLOBALS_METHOD_DESCRIPTOR, false);
+
+        Label start = new Label();
+        Label end = new Label();
+        asm.visitTryCatchBlock(start, end, end, null);
+        asm.mark(start);
+        asm.load(0, OBJECT_TYPE);
+        asm.load(1, INT_TYPE);
+        asm.load(2, OBJECT_TYPE);
+        asm.invokevirtual(
+                internalClassName,
+                "callCompiled",
+                getMethodDescriptor(LONG_ARRAY_TYPE, INT_TYPE, LONG_ARRAY_TYPE),
+                false);
+        asm.load(0, OBJECT_TYPE);
+        asm.getfield(internalClassName, "instance", getDescriptor(Instance.class));
+        asm.invokestatic(internalClassName, FLUSH_GLOBALS, GLOBALS_METHOD_DESCRIPTOR, false);
+        asm.areturn(OBJECT_TYPE);
+
+        asm.mark(end);
+        asm.load(0, OBJECT_TYPE);
+        asm.getfield(internalClassName, "instance", getDescriptor(Instance.class));
+        asm.invokestatic(internalClassName, FLUSH_GLOBALS, GLOBALS_METHOD_DESCRIPTOR, false);
+        asm.athrow();
+    }
+
+    // implements the body of:
+    // public static void reloadGlobals(Instance instance) {
+    //     if (instance.getMachine() instanceof Machine) {
+    //         ((Machine) instance.getMachine()).global_xxx = readGlobal(xxx, instance);
+    //     }
+    // }
+    private void compileReloadGlobals(
+            String internalClassName, List<Integer> globalFields, InstructionAdapter asm) {
+        Label wrapped = new Label();
+        emitLoadMachine(internalClassName, asm, wrapped);
+        for (int idx : globalFields) {
+            var type = analyzer.globalTypes().get(idx);
+            asm.dup();
+            asm.iconst(idx);
+            asm.load(0, OBJECT_TYPE);
+            emitInvokeStatic(asm, READ_GLOBAL);
+            emitLongToJvm(asm, type);
+            asm.putfield(
+                    internalClassName, GlobalAccess.fieldName(idx), asmType(type).getDescriptor());
+        }
+        asm.pop();
+        asm.areturn(VOID_TYPE);
+
+        asm.mark(wrapped);
+        asm.pop();
+        asm.areturn(VOID_TYPE);
+    }
+
+    // implements the body of:
+    // public static void flushGlobals(Instance instance) {
+    //     if (instance.getMachine() instanceof Machine) {
+    //         writeGlobal(((Machine) instance.getMachine()).global_xxx, xxx, instance);
+    //     }
+    // }
+    private void compileFlushGlobals(
+            String internalClassName, List<Integer> globalFields, InstructionAdapter asm) {
+        Label wrapped = new Label();
+        emitLoadMachine(internalClassName, asm, wrapped);
+        for (int idx : globalFields) {
+            var type = analyzer.globalTypes().get(idx);
+            asm.dup();
+            asm.getfield(
+                    internalClassName, GlobalAccess.fieldName(idx), asmType(type).getDescriptor());
+            emitJvmToLong(asm, type);
+            asm.iconst(idx);
+            asm.load(0, OBJECT_TYPE);
+            emitInvokeStatic(asm, WRITE_GLOBAL);
+        }
+        asm.pop();
+        asm.areturn(VOID_TYPE);
+
+        asm.mark(wrapped);
+        asm.pop();
+        asm.areturn(VOID_TYPE);
+    }
+
+    // loads instance.getMachine() from the first slot, and jumps to the given label with it
+    // still on the stack when it's not the compiled machine, as then the compiled code keeps
+    // using the global instances
+    private static void emitLoadMachine(
+            String internalClassName, InstructionAdapter asm, Label wrapped) {
+        var machineType = Type.getObjectType(internalClassName);
+        asm.load(0, OBJECT_TYPE);
+        emitInvokeVirtual(asm, INSTANCE_MACHINE);
+        asm.dup();
+        asm.instanceOf(machineType);
+        asm.ifeq(wrapped);
+        asm.checkcast(machineType);
+    }
+
+    // wraps a call that can run code of the host, leaving its long[] results on the stack:
+    // the host can observe the globals through the instance, so they are written back to their
+    // global instances before, and read again after, even when it throws
+    private void emitHostCall(
+            InstructionAdapter asm, int instanceSlot, Consumer<InstructionAdapter> call) {
+        if (globalAccess().fields().isEmpty()) {
+            call.accept(asm);
+            return;
+        }
+        var machineClassName = internalClassName(className);
+        asm.load(instanceSlot, OBJECT_TYPE);
+        asm.invokestatic(machineClassName, FLUSH_GLOBALS, GLOBALS_METHOD_DESCRIPTOR, false);
+
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        Label done = new Label();
+        asm.visitTryCatchBlock(start, end, handler, null);
+        asm.mark(start);
+        call.accept(asm);
+        asm.mark(end);
+        asm.load(instanceSlot, OBJECT_TYPE);
+        asm.invokestatic(machineClassName, RELOAD_GLOBALS, GLOBALS_METHOD_DESCRIPTOR, false);
+        asm.goTo(done);
+
+        asm.mark(handler);
+        asm.load(instanceSlot, OBJECT_TYPE);
+        asm.invokestatic(machineClassName, RELOAD_GLOBALS, GLOBALS_METHOD_DESCRIPTOR, false);
+        asm.athrow();
+        asm.mark(done);
+    }
+
     private void compileConstructor(InstructionAdapter asm, String internalClassName) {
         emitCallSuper(asm);
 
@@ -541,6 +1010,20 @@ public final class Compiler {
         asm.load(1, OBJECT_TYPE);
         asm.putfield(internalClassName, "instance", getDescriptor(Instance.class));
 
+        if (memoryKind != MemoryKind.ANY) {
+            // the loads and stores only work with the memory they have been compiled for
+            asm.load(1, OBJECT_TYPE);
+            emitInvokeVirtual(asm, INSTANCE_MEMORY);
+            asm.aconst(getType(memoryType(memoryKind)));
+            emitInvokeStatic(asm, CHECK_MEMORY_TYPE);
+        }
+
+        if (!fuelMetering) {
+            // the compiled code doesn't consume the fuel of a metered instance
+            asm.load(1, OBJECT_TYPE);
+            emitInvokeStatic(asm, CHECK_FUEL_METERING);
+        }
+
         if (!interpretedFunctions.isEmpty()) {
 
             asm.load(0, OBJECT_TYPE);
@@ -701,6 +1184,10 @@ public final class Compiler {
 
     private void compileExtraClass(
             ClassCollector collector, String name, Consumer<ClassVisitor> consumer) {
+        collector.put(name, compileExtraClass(name, consumer));
+    }
+
+    private byte[] compileExtraClass(String name, Consumer<ClassVisitor> consumer) {
         ClassWriter binaryWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
         ClassVisitor classWriter = shadedClassRemapper(binaryWriter, className);
         String internalClassName = internalClassName(name);
@@ -712,7 +1199,7 @@ public final class Compiler {
                 getInternalName(Object.class),
                 null);
         consumer.accept(classWriter);
-        collector.put(name, binaryWriter.toByteArray());
+        return binaryWriter.toByteArray();
     }
 
     private Consumer<InstructionAdapter> compileMachineCallDispatch(int maxMachineCallMethods) {
@@ -785,9 +1272,14 @@ public final class Compiler {
             asm.mark(hostLabel);
             asm.pop();
             asm.pop();
-            asm.load(2, INT_TYPE);
-            asm.load(3, OBJECT_TYPE);
-            emitInvokeStatic(asm, CALL_HOST_FUNCTION);
+            emitHostCall(
+                    asm,
+                    0,
+                    a -> {
+                        a.load(2, INT_TYPE);
+                        a.load(3, OBJECT_TYPE);
+                        emitInvokeStatic(a, CALL_HOST_FUNCTION);
+                    });
             asm.areturn(OBJECT_TYPE);
         }
 
@@ -802,6 +1294,8 @@ public final class Compiler {
     // public static long[] call_xxx(Memory memory, Instance instance, long[] args)
     private void compileCallFunction(int funcId, FunctionType type, InstructionAdapter asm) {
 
+        emitConsumeLeafFuel(asm, 0, funcId);
+
         if (hasTooManyParameters(type)) {
             asm.load(2, LONG_ARRAY_TYPE);
         } else {
@@ -817,6 +1311,10 @@ public final class Compiler {
 
         asm.load(1, OBJECT_TYPE);
         asm.load(0, OBJECT_TYPE);
+        if (hasMultipleResults(type)) {
+            asm.iconst(maxResults);
+            asm.newarray(LONG_TYPE);
+        }
 
         emitInvokeFunction(
                 asm, internalClassName(classNameForFuncGroup(className, funcId)), funcId, type);
@@ -825,7 +1323,12 @@ public final class Compiler {
         Class<?> returnType = jvmReturnType(type);
         if (returnType == void.class) {
             asm.aconst(null);
-        } else if (returnType != long[].class) {
+        } else if (returnType == long[].class) {
+            if (type.returns().size() < maxResults) {
+                asm.iconst(type.returns().size());
+                emitInvokeStatic(asm, ARRAYS_COPY_OF);
+            }
+        } else {
             emitJvmToLong(asm, type.returns().get(0));
             asm.store(3, LONG_TYPE);
             asm.iconst(1);
@@ -840,7 +1343,7 @@ public final class Compiler {
 
     // implements the body of:
     // public static <TypeR> call_indirect_xxx(<TypeN> argN...,
-    //      int funcTableIdx, int tableIdx, Memory memory, Instance instance)
+    //      int funcTableIdx, int tableIdx, Memory memory, Instance instance[, long[] results])
     private void compileCallIndirect(
             String internalClassName, int typeId, FunctionType type, InstructionAdapter asm) {
 
@@ -849,12 +1352,7 @@ public final class Compiler {
             slots = 1; // for long[]
         }
 
-        List<Integer> validIds = new ArrayList<>();
-        for (int i = 0; i < functionTypes.size(); i++) {
-            if (type.equals(functionTypes.get(i))) {
-                validIds.add(i);
-            }
-        }
+        List<Integer> validIds = functionsOfType(type);
         Label invalid = new Label();
 
         // extra params...
@@ -862,13 +1360,18 @@ public final class Compiler {
         int tableIdx = slots + 1;
         int memory = slots + 2;
         int instance = slots + 3;
+        int results = slots + 4;
 
         // local vars
-        int table = slots + 4;
-        int funcId = slots + 5;
-        int refInstance = slots + 6;
-
-        emitInvokeStatic(asm, CHECK_INTERRUPTION);
+        int locals = hasMultipleResults(type) ? slots + 5 : slots + 4;
+        int table = locals;
+        int funcId = locals + 1;
+        int refInstance = locals + 2;
+        int handle = locals + 3;
+
+        if (interruptionPolicy == InterruptionPolicy.CALLS_AND_LOOPS) {
+            emitInvokeStatic(asm, CHECK_INTERRUPTION);
+        }
 
         // TableInstance table = instance.table(tableIdx);
         asm.load(instance, OBJECT_TYPE);
@@ -900,6 +1403,36 @@ public final class Compiler {
 
         // local: call function in this module
         asm.mark(local);
+        if (dispatchesWithMethodHandles(type)) {
+            // MethodHandle handle = call_indirect_handles_xxx()[funcId];
+            Label loaded = new Label();
+            asm.getstatic(
+                    internalClassName,
+                    callIndirectHandlesName(typeId),
+                    getDescriptor(MethodHandle[].class));
+            asm.dup();
+            asm.ifnonnull(loaded);
+            asm.pop();
+            asm.invokestatic(
+                    internalClassName,
+                    callIndirectHandlesName(typeId),
+                    getMethodDescriptor(getType(MethodHandle[].class)),
+                    false);
+            asm.dup();
+            asm.putstatic(
+                    internalClassName,
+                    callIndirectHandlesName(typeId),
+                    getDescriptor(MethodHandle[].class));
+            asm.mark(loaded);
+            asm.load(funcId, INT_TYPE);
+            asm.aload(OBJECT_TYPE);
+            asm.store(handle, OBJECT_TYPE);
+
+            // the functions of another type have no handle
+            asm.load(handle, OBJECT_TYPE);
+            asm.ifnull(invalid);
+            asm.load(handle, OBJECT_TYPE);
+        }
         if (hasTooManyParameters(type)) {
             asm.load(0, LONG_ARRAY_TYPE);
         } else {
@@ -911,9 +1444,25 @@ public final class Compiler {
         }
         asm.load(memory, OBJECT_TYPE);
         asm.load(instance, OBJECT_TYPE);
+        if (hasMultipleResults(type)) {
+            asm.load(results, OBJECT_TYPE);
+        }
 
-        // Can we fit the impl in a single method?
-        if (validIds.size() <= MAX_MACHINE_CALL_METHODS) {
+        if (dispatchesWithMethodHandles(type)) {
+            // return handle.invokeExact(a, b, memory, callerInstance);
+            asm.invokevirtual(
+                    getInternalName(MethodHandle.class),
+                    "invokeExact",
+                    methodTypeFor(type).toMethodDescriptorString(),
+                    false);
+            asm.areturn(getType(jvmReturnType(type)));
+
+            asm.mark(invalid);
+            emitInvokeStatic(asm, THROW_INDIRECT_CALL_TYPE_MISMATCH);
+            asm.athrow();
+
+        } else if (validIds.size() <= MAX_MACHINE_CALL_METHODS) {
+            // Can we fit the impl in a single method?
 
             int[] keys = validIds.stream().mapToInt(x -> x).toArray();
             Label[] labels = validIds.stream().map(x -> new Label()).toArray(Label[]::new);
@@ -925,6 +1474,7 @@ public final class Compiler {
                 // case 0:
                 //    return func_0(a, b, memory, callerInstance);
                 asm.mark(labels[i]);
+                emitConsumeLeafFuel(asm, instance, keys[i]);
                 emitInvokeFunction(
                         asm, classNameForFuncGroup(internalClassName, keys[i]), keys[i], type);
                 asm.areturn(getType(jvmReturnType(type)));
@@ -935,9 +1485,7 @@ public final class Compiler {
             asm.athrow();
 
         } else {
-            var applyParams =
-                    rawMethodTypeFor(type)
-                            .appendParameterTypes(Memory.class, Instance.class, int.class);
+            var applyParams = methodTypeFor(type).appendParameterTypes(int.class);
 
             // Best value that worked with the 50K small wasm functions
             var maxMachineCallMethods = MAX_MACHINE_CALL_METHODS << 2;
@@ -993,20 +1541,65 @@ public final class Compiler {
         // other: call function in another module
         asm.mark(other);
 
-        if (hasTooManyParameters(type)) {
-            asm.load(0, LONG_ARRAY_TYPE);
-        } else {
-            emitBoxArguments(asm, type.params());
-        }
-        asm.iconst(typeId);
-        asm.load(funcId, INT_TYPE);
-        asm.load(refInstance, OBJECT_TYPE);
+        emitHostCall(
+                asm,
+                instance,
+                a -> {
+                    if (hasTooManyParameters(type)) {
+                        a.load(0, LONG_ARRAY_TYPE);
+                    } else {
+                        emitBoxArguments(a, type.params());
+                    }
+                    a.iconst(typeId);
+                    a.load(funcId, INT_TYPE);
+                    a.load(refInstance, OBJECT_TYPE);
+                    a.load(instance, OBJECT_TYPE);
 
-        emitInvokeStatic(asm, CALL_INDIRECT);
+                    emitInvokeStatic(a, CALL_INDIRECT);
+                });
 
         emitUnboxResult(type, asm);
     }
 
+    // implements the body of:
+    // public static MethodHandle[] call_indirect_handles_xxx()
+    // with the handles of the functions of the type at their index, null elsewhere
+    private void compileCallIndirectHandles(
+            String internalClassName, FunctionType type, InstructionAdapter asm) {
+        asm.iconst(functionTypes.size());
+        asm.newarray(getType(MethodHandle.class));
+        for (int funcId : functionsOfType(type)) {
+            asm.dup();
+            asm.iconst(funcId);
+            asm.aconst(
+                    new Handle(
+                            Opcodes.H_INVOKESTATIC,
+                            classNameForFuncGroup(internalClassName, funcId),
+                            methodNameForFunc(funcId),
+                            methodTypeFor(type).toMethodDescriptorString(),
+                            false));
+            asm.astore(OBJECT_TYPE);
+        }
+        asm.areturn(OBJECT_TYPE);
+    }
+
+    private List<Integer> functionsOfType(FunctionType type) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < functionTypes.size(); i++) {
+            if (type.equals(functionTypes.get(i))) {
+                ids.add(i);
+            }
+        }
+        return ids;
+    }
+
+    // the handles are looked up once per type, and don't consume the fuel of the leaf functions
+    private boolean dispatchesWithMethodHandles(FunctionType type) {
+        return callIndirectDispatch == CallIndirectDispatch.METHOD_HANDLES
+                && !fuelMetering
+                && functionsOfType(type).size() <= MAX_MACHINE_CALL_METHODS;
+    }
+
     private void compileCallIndirectApply(
             String internalClassName,
             FunctionType type,
@@ -1022,7 +1615,8 @@ public final class Compiler {
         // extra params...
         int memory = slots;
         int instance = slots + 1;
-        int funcId = slots + 2;
+        int results = slots + 2;
+        int funcId = hasMultipleResults(type) ? slots + 3 : slots + 2;
 
         List<Integer> validIds = new ArrayList<>();
         for (int i = 0; i < functionTypes.size(); i++) {
@@ -1041,6 +1635,9 @@ public final class Compiler {
         }
         asm.load(memory, OBJECT_TYPE);
         asm.load(instance, OBJECT_TYPE);
+        if (hasMultipleResults(type)) {
+            asm.load(results, OBJECT_TYPE);
+        }
 
         // switch (funcId)
         asm.load(funcId, INT_TYPE);
@@ -1050,6 +1647,7 @@ public final class Compiler {
             // case 0:
             //    return func_0(a, b, memory, callerInstance);
             asm.mark(labels[i]);
+            emitConsumeLeafFuel(asm, instance, keys[i]);
             emitInvokeFunction(
                     asm, classNameForFuncGroup(internalClassName, keys[i]), keys[i], type);
             asm.areturn(getType(jvmReturnType(type)));
@@ -1064,17 +1662,30 @@ public final class Compiler {
         asm.athrow();
     }
 
+    // the entry of a leaf function is consumed by the bridges calling it
+    private void emitConsumeLeafFuel(InstructionAdapter asm, int instance, int funcId) {
+        if (fuelMetering && leafFunctions[funcId]) {
+            asm.load(instance, OBJECT_TYPE);
+            emitInvokeVirtual(asm, INSTANCE_CONSUME_FUEL);
+        }
+    }
+
     // implements the body of:
     // public static <TypeR> func_xx(<TypeN> argN..., Memory memory, Instance instance)
-    private static void compileHostFunction(int funcId, FunctionType type, InstructionAdapter asm) {
+    private void compileHostFunction(int funcId, FunctionType type, InstructionAdapter asm) {
 
         int slot = type.params().stream().mapToInt(CompilerUtil::slotCount).sum();
 
-        asm.load(slot + 1, OBJECT_TYPE); // instance
-        asm.iconst(funcId);
-        emitBoxArguments(asm, type.params());
+        emitHostCall(
+                asm,
+                slot + 1,
+                a -> {
+                    a.load(slot + 1, OBJECT_TYPE); // instance
+                    a.iconst(funcId);
+                    emitBoxArguments(a, type.params());
 
-        emitInvokeStatic(asm, CALL_HOST_FUNCTION);
+                    emitInvokeStatic(a, CALL_HOST_FUNCTION);
+                });
 
         emitUnboxResult(type, asm);
     }
@@ -1110,8 +1721,23 @@ public final class Compiler {
         }
     }
 
+    private boolean hasMultipleResultsCall(List<CompilerInstruction> instructions) {
+        for (var ins : instructions) {
+            if (ins.opcode() == CompilerOpCode.CALL
+                    && hasMultipleResults(functionTypes.get((int) ins.operand(0)))) {
+                return true;
+            }
+            if (ins.opcode() == CompilerOpCode.CALL_INDIRECT
+                    && hasMultipleResults(module.typeSection().getType((int) ins.operand(0)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // implements the body of:
-    // public static <TypeR> func_xxx(<TypeN> ArgN..., Memory memory, Instance instance)
+    // public static <TypeR> func_xxx(<TypeN> ArgN..., Memory memory, Instance instance
+    //      [, long[] results])
     private void compileFunction(
             String internalClassName,
             int funcId,
@@ -1131,6 +1757,12 @@ public final class Compiler {
             }
             var refInstance = slots + 1;
 
+            if (fuelMetering && leafFunctions[funcId]) {
+                // the interpreter consumes the fuel of the entry already consumed by the caller
+                asm.load(refInstance, OBJECT_TYPE);
+                emitInvokeStatic(asm, REFUND_FUEL);
+            }
+
             asm.iconst(funcId);
             asm.load(refInstance, OBJECT_TYPE);
             emitInvokeStatic(asm, CALL_INDIRECT_ON_INTERPRETER);
@@ -1138,18 +1770,27 @@ public final class Compiler {
             return;
         }
 
+        List<CompilerInstruction> instructions = analyzer.analyze(funcId);
+        if (optimize) {
+            instructions = WasmOptimizer.optimize(instructions, type, body);
+        }
+        boolean hasMultipleResultsCall = hasMultipleResultsCall(instructions);
+
         var ctx =
                 new Context(
                         module,
                         internalClassName,
                         maxFunctionsPerClass,
+                        memoryKind,
+                        interruptionPolicy,
+                        globalAccess(),
                         analyzer.globalTypes(),
                         functionTypes,
                         funcId,
                         type,
-                        body);
-
-        List<CompilerInstruction> instructions = analyzer.analyze(funcId);
+                        body,
+                        hasMultipleResultsCall,
+                        fuelMetering && !leafFunctions[funcId]);
 
         int localsCount = type.params().size();
         if (hasTooManyParameters(type)) {
@@ -1174,6 +1815,26 @@ public final class Compiler {
             asm.store(ctx.localSlotIndex(i), asmType(localType));
         }
 
+        // a function returning a single value allocates the long[] for the calls returning
+        // multiple values once, and reuses it for all of them
+        if (!hasMultipleResults(type) && hasMultipleResultsCall) {
+            asm.iconst(maxResults);
+            asm.newarray(LONG_TYPE);
+            asm.store(ctx.resultsSlot(), OBJECT_TYPE);
+        }
+
+        // every function entry consumes one unit of fuel, as in the interpreters:
+        // the function counts the fuel left in a local, written back to the instance
+        // around the calls and at the exits
+        Label fuelStart = new Label();
+        if (ctx.fuelSlot() >= 0) {
+            asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+            emitInvokeStatic(asm, LOAD_FUEL);
+            asm.store(ctx.fuelSlot(), LONG_TYPE);
+            asm.mark(fuelStart);
+            emitConsumeFuel(ctx, asm);
+        }
+
         // allocate labels for all label targets
         Map<Long, Label> labels = new HashMap<>();
         for (var ins : instructions) {
@@ -1184,6 +1845,8 @@ public final class Compiler {
 
         // track targets to detect backward jumps
         Set<Long> visitedTargets = new HashSet<>();
+        Set<Long> handlers = new HashSet<>();
+        boolean checkLoops = interruptionPolicy != InterruptionPolicy.NONE;
 
         // compile the function body
         for (CompilerInstruction ins : instructions) {
@@ -1194,10 +1857,16 @@ public final class Compiler {
                         asm.mark(label);
                         visitedTargets.add(ins.operand(0));
                     }
+                    if (ctx.fuelSlot() >= 0 && handlers.contains(ins.operand(0))) {
+                        asm.load(ctx.fuelSlot(), LONG_TYPE);
+                        asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+                        emitInvokeStatic(asm, CAUGHT_FUEL);
+                        asm.store(ctx.fuelSlot(), LONG_TYPE);
+                    }
                     break;
                 case GOTO:
                     if (visitedTargets.contains(ins.operand(0))) {
-                        emitInvokeStatic(asm, CHECK_INTERRUPTION);
+                        emitBackEdge(ctx, asm, checkLoops);
                     }
                     asm.goTo(labels.get(ins.operand(0)));
                     break;
@@ -1208,10 +1877,10 @@ public final class Compiler {
                     asm.ifeq(labels.get(ins.operand(0)));
                     break;
                 case IFNE:
-                    if (visitedTargets.contains(ins.operand(0))) {
+                    if ((checkLoops || fuelMetering) && visitedTargets.contains(ins.operand(0))) {
                         Label skip = new Label();
                         asm.ifeq(skip);
-                        emitInvokeStatic(asm, CHECK_INTERRUPTION);
+                        emitBackEdge(ctx, asm, checkLoops);
                         asm.goTo(labels.get(ins.operand(0)));
                         asm.mark(skip);
 
@@ -1220,7 +1889,7 @@ public final class Compiler {
                     }
                     break;
                 case SWITCH:
-                    if (ins.operands().anyMatch(visitedTargets::contains)) {
+                    if (checkLoops && ins.operands().anyMatch(visitedTargets::contains)) {
                         emitInvokeStatic(asm, CHECK_INTERRUPTION);
                     }
                     // table switch using the last entry of the table as the default
@@ -1229,7 +1898,27 @@ public final class Compiler {
                         table[i] = labels.get(ins.operand(i));
                     }
                     Label defaultLabel = labels.get(ins.operand(table.length));
-                    asm.tableswitch(0, table.length - 1, defaultLabel, table);
+                    if (fuelMetering) {
+                        // only the taken backward entry consumes fuel: route the backward
+                        // entries through stubs placed after the switch
+                        Map<Label, Label> stubs = new LinkedHashMap<>();
+                        for (int i = 0; i < table.length; i++) {
+                            if (visitedTargets.contains(ins.operand(i))) {
+                                table[i] = stubs.computeIfAbsent(table[i], k -> new Label());
+                            }
+                        }
+                        if (visitedTargets.contains(ins.operand(table.length))) {
+                            defaultLabel = stubs.computeIfAbsent(defaultLabel, k -> new Label());
+                        }
+                        asm.tableswitch(0, table.length - 1, defaultLabel, table);
+                        for (var stub : stubs.entrySet()) {
+                            asm.mark(stub.getValue());
+                            emitConsumeFuel(ctx, asm);
+                            asm.goTo(stub.getKey());
+                        }
+                    } else {
+                        asm.tableswitch(0, table.length - 1, defaultLabel, table);
+                    }
                     break;
                 case TRY_CATCH_BLOCK:
                     asm.visitTryCatchBlock(
@@ -1237,6 +1926,23 @@ public final class Compiler {
                             labels.get(ins.operand(1)),
                             labels.get(ins.operand(2)),
                             getInternalName(WasmException.class));
+                    handlers.add(ins.operand(2));
+                    break;
+                case CALL:
+                    int callee = (int) ins.operand(0);
+                    if (ctx.fuelSlot() >= 0 && leafFunctions[callee]) {
+                        emitConsumeFuel(ctx, asm);
+                        EMITTERS.get(ins.opcode()).emit(ctx, ins, asm);
+                    } else {
+                        emitOpaqueCall(ctx, ins, asm);
+                    }
+                    break;
+                case CALL_INDIRECT:
+                    emitOpaqueCall(ctx, ins, asm);
+                    break;
+                case RETURN:
+                    emitStoreFuel(ctx, asm);
+                    EMITTERS.get(ins.opcode()).emit(ctx, ins, asm);
                     break;
                 default:
                     var emitter = EMITTERS.get(ins.opcode());
@@ -1246,5 +1952,67 @@ public final class Compiler {
                     emitter.emit(ctx, ins, asm);
             }
         }
+
+        // write back the fuel left when an exception leaves the function
+        if (ctx.fuelSlot() >= 0) {
+            Label fuelEnd = new Label();
+            asm.mark(fuelEnd);
+            asm.load(ctx.fuelSlot(), LONG_TYPE);
+            asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+            emitInvokeStatic(asm, CAUGHT_FUEL);
+            asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+            emitInvokeStatic(asm, STORE_FUEL);
+            asm.athrow();
+            asm.visitTryCatchBlock(fuelStart, fuelEnd, fuelEnd, null);
+        }
+    }
+
+    // the callee, unless it's a leaf function, consumes the fuel written back to the instance
+    private static void emitOpaqueCall(
+            Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
+        emitStoreFuel(ctx, asm);
+        EMITTERS.get(ins.opcode()).emit(ctx, ins, asm);
+        if (ctx.fuelSlot() >= 0) {
+            asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+            emitInvokeStatic(asm, LOAD_FUEL);
+            asm.store(ctx.fuelSlot(), LONG_TYPE);
+        }
+    }
+
+    private static void emitStoreFuel(Context ctx, InstructionAdapter asm) {
+        if (ctx.fuelSlot() >= 0) {
+            asm.load(ctx.fuelSlot(), LONG_TYPE);
+            asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+            emitInvokeStatic(asm, STORE_FUEL);
+        }
+    }
+
+    private void emitBackEdge(Context ctx, InstructionAdapter asm, boolean checkInterruption) {
+        if (checkInterruption) {
+            emitInvokeStatic(asm, CHECK_INTERRUPTION);
+        }
+        if (fuelMetering) {
+            emitConsumeFuel(ctx, asm);
+        }
+    }
+
+    // fuel = fuel - 1;
+    // if (fuel < 0) { fuel = 0; throw throwOutOfFuel(instance); }
+    private static void emitConsumeFuel(Context ctx, InstructionAdapter asm) {
+        Label left = new Label();
+        asm.load(ctx.fuelSlot(), LONG_TYPE);
+        asm.lconst(1);
+        asm.sub(LONG_TYPE);
+        asm.dup2();
+        asm.store(ctx.fuelSlot(), LONG_TYPE);
+        asm.lconst(0);
+        asm.lcmp();
+        asm.ifge(left);
+        asm.lconst(0);
+        asm.store(ctx.fuelSlot(), LONG_TYPE);
+        asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+        emitInvokeStatic(asm, THROW_OUT_OF_FUEL);
+        asm.athrow();
+        asm.mark(left);
     }
 }
@@ -0,0 +1,103 @@
+package com.dylibso.chicory.compiler.internal;
+
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.WasmModule;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * A hash of the code the compiled classes depend on: the compiler generating them, and the
+ * runtime and the parser they link against. The classes compiled by another version of any of
+ * them have another fingerprint.
+ */
+public final class CompilerFingerprint {
+
+    private CompilerFingerprint() {}
+
+    private static final class Holder {
+        private static final byte[] VALUE = compute();
+    }
+
+    public static byte[] current() {
+        return Holder.VALUE.clone();
+    }
+
+    private static byte[] compute() {
+        var codeSources = new LinkedHashSet<Path>();
+        for (var type : List.of(Compiler.class, Instance.class, WasmModule.class)) {
+            var codeSource = codeSource(type);
+            if (codeSource == null) {
+                // can't tell the version apart: never load the classes compiled by another JVM
+                return UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+            }
+            codeSources.add(codeSource);
+        }
+        return of(List.copyOf(codeSources));
+    }
+
+    private static Path codeSource(Class<?> type) {
+        try {
+            var codeSource = type.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) {
+                return null;
+            }
+            var path = Path.of(codeSource.getLocation().toURI());
+            return Files.exists(path) ? path : null;
+        } catch (URISyntaxException
+                | IllegalArgumentException
+                | FileSystemNotFoundException
+                | SecurityException e) {
+            // e.g. a nested jar, or a location that isn't a file
+            return null;
+        }
+    }
+
+    /**
+     * Hashes the given jars, or class directories, with every file they contain.
+     */
+    public static byte[] of(List<Path> codeSources) {
+        var digest = sha256();
+        for (var codeSource : codeSources) {
+            try {
+                if (Files.isDirectory(codeSource)) {
+                    List<Path> files;
+                    try (var walk = Files.walk(codeSource)) {
+                        files =
+                                walk.filter(Files::isRegularFile)
+                                        .sorted()
+                                        .collect(Collectors.toList());
+                    }
+                    for (var file : files) {
+                        var name = codeSource.relativize(file).toString().replace('\\', '/');
+                        digest.update(name.getBytes(StandardCharsets.UTF_8));
+                        digest.update(Files.readAllBytes(file));
+                    }
+                } else {
+                    digest.update(Files.readAllBytes(codeSource));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -34,6 +34,23 @@ final class CompilerInstruction {
         return operands[index];
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompilerInstruction)) {
+            return false;
+        }
+        var that = (CompilerInstruction) o;
+        return opcode == that.opcode && Arrays.equals(operands, that.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * opcode.hashCode() + Arrays.hashCode(operands);
+    }
+
     @Override
     public String toString() {
         if (operands.length == 0) {
@@ -32,7 +32,7 @@ final class CompilerUtil {
     // The maximum number of wasm parameters that can be passed to a function before we box them
     // since Java
     // methods have a limit of 255 parameters, but we need to reserve a few for the Instance and
-    // Memory args.
+    // Memory args, and for the results long[] of the functions returning multiple values.
     private static final int MAX_PARAMETER_COUNT = 253;
 
     private static final Method LONG_TO_F32;
@@ -138,20 +138,36 @@ final class CompilerUtil {
     }
 
     public static MethodType valueMethodType(List<ValType> types) {
-        return methodType(long[].class, jvmTypes(types));
+        return methodType(long[].class, jvmTypes(types)).appendParameterTypes(long[].class);
     }
 
     public static MethodType callIndirectMethodType(FunctionType functionType) {
-        return rawMethodTypeFor(functionType)
-                .appendParameterTypes(int.class, int.class, Memory.class, Instance.class);
+        return withResults(
+                functionType,
+                rawMethodTypeFor(functionType)
+                        .appendParameterTypes(int.class, int.class, Memory.class, Instance.class));
     }
 
     public static MethodType methodTypeFor(FunctionType type) {
-        return rawMethodTypeFor(type).appendParameterTypes(Memory.class, Instance.class);
+        return withResults(
+                type, rawMethodTypeFor(type).appendParameterTypes(Memory.class, Instance.class));
+    }
+
+    // the functions returning multiple values fill the long[] passed by the caller,
+    // instead of allocating a new one on every call
+    private static MethodType withResults(FunctionType type, MethodType methodType) {
+        return hasMultipleResults(type)
+                ? methodType.appendParameterTypes(long[].class)
+                : methodType;
+    }
+
+    public static boolean hasMultipleResults(FunctionType type) {
+        return type.returns().size() > 1;
     }
 
     public static boolean hasTooManyParameters(FunctionType type) {
-        return type.params().stream().mapToInt(CompilerUtil::slotCount).sum() > MAX_PARAMETER_COUNT;
+        int maxParameterCount = MAX_PARAMETER_COUNT - (hasMultipleResults(type) ? 1 : 0);
+        return type.params().stream().mapToInt(CompilerUtil::slotCount).sum() > maxParameterCount;
     }
 
     public static MethodType rawMethodTypeFor(FunctionType type) {
@@ -268,6 +284,10 @@ final class CompilerUtil {
         return "call_indirect_" + typeId;
     }
 
+    public static String callIndirectHandlesName(int typeId) {
+        return "call_indirect_handles_" + typeId;
+    }
+
     public static String internalClassName(String name) {
         return name.replace('.', '/');
     }
@@ -1,8 +1,11 @@
 package com.dylibso.chicory.compiler.internal;
 
+import static com.dylibso.chicory.compiler.internal.CompilerUtil.hasMultipleResults;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.hasTooManyParameters;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.slotCount;
 
+import com.dylibso.chicory.compiler.InterruptionPolicy;
+import com.dylibso.chicory.compiler.MemoryKind;
 import com.dylibso.chicory.wasm.WasmModule;
 import com.dylibso.chicory.wasm.types.ExternalType;
 import com.dylibso.chicory.wasm.types.FunctionBody;
@@ -29,21 +32,37 @@ final class Context {
     private final List<Integer> slots;
     private final int memorySlot;
     private final int instanceSlot;
+    private final int resultsSlot;
+    private final int fuelSlot;
     private final int tempSlot;
     private final List<TagImport> tagImports;
+    private final MemoryKind memoryKind;
+    private final boolean memory64;
+    private final InterruptionPolicy interruptionPolicy;
+    private final GlobalAccess globalAccess;
 
     public Context(
             WasmModule module,
             String internalClassName,
             int maxFunctionsPerClass,
+            MemoryKind memoryKind,
+            InterruptionPolicy interruptionPolicy,
+            GlobalAccess globalAccess,
             List<ValType> globalTypes,
             List<FunctionType> functionTypes,
             int funcId,
             FunctionType type,
-            FunctionBody body) {
+            FunctionBody body,
+            boolean hasMultipleResultsCall,
+            boolean countsFuel) {
         this.module = module;
         this.internalClassName = internalClassName;
         this.maxFunctionsPerClass = maxFunctionsPerClass;
+        this.memoryKind = memoryKind;
+        this.memory64 =
+                module.memoryLimits().map(l -> l.addressType().equals(ValType.I64)).orElse(false);
+        this.interruptionPolicy = interruptionPolicy;
+        this.globalAccess = globalAccess;
         this.globalTypes = globalTypes;
         this.functionTypes = functionTypes;
         this.funcId = funcId;
@@ -69,6 +88,11 @@ final class Context {
         slot++;
         this.instanceSlot = slot;
         slot++;
+        int resultsSlot = -1;
+        if (hasMultipleResults(type)) {
+            resultsSlot = slot;
+            slot++;
+        }
 
         // the long[] gets unboxed
         if (hasTooManyParameters(type)) {
@@ -84,6 +108,22 @@ final class Context {
             slot += slotCount(local);
         }
 
+        // the results of the calls returning multiple values,
+        // when the function doesn't get a long[] from its caller
+        if (!hasMultipleResults(type) && hasMultipleResultsCall) {
+            resultsSlot = slot;
+            slot++;
+        }
+
+        // the fuel left, counted locally by the fuel metered functions
+        int fuelSlot = -1;
+        if (countsFuel) {
+            fuelSlot = slot;
+            slot += 2;
+        }
+
+        this.resultsSlot = resultsSlot;
+        this.fuelSlot = fuelSlot;
         this.slots = List.copyOf(slots);
         this.tempSlot = slot;
 
@@ -138,10 +178,37 @@ final class Context {
         return instanceSlot;
     }
 
+    public int resultsSlot() {
+        return resultsSlot;
+    }
+
+    public int fuelSlot() {
+        return fuelSlot;
+    }
+
     public int tempSlot() {
         return tempSlot;
     }
 
+    public MemoryKind memoryKind() {
+        return memoryKind;
+    }
+
+    /**
+     * @return if the memory is a 64-bit memory, addressed with i64 values
+     */
+    public boolean memory64() {
+        return memory64;
+    }
+
+    public InterruptionPolicy interruptionPolicy() {
+        return interruptionPolicy;
+    }
+
+    public GlobalAccess globalAccess() {
+        return globalAccess;
+    }
+
     public String classNameForFuncGroup(String prefix, int funcId) {
         return prefix + "FuncGroup_" + (funcId / maxFunctionsPerClass);
     }
@@ -9,6 +9,7 @@ import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitInvokeVirtu
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitJvmToLong;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitLongToJvm;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.emitPop;
+import static com.dylibso.chicory.compiler.internal.CompilerUtil.hasMultipleResults;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.hasTooManyParameters;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.jvmReturnType;
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.localType;
@@ -26,6 +27,7 @@ import static org.objectweb.asm.Type.getMethodDescriptor;
 import static org.objectweb.asm.Type.getType;
 import static org.objectweb.asm.commons.InstructionAdapter.OBJECT_TYPE;
 
+import com.dylibso.chicory.compiler.InterruptionPolicy;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.runtime.OpCodeIdentifier;
 import com.dylibso.chicory.runtime.WasmException;
@@ -39,6 +41,7 @@ import java.util.Map;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.InstructionAdapter;
 
 final class Emitters {
@@ -108,7 +111,8 @@ final class Emitters {
     }
 
     public static void RETURN(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
-        if (ctx.getType().returns().size() > 1) {
+        if (hasMultipleResults(ctx.getType())) {
+            asm.load(ctx.resultsSlot(), OBJECT_TYPE);
             asm.invokestatic(
                     ctx.internalClassName(),
                     valueMethodName(ctx.getType().returns()),
@@ -177,20 +181,25 @@ final class Emitters {
         int funcId = (int) ins.operand(0);
         FunctionType functionType = ctx.functionTypes().get(funcId);
 
-        emitInvokeStatic(asm, ShadedRefs.CHECK_INTERRUPTION);
+        if (ctx.interruptionPolicy() == InterruptionPolicy.CALLS_AND_LOOPS) {
+            emitInvokeStatic(asm, ShadedRefs.CHECK_INTERRUPTION);
+        }
         if (hasTooManyParameters(functionType)) {
             emitBoxValuesOnStack(ctx, asm, functionType.params());
         }
 
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
         asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+        if (hasMultipleResults(functionType)) {
+            asm.load(ctx.resultsSlot(), OBJECT_TYPE);
+        }
         emitInvokeFunction(
                 asm,
                 ctx.classNameForFuncGroup(ctx.internalClassName(), funcId),
                 funcId,
                 functionType);
 
-        if (functionType.returns().size() > 1) {
+        if (hasMultipleResults(functionType)) {
             emitUnboxResult(asm, ctx, functionType.returns());
         }
     }
@@ -207,7 +216,10 @@ final class Emitters {
         asm.iconst(tableIdx);
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
         asm.load(ctx.instanceSlot(), OBJECT_TYPE);
-        // stack: arguments, funcTableIdx, tableIdx, memory, instance
+        if (hasMultipleResults(functionType)) {
+            asm.load(ctx.resultsSlot(), OBJECT_TYPE);
+        }
+        // stack: arguments, funcTableIdx, tableIdx, memory, instance[, results]
 
         asm.invokestatic(
                 ctx.internalClassName(),
@@ -215,7 +227,7 @@ final class Emitters {
                 callIndirectMethodType(functionType).toMethodDescriptorString(),
                 false);
 
-        if (functionType.returns().size() > 1) {
+        if (hasMultipleResults(functionType)) {
             emitUnboxResult(asm, ctx, functionType.returns());
         }
     }
@@ -256,21 +268,88 @@ final class Emitters {
 
     public static void GLOBAL_GET(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
         int globalIndex = (int) ins.operand(0);
+        var globalType = ctx.globalTypes().get(globalIndex);
+
+        var constant = ctx.globalAccess().constant(globalIndex);
+        if (constant != null) {
+            switch (globalType.opcode()) {
+                case ValType.ID.I32:
+                    asm.iconst((int) (long) constant);
+                    break;
+                case ValType.ID.I64:
+                    asm.lconst(constant);
+                    break;
+                case ValType.ID.F32:
+                    asm.fconst(intBitsToFloat((int) (long) constant));
+                    break;
+                default:
+                    asm.dconst(longBitsToDouble(constant));
+                    break;
+            }
+            return;
+        }
+        Label end = new Label();
+        if (ctx.globalAccess().isField(globalIndex)) {
+            Label instanceGlobal = new Label();
+            emitLoadMachine(ctx, asm, instanceGlobal);
+            asm.getfield(
+                    ctx.internalClassName(),
+                    GlobalAccess.fieldName(globalIndex),
+                    asmType(globalType).getDescriptor());
+            asm.goTo(end);
+            asm.mark(instanceGlobal);
+            asm.pop();
+        }
 
         asm.iconst(globalIndex);
         asm.load(ctx.instanceSlot(), OBJECT_TYPE);
         emitInvokeStatic(asm, ShadedRefs.READ_GLOBAL);
 
-        emitLongToJvm(asm, ctx.globalTypes().get(globalIndex));
+        emitLongToJvm(asm, globalType);
+        asm.mark(end);
     }
 
     public static void GLOBAL_SET(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
         int globalIndex = (int) ins.operand(0);
 
-        emitJvmToLong(asm, ctx.globalTypes().get(globalIndex));
+        var globalType = ctx.globalTypes().get(globalIndex);
+        Label end = new Label();
+        if (ctx.globalAccess().isField(globalIndex)) {
+            Label instanceGlobal = new Label();
+            emitLoadMachine(ctx, asm, instanceGlobal);
+            // the machine goes below the value
+            if (slotCount(globalType) == 1) {
+                asm.swap();
+            } else {
+                asm.dupX2();
+                asm.pop();
+            }
+            asm.putfield(
+                    ctx.internalClassName(),
+                    GlobalAccess.fieldName(globalIndex),
+                    asmType(globalType).getDescriptor());
+            asm.goTo(end);
+            asm.mark(instanceGlobal);
+            asm.pop();
+        }
+
+        emitJvmToLong(asm, globalType);
         asm.iconst(globalIndex);
         asm.load(ctx.instanceSlot(), OBJECT_TYPE);
         emitInvokeStatic(asm, ShadedRefs.WRITE_GLOBAL);
+        asm.mark(end);
+    }
+
+    // pushes the compiled machine holding the global fields, or jumps to the given label
+    // with the machine of the instance on the stack when it has been wrapped by another one
+    private static void emitLoadMachine(Context ctx, InstructionAdapter asm, Label wrapped) {
+        var machineType = Type.getObjectType(ctx.internalClassName());
+        asm.load(ctx.instanceSlot(), OBJECT_TYPE);
+        emitInvokeVirtual(asm, ShadedRefs.INSTANCE_MACHINE);
+        asm.dup();
+        asm.instanceOf(machineType);
+        asm.ifeq(wrapped);
+        asm.checkcast(machineType);
     }
 
     public static void TABLE_GET(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
@@ -320,27 +399,30 @@ final class Emitters {
     public static void MEMORY_INIT(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
         asm.iconst((int) ins.operand(0));
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
-        emitInvokeStatic(asm, ShadedRefs.MEMORY_INIT);
+        emitInvokeStatic(asm, ctx.memory64() ? ShadedRefs.MEMORY_INIT_64 : ShadedRefs.MEMORY_INIT);
     }
 
     public static void MEMORY_COPY(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
-        emitInvokeStatic(asm, ShadedRefs.MEMORY_COPY);
+        emitInvokeStatic(asm, ctx.memory64() ? ShadedRefs.MEMORY_COPY_64 : ShadedRefs.MEMORY_COPY);
     }
 
     public static void MEMORY_FILL(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
-        emitInvokeStatic(asm, ShadedRefs.MEMORY_FILL);
+        emitInvokeStatic(asm, ctx.memory64() ? ShadedRefs.MEMORY_FILL_64 : ShadedRefs.MEMORY_FILL);
     }
 
     public static void MEMORY_GROW(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
-        emitInvokeStatic(asm, ShadedRefs.MEMORY_GROW);
+        emitInvokeStatic(asm, ctx.memory64() ? ShadedRefs.MEMORY_GROW_64 : ShadedRefs.MEMORY_GROW);
     }
 
     public static void MEMORY_SIZE(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
         emitInvokeStatic(asm, ShadedRefs.MEMORY_PAGES);
+        if (ctx.memory64()) {
+            asm.cast(INT_TYPE, LONG_TYPE);
+        }
     }
 
     public static void DATA_DROP(Context ctx, CompilerInstruction ins, InstructionAdapter asm) {
@@ -944,14 +1026,42 @@ final class Emitters {
             Context ctx, CompilerInstruction ins, InstructionAdapter asm, Method method) {
         long offset = ins.operand(1);
 
-        if (offset < 0 || offset >= Integer.MAX_VALUE) {
+        if (offset < 0 || offset > 0xFFFFFFFFL) {
             emitInvokeStatic(asm, ShadedRefs.THROW_OUT_OF_BOUNDS_MEMORY_ACCESS);
             asm.athrow();
         }
 
+        if (ctx.memory64()) {
+            emitNarrowAddress(ctx, asm, method);
+        }
+
         asm.iconst((int) offset);
         asm.load(ctx.memorySlot(), OBJECT_TYPE);
-        emitInvokeStatic(asm, method);
+        var specialized = ShadedRefs.memoryAccess(method, ctx.memoryKind());
+        if (specialized != method) {
+            // the instance memory has been checked when the machine was created
+            asm.checkcast(getType(ShadedRefs.memoryType(ctx.memoryKind())));
+        }
+        emitInvokeStatic(asm, specialized);
+    }
+
+    // narrows the i64 address below the values of a memory access, e.g. the value to store
+    private static void emitNarrowAddress(Context ctx, InstructionAdapter asm, Method method) {
+        // the address and the values, followed by the offset and the memory
+        var params = method.getParameterTypes();
+        int slot = ctx.tempSlot();
+        int[] slots = new int[params.length - 2];
+        for (int i = 1; i < params.length - 2; i++) {
+            slots[i] = slot;
+            slot += getType(params[i]).getSize();
+        }
+        for (int i = params.length - 3; i >= 1; i--) {
+            asm.store(slots[i], getType(params[i]));
+        }
+        emitInvokeStatic(asm, ShadedRefs.MEMORY_ADDRESS_64);
+        for (int i = 1; i < params.length - 2; i++) {
+            asm.load(slots[i], getType(params[i]));
+        }
     }
 
     private static void emitUnboxResult(InstructionAdapter asm, Context ctx, List<ValType> types) {
@@ -0,0 +1,130 @@
+package com.dylibso.chicory.compiler.internal;
+
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.ExternalType;
+import com.dylibso.chicory.wasm.types.Instruction;
+import com.dylibso.chicory.wasm.types.MutabilityType;
+import com.dylibso.chicory.wasm.types.ValType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How the compiled code accesses the globals of a module, when it can do better than going
+ * through {@code Instance.global(idx)}.
+ * <ul>
+ *     <li>the immutable globals initialized by a constant are folded into the code</li>
+ *     <li>the mutable globals are kept in fields of the machine while it runs, and written back
+ *     to their {@code GlobalInstance} when the call returns</li>
+ * </ul>
+ * Only the numeric globals defined by the module and not exported are eligible, as only the
+ * host can observe them while the code runs, through the instance: the fields are also written
+ * back before calling the host or another module, and read again after.
+ */
+final class GlobalAccess {
+
+    private final Map<Integer, Long> constants;
+    private final List<Integer> fields;
+    private final Set<Integer> fieldSet;
+
+    private GlobalAccess(Map<Integer, Long> constants, List<Integer> fields) {
+        this.constants = constants;
+        this.fields = fields;
+        this.fieldSet = Set.copyOf(fields);
+    }
+
+    static GlobalAccess of(WasmModule module) {
+        Set<Integer> exported = new HashSet<>();
+        for (int i = 0; i < module.exportSection().exportCount(); i++) {
+            var export = module.exportSection().getExport(i);
+            if (export.exportType() == ExternalType.GLOBAL) {
+                exported.add(export.index());
+            }
+        }
+
+        var imported = module.importSection().count(ExternalType.GLOBAL);
+        var globals = module.globalSection().globals();
+        Map<Integer, Long> constants = new HashMap<>();
+        List<Integer> fields = new ArrayList<>();
+        for (int i = 0; i < globals.length; i++) {
+            var idx = imported + i;
+            var global = globals[i];
+            if (exported.contains(idx) || !isNumeric(global.valueType())) {
+                continue;
+            }
+            if (global.mutabilityType() == MutabilityType.Var) {
+                fields.add(idx);
+            } else {
+                var constant = initConstant(global.initInstructions());
+                if (constant != null) {
+                    constants.put(idx, constant);
+                }
+            }
+        }
+        return new GlobalAccess(Map.copyOf(constants), List.copyOf(fields));
+    }
+
+    private static boolean isNumeric(ValType type) {
+        switch (type.opcode()) {
+            case ValType.ID.I32:
+            case ValType.ID.I64:
+            case ValType.ID.F32:
+            case ValType.ID.F64:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // the value of an initializer made of a single constant
+    private static Long initConstant(List<Instruction> init) {
+        Long value = null;
+        for (var ins : init) {
+            switch (ins.opcode()) {
+                case I32_CONST:
+                case I64_CONST:
+                case F32_CONST:
+                case F64_CONST:
+                    if (value != null) {
+                        return null;
+                    }
+                    value = ins.operand(0);
+                    break;
+                case END:
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the same access without the fields, for when other code can run in between
+     */
+    GlobalAccess withoutFields() {
+        return new GlobalAccess(constants, List.of());
+    }
+
+    /**
+     * @return the raw value of the global if it is a constant, or {@code null}
+     */
+    Long constant(int idx) {
+        return constants.get(idx);
+    }
+
+    boolean isField(int idx) {
+        return fieldSet.contains(idx);
+    }
+
+    List<Integer> fields() {
+        return fields;
+    }
+
+    static String fieldName(int idx) {
+        return "global_" + idx;
+    }
+}
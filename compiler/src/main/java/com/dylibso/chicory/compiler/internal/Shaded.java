@@ -3,17 +3,22 @@ package com.dylibso.chicory.compiler.internal;
 import static com.dylibso.chicory.runtime.MemCopyWorkaround.shouldUseMemWorkaround;
 import static com.dylibso.chicory.wasm.types.Value.REF_NULL_VALUE;
 
+import com.dylibso.chicory.runtime.AtomicOps;
+import com.dylibso.chicory.runtime.ByteArrayMemory;
+import com.dylibso.chicory.runtime.ByteBufferMemory;
 import com.dylibso.chicory.runtime.ChicoryInterruptedException;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.runtime.MemCopyWorkaround;
 import com.dylibso.chicory.runtime.Memory;
 import com.dylibso.chicory.runtime.OpcodeImpl;
+import com.dylibso.chicory.runtime.OutOfFuelException;
 import com.dylibso.chicory.runtime.TrapException;
 import com.dylibso.chicory.runtime.WasmException;
 import com.dylibso.chicory.runtime.WasmRuntimeException;
 import com.dylibso.chicory.wasm.ChicoryException;
 import com.dylibso.chicory.wasm.InvalidException;
 import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
 
 /**
  * This class will get shaded into the compiled code.
@@ -22,13 +27,17 @@ public final class Shaded {
 
     private Shaded() {}
 
-    public static long[] callIndirect(long[] args, int typeId, int funcId, Instance instance) {
-        FunctionType expectedType = instance.type(typeId);
-        FunctionType actualType = instance.type(instance.functionType(funcId));
-        if (!actualType.typesMatch(expectedType)) {
-            throw throwIndirectCallTypeMismatch();
+    public static long[] callIndirect(
+            long[] args, int typeId, int funcId, Instance refInstance, Instance instance) {
+        // the instances sharing a registry compare the canonical ids of the types
+        if (!refInstance.hasCanonicalType(funcId, instance, typeId)) {
+            FunctionType expectedType = instance.type(typeId);
+            FunctionType actualType = refInstance.type(refInstance.functionType(funcId));
+            if (!actualType.typesMatch(expectedType)) {
+                throw throwIndirectCallTypeMismatch();
+            }
         }
-        return instance.getMachine().call(funcId, args);
+        return refInstance.getMachine().call(funcId, args);
     }
 
     public static long[] callIndirect(long[] args, int funcId, Instance instance) {
@@ -111,6 +120,39 @@ public final class Shaded {
         return memory.grow(size);
     }
 
+    // the 64-bit memories are not larger than 4 GiB, their addresses are narrowed
+    // to the 32-bit addresses of the memory, see InterpreterMachine.narrowAddresses
+    public static int memoryAddress64(long address) {
+        if (Long.compareUnsigned(address, 0xFFFFFFFFL) > 0) {
+            throw new WasmRuntimeException("out of bounds memory access");
+        }
+        return (int) address;
+    }
+
+    public static void memoryCopy64(long destination, long offset, long size, Memory memory) {
+        memoryCopy(
+                memoryAddress64(destination),
+                memoryAddress64(offset),
+                memoryAddress64(size),
+                memory);
+    }
+
+    public static void memoryFill64(long offset, byte value, long size, Memory memory) {
+        memoryFill(memoryAddress64(offset), value, memoryAddress64(size), memory);
+    }
+
+    public static void memoryInit64(
+            long destination, int offset, int size, int segmentId, Memory memory) {
+        memoryInit(memoryAddress64(destination), offset, size, segmentId, memory);
+    }
+
+    public static long memoryGrow64(long size, Memory memory) {
+        if (Long.compareUnsigned(size, MemoryLimits.MAX_PAGES) > 0) {
+            return -1;
+        }
+        return memory.grow((int) size);
+    }
+
     public static void memoryDrop(int segment, Memory memory) {
         memory.drop(segment);
     }
@@ -119,59 +161,158 @@ public final class Shaded {
         return memory.pages();
     }
 
+    // the overloads for a MemoryKind call the memory directly instead of through the interface
     public static byte memoryReadByte(int base, int offset, Memory memory) {
         return memory.read(getAddr(base, offset));
     }
 
+    public static byte memoryReadByte(int base, int offset, ByteBufferMemory memory) {
+        return memory.read(getAddr(base, offset));
+    }
+
+    public static byte memoryReadByte(int base, int offset, ByteArrayMemory memory) {
+        return memory.read(getAddr(base, offset));
+    }
+
     public static short memoryReadShort(int base, int offset, Memory memory) {
         return memory.readShort(getAddr(base, offset));
     }
 
+    public static short memoryReadShort(int base, int offset, ByteBufferMemory memory) {
+        return memory.readShort(getAddr(base, offset));
+    }
+
+    public static short memoryReadShort(int base, int offset, ByteArrayMemory memory) {
+        return memory.readShort(getAddr(base, offset));
+    }
+
     public static int memoryReadInt(int base, int offset, Memory memory) {
         return memory.readInt(getAddr(base, offset));
     }
 
+    public static int memoryReadInt(int base, int offset, ByteBufferMemory memory) {
+        return memory.readInt(getAddr(base, offset));
+    }
+
+    public static int memoryReadInt(int base, int offset, ByteArrayMemory memory) {
+        return memory.readInt(getAddr(base, offset));
+    }
+
     public static long memoryReadLong(int base, int offset, Memory memory) {
         return memory.readLong(getAddr(base, offset));
     }
 
+    public static long memoryReadLong(int base, int offset, ByteBufferMemory memory) {
+        return memory.readLong(getAddr(base, offset));
+    }
+
+    public static long memoryReadLong(int base, int offset, ByteArrayMemory memory) {
+        return memory.readLong(getAddr(base, offset));
+    }
+
     public static float memoryReadFloat(int base, int offset, Memory memory) {
         return memory.readFloat(getAddr(base, offset));
     }
 
+    public static float memoryReadFloat(int base, int offset, ByteBufferMemory memory) {
+        return memory.readFloat(getAddr(base, offset));
+    }
+
+    public static float memoryReadFloat(int base, int offset, ByteArrayMemory memory) {
+        return memory.readFloat(getAddr(base, offset));
+    }
+
     public static double memoryReadDouble(int base, int offset, Memory memory) {
         return memory.readDouble(getAddr(base, offset));
     }
 
+    public static double memoryReadDouble(int base, int offset, ByteBufferMemory memory) {
+        return memory.readDouble(getAddr(base, offset));
+    }
+
+    public static double memoryReadDouble(int base, int offset, ByteArrayMemory memory) {
+        return memory.readDouble(getAddr(base, offset));
+    }
+
     public static void memoryWriteByte(int base, byte value, int offset, Memory memory) {
         memory.writeByte(getAddr(base, offset), value);
     }
 
+    public static void memoryWriteByte(int base, byte value, int offset, ByteBufferMemory memory) {
+        memory.writeByte(getAddr(base, offset), value);
+    }
+
+    public static void memoryWriteByte(int base, byte value, int offset, ByteArrayMemory memory) {
+        memory.writeByte(getAddr(base, offset), value);
+    }
+
     public static void memoryWriteShort(int base, short value, int offset, Memory memory) {
         memory.writeShort(getAddr(base, offset), value);
     }
 
+    public static void memoryWriteShort(
+            int base, short value, int offset, ByteBufferMemory memory) {
+        memory.writeShort(getAddr(base, offset), value);
+    }
+
+    public static void memoryWriteShort(int base, short value, int offset, ByteArrayMemory memory) {
+        memory.writeShort(getAddr(base, offset), value);
+    }
+
     public static void memoryWriteInt(int base, int value, int offset, Memory memory) {
         memory.writeI32(getAddr(base, offset), value);
     }
 
+    public static void memoryWriteInt(int base, int value, int offset, ByteBufferMemory memory) {
+        memory.writeI32(getAddr(base, offset), value);
+    }
+
+    public static void memoryWriteInt(int base, int value, int offset, ByteArrayMemory memory) {
+        memory.writeI32(getAddr(base, offset), value);
+    }
+
     public static void memoryWriteLong(int base, long value, int offset, Memory memory) {
         memory.writeLong(getAddr(base, offset), value);
     }
 
+    public static void memoryWriteLong(int base, long value, int offset, ByteBufferMemory memory) {
+        memory.writeLong(getAddr(base, offset), value);
+    }
+
+    public static void memoryWriteLong(int base, long value, int offset, ByteArrayMemory memory) {
+        memory.writeLong(getAddr(base, offset), value);
+    }
+
     public static void memoryWriteFloat(int base, float value, int offset, Memory memory) {
         memory.writeF32(getAddr(base, offset), value);
     }
 
+    public static void memoryWriteFloat(
+            int base, float value, int offset, ByteBufferMemory memory) {
+        memory.writeF32(getAddr(base, offset), value);
+    }
+
+    public static void memoryWriteFloat(int base, float value, int offset, ByteArrayMemory memory) {
+        memory.writeF32(getAddr(base, offset), value);
+    }
+
     public static void memoryWriteDouble(int base, double value, int offset, Memory memory) {
         memory.writeF64(getAddr(base, offset), value);
     }
 
+    public static void memoryWriteDouble(
+            int base, double value, int offset, ByteBufferMemory memory) {
+        memory.writeF64(getAddr(base, offset), value);
+    }
+
+    public static void memoryWriteDouble(
+            int base, double value, int offset, ByteArrayMemory memory) {
+        memory.writeF64(getAddr(base, offset), value);
+    }
+
     public static int memoryAtomicIntByteRead(int base, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            return memory.read(ptr);
-        }
+        return AtomicOps.load8(memory, ptr);
     }
 
     public static int memoryAtomicIntShortRead(int base, int offset, Memory memory) {
@@ -179,9 +320,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            return memory.readShort(ptr);
-        }
+        return AtomicOps.load16(memory, ptr);
     }
 
     public static int memoryAtomicIntRead(int base, int offset, Memory memory) {
@@ -189,9 +328,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            return memory.readInt(ptr);
-        }
+        return memory.atomicReadInt(ptr);
     }
 
     public static long memoryAtomicLongRead(int base, int offset, Memory memory) {
@@ -199,16 +336,12 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            return memory.readLong(ptr);
-        }
+        return memory.atomicReadLong(ptr);
     }
 
     public static long memoryAtomicLongByteRead(int base, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            return memory.read(ptr);
-        }
+        return AtomicOps.load8(memory, ptr);
     }
 
     public static long memoryAtomicLongShortRead(int base, int offset, Memory memory) {
@@ -216,9 +349,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            return memory.readShort(ptr);
-        }
+        return AtomicOps.load16(memory, ptr);
     }
 
     public static long memoryAtomicLongIntRead(int base, int offset, Memory memory) {
@@ -226,9 +357,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            return memory.readInt(ptr);
-        }
+        return Integer.toUnsignedLong(memory.atomicReadInt(ptr));
     }
 
     public static void memoryAtomicIntWrite(int base, int value, int offset, Memory memory) {
@@ -236,16 +365,12 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            memory.writeI32(ptr, value);
-        }
+        memory.atomicWriteInt(ptr, value);
     }
 
     public static void memoryAtomicIntByteWrite(int base, byte value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            memory.writeByte(ptr, value);
-        }
+        AtomicOps.store8(memory, ptr, value);
     }
 
     public static void memoryAtomicIntShortWrite(int base, short value, int offset, Memory memory) {
@@ -253,9 +378,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            memory.writeShort(ptr, value);
-        }
+        AtomicOps.store16(memory, ptr, value);
     }
 
     public static void memoryAtomicLongWrite(int base, long value, int offset, Memory memory) {
@@ -263,16 +386,12 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            memory.writeLong(ptr, value);
-        }
+        memory.atomicWriteLong(ptr, value);
     }
 
     public static void memoryAtomicLongByteWrite(int base, byte value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            memory.writeByte(ptr, value);
-        }
+        AtomicOps.store8(memory, ptr, value);
     }
 
     public static void memoryAtomicLongShortWrite(
@@ -281,9 +400,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            memory.writeShort(ptr, value);
-        }
+        AtomicOps.store16(memory, ptr, value);
     }
 
     public static void memoryAtomicLongIntWrite(int base, int value, int offset, Memory memory) {
@@ -291,14 +408,63 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            memory.writeI32(ptr, value);
-        }
+        memory.atomicWriteInt(ptr, value);
     }
 
     // let the following memory access throw if the base is negative
+    // the base and the offset are unsigned, see InterpreterMachine.readMemPtr
     public static int getAddr(int base, int offset) {
-        return (base < 0) ? base : base + offset;
+        long address = Integer.toUnsignedLong(base) + Integer.toUnsignedLong(offset);
+        if (address > 0xFFFFFFFFL) {
+            throw new WasmRuntimeException("out of bounds memory access");
+        }
+        return (int) address;
+    }
+
+    public static void checkMemoryType(Memory memory, Class<? extends Memory> type) {
+        if (memory != null && !type.isInstance(memory)) {
+            throw new ChicoryException(
+                    "The module has been compiled for a "
+                            + type.getSimpleName()
+                            + ", but the instance memory is a "
+                            + memory.getClass().getName());
+        }
+    }
+
+    public static void checkFuelMetering(Instance instance) {
+        if (instance.isFuelMetered()) {
+            throw new ChicoryException(
+                    "The instance meters fuel, but the module has been compiled without"
+                            + " fuel metering");
+        }
+    }
+
+    // the compiled functions count the fuel in a local, the instance only holds it across calls
+    public static long loadFuel(Instance instance) {
+        return instance.isFuelMetered() ? instance.fuel() : Long.MAX_VALUE;
+    }
+
+    public static void storeFuel(long fuel, Instance instance) {
+        if (instance.isFuelMetered()) {
+            instance.setFuel(fuel);
+        }
+    }
+
+    // an exception either comes from this function, that counts the fuel left,
+    // or from a callee, that has written back what it left
+    public static long caughtFuel(long fuel, Instance instance) {
+        return Math.min(fuel, loadFuel(instance));
+    }
+
+    public static void refundFuel(Instance instance) {
+        if (instance.isFuelMetered()) {
+            instance.addFuel(1);
+        }
+    }
+
+    public static RuntimeException throwOutOfFuel(Instance instance) {
+        instance.setFuel(0);
+        throw new OutOfFuelException("out of fuel");
     }
 
     public static RuntimeException throwCallStackExhausted(StackOverflowError e) {
@@ -365,11 +531,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readInt(ptr);
-            memory.writeI32(ptr, old + value);
-            return old;
-        }
+        return AtomicOps.rmw32(memory, ptr, value, AtomicOps.ADD);
     }
 
     public static int memoryAtomicIntRmwSub(int base, int value, int offset, Memory memory) {
@@ -377,11 +539,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readInt(ptr);
-            memory.writeI32(ptr, old - value);
-            return old;
-        }
+        return AtomicOps.rmw32(memory, ptr, value, AtomicOps.SUB);
     }
 
     public static int memoryAtomicIntRmwAnd(int base, int value, int offset, Memory memory) {
@@ -389,11 +547,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readInt(ptr);
-            memory.writeI32(ptr, old & value);
-            return old;
-        }
+        return AtomicOps.rmw32(memory, ptr, value, AtomicOps.AND);
     }
 
     public static int memoryAtomicIntRmwOr(int base, int value, int offset, Memory memory) {
@@ -401,11 +555,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readInt(ptr);
-            memory.writeI32(ptr, old | value);
-            return old;
-        }
+        return AtomicOps.rmw32(memory, ptr, value, AtomicOps.OR);
     }
 
     public static int memoryAtomicIntRmwXor(int base, int value, int offset, Memory memory) {
@@ -413,11 +563,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readInt(ptr);
-            memory.writeI32(ptr, old ^ value);
-            return old;
-        }
+        return AtomicOps.rmw32(memory, ptr, value, AtomicOps.XOR);
     }
 
     public static int memoryAtomicIntRmwXchg(int base, int value, int offset, Memory memory) {
@@ -425,11 +571,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readInt(ptr);
-            memory.writeI32(ptr, value);
-            return old;
-        }
+        return AtomicOps.rmw32(memory, ptr, value, AtomicOps.XCHG);
     }
 
     public static int memoryAtomicIntRmwCmpxchg(
@@ -438,83 +580,44 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readInt(ptr);
-            if (old == expected) {
-                memory.writeI32(ptr, replacement);
-            }
-            return old;
-        }
+        return memory.atomicCompareAndExchangeInt(ptr, expected, replacement);
     }
 
     // I32 8-bit RMW ops
     public static int memoryAtomicIntRmw8AddU(int base, int value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            int old = memory.read(ptr) & 0xFF;
-            memory.writeByte(ptr, (byte) (old + (value & 0xFF)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, value, AtomicOps.ADD);
     }
 
     public static int memoryAtomicIntRmw8SubU(int base, int value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            int old = memory.read(ptr) & 0xFF;
-            memory.writeByte(ptr, (byte) (old - (value & 0xFF)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, value, AtomicOps.SUB);
     }
 
     public static int memoryAtomicIntRmw8AndU(int base, int value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            int old = memory.read(ptr) & 0xFF;
-            memory.writeByte(ptr, (byte) (old & (value & 0xFF)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, value, AtomicOps.AND);
     }
 
     public static int memoryAtomicIntRmw8OrU(int base, int value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            int old = memory.read(ptr) & 0xFF;
-            memory.writeByte(ptr, (byte) (old | (value & 0xFF)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, value, AtomicOps.OR);
     }
 
     public static int memoryAtomicIntRmw8XorU(int base, int value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            int old = memory.read(ptr) & 0xFF;
-            memory.writeByte(ptr, (byte) (old ^ (value & 0xFF)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, value, AtomicOps.XOR);
     }
 
     public static int memoryAtomicIntRmw8XchgU(int base, int value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        if (ptr % 4 != 0) {
-            throw new InvalidException("unaligned atomic");
-        }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.read(ptr) & 0xFF;
-            memory.writeByte(ptr, (byte) (value & 0xFF));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, value, AtomicOps.XCHG);
     }
 
     public static int memoryAtomicIntRmw8CmpxchgU(
             int base, int expected, int replacement, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            int old = memory.read(ptr) & 0xFF;
-            if (old == (expected & 0xFF)) {
-                memory.writeByte(ptr, (byte) (replacement & 0xFF));
-            }
-            return old;
-        }
+        return AtomicOps.cmpxchg8(memory, ptr, expected, replacement);
     }
 
     // I32 16-bit RMW ops
@@ -523,11 +626,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readShort(ptr) & 0xFFFF;
-            memory.writeShort(ptr, (short) (old + (value & 0xFFFF)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, value, AtomicOps.ADD);
     }
 
     public static int memoryAtomicIntRmw16SubU(int base, int value, int offset, Memory memory) {
@@ -535,11 +634,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readShort(ptr) & 0xFFFF;
-            memory.writeShort(ptr, (short) (old - (value & 0xFFFF)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, value, AtomicOps.SUB);
     }
 
     public static int memoryAtomicIntRmw16AndU(int base, int value, int offset, Memory memory) {
@@ -547,11 +642,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readShort(ptr) & 0xFFFF;
-            memory.writeShort(ptr, (short) (old & (value & 0xFFFF)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, value, AtomicOps.AND);
     }
 
     public static int memoryAtomicIntRmw16OrU(int base, int value, int offset, Memory memory) {
@@ -559,11 +650,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readShort(ptr) & 0xFFFF;
-            memory.writeShort(ptr, (short) (old | (value & 0xFFFF)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, value, AtomicOps.OR);
     }
 
     public static int memoryAtomicIntRmw16XorU(int base, int value, int offset, Memory memory) {
@@ -571,11 +658,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readShort(ptr) & 0xFFFF;
-            memory.writeShort(ptr, (short) (old ^ (value & 0xFFFF)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, value, AtomicOps.XOR);
     }
 
     public static int memoryAtomicIntRmw16XchgU(int base, int value, int offset, Memory memory) {
@@ -583,11 +666,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readShort(ptr) & 0xFFFF;
-            memory.writeShort(ptr, (short) (value & 0xFFFF));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, value, AtomicOps.XCHG);
     }
 
     public static int memoryAtomicIntRmw16CmpxchgU(
@@ -596,80 +675,44 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            int old = memory.readShort(ptr) & 0xFFFF;
-            if (old == (expected & 0xFFFF)) {
-                memory.writeShort(ptr, (short) (replacement & 0xFFFF));
-            }
-            return old;
-        }
+        return AtomicOps.cmpxchg16(memory, ptr, expected, replacement);
     }
 
     // I64 8-bit RMW ops
     public static long memoryAtomicLongRmw8AddU(int base, long value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            long old = memory.read(ptr) & 0xFFL;
-            memory.writeByte(ptr, (byte) (old + (value & 0xFFL)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, (int) value, AtomicOps.ADD);
     }
 
     public static long memoryAtomicLongRmw8SubU(int base, long value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            long old = memory.read(ptr) & 0xFFL;
-            memory.writeByte(ptr, (byte) (old - (value & 0xFFL)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, (int) value, AtomicOps.SUB);
     }
 
     public static long memoryAtomicLongRmw8AndU(int base, long value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            long old = memory.read(ptr) & 0xFFL;
-            memory.writeByte(ptr, (byte) (old & (value & 0xFFL)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, (int) value, AtomicOps.AND);
     }
 
     public static long memoryAtomicLongRmw8OrU(int base, long value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            long old = memory.read(ptr) & 0xFFL;
-            memory.writeByte(ptr, (byte) (old | (value & 0xFFL)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, (int) value, AtomicOps.OR);
     }
 
     public static long memoryAtomicLongRmw8XorU(int base, long value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            long old = memory.read(ptr) & 0xFFL;
-            memory.writeByte(ptr, (byte) (old ^ (value & 0xFFL)));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, (int) value, AtomicOps.XOR);
     }
 
     public static long memoryAtomicLongRmw8XchgU(int base, long value, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            long old = memory.read(ptr) & 0xFFL;
-            memory.writeByte(ptr, (byte) (value & 0xFFL));
-            return old;
-        }
+        return AtomicOps.rmw8(memory, ptr, (int) value, AtomicOps.XCHG);
     }
 
     public static long memoryAtomicLongRmw8CmpxchgU(
             int base, long expected, long replacement, int offset, Memory memory) {
         var ptr = getAddr(base, offset);
-        synchronized (memory.lock(ptr)) {
-            long old = memory.read(ptr) & 0xFFL;
-            if (old == (expected & 0xFFL)) {
-                memory.writeByte(ptr, (byte) (replacement & 0xFFL));
-            }
-            return old;
-        }
+        return AtomicOps.cmpxchg8(memory, ptr, (int) expected, (int) replacement);
     }
 
     // I64 16-bit RMW ops
@@ -678,11 +721,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readShort(ptr) & 0xFFFFL;
-            memory.writeShort(ptr, (short) (old + (value & 0xFFFFL)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, (int) value, AtomicOps.ADD);
     }
 
     public static long memoryAtomicLongRmw16SubU(int base, long value, int offset, Memory memory) {
@@ -690,11 +729,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readShort(ptr) & 0xFFFFL;
-            memory.writeShort(ptr, (short) (old - (value & 0xFFFFL)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, (int) value, AtomicOps.SUB);
     }
 
     public static long memoryAtomicLongRmw16AndU(int base, long value, int offset, Memory memory) {
@@ -702,11 +737,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readShort(ptr) & 0xFFFFL;
-            memory.writeShort(ptr, (short) (old & (value & 0xFFFFL)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, (int) value, AtomicOps.AND);
     }
 
     public static long memoryAtomicLongRmw16OrU(int base, long value, int offset, Memory memory) {
@@ -714,11 +745,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readShort(ptr) & 0xFFFFL;
-            memory.writeShort(ptr, (short) (old | (value & 0xFFFFL)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, (int) value, AtomicOps.OR);
     }
 
     public static long memoryAtomicLongRmw16XorU(int base, long value, int offset, Memory memory) {
@@ -726,11 +753,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readShort(ptr) & 0xFFFFL;
-            memory.writeShort(ptr, (short) (old ^ (value & 0xFFFFL)));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, (int) value, AtomicOps.XOR);
     }
 
     public static long memoryAtomicLongRmw16XchgU(int base, long value, int offset, Memory memory) {
@@ -738,11 +761,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readShort(ptr) & 0xFFFFL;
-            memory.writeShort(ptr, (short) (value & 0xFFFFL));
-            return old;
-        }
+        return AtomicOps.rmw16(memory, ptr, (int) value, AtomicOps.XCHG);
     }
 
     public static long memoryAtomicLongRmw16CmpxchgU(
@@ -751,13 +770,7 @@ public final class Shaded {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readShort(ptr) & 0xFFFFL;
-            if (old == (expected & 0xFFFFL)) {
-                memory.writeShort(ptr, (short) (replacement & 0xFFFFL));
-            }
-            return old;
-        }
+        return AtomicOps.cmpxchg16(memory, ptr, (int) expected, (int) replacement);
     }
 
     // I64 32-bit RMW ops
@@ -766,11 +779,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readInt(ptr) & 0xFFFFFFFFL;
-            memory.writeI32(ptr, (int) (old + (value & 0xFFFFFFFFL)));
-            return old;
-        }
+        return Integer.toUnsignedLong(AtomicOps.rmw32(memory, ptr, (int) value, AtomicOps.ADD));
     }
 
     public static long memoryAtomicLongRmw32SubU(int base, long value, int offset, Memory memory) {
@@ -778,11 +787,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readInt(ptr) & 0xFFFFFFFFL;
-            memory.writeI32(ptr, (int) (old - (value & 0xFFFFFFFFL)));
-            return old;
-        }
+        return Integer.toUnsignedLong(AtomicOps.rmw32(memory, ptr, (int) value, AtomicOps.SUB));
     }
 
     public static long memoryAtomicLongRmw32AndU(int base, long value, int offset, Memory memory) {
@@ -790,11 +795,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readInt(ptr) & 0xFFFFFFFFL;
-            memory.writeI32(ptr, (int) (old & (value & 0xFFFFFFFFL)));
-            return old;
-        }
+        return Integer.toUnsignedLong(AtomicOps.rmw32(memory, ptr, (int) value, AtomicOps.AND));
     }
 
     public static long memoryAtomicLongRmw32OrU(int base, long value, int offset, Memory memory) {
@@ -802,11 +803,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readInt(ptr) & 0xFFFFFFFFL;
-            memory.writeI32(ptr, (int) (old | (value & 0xFFFFFFFFL)));
-            return old;
-        }
+        return Integer.toUnsignedLong(AtomicOps.rmw32(memory, ptr, (int) value, AtomicOps.OR));
     }
 
     public static long memoryAtomicLongRmw32XorU(int base, long value, int offset, Memory memory) {
@@ -814,11 +811,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readInt(ptr) & 0xFFFFFFFFL;
-            memory.writeI32(ptr, (int) (old ^ (value & 0xFFFFFFFFL)));
-            return old;
-        }
+        return Integer.toUnsignedLong(AtomicOps.rmw32(memory, ptr, (int) value, AtomicOps.XOR));
     }
 
     public static long memoryAtomicLongRmw32XchgU(int base, long value, int offset, Memory memory) {
@@ -826,11 +819,7 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readInt(ptr) & 0xFFFFFFFFL;
-            memory.writeI32(ptr, (int) (value & 0xFFFFFFFFL));
-            return old;
-        }
+        return Integer.toUnsignedLong(AtomicOps.rmw32(memory, ptr, (int) value, AtomicOps.XCHG));
     }
 
     public static long memoryAtomicLongRmw32CmpxchgU(
@@ -839,13 +828,8 @@ public final class Shaded {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readInt(ptr) & 0xFFFFFFFFL;
-            if (old == (expected & 0xFFFFFFFFL)) {
-                memory.writeI32(ptr, (int) (replacement & 0xFFFFFFFFL));
-            }
-            return old;
-        }
+        return Integer.toUnsignedLong(
+                memory.atomicCompareAndExchangeInt(ptr, (int) expected, (int) replacement));
     }
 
     // I64 64-bit RMW ops
@@ -854,11 +838,7 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readLong(ptr);
-            memory.writeLong(ptr, old + value);
-            return old;
-        }
+        return AtomicOps.rmw64(memory, ptr, value, AtomicOps.ADD);
     }
 
     public static long memoryAtomicLongRmwSub(int base, long value, int offset, Memory memory) {
@@ -866,11 +846,7 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readLong(ptr);
-            memory.writeLong(ptr, old - value);
-            return old;
-        }
+        return AtomicOps.rmw64(memory, ptr, value, AtomicOps.SUB);
     }
 
     public static long memoryAtomicLongRmwAnd(int base, long value, int offset, Memory memory) {
@@ -878,11 +854,7 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readLong(ptr);
-            memory.writeLong(ptr, old & value);
-            return old;
-        }
+        return AtomicOps.rmw64(memory, ptr, value, AtomicOps.AND);
     }
 
     public static long memoryAtomicLongRmwOr(int base, long value, int offset, Memory memory) {
@@ -890,11 +862,7 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readLong(ptr);
-            memory.writeLong(ptr, old | value);
-            return old;
-        }
+        return AtomicOps.rmw64(memory, ptr, value, AtomicOps.OR);
     }
 
     public static long memoryAtomicLongRmwXor(int base, long value, int offset, Memory memory) {
@@ -902,11 +870,7 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readLong(ptr);
-            memory.writeLong(ptr, old ^ value);
-            return old;
-        }
+        return AtomicOps.rmw64(memory, ptr, value, AtomicOps.XOR);
     }
 
     public static long memoryAtomicLongRmwXchg(int base, long value, int offset, Memory memory) {
@@ -914,11 +878,7 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readLong(ptr);
-            memory.writeLong(ptr, value);
-            return old;
-        }
+        return AtomicOps.rmw64(memory, ptr, value, AtomicOps.XCHG);
     }
 
     public static long memoryAtomicLongRmwCmpxchg(
@@ -927,13 +887,7 @@ public final class Shaded {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (memory.lock(ptr)) {
-            long old = memory.readLong(ptr);
-            if (old == expected) {
-                memory.writeLong(ptr, replacement);
-            }
-            return old;
-        }
+        return memory.atomicCompareAndExchangeLong(ptr, expected, replacement);
     }
 
     // Wait/Notify
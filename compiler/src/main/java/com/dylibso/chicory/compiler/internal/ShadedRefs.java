@@ -1,5 +1,8 @@
 package com.dylibso.chicory.compiler.internal;
 
+import com.dylibso.chicory.compiler.MemoryKind;
+import com.dylibso.chicory.runtime.ByteArrayMemory;
+import com.dylibso.chicory.runtime.ByteBufferMemory;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.runtime.Memory;
 import com.dylibso.chicory.runtime.TableInstance;
@@ -7,6 +10,10 @@ import com.dylibso.chicory.runtime.WasmException;
 import com.dylibso.chicory.runtime.internal.CompilerInterpreterMachine;
 import com.dylibso.chicory.wasm.types.Element;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public final class ShadedRefs {
 
@@ -14,6 +21,9 @@ public final class ShadedRefs {
     static final Method CALL_INDIRECT;
     static final Method CALL_INDIRECT_ON_INTERPRETER;
     static final Method INSTANCE_MEMORY;
+    static final Method INSTANCE_MACHINE;
+    static final Method INSTANCE_CONSUME_FUEL;
+    static final Method ARRAYS_COPY_OF;
     static final Method CALL_HOST_FUNCTION;
     static final Method READ_GLOBAL;
     static final Method WRITE_GLOBAL;
@@ -25,6 +35,11 @@ public final class ShadedRefs {
     static final Method MEMORY_GROW;
     static final Method MEMORY_DROP;
     static final Method MEMORY_PAGES;
+    static final Method MEMORY_ADDRESS_64;
+    static final Method MEMORY_COPY_64;
+    static final Method MEMORY_FILL_64;
+    static final Method MEMORY_INIT_64;
+    static final Method MEMORY_GROW_64;
     static final Method MEMORY_READ_BYTE;
     static final Method MEMORY_READ_SHORT;
     static final Method MEMORY_READ_INT;
@@ -126,16 +141,35 @@ public final class ShadedRefs {
     static final Method MEMORY_ATOMIC_WAIT32;
     static final Method MEMORY_ATOMIC_WAIT64;
     static final Method MEMORY_ATOMIC_NOTIFY;
+    static final Method CHECK_MEMORY_TYPE;
+    static final Method CHECK_FUEL_METERING;
+    static final Method LOAD_FUEL;
+    static final Method STORE_FUEL;
+    static final Method CAUGHT_FUEL;
+    static final Method REFUND_FUEL;
+    static final Method THROW_OUT_OF_FUEL;
+
+    // the loads and stores specialized for a memory kind, by generic method
+    private static final Map<Method, Method> BYTE_BUFFER_MEMORY_ACCESS;
+    private static final Map<Method, Method> BYTE_ARRAY_MEMORY_ACCESS;
 
     static {
         try {
             CHECK_INTERRUPTION = Shaded.class.getMethod("checkInterruption");
             CALL_INDIRECT =
                     Shaded.class.getMethod(
-                            "callIndirect", long[].class, int.class, int.class, Instance.class);
+                            "callIndirect",
+                            long[].class,
+                            int.class,
+                            int.class,
+                            Instance.class,
+                            Instance.class);
             CALL_INDIRECT_ON_INTERPRETER =
                     Shaded.class.getMethod("callIndirect", long[].class, int.class, Instance.class);
             INSTANCE_MEMORY = Instance.class.getMethod("memory");
+            INSTANCE_MACHINE = Instance.class.getMethod("getMachine");
+            INSTANCE_CONSUME_FUEL = Instance.class.getMethod("consumeFuel");
+            ARRAYS_COPY_OF = Arrays.class.getMethod("copyOf", long[].class, int.class);
             CALL_HOST_FUNCTION =
                     Shaded.class.getMethod(
                             "callHostFunction", Instance.class, int.class, long[].class);
@@ -156,6 +190,22 @@ public final class ShadedRefs {
             MEMORY_GROW = Shaded.class.getMethod("memoryGrow", int.class, Memory.class);
             MEMORY_DROP = Shaded.class.getMethod("memoryDrop", int.class, Memory.class);
             MEMORY_PAGES = Shaded.class.getMethod("memoryPages", Memory.class);
+            MEMORY_ADDRESS_64 = Shaded.class.getMethod("memoryAddress64", long.class);
+            MEMORY_COPY_64 =
+                    Shaded.class.getMethod(
+                            "memoryCopy64", long.class, long.class, long.class, Memory.class);
+            MEMORY_FILL_64 =
+                    Shaded.class.getMethod(
+                            "memoryFill64", long.class, byte.class, long.class, Memory.class);
+            MEMORY_INIT_64 =
+                    Shaded.class.getMethod(
+                            "memoryInit64",
+                            long.class,
+                            int.class,
+                            int.class,
+                            int.class,
+                            Memory.class);
+            MEMORY_GROW_64 = Shaded.class.getMethod("memoryGrow64", long.class, Memory.class);
             MEMORY_READ_BYTE =
                     Shaded.class.getMethod("memoryReadByte", int.class, int.class, Memory.class);
             MEMORY_READ_SHORT =
@@ -660,11 +710,69 @@ public final class ShadedRefs {
             MEMORY_ATOMIC_NOTIFY =
                     Shaded.class.getMethod(
                             "memoryAtomicNotify", int.class, int.class, int.class, Memory.class);
+            CHECK_MEMORY_TYPE =
+                    Shaded.class.getMethod("checkMemoryType", Memory.class, Class.class);
+            CHECK_FUEL_METERING = Shaded.class.getMethod("checkFuelMetering", Instance.class);
+            LOAD_FUEL = Shaded.class.getMethod("loadFuel", Instance.class);
+            STORE_FUEL = Shaded.class.getMethod("storeFuel", long.class, Instance.class);
+            CAUGHT_FUEL = Shaded.class.getMethod("caughtFuel", long.class, Instance.class);
+            REFUND_FUEL = Shaded.class.getMethod("refundFuel", Instance.class);
+            THROW_OUT_OF_FUEL = Shaded.class.getMethod("throwOutOfFuel", Instance.class);
 
+            var memoryAccess =
+                    List.of(
+                            MEMORY_READ_BYTE,
+                            MEMORY_READ_SHORT,
+                            MEMORY_READ_INT,
+                            MEMORY_READ_LONG,
+                            MEMORY_READ_FLOAT,
+                            MEMORY_READ_DOUBLE,
+                            MEMORY_WRITE_BYTE,
+                            MEMORY_WRITE_SHORT,
+                            MEMORY_WRITE_INT,
+                            MEMORY_WRITE_LONG,
+                            MEMORY_WRITE_FLOAT,
+                            MEMORY_WRITE_DOUBLE);
+            BYTE_BUFFER_MEMORY_ACCESS = specialize(memoryAccess, ByteBufferMemory.class);
+            BYTE_ARRAY_MEMORY_ACCESS = specialize(memoryAccess, ByteArrayMemory.class);
         } catch (NoSuchMethodException e) {
             throw new AssertionError(e);
         }
     }
 
+    // the overloads taking the given memory type in place of the Memory interface
+    private static Map<Method, Method> specialize(
+            List<Method> methods, Class<? extends Memory> memoryType) throws NoSuchMethodException {
+        var specialized = new HashMap<Method, Method>();
+        for (var method : methods) {
+            var types = method.getParameterTypes();
+            types[types.length - 1] = memoryType;
+            specialized.put(method, Shaded.class.getMethod(method.getName(), types));
+        }
+        return Map.copyOf(specialized);
+    }
+
+    static Class<? extends Memory> memoryType(MemoryKind memoryKind) {
+        switch (memoryKind) {
+            case BYTE_BUFFER:
+                return ByteBufferMemory.class;
+            case BYTE_ARRAY:
+                return ByteArrayMemory.class;
+            default:
+                return Memory.class;
+        }
+    }
+
+    static Method memoryAccess(Method method, MemoryKind memoryKind) {
+        switch (memoryKind) {
+            case BYTE_BUFFER:
+                return BYTE_BUFFER_MEMORY_ACCESS.getOrDefault(method, method);
+            case BYTE_ARRAY:
+                return BYTE_ARRAY_MEMORY_ACCESS.getOrDefault(method, method);
+            default:
+                return method;
+        }
+    }
+
     private ShadedRefs() {}
 }
@@ -0,0 +1,60 @@
+package com.dylibso.chicory.compiler.internal;
+
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.runtime.internal.CompilerInterpreterMachine;
+import com.dylibso.chicory.wasm.ChicoryException;
+
+/**
+ * The machine of an instance created by a {@link TieredMachineFactory}: interprets the
+ * functions that have not been compiled yet, counting their calls and loop iterations,
+ * and calls the compiled code for the others.
+ * The compiled code calls the functions it left interpreted through {@code Machine::call}
+ * of the instance, so they come back to this machine.
+ */
+final class TieredMachine extends CompilerInterpreterMachine {
+
+    private final TieredMachineFactory factory;
+    private TieredMachineFactory.Tier tier;
+    private Machine compiled;
+
+    TieredMachine(Instance instance, TieredMachineFactory factory) {
+        super(instance, new int[0]);
+        this.factory = factory;
+        this.tier = factory.tier();
+    }
+
+    @Override
+    public long[] call(int funcId, long[] args) throws ChicoryException {
+        var machine = compiledMachine(funcId);
+        if (machine != null) {
+            return machine.call(funcId, args);
+        }
+        return super.call(funcId, args);
+    }
+
+    @Override
+    protected boolean isInterpreted(int funcId) {
+        return compiledMachine(funcId) == null;
+    }
+
+    @Override
+    protected void profile(int funcId, int loopIterations) {
+        factory.profile(funcId, 1 + loopIterations);
+    }
+
+    // the machine of the latest compilation, when it compiled the function
+    private Machine compiledMachine(int funcId) {
+        var latest = factory.tier();
+        if (latest != tier) {
+            tier = latest;
+            try {
+                compiled = latest.machine(instance());
+            } catch (ChicoryException e) {
+                // e.g. a metered instance and a module compiled without fuel metering
+                compiled = null;
+            }
+        }
+        return (compiled != null && tier.isCompiled(funcId)) ? compiled : null;
+    }
+}
@@ -0,0 +1,168 @@
+package com.dylibso.chicory.compiler.internal;
+
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.ExternalType;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Machine factory implementation that starts interpreting the module, and compiles its hot
+ * functions in the background.
+ * The calls and loop iterations of every function are counted by the machines of all the
+ * instances. When a function reaches the threshold, the module is compiled on the executor,
+ * leaving the cold functions interpreted, and the machines switch to the compiled code on
+ * their next call.
+ */
+public final class TieredMachineFactory implements Function<Instance, Machine> {
+
+    // after this many compilations leaving functions interpreted, the whole module is compiled,
+    // so that a module with many hot functions doesn't get compiled over and over
+    private static final int MAX_PARTIAL_COMPILATIONS = 2;
+
+    private final WasmModule module;
+    private final Function<Set<Integer>, CompilerResult> compiler;
+    private final Executor executor;
+    private final int threshold;
+    private final int functionImports;
+    // updated without synchronization: losing a few counts only delays a compilation
+    private final int[] counters;
+
+    // guarded by this
+    private final boolean[] hot;
+    private int hotCount;
+    private int compilations;
+    private boolean compiling;
+    private boolean done;
+
+    private volatile Tier tier;
+
+    /**
+     * @param compiler compiles the module, leaving the given functions interpreted
+     */
+    public TieredMachineFactory(
+            WasmModule module,
+            Function<Set<Integer>, CompilerResult> compiler,
+            Executor executor,
+            int threshold) {
+        this.module = module;
+        this.compiler = compiler;
+        this.executor = executor;
+        this.threshold = threshold;
+        this.functionImports = module.importSection().count(ExternalType.FUNCTION);
+        int functionCount = functionImports + module.functionSection().functionCount();
+        this.counters = new int[functionCount];
+        this.hot = new boolean[functionCount];
+        this.tier = new Tier(null, new boolean[functionCount]);
+    }
+
+    @Override
+    public Machine apply(Instance instance) {
+        if (instance.module() != module) {
+            throw new IllegalArgumentException("Instance module does not match factory module");
+        }
+        return new TieredMachine(instance, this);
+    }
+
+    Tier tier() {
+        return tier;
+    }
+
+    void profile(int funcId, int count) {
+        int total = counters[funcId] + count;
+        counters[funcId] = total;
+        if (total >= threshold) {
+            requestCompilation(funcId);
+        }
+    }
+
+    private synchronized void requestCompilation(int funcId) {
+        if (hot[funcId] || done) {
+            return;
+        }
+        hot[funcId] = true;
+        hotCount++;
+        if (!compiling) {
+            compiling = true;
+            executor.execute(this::compile);
+        }
+    }
+
+    private void compile() {
+        Set<Integer> interpreted = new HashSet<>();
+        int requested;
+        synchronized (this) {
+            requested = hotCount;
+            compilations++;
+            if (compilations <= MAX_PARTIAL_COMPILATIONS) {
+                for (int funcId = functionImports; funcId < hot.length; funcId++) {
+                    if (!hot[funcId]) {
+                        interpreted.add(funcId);
+                    }
+                }
+            }
+        }
+
+        Tier next = tryCompile(interpreted);
+        if (next == null && !interpreted.isEmpty()) {
+            // e.g. a hot function too large for a Java method: compile the whole module,
+            // the compiler falls back to the interpreter for the functions it can't compile
+            interpreted.clear();
+            next = tryCompile(interpreted);
+        }
+
+        synchronized (this) {
+            if (next != null) {
+                tier = next;
+            }
+            // stay interpreted when the module can't be compiled
+            done = next == null || interpreted.isEmpty();
+            compiling = !done && hotCount != requested;
+            if (compiling) {
+                executor.execute(this::compile);
+            }
+        }
+    }
+
+    private Tier tryCompile(Set<Integer> interpreted) {
+        CompilerResult result;
+        try {
+            result = compiler.apply(interpreted);
+        } catch (RuntimeException | LinkageError e) {
+            // the interpreter can run any valid module: keep it
+            return null;
+        }
+        var compiled = new boolean[hot.length];
+        for (int funcId = functionImports; funcId < compiled.length; funcId++) {
+            compiled[funcId] = !result.interpretedFunctions().contains(funcId);
+        }
+        var collector = (ClassLoadingCollector) result.collector();
+        return new Tier(collector.machineFactory(), compiled);
+    }
+
+    /**
+     * The result of a compilation: the machine factory of the compiled code,
+     * and the functions it compiled.
+     */
+    static final class Tier {
+        private final Function<Instance, Machine> factory;
+        private final boolean[] compiled;
+
+        private Tier(Function<Instance, Machine> factory, boolean[] compiled) {
+            this.factory = factory;
+            this.compiled = compiled;
+        }
+
+        // null before the first compilation
+        Machine machine(Instance instance) {
+            return factory == null ? null : factory.apply(instance);
+        }
+
+        boolean isCompiled(int funcId) {
+            return compiled[funcId];
+        }
+    }
+}
@@ -17,6 +17,7 @@ import com.dylibso.chicory.wasm.types.FunctionType;
 import com.dylibso.chicory.wasm.types.Global;
 import com.dylibso.chicory.wasm.types.GlobalImport;
 import com.dylibso.chicory.wasm.types.Instruction;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
 import com.dylibso.chicory.wasm.types.OpCode;
 import com.dylibso.chicory.wasm.types.Table;
 import com.dylibso.chicory.wasm.types.TableImport;
@@ -40,6 +41,8 @@ final class WasmAnalyzer {
     private final List<FunctionType> functionTypes;
     private final List<ValType> tableTypes;
     private final int functionImports;
+    // the type of the memory addresses, I64 for a 64-bit memory
+    private final ValType addressType;
 
     public WasmAnalyzer(WasmModule module) {
         this.module = module;
@@ -47,6 +50,7 @@ final class WasmAnalyzer {
         this.functionTypes = getFunctionTypes(module);
         this.tableTypes = getTableTypes(module);
         this.functionImports = module.importSection().count(ExternalType.FUNCTION);
+        this.addressType = module.memoryLimits().map(MemoryLimits::addressType).orElse(ValType.I32);
     }
 
     public List<ValType> globalTypes() {
@@ -454,28 +458,40 @@ final class WasmAnalyzer {
             case I32_EQZ:
             case I32_EXTEND_16_S:
             case I32_EXTEND_8_S:
+            case I32_POPCNT:
+                // [I32] -> [I32]
+                stack.pop(ValType.I32);
+                stack.push(ValType.I32);
+                break;
             case I32_LOAD16_S:
             case I32_LOAD16_U:
             case I32_LOAD8_S:
             case I32_LOAD8_U:
             case I32_LOAD:
-            case I32_POPCNT:
-            case MEMORY_GROW:
             case I32_ATOMIC_LOAD:
             case I32_ATOMIC_LOAD8_U:
             case I32_ATOMIC_LOAD16_U:
-                // [I32] -> [I32]
-                stack.pop(ValType.I32);
+                // [addr] -> [I32]
+                stack.pop(addressType);
                 stack.push(ValType.I32);
                 break;
+            case MEMORY_GROW:
+                // [addr] -> [addr]
+                stack.pop(addressType);
+                stack.push(addressType);
+                break;
             case F32_CONVERT_I32_S:
             case F32_CONVERT_I32_U:
-            case F32_LOAD:
             case F32_REINTERPRET_I32:
                 // [I32] -> [F32]
                 stack.pop(ValType.I32);
                 stack.push(ValType.F32);
                 break;
+            case F32_LOAD:
+                // [addr] -> [F32]
+                stack.pop(addressType);
+                stack.push(ValType.F32);
+                break;
             case F32_ABS:
             case F32_CEIL:
             case F32_FLOOR:
@@ -546,6 +562,11 @@ final class WasmAnalyzer {
             case I32_SHR_U:
             case I32_SUB:
             case I32_XOR:
+                // [I32 I32] -> [I32]
+                stack.pop(ValType.I32);
+                stack.pop(ValType.I32);
+                stack.push(ValType.I32);
+                break;
             case I32_ATOMIC_RMW_ADD:
             case I32_ATOMIC_RMW_SUB:
             case I32_ATOMIC_RMW_AND:
@@ -565,9 +586,9 @@ final class WasmAnalyzer {
             case I32_ATOMIC_RMW16_OR_U:
             case I32_ATOMIC_RMW16_XOR_U:
             case I32_ATOMIC_RMW16_XCHG_U:
-                // [I32 I32] -> [I32]
-                stack.pop(ValType.I32);
+                // [addr I32] -> [I32]
                 stack.pop(ValType.I32);
+                stack.pop(addressType);
                 stack.push(ValType.I32);
                 break;
             case I64_EQ:
@@ -658,6 +679,10 @@ final class WasmAnalyzer {
                 break;
             case I64_EXTEND_I32_S:
             case I64_EXTEND_I32_U:
+                // [I32] -> [I64]
+                stack.pop(ValType.I32);
+                stack.push(ValType.I64);
+                break;
             case I64_LOAD16_S:
             case I64_LOAD16_U:
             case I64_LOAD32_S:
@@ -669,8 +694,8 @@ final class WasmAnalyzer {
             case I64_ATOMIC_LOAD8_U:
             case I64_ATOMIC_LOAD16_U:
             case I64_ATOMIC_LOAD32_U:
-                // [I32] -> [I64]
-                stack.pop(ValType.I32);
+                // [addr] -> [I64]
+                stack.pop(addressType);
                 stack.push(ValType.I64);
                 break;
             case I64_TRUNC_F32_S:
@@ -683,11 +708,15 @@ final class WasmAnalyzer {
                 break;
             case F64_CONVERT_I32_S:
             case F64_CONVERT_I32_U:
-            case F64_LOAD:
                 // [I32] -> [F64]
                 stack.pop(ValType.I32);
                 stack.push(ValType.F64);
                 break;
+            case F64_LOAD:
+                // [addr] -> [F64]
+                stack.pop(addressType);
+                stack.push(ValType.F64);
+                break;
             case F64_PROMOTE_F32:
                 // [F32] -> [F64]
                 stack.pop(ValType.F32);
@@ -731,14 +760,14 @@ final class WasmAnalyzer {
             case I32_ATOMIC_STORE:
             case I32_ATOMIC_STORE8:
             case I32_ATOMIC_STORE16:
-                // [I32 I32] -> []
-                stack.pop(ValType.I32);
+                // [addr I32] -> []
                 stack.pop(ValType.I32);
+                stack.pop(addressType);
                 break;
             case F32_STORE:
-                // [I32 F32] -> []
+                // [addr F32] -> []
                 stack.pop(ValType.F32);
-                stack.pop(ValType.I32);
+                stack.pop(addressType);
                 break;
             case I64_STORE:
             case I64_STORE8:
@@ -748,21 +777,24 @@ final class WasmAnalyzer {
             case I64_ATOMIC_STORE8:
             case I64_ATOMIC_STORE16:
             case I64_ATOMIC_STORE32:
-                // [I32 I64] -> []
+                // [addr I64] -> []
                 stack.pop(ValType.I64);
-                stack.pop(ValType.I32);
+                stack.pop(addressType);
                 break;
             case F64_STORE:
-                // [I32 F64] -> []
+                // [addr F64] -> []
                 stack.pop(ValType.F64);
-                stack.pop(ValType.I32);
+                stack.pop(addressType);
                 break;
             case I32_CONST:
-            case MEMORY_SIZE:
             case TABLE_SIZE:
                 // [] -> [I32]
                 stack.push(ValType.I32);
                 break;
+            case MEMORY_SIZE:
+                // [] -> [addr]
+                stack.push(addressType);
+                break;
             case F32_CONST:
                 // [] -> [F32]
                 stack.push(ValType.F32);
@@ -792,9 +824,6 @@ final class WasmAnalyzer {
                 stack.popRef();
                 stack.push(ValType.I32);
                 break;
-            case MEMORY_COPY:
-            case MEMORY_FILL:
-            case MEMORY_INIT:
             case TABLE_COPY:
             case TABLE_INIT:
                 // [I32 I32 I32] -> []
@@ -802,6 +831,24 @@ final class WasmAnalyzer {
                 stack.pop(ValType.I32);
                 stack.pop(ValType.I32);
                 break;
+            case MEMORY_COPY:
+                // [addr addr addr] -> []
+                stack.pop(addressType);
+                stack.pop(addressType);
+                stack.pop(addressType);
+                break;
+            case MEMORY_FILL:
+                // [addr I32 addr] -> []
+                stack.pop(addressType);
+                stack.pop(ValType.I32);
+                stack.pop(addressType);
+                break;
+            case MEMORY_INIT:
+                // [addr I32 I32] -> []
+                stack.pop(ValType.I32);
+                stack.pop(ValType.I32);
+                stack.pop(addressType);
+                break;
             case TABLE_FILL:
                 // [I32 ref I32] -> []
                 stack.pop(ValType.I32);
@@ -853,10 +900,10 @@ final class WasmAnalyzer {
             case I32_ATOMIC_RMW_CMPXCHG:
             case I32_ATOMIC_RMW8_CMPXCHG_U:
             case I32_ATOMIC_RMW16_CMPXCHG_U:
-                // [I32 I32 I32] -> [I32]
-                stack.pop(ValType.I32);
+                // [addr I32 I32] -> [I32]
                 stack.pop(ValType.I32);
                 stack.pop(ValType.I32);
+                stack.pop(addressType);
                 stack.push(ValType.I32);
                 break;
             case I64_ATOMIC_RMW_ADD:
@@ -883,33 +930,33 @@ final class WasmAnalyzer {
             case I64_ATOMIC_RMW32_OR_U:
             case I64_ATOMIC_RMW32_XOR_U:
             case I64_ATOMIC_RMW32_XCHG_U:
-                // [I32 I64] -> [I64]
+                // [addr I64] -> [I64]
                 stack.pop(ValType.I64);
-                stack.pop(ValType.I32);
+                stack.pop(addressType);
                 stack.push(ValType.I64);
                 break;
             case I64_ATOMIC_RMW_CMPXCHG:
             case I64_ATOMIC_RMW8_CMPXCHG_U:
             case I64_ATOMIC_RMW16_CMPXCHG_U:
             case I64_ATOMIC_RMW32_CMPXCHG_U:
-                // [I32 I64 I64] -> [I64]
+                // [addr I64 I64] -> [I64]
                 stack.pop(ValType.I64);
                 stack.pop(ValType.I64);
-                stack.pop(ValType.I32);
+                stack.pop(addressType);
                 stack.push(ValType.I64);
                 break;
             case MEM_ATOMIC_WAIT32:
-                // [I32 I32 I64] -> [I32]
+                // [addr I32 I64] -> [I32]
                 stack.pop(ValType.I64);
                 stack.pop(ValType.I32);
-                stack.pop(ValType.I32);
+                stack.pop(addressType);
                 stack.push(ValType.I32);
                 break;
             case MEM_ATOMIC_WAIT64:
-                // [I32 I64 I64] -> [I32]
+                // [addr I64 I64] -> [I32]
                 stack.pop(ValType.I64);
                 stack.pop(ValType.I64);
-                stack.pop(ValType.I32);
+                stack.pop(addressType);
                 stack.push(ValType.I32);
                 break;
             default:
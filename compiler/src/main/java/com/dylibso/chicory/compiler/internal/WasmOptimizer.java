@@ -0,0 +1,526 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static com.dylibso.chicory.compiler.internal.CompilerUtil.localType;
+
+import com.dylibso.chicory.wasm.types.FunctionBody;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simplifies the instructions of a function between the analysis and the emission, so that the
+ * compiled methods are smaller and leave less to the JIT:
+ * <ul>
+ *   <li> folds the integer operations on constants, and the branches on constant conditions
+ *   <li> propagates the constants and the copies stored in locals within a basic block
+ *   <li> turns a {@code local.set} followed by a {@code local.get} into a {@code local.tee}
+ *   <li> removes the stores to locals that are never read, the values that are dropped right
+ *        after being pushed, and the unreachable code
+ * </ul>
+ * The transformations only look at straight-line code, and never remove an instruction that
+ * can trap, so the semantics of the function are unchanged.
+ */
+final class WasmOptimizer {
+
+    private static final int MAX_PASSES = 8;
+
+    private final FunctionType type;
+    private final FunctionBody body;
+
+    private WasmOptimizer(FunctionType type, FunctionBody body) {
+        this.type = type;
+        this.body = body;
+    }
+
+    public static List<CompilerInstruction> optimize(
+            List<CompilerInstruction> instructions, FunctionType type, FunctionBody body) {
+        // the exception handlers are reached without jumps: leave the functions using them alone
+        for (var ins : instructions) {
+            if (ins.opcode() == CompilerOpCode.TRY_CATCH_BLOCK) {
+                return instructions;
+            }
+        }
+
+        var optimizer = new WasmOptimizer(type, body);
+        var result = instructions;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            var simplified =
+                    optimizer.removeDeadStores(optimizer.propagateLocals(simplify(result)));
+            if (simplified.equals(result)) {
+                break;
+            }
+            result = simplified;
+        }
+        return result;
+    }
+
+    // peephole rewrites over the instructions, and removal of the unreachable code
+    private static List<CompilerInstruction> simplify(List<CompilerInstruction> instructions) {
+        var targets = labelTargets(instructions);
+        var out = new ArrayList<CompilerInstruction>(instructions.size());
+        boolean reachable = true;
+        for (var ins : instructions) {
+            if (ins.opcode() == CompilerOpCode.LABEL) {
+                if (!targets.contains(ins.operand(0))) {
+                    // not a jump target: the code after it is only reached by falling through
+                    continue;
+                }
+                reachable = true;
+                // a jump to the next instruction
+                int last = out.size() - 1;
+                if (last >= 0
+                        && out.get(last).opcode() == CompilerOpCode.GOTO
+                        && out.get(last).operand(0) == ins.operand(0)) {
+                    out.remove(last);
+                }
+            }
+            if (!reachable) {
+                continue;
+            }
+            out.add(ins);
+            while (rewriteTail(out)) {
+                // rewrite until the tail doesn't match any pattern
+            }
+            if (!out.isEmpty() && isUnconditionalJump(out.get(out.size() - 1).opcode())) {
+                reachable = false;
+            }
+        }
+        return out;
+    }
+
+    private static boolean rewriteTail(List<CompilerInstruction> out) {
+        int size = out.size();
+        if (size < 2) {
+            return false;
+        }
+        var last = out.get(size - 1);
+        var prev = out.get(size - 2);
+
+        switch (last.opcode()) {
+            case DROP:
+                // a value without side effects that is dropped right away
+                if (isPure(prev.opcode())) {
+                    removeTail(out, 2);
+                    return true;
+                }
+                if (prev.opcode() == CompilerOpCode.LOCAL_TEE) {
+                    replaceTail(
+                            out,
+                            2,
+                            new CompilerInstruction(CompilerOpCode.LOCAL_SET, prev.operand(0)));
+                    return true;
+                }
+                return false;
+            case SWITCH:
+                if (prev.opcode() == CompilerOpCode.I32_CONST) {
+                    // the last entry of the table is the default
+                    int index = (int) prev.operand(0);
+                    int defaultIndex = last.operandCount() - 1;
+                    long target =
+                            last.operand(index >= 0 && index < defaultIndex ? index : defaultIndex);
+                    replaceTail(out, 2, new CompilerInstruction(CompilerOpCode.GOTO, target));
+                    return true;
+                }
+                return false;
+            case IFEQ:
+            case IFNE:
+                if (prev.opcode() == CompilerOpCode.I32_CONST) {
+                    boolean taken =
+                            ((int) prev.operand(0) == 0) == (last.opcode() == CompilerOpCode.IFEQ);
+                    if (taken) {
+                        replaceTail(
+                                out,
+                                2,
+                                new CompilerInstruction(CompilerOpCode.GOTO, last.operand(0)));
+                    } else {
+                        removeTail(out, 2);
+                    }
+                    return true;
+                }
+                // an IFEQ never jumps backward, so neither does the IFNE replacing it
+                if (prev.opcode() == CompilerOpCode.I32_EQZ
+                        && last.opcode() == CompilerOpCode.IFEQ) {
+                    replaceTail(
+                            out, 2, new CompilerInstruction(CompilerOpCode.IFNE, last.operand(0)));
+                    return true;
+                }
+                return false;
+            default:
+                break;
+        }
+
+        if (isConst(prev.opcode())) {
+            // x + 0, x * 1, ...
+            if (isIdentity(last.opcode(), prev.operand(0))) {
+                removeTail(out, 2);
+                return true;
+            }
+            var folded = foldUnary(last.opcode(), prev.operand(0));
+            if (folded != null) {
+                replaceTail(out, 2, folded);
+                return true;
+            }
+            if (size >= 3 && isConst(out.get(size - 3).opcode())) {
+                folded = foldBinary(last.opcode(), out.get(size - 3).operand(0), prev.operand(0));
+                if (folded != null) {
+                    replaceTail(out, 3, folded);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // constants and copies of locals, reset at every jump target
+    private List<CompilerInstruction> propagateLocals(List<CompilerInstruction> instructions) {
+        var out = new ArrayList<CompilerInstruction>(instructions.size());
+        var known = new HashMap<Long, CompilerInstruction>();
+        for (var instruction : instructions) {
+            var ins = instruction;
+            switch (ins.opcode()) {
+                case LABEL:
+                    known.clear();
+                    break;
+                case LOCAL_GET:
+                    {
+                        var value = known.get(ins.operand(0));
+                        if (value != null) {
+                            ins = value;
+                        }
+                        break;
+                    }
+                case LOCAL_SET:
+                case LOCAL_TEE:
+                    {
+                        long local = ins.operand(0);
+                        var value = out.isEmpty() ? null : out.get(out.size() - 1);
+                        invalidate(known, local);
+                        if (value == null) {
+                            break;
+                        }
+                        if (isConst(value.opcode())) {
+                            known.put(local, value);
+                        } else if (value.opcode() == CompilerOpCode.LOCAL_GET) {
+                            if (value.operand(0) != local) {
+                                known.put(local, value);
+                            } else {
+                                // local.get x; local.set x, or local.get x; local.tee x
+                                if (ins.opcode() == CompilerOpCode.LOCAL_SET) {
+                                    out.remove(out.size() - 1);
+                                }
+                                continue;
+                            }
+                        }
+                        break;
+                    }
+                default:
+                    break;
+            }
+            // local.set x; local.get x
+            if (ins.opcode() == CompilerOpCode.LOCAL_GET && !out.isEmpty()) {
+                var prev = out.get(out.size() - 1);
+                if (prev.opcode() == CompilerOpCode.LOCAL_SET
+                        && prev.operand(0) == ins.operand(0)) {
+                    out.set(out.size() - 1, tee(prev.operand(0)));
+                    continue;
+                }
+            }
+            out.add(ins);
+        }
+        return out;
+    }
+
+    private static void invalidate(Map<Long, CompilerInstruction> known, long local) {
+        known.remove(local);
+        known.values()
+                .removeIf(
+                        value ->
+                                value.opcode() == CompilerOpCode.LOCAL_GET
+                                        && value.operand(0) == local);
+    }
+
+    // the stores to the locals that are never read
+    private List<CompilerInstruction> removeDeadStores(List<CompilerInstruction> instructions) {
+        Set<Long> read = new HashSet<>();
+        for (var ins : instructions) {
+            if (ins.opcode() == CompilerOpCode.LOCAL_GET) {
+                read.add(ins.operand(0));
+            }
+        }
+        var out = new ArrayList<CompilerInstruction>(instructions.size());
+        for (var ins : instructions) {
+            if (ins.opcode() == CompilerOpCode.LOCAL_SET && !read.contains(ins.operand(0))) {
+                var localType = localType(type, body, (int) ins.operand(0));
+                out.add(new CompilerInstruction(CompilerOpCode.DROP, localType.id()));
+            } else if (ins.opcode() != CompilerOpCode.LOCAL_TEE || read.contains(ins.operand(0))) {
+                out.add(ins);
+            }
+        }
+        return out;
+    }
+
+    private CompilerInstruction tee(long local) {
+        var localType = localType(type, body, (int) local);
+        return new CompilerInstruction(CompilerOpCode.LOCAL_TEE, local, localType.id());
+    }
+
+    private static Set<Long> labelTargets(List<CompilerInstruction> instructions) {
+        Set<Long> targets = new HashSet<>();
+        for (var ins : instructions) {
+            for (long target : ins.labelTargets()) {
+                targets.add(target);
+            }
+        }
+        return targets;
+    }
+
+    private static void removeTail(List<CompilerInstruction> out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.remove(out.size() - 1);
+        }
+    }
+
+    private static void replaceTail(
+            List<CompilerInstruction> out, int count, CompilerInstruction ins) {
+        removeTail(out, count);
+        out.add(ins);
+    }
+
+    private static boolean isUnconditionalJump(CompilerOpCode opcode) {
+        switch (opcode) {
+            case GOTO:
+            case SWITCH:
+            case RETURN:
+            case TRAP:
+            case THROW:
+            case THROW_REF:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isConst(CompilerOpCode opcode) {
+        return opcode == CompilerOpCode.I32_CONST || opcode == CompilerOpCode.I64_CONST;
+    }
+
+    private static boolean isPure(CompilerOpCode opcode) {
+        switch (opcode) {
+            case I32_CONST:
+            case I64_CONST:
+            case F32_CONST:
+            case F64_CONST:
+            case LOCAL_GET:
+            case GLOBAL_GET:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // the operations leaving their first operand unchanged for a constant second operand
+    private static boolean isIdentity(CompilerOpCode opcode, long constant) {
+        switch (opcode) {
+            case I32_ADD:
+            case I32_SUB:
+            case I32_OR:
+            case I32_XOR:
+            case I32_SHL:
+            case I32_SHR_S:
+            case I32_SHR_U:
+            case I32_ROTL:
+            case I32_ROTR:
+                return (int) constant == 0;
+            case I32_MUL:
+            case I32_DIV_S:
+            case I32_DIV_U:
+                return (int) constant == 1;
+            case I32_AND:
+                return (int) constant == -1;
+            case I64_ADD:
+            case I64_SUB:
+            case I64_OR:
+            case I64_XOR:
+            case I64_SHL:
+            case I64_SHR_S:
+            case I64_SHR_U:
+            case I64_ROTL:
+            case I64_ROTR:
+                return constant == 0;
+            case I64_MUL:
+            case I64_DIV_S:
+            case I64_DIV_U:
+                return constant == 1;
+            case I64_AND:
+                return constant == -1;
+            default:
+                return false;
+        }
+    }
+
+    private static CompilerInstruction foldUnary(CompilerOpCode opcode, long x) {
+        int i = (int) x;
+        switch (opcode) {
+            case I32_EQZ:
+                return i32(i == 0);
+            case I32_CLZ:
+                return i32(Integer.numberOfLeadingZeros(i));
+            case I32_CTZ:
+                return i32(Integer.numberOfTrailingZeros(i));
+            case I32_POPCNT:
+                return i32(Integer.bitCount(i));
+            case I32_EXTEND_8_S:
+                return i32((byte) i);
+            case I32_EXTEND_16_S:
+                return i32((short) i);
+            case I32_WRAP_I64:
+                return i32(i);
+            case I64_EXTEND_I32_S:
+                return i64(i);
+            case I64_EXTEND_I32_U:
+                return i64(Integer.toUnsignedLong(i));
+            case I64_EQZ:
+                return i32(x == 0);
+            case I64_CLZ:
+                return i64(Long.numberOfLeadingZeros(x));
+            case I64_CTZ:
+                return i64(Long.numberOfTrailingZeros(x));
+            case I64_POPCNT:
+                return i64(Long.bitCount(x));
+            case I64_EXTEND_8_S:
+                return i64((byte) x);
+            case I64_EXTEND_16_S:
+                return i64((short) x);
+            case I64_EXTEND_32_S:
+                return i64(x << 32 >> 32);
+            default:
+                return null;
+        }
+    }
+
+    // the operations that can trap are only folded when they don't
+    private static CompilerInstruction foldBinary(CompilerOpCode opcode, long x, long y) {
+        int a = (int) x;
+        int b = (int) y;
+        switch (opcode) {
+            case I32_ADD:
+                return i32(a + b);
+            case I32_SUB:
+                return i32(a - b);
+            case I32_MUL:
+                return i32(a * b);
+            case I32_DIV_S:
+                return (b == 0 || (a == Integer.MIN_VALUE && b == -1)) ? null : i32(a / b);
+            case I32_DIV_U:
+                return b == 0 ? null : i32(Integer.divideUnsigned(a, b));
+            case I32_REM_S:
+                return b == 0 ? null : i32(a % b);
+            case I32_REM_U:
+                return b == 0 ? null : i32(Integer.remainderUnsigned(a, b));
+            case I32_AND:
+                return i32(a & b);
+            case I32_OR:
+                return i32(a | b);
+            case I32_XOR:
+                return i32(a ^ b);
+            case I32_SHL:
+                return i32(a << b);
+            case I32_SHR_S:
+                return i32(a >> b);
+            case I32_SHR_U:
+                return i32(a >>> b);
+            case I32_ROTL:
+                return i32(Integer.rotateLeft(a, b));
+            case I32_ROTR:
+                return i32(Integer.rotateRight(a, b));
+            case I32_EQ:
+                return i32(a == b);
+            case I32_NE:
+                return i32(a != b);
+            case I32_LT_S:
+                return i32(a < b);
+            case I32_LT_U:
+                return i32(Integer.compareUnsigned(a, b) < 0);
+            case I32_GT_S:
+                return i32(a > b);
+            case I32_GT_U:
+                return i32(Integer.compareUnsigned(a, b) > 0);
+            case I32_LE_S:
+                return i32(a <= b);
+            case I32_LE_U:
+                return i32(Integer.compareUnsigned(a, b) <= 0);
+            case I32_GE_S:
+                return i32(a >= b);
+            case I32_GE_U:
+                return i32(Integer.compareUnsigned(a, b) >= 0);
+            case I64_ADD:
+                return i64(x + y);
+            case I64_SUB:
+                return i64(x - y);
+            case I64_MUL:
+                return i64(x * y);
+            case I64_DIV_S:
+                return (y == 0 || (x == Long.MIN_VALUE && y == -1)) ? null : i64(x / y);
+            case I64_DIV_U:
+                return y == 0 ? null : i64(Long.divideUnsigned(x, y));
+            case I64_REM_S:
+                return y == 0 ? null : i64(x % y);
+            case I64_REM_U:
+                return y == 0 ? null : i64(Long.remainderUnsigned(x, y));
+            case I64_AND:
+                return i64(x & y);
+            case I64_OR:
+                return i64(x | y);
+            case I64_XOR:
+                return i64(x ^ y);
+            case I64_SHL:
+                return i64(x << y);
+            case I64_SHR_S:
+                return i64(x >> y);
+            case I64_SHR_U:
+                return i64(x >>> y);
+            case I64_ROTL:
+                return i64(Long.rotateLeft(x, (int) y));
+            case I64_ROTR:
+                return i64(Long.rotateRight(x, (int) y));
+            case I64_EQ:
+                return i32(x == y);
+            case I64_NE:
+                return i32(x != y);
+            case I64_LT_S:
+                return i32(x < y);
+            case I64_LT_U:
+                return i32(Long.compareUnsigned(x, y) < 0);
+            case I64_GT_S:
+                return i32(x > y);
+            case I64_GT_U:
+                return i32(Long.compareUnsigned(x, y) > 0);
+            case I64_LE_S:
+                return i32(x <= y);
+            case I64_LE_U:
+                return i32(Long.compareUnsigned(x, y) <= 0);
+            case I64_GE_S:
+                return i32(x >= y);
+            case I64_GE_U:
+                return i32(Long.compareUnsigned(x, y) >= 0);
+            default:
+                return null;
+        }
+    }
+
+    private static CompilerInstruction i32(int value) {
+        return new CompilerInstruction(CompilerOpCode.I32_CONST, value);
+    }
+
+    private static CompilerInstruction i32(boolean value) {
+        return i32(value ? 1 : 0);
+    }
+
+    private static CompilerInstruction i64(long value) {
+        return new CompilerInstruction(CompilerOpCode.I64_CONST, value);
+    }
+}
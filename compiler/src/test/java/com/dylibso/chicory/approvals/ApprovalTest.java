@@ -53,7 +53,10 @@ public class ApprovalTest {
 
     @Test
     public void verifyFloat() {
-        verifyGeneratedBytecode("float.wat.wasm");
+        // the constants are dropped right away: keep them to check how they are emitted
+        var module = parse(getSystemClassLoader().getResourceAsStream("compiled/float.wat.wasm"));
+        var result = Compiler.builder(module).withOptimizations(false).build().compile();
+        verifyClass(result.classBytes(), ApprovalTest::SKIP_Methods_CLASS);
     }
 
     @Test
@@ -63,7 +66,10 @@ public class ApprovalTest {
 
     @Test
     public void verifyI32() {
-        verifyGeneratedBytecode("i32.wat.wasm");
+        // the constants are dropped right away: keep them to check how they are emitted
+        var module = parse(getSystemClassLoader().getResourceAsStream("compiled/i32.wat.wasm"));
+        var result = Compiler.builder(module).withOptimizations(false).build().compile();
+        verifyClass(result.classBytes(), ApprovalTest::SKIP_Methods_CLASS);
     }
 
     @Test
@@ -0,0 +1,113 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.compiler.CallIndirectDispatch;
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.runtime.Store;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+public class CallIndirectTest {
+
+    private static WasmModule module(String fileName) {
+        return Parser.parse(CallIndirectTest.class.getResourceAsStream("/compiled/" + fileName));
+    }
+
+    private static Instance.Builder builder(WasmModule module, CallIndirectDispatch dispatch) {
+        return Instance.builder(module).withMachineFactory(factory(module, dispatch));
+    }
+
+    private static Function<Instance, Machine> factory(
+            WasmModule module, CallIndirectDispatch dispatch) {
+        return MachineFactoryCompiler.builder(module).withCallIndirectDispatch(dispatch).compile();
+    }
+
+    @Test
+    public void shouldFollowTheChangesOfTheTable() {
+        for (var dispatch : CallIndirectDispatch.values()) {
+            shouldFollowTheChangesOfTheTable(dispatch);
+        }
+    }
+
+    private void shouldFollowTheChangesOfTheTable(CallIndirectDispatch callIndirectDispatch) {
+        var instance =
+                builder(module("call_indirect-cache.wat.wasm"), callIndirectDispatch).build();
+        var dispatch = instance.export("dispatch");
+        var sum = instance.export("sum");
+        var table = instance.exports().table("table");
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1L, dispatch.apply(0)[0]);
+        }
+        assertEquals(150L, sum.apply(100)[0]);
+
+        // the slot now refers to $three
+        table.setRef(0, 2, instance);
+        assertEquals(3L, dispatch.apply(0)[0]);
+        assertEquals(250L, sum.apply(100)[0]);
+
+        // the type is verified again for a different function
+        table.setRef(0, 3, instance);
+        var exception = assertThrows(ChicoryException.class, () -> dispatch.apply(0));
+        assertEquals("indirect call type mismatch", exception.getMessage());
+
+        table.grow(1, 1, instance);
+        assertEquals(2L, dispatch.apply(4)[0]);
+        table.reset();
+        assertThrows(ChicoryException.class, () -> dispatch.apply(4));
+        assertThrows(ChicoryException.class, () -> dispatch.apply(100));
+    }
+
+    @Test
+    public void shouldCallManyFunctionsFromTheSameSite() {
+        for (var dispatch : CallIndirectDispatch.values()) {
+            var sum =
+                    builder(module("call_indirect-megamorphic.wat.wasm"), dispatch)
+                            .build()
+                            .export("sum");
+            for (int i = 0; i < 100; i++) {
+                assertEquals(210L, sum.apply(60)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void shouldShareTheCompiledCodeBetweenInstances() {
+        var module = module("call_indirect-cache.wat.wasm");
+        for (var dispatch : CallIndirectDispatch.values()) {
+            var factory = factory(module, dispatch);
+            var first = Instance.builder(module).withMachineFactory(factory).build();
+            var second = Instance.builder(module).withMachineFactory(factory).build();
+            second.exports().table("table").setRef(0, 2, second);
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals(1L, first.export("dispatch").apply(0)[0]);
+                assertEquals(3L, second.export("dispatch").apply(0)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void shouldCallOtherInstances() {
+        for (var dispatch : CallIndirectDispatch.values()) {
+            var store = new Store();
+            var instance = builder(module("call_indirect-export.wat.wasm"), dispatch).build();
+            store.register("test", instance);
+            builder(module("call_indirect-import.wat.wasm"), dispatch)
+                    .withImportValues(store.toImportValues())
+                    .build();
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals(42, instance.export("call-self").apply()[0]);
+                assertEquals(88, instance.export("call-other").apply()[0]);
+            }
+        }
+    }
+}
@@ -3,8 +3,13 @@ package com.dylibso.chicory.compiler.internal;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
 import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.ImportValues;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.ValType;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 public class CallTest {
@@ -37,4 +42,37 @@ public class CallTest {
         long[] result = function.apply(2, 3);
         assertArrayEquals(new long[] {5}, result);
     }
+
+    @Test
+    public void callMultiValue() {
+        var module =
+                Parser.parse(CallTest.class.getResourceAsStream("/compiled/multi-value.wat.wasm"));
+        var swap =
+                new HostFunction(
+                        "env",
+                        "swap",
+                        FunctionType.of(
+                                List.of(ValType.I64, ValType.F64),
+                                List.of(ValType.F64, ValType.I64)),
+                        (Instance instance, long... args) -> new long[] {args[1], args[0]});
+        var instance =
+                Instance.builder(module)
+                        .withImportValues(ImportValues.builder().addFunction(swap).build())
+                        .withMachineFactory(MachineFactoryCompiler::compile)
+                        .build();
+
+        // the results are as long as the function type, even if the long[] passed to
+        // the function has room for the three results of "triple"
+        assertArrayEquals(new long[] {5, 10}, instance.export("pair").apply(5));
+        assertArrayEquals(
+                new long[] {5, 8, Double.doubleToRawLongBits(14.0)},
+                instance.export("triple").apply(4));
+        assertArrayEquals(new long[] {6, 12}, instance.export("pair_rec").apply(3));
+        assertArrayEquals(new long[] {7, 14}, instance.export("indirect").apply(0, 7));
+        assertArrayEquals(new long[] {6, 12}, instance.export("indirect").apply(1, 3));
+        assertArrayEquals(new long[] {18}, instance.export("sum").apply(3));
+        assertArrayEquals(
+                new long[] {Double.doubleToRawLongBits(2.5), 1},
+                instance.export("swap").apply(1, Double.doubleToRawLongBits(2.5)));
+    }
 }
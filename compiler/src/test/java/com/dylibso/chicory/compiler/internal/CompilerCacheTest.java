@@ -0,0 +1,189 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylibso.chicory.compiler.CompilerCache;
+import com.dylibso.chicory.compiler.InterruptionPolicy;
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CompilerCacheTest {
+
+    private static byte[] wasm(String fileName) {
+        try (var in = CompilerCacheTest.class.getResourceAsStream("/compiled/" + fileName)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long fac(CompilerCache cache, byte[] wasm) {
+        var module = Parser.parse(wasm);
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withCache(cache, wasm)
+                                        .compile())
+                        .build();
+        return instance.export("fac-ssa").apply(10)[0];
+    }
+
+    private static List<Path> entries(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(f -> f.toString().endsWith(".classes"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void shouldLoadTheCachedClasses(@TempDir Path directory) throws Exception {
+        var cache = CompilerCache.builder(directory).build();
+        var wasm = wasm("fac.wat.wasm");
+
+        assertEquals(3628800L, fac(cache, wasm));
+        var entries = entries(directory);
+        assertEquals(1, entries.size());
+        var entry = entries.get(0);
+
+        Files.setLastModifiedTime(entry, FileTime.from(Instant.EPOCH));
+        assertEquals(3628800L, fac(cache, wasm));
+        assertEquals(List.of(entry), entries(directory));
+        // a hit makes the entry the most recently used
+        assertTrue(Files.getLastModifiedTime(entry).toInstant().isAfter(Instant.EPOCH));
+    }
+
+    @Test
+    public void shouldCacheTheCompilationsWithOtherOptionsApart(@TempDir Path directory)
+            throws Exception {
+        var cache = CompilerCache.builder(directory).build();
+        var wasm = wasm("fac.wat.wasm");
+        var module = Parser.parse(wasm);
+
+        MachineFactoryCompiler.builder(module).withCache(cache, wasm).compile();
+        MachineFactoryCompiler.builder(module)
+                .withInterruptionPolicy(InterruptionPolicy.NONE)
+                .withCache(cache, wasm)
+                .compile();
+        MachineFactoryCompiler.builder(Parser.parse(wasm("iterfact.wat.wasm")))
+                .withCache(cache, wasm("iterfact.wat.wasm"))
+                .compile();
+
+        assertEquals(3, entries(directory).size());
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedEntries(@TempDir Path directory) throws Exception {
+        var wasm = wasm("fac.wat.wasm");
+        fac(CompilerCache.builder(directory).build(), wasm);
+        var size = Files.size(entries(directory).get(0));
+        // room for one entry, but not two
+        var cache = CompilerCache.builder(directory).withMaxSize(size * 3 / 2).build();
+
+        var old = entries(directory).get(0);
+        Files.setLastModifiedTime(old, FileTime.from(Instant.EPOCH));
+        var module = Parser.parse(wasm);
+        MachineFactoryCompiler.builder(module)
+                .withInterruptionPolicy(InterruptionPolicy.NONE)
+                .withCache(cache, wasm)
+                .compile();
+
+        var entries = entries(directory);
+        assertEquals(1, entries.size());
+        assertFalse(entries.contains(old));
+    }
+
+    @Test
+    public void shouldCompileAgainACorruptedEntry(@TempDir Path directory) throws Exception {
+        var cache = CompilerCache.builder(directory).build();
+        var wasm = wasm("fac.wat.wasm");
+        fac(cache, wasm);
+        var entry = entries(directory).get(0);
+
+        var bytes = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+        assertEquals(3628800L, fac(cache, wasm));
+        assertEquals(bytes.length, Files.size(entry));
+
+        Files.write(entry, new byte[] {1, 2, 3});
+        assertEquals(3628800L, fac(cache, wasm));
+        assertEquals(bytes.length, Files.size(entry));
+    }
+
+    @Test
+    public void shouldShareTheCacheBetweenThreads(@TempDir Path directory) throws Exception {
+        var cache = CompilerCache.builder(directory).build();
+        var wasm = wasm("fac.wat.wasm");
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var tasks = new ArrayList<Callable<Long>>();
+            for (int i = 0; i < 16; i++) {
+                tasks.add(() -> fac(cache, wasm));
+            }
+            for (var result : executor.invokeAll(tasks)) {
+                assertEquals(3628800L, result.get());
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, entries(directory).size());
+    }
+
+    // copies the compiler classes, changes one of them and compares the fingerprints
+    private static void assertFingerprintChanges(Path directory, String classFile)
+            throws Exception {
+        var classes =
+                Path.of(Compiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        try (var files = Files.walk(classes)) {
+            for (var file : files.collect(Collectors.toList())) {
+                var copy = directory.resolve(classes.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(file, copy);
+                }
+            }
+        }
+        var before = CompilerFingerprint.of(List.of(directory));
+        assertArrayEquals(CompilerFingerprint.of(List.of(classes)), before);
+
+        Files.write(directory.resolve(classFile), new byte[] {0}, StandardOpenOption.APPEND);
+        assertFalse(Arrays.equals(before, CompilerFingerprint.of(List.of(directory))));
+    }
+
+    @Test
+    public void shouldChangeTheFingerprintWithAnyCompilerClass(@TempDir Path directory)
+            throws Exception {
+        assertFingerprintChanges(
+                directory, "com/dylibso/chicory/compiler/internal/GlobalAccess.class");
+    }
+
+    @Test
+    public void shouldChangeTheFingerprintWithTheOptimizer(@TempDir Path directory)
+            throws Exception {
+        assertFingerprintChanges(
+                directory, "com/dylibso/chicory/compiler/internal/WasmOptimizer.class");
+    }
+}
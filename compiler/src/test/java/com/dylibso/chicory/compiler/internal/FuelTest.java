@@ -0,0 +1,117 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.InterpreterMachine;
+import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.runtime.OutOfFuelException;
+import com.dylibso.chicory.runtime.TrapException;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+public class FuelTest {
+
+    private static final long FUEL = 1_000_000;
+
+    private static WasmModule module(String fileName) {
+        return Parser.parse(FuelTest.class.getResourceAsStream("/compiled/" + fileName));
+    }
+
+    private static Instance instance(
+            WasmModule module, Function<Instance, Machine> machineFactory, long fuel) {
+        return Instance.builder(module).withMachineFactory(machineFactory).withFuel(fuel).build();
+    }
+
+    private static Function<Instance, Machine> compiled(WasmModule module) {
+        return MachineFactoryCompiler.builder(module).withFuelMetering(true).compile();
+    }
+
+    private static void assertSameFuel(String fileName, String function, long... args) {
+        var module = module(fileName);
+        var interpreted = instance(module, InterpreterMachine::new, FUEL);
+        var compiled = instance(module, compiled(module), FUEL);
+
+        assertEquals(
+                interpreted.export(function).apply(args)[0],
+                compiled.export(function).apply(args)[0]);
+        assertEquals(interpreted.fuel(), compiled.fuel());
+    }
+
+    @Test
+    public void shouldConsumeTheSameFuelAsTheInterpreter() {
+        assertSameFuel("fac.wat.wasm", "fac-ssa", 5);
+        assertSameFuel("iterfact.wat.wasm", "iterFact", 10);
+        assertSameFuel("fuel.wat.wasm", "sum-entry", 100);
+        assertSameFuel("fuel.wat.wasm", "sum-default", 100);
+        assertSameFuel("br_table.wat.wasm", "switch_like", 1);
+        assertSameFuel("complex.c.wasm", "run");
+        assertSameFuel("kitchensink.wat.wasm", "run", 100);
+    }
+
+    @Test
+    public void shouldConsumeTheSameFuelInInterpretedFunctions() {
+        var module = module("fuel.wat.wasm");
+        var expected = instance(module, InterpreterMachine::new, FUEL);
+        expected.export("sum-entry").apply(100);
+
+        for (var interpretedFunctions : List.of(Set.of(0), Set.of(1), Set.of(0, 1))) {
+            var factory =
+                    MachineFactoryCompiler.builder(module)
+                            .withFuelMetering(true)
+                            .withInterpretedFunctions(interpretedFunctions)
+                            .compile();
+            var instance = instance(module, factory, FUEL);
+            assertEquals(5050L, instance.export("sum-entry").apply(100)[0]);
+            assertEquals(expected.fuel(), instance.fuel());
+        }
+    }
+
+    @Test
+    public void shouldKeepTheFuelConsumedBeforeATrap() {
+        var module = module("fuel.wat.wasm");
+        var interpreted = instance(module, InterpreterMachine::new, FUEL);
+        var compiled = instance(module, compiled(module), FUEL);
+
+        assertThrows(TrapException.class, () -> interpreted.export("sum-trap").apply(100));
+        assertThrows(TrapException.class, () -> compiled.export("sum-trap").apply(100));
+        assertEquals(interpreted.fuel(), compiled.fuel());
+    }
+
+    @Test
+    public void shouldRunOutOfFuel() {
+        var module = module("infinite-loop.c.wasm");
+        var instance = instance(module, compiled(module), 10_000);
+        var run = instance.export("run");
+
+        var e = assertThrows(OutOfFuelException.class, run::apply);
+        assertEquals("out of fuel", e.getMessage());
+        assertEquals(0, instance.fuel());
+
+        // can be called again, but starts over
+        instance.addFuel(10);
+        assertThrows(OutOfFuelException.class, run::apply);
+    }
+
+    @Test
+    public void shouldRejectMeteredInstancesWhenCompiledWithoutMetering() {
+        var module = module("iterfact.wat.wasm");
+        var factory = MachineFactoryCompiler.compile(module);
+
+        var e = assertThrows(ChicoryException.class, () -> instance(module, factory, FUEL));
+        assertEquals(
+                "The instance meters fuel, but the module has been compiled without fuel metering",
+                e.getMessage());
+
+        // unmetered instances keep working
+        var instance = Instance.builder(module).withMachineFactory(factory).build();
+        assertEquals(120L, instance.export("iterFact").apply(5)[0]);
+    }
+}
@@ -0,0 +1,142 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.ImportValues;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.ValType;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class GlobalsTest {
+
+    private static final int COUNTER = 0;
+    private static final int TOTAL = 1;
+    private static final int STEP = 2;
+    private static final int SCALE = 3;
+
+    private static WasmModule module() {
+        return Parser.parse(
+                GlobalsTest.class.getResourceAsStream("/compiled/globals-internal.wat.wasm"));
+    }
+
+    private static ImportValues imports(HostFunction callback) {
+        var peek =
+                new HostFunction(
+                        "env",
+                        "peek",
+                        FunctionType.returning(ValType.I32),
+                        (Instance instance, long... args) ->
+                                new long[] {instance.global(COUNTER).getValue()});
+        var poke =
+                new HostFunction(
+                        "env",
+                        "poke",
+                        FunctionType.accepting(ValType.I32),
+                        (Instance instance, long... args) -> {
+                            instance.global(COUNTER).setValue(args[0] + 100);
+                            return null;
+                        });
+        return ImportValues.builder().addFunction(callback, peek, poke).build();
+    }
+
+    @Test
+    public void shouldClassifyTheGlobals() {
+        var access = GlobalAccess.of(module());
+        assertEquals(List.of(COUNTER, TOTAL), access.fields());
+        assertNull(access.constant(COUNTER));
+        assertEquals(3L, access.constant(STEP));
+        assertEquals(Double.doubleToRawLongBits(2.5), access.constant(SCALE));
+        assertTrue(access.withoutFields().fields().isEmpty());
+        assertFalse(access.withoutFields().isField(COUNTER));
+    }
+
+    @Test
+    public void shouldKeepTheGlobalsAcrossHostCalls() {
+        var module = module();
+        var totals = new ArrayList<Long>();
+        var callback =
+                new HostFunction(
+                        "env",
+                        "callback",
+                        FunctionType.empty(),
+                        (Instance instance, long... args) -> {
+                            totals.add(instance.export("add").apply(10)[0]);
+                            return null;
+                        });
+        var instance =
+                Instance.builder(module)
+                        .withImportValues(imports(callback))
+                        .withMachineFactory(MachineFactoryCompiler.compile(module))
+                        .build();
+
+        assertEquals(3L, instance.export("count").apply()[0]);
+        assertEquals(6L, instance.export("count").apply()[0]);
+        assertEquals(List.of(10L, 20L), totals);
+        assertEquals(
+                5.0,
+                Double.longBitsToDouble(
+                        instance.export("scale").apply(Double.doubleToRawLongBits(2.0))[0]));
+
+        // written back when the call returns
+        assertEquals(6L, instance.global(COUNTER).getValue());
+        assertEquals(20L, instance.global(TOTAL).getValue());
+    }
+
+    @Test
+    public void shouldShareTheGlobalsWithTheHost() {
+        var module = module();
+        var callback =
+                new HostFunction(
+                        "env",
+                        "callback",
+                        FunctionType.empty(),
+                        (Instance instance, long... args) -> null);
+        var instance =
+                Instance.builder(module)
+                        .withImportValues(imports(callback))
+                        .withMachineFactory(MachineFactoryCompiler.compile(module))
+                        .build();
+
+        // the host reads 5 and writes 105, that the module reads back
+        assertEquals(105L, instance.export("peek_and_poke").apply(5)[0]);
+        assertEquals(105L, instance.global(COUNTER).getValue());
+
+        instance.global(COUNTER).setValue(42);
+        assertEquals(45L, instance.export("count").apply()[0]);
+    }
+
+    @Test
+    public void shouldAccessTheGlobalsOfAWrappedMachine() {
+        var module = module();
+        var callback =
+                new HostFunction(
+                        "env",
+                        "callback",
+                        FunctionType.empty(),
+                        (Instance instance, long... args) -> null);
+        var factory = MachineFactoryCompiler.compile(module);
+        var instance =
+                Instance.builder(module)
+                        .withImportValues(imports(callback))
+                        .withMachineFactory(
+                                inst -> {
+                                    var machine = factory.apply(inst);
+                                    return (funcId, args) -> machine.call(funcId, args);
+                                })
+                        .build();
+
+        assertEquals(3L, instance.export("count").apply()[0]);
+        assertEquals(6L, instance.export("count").apply()[0]);
+        assertEquals(6L, instance.global(COUNTER).getValue());
+    }
+}
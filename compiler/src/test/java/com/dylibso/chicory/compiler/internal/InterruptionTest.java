@@ -1,12 +1,15 @@
 package com.dylibso.chicory.compiler.internal;
 
 import static com.dylibso.chicory.compiler.internal.CompilerUtil.methodNameForFunc;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.dylibso.chicory.compiler.InterruptionPolicy;
 import com.dylibso.chicory.compiler.MachineFactoryCompiler;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.wasm.ChicoryException;
@@ -43,6 +46,40 @@ public class InterruptionTest {
         assertInterruption(() -> function.apply(100), functionIdx(module, "run"));
     }
 
+    @Test
+    public void shouldInterruptLoopAtBackEdges() throws InterruptedException {
+        var module =
+                Parser.parse(
+                        InterruptionTest.class.getResourceAsStream(
+                                "/compiled/infinite-loop.c.wasm"));
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withInterruptionPolicy(InterruptionPolicy.LOOPS)
+                                        .compile())
+                        .build();
+
+        var function = instance.export("run");
+        assertInterruption(function::apply, functionIdx(module, "run"));
+    }
+
+    @Test
+    public void shouldCheckInterruptionAsConfigured() {
+        var module =
+                Parser.parse(InterruptionTest.class.getResourceAsStream("/compiled/power.c.wasm"));
+        assertTrue(checksInterruption(module, InterruptionPolicy.CALLS_AND_LOOPS));
+        assertFalse(checksInterruption(module, InterruptionPolicy.NONE));
+    }
+
+    private static boolean checksInterruption(WasmModule module, InterruptionPolicy policy) {
+        var result = Compiler.builder(module).withInterruptionPolicy(policy).build().compile();
+        return result.classBytes().entrySet().stream()
+                .filter(entry -> !entry.getKey().endsWith("Shaded"))
+                .map(entry -> new String(entry.getValue(), ISO_8859_1))
+                .anyMatch(classFile -> classFile.contains("checkInterruption"));
+    }
+
     private static int functionIdx(WasmModule module, String name) {
         for (int i = 0; i < module.exportSection().exportCount(); i++) {
             var export = module.exportSection().getExport(i);
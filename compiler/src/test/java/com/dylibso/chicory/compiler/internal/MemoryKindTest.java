@@ -0,0 +1,67 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.compiler.MemoryKind;
+import com.dylibso.chicory.runtime.ByteArrayMemory;
+import com.dylibso.chicory.runtime.ByteBufferMemory;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+public class MemoryKindTest {
+
+    private static WasmModule module() {
+        return Parser.parse(
+                MemoryKindTest.class.getResourceAsStream("/compiled/count_vowels.rs.wasm"));
+    }
+
+    private static Instance instance(
+            MemoryKind memoryKind, Function<MemoryLimits, Memory> memoryFactory) {
+        var module = module();
+        return Instance.builder(module)
+                .withMemoryFactory(memoryFactory)
+                .withMachineFactory(
+                        MachineFactoryCompiler.builder(module).withMemoryKind(memoryKind).compile())
+                .build();
+    }
+
+    private static long countVowels(Instance instance, String message) {
+        var len = message.getBytes(UTF_8).length;
+        int ptr = (int) instance.export("alloc").apply(len)[0];
+        instance.memory().writeString(ptr, message);
+        return instance.export("count_vowels").apply(ptr, len)[0];
+    }
+
+    @Test
+    public void shouldAccessByteBufferMemory() {
+        var instance = instance(MemoryKind.BYTE_BUFFER, ByteBufferMemory::new);
+        assertEquals(3L, countVowels(instance, "Hello, World!"));
+    }
+
+    @Test
+    public void shouldAccessByteArrayMemory() {
+        var instance = instance(MemoryKind.BYTE_ARRAY, ByteArrayMemory::new);
+        assertEquals(3L, countVowels(instance, "Hello, World!"));
+    }
+
+    @Test
+    public void shouldRejectADifferentMemory() {
+        var exception =
+                assertThrows(
+                        ChicoryException.class,
+                        () -> instance(MemoryKind.BYTE_ARRAY, ByteBufferMemory::new));
+        assertEquals(
+                "The module has been compiled for a ByteArrayMemory, but the instance memory is a "
+                        + ByteBufferMemory.class.getName(),
+                exception.getMessage());
+    }
+}
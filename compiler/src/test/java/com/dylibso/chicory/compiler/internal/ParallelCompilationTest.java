@@ -0,0 +1,62 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class ParallelCompilationTest {
+
+    private static WasmModule module(String fileName) {
+        return Parser.parse(
+                ParallelCompilationTest.class.getResourceAsStream("/compiled/" + fileName));
+    }
+
+    private static Map<String, byte[]> compile(WasmModule module, boolean parallel) {
+        return Compiler.builder(module)
+                .withMaxFunctionsPerClass(2)
+                .withParallelCompilation(parallel)
+                .withClassCollectorFactory(ByteClassCollector::new)
+                .build()
+                .compile()
+                .classBytes();
+    }
+
+    @Test
+    public void shouldCompileTheSameClassesInParallel() {
+        for (var fileName :
+                List.of(
+                        "call_indirect-megamorphic.wat.wasm",
+                        "multi-value.wat.wasm",
+                        "globals-internal.wat.wasm")) {
+            var module = module(fileName);
+            var sequential = compile(module, false);
+            var parallel = compile(module, true);
+
+            assertEquals(List.copyOf(sequential.keySet()), List.copyOf(parallel.keySet()));
+            for (var name : sequential.keySet()) {
+                assertArrayEquals(sequential.get(name), parallel.get(name), name);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRunTheParallelCompilation() {
+        var module = module("call_indirect-megamorphic.wat.wasm");
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withMaxFunctionsPerClass(2)
+                                        .withParallelCompilation(true)
+                                        .compile())
+                        .build();
+        assertEquals(210L, instance.export("sum").apply(60)[0]);
+    }
+}
@@ -0,0 +1,221 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.ImportValues;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.ValType;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class TieredTest {
+
+    private static WasmModule module(String fileName) {
+        return Parser.parse(TieredTest.class.getResourceAsStream("/compiled/" + fileName));
+    }
+
+    // runs the compilations right away, on the thread of the call reaching the threshold
+    private static Executor counting(AtomicInteger compilations) {
+        return task -> {
+            compilations.incrementAndGet();
+            task.run();
+        };
+    }
+
+    private static TieredMachine machine(Instance instance) {
+        return (TieredMachine) instance.getMachine();
+    }
+
+    @Test
+    public void shouldCompileTheHotFunctions() {
+        var module = module("call_indirect-megamorphic.wat.wasm");
+        var compilations = new AtomicInteger();
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withTierUpThreshold(100)
+                                        .withCompilationExecutor(counting(compilations))
+                                        .compileLazily())
+                        .build();
+        var sum = instance.export("sum");
+
+        // $sum: 1 call and 60 loop iterations, $one to $six: 10 calls each
+        assertEquals(210L, sum.apply(60)[0]);
+        assertEquals(0, compilations.get());
+        assertTrue(machine(instance).isInterpreted(6));
+
+        // $sum is hot, and calls the other functions left interpreted
+        assertEquals(210L, sum.apply(60)[0]);
+        assertEquals(1, compilations.get());
+        assertFalse(machine(instance).isInterpreted(6));
+        assertTrue(machine(instance).isInterpreted(0));
+
+        // $one and $two get hot one after the other: after two compilations leaving
+        // functions interpreted, the third one compiles the whole module
+        for (int i = 0; i < 8; i++) {
+            assertEquals(210L, sum.apply(60)[0]);
+        }
+        assertEquals(3, compilations.get());
+        for (int funcId = 0; funcId <= 6; funcId++) {
+            assertFalse(machine(instance).isInterpreted(funcId));
+        }
+
+        // nothing left to compile
+        for (int i = 0; i < 100; i++) {
+            assertEquals(210L, sum.apply(60)[0]);
+        }
+        assertEquals(3, compilations.get());
+    }
+
+    @Test
+    public void shouldCompileWithTheOptionsSetBeforeCompilingLazily() {
+        var module = module("call_indirect-megamorphic.wat.wasm");
+        var builder =
+                MachineFactoryCompiler.builder(module)
+                        .withTierUpThreshold(100)
+                        .withCompilationExecutor(Runnable::run);
+        var factory = builder.compileLazily();
+        // would leave $sum interpreted
+        builder.withInterpretedFunctions(Set.of(6));
+
+        var instance = Instance.builder(module).withMachineFactory(factory).build();
+        var sum = instance.export("sum");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(210L, sum.apply(60)[0]);
+        }
+        assertFalse(machine(instance).isInterpreted(6));
+    }
+
+    @Test
+    public void shouldCallTheCompiledFunctionsFromTheInterpreter() {
+        var module = module("fac.wat.wasm");
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withTierUpThreshold(10)
+                                        .withCompilationExecutor(Runnable::run)
+                                        .compileLazily())
+                        .build();
+        var facSsa = instance.export("fac-ssa");
+
+        assertEquals(120L, facSsa.apply(5)[0]);
+        // the function called in the loop is hot before the one with the loop
+        assertFalse(machine(instance).isInterpreted(1));
+        assertTrue(machine(instance).isInterpreted(2));
+        assertEquals(120L, facSsa.apply(5)[0]);
+        assertEquals(3628800L, facSsa.apply(10)[0]);
+    }
+
+    @Test
+    public void shouldShareTheGlobalsBetweenTheTiers() {
+        var module = module("globals-internal.wat.wasm");
+        var counts = new AtomicInteger();
+        var callback =
+                new HostFunction("env", "callback", FunctionType.empty(), (inst, args) -> null);
+        var peek =
+                new HostFunction(
+                        "env",
+                        "peek",
+                        FunctionType.returning(ValType.I32),
+                        (inst, args) -> new long[] {0});
+        var poke =
+                new HostFunction(
+                        "env", "poke", FunctionType.accepting(ValType.I32), (inst, args) -> null);
+        var instance =
+                Instance.builder(module)
+                        .withImportValues(
+                                ImportValues.builder().addFunction(callback, peek, poke).build())
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withTierUpThreshold(5)
+                                        .withCompilationExecutor(counting(counts))
+                                        .compileLazily())
+                        .build();
+        var add = instance.export("add");
+        var count = instance.export("count");
+
+        for (int i = 1; i <= 20; i++) {
+            assertEquals(i * (i + 1L) / 2, add.apply(i)[0]);
+            assertEquals(3L * i, count.apply()[0]);
+        }
+        // both functions are hot on the second compilation, which compiles the whole module
+        assertEquals(2, counts.get());
+        assertFalse(machine(instance).isInterpreted(3));
+        assertFalse(machine(instance).isInterpreted(4));
+    }
+
+    @Test
+    public void shouldStayInterpretedWhenNothingIsHot() {
+        var module = module("fac.wat.wasm");
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withCompilationExecutor(
+                                                task -> {
+                                                    throw new AssertionError("compiled");
+                                                })
+                                        .compileLazily())
+                        .build();
+        assertEquals(120L, instance.export("fac-ssa").apply(5)[0]);
+        for (int funcId = 0; funcId <= 2; funcId++) {
+            assertTrue(machine(instance).isInterpreted(funcId));
+        }
+    }
+
+    @Test
+    public void shouldKeepMeteringFuelWithoutFuelMetering() {
+        var module = module("iterfact.wat.wasm");
+        var instance =
+                Instance.builder(module)
+                        .withFuel(1000)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withTierUpThreshold(5)
+                                        .withCompilationExecutor(Runnable::run)
+                                        .compileLazily())
+                        .build();
+        var iterFact = instance.export("iterFact");
+
+        // the compiled code can't run on a metered instance
+        for (int i = 0; i < 10; i++) {
+            assertEquals(120L, iterFact.apply(5)[0]);
+        }
+        assertTrue(machine(instance).isInterpreted(0));
+        assertEquals(1000 - 10 * 5, instance.fuel());
+    }
+
+    @Test
+    public void shouldCompileInTheBackground() throws Exception {
+        var module = module("iterfact.wat.wasm");
+        var executor = Executors.newSingleThreadExecutor();
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(module)
+                                        .withTierUpThreshold(5)
+                                        .withCompilationExecutor(executor)
+                                        .compileLazily())
+                        .build();
+        var iterFact = instance.export("iterFact");
+
+        assertEquals(120L, iterFact.apply(5)[0]);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertFalse(machine(instance).isInterpreted(0));
+        assertEquals(3628800L, iterFact.apply(10)[0]);
+    }
+}
@@ -0,0 +1,204 @@
+package com.dylibso.chicory.compiler.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.types.FunctionBody;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.ValType;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class WasmOptimizerTest {
+
+    // (param i32) (local i32 i64)
+    private static final FunctionType TYPE = FunctionType.of(List.of(ValType.I32), List.of());
+    private static final FunctionBody BODY =
+            new FunctionBody(List.of(ValType.I32, ValType.I64), List.of());
+
+    private static CompilerInstruction ins(CompilerOpCode opcode, long... operands) {
+        return new CompilerInstruction(opcode, operands);
+    }
+
+    private static List<CompilerInstruction> optimize(CompilerInstruction... instructions) {
+        return WasmOptimizer.optimize(List.of(instructions), TYPE, BODY);
+    }
+
+    @Test
+    public void shouldFoldConstants() {
+        assertEquals(
+                List.of(ins(CompilerOpCode.I32_CONST, 1), ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.I32_CONST, 6),
+                        ins(CompilerOpCode.I32_CONST, 7),
+                        ins(CompilerOpCode.I32_MUL),
+                        ins(CompilerOpCode.I32_CONST, 42),
+                        ins(CompilerOpCode.I32_EQ),
+                        ins(CompilerOpCode.RETURN)));
+        assertEquals(
+                List.of(ins(CompilerOpCode.I64_CONST, 0xFFFFFFFFL), ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.I32_CONST, -1),
+                        ins(CompilerOpCode.I64_EXTEND_I32_U),
+                        ins(CompilerOpCode.RETURN)));
+    }
+
+    @Test
+    public void shouldKeepTheTraps() {
+        var division =
+                List.of(
+                        ins(CompilerOpCode.I32_CONST, 1),
+                        ins(CompilerOpCode.I32_CONST, 0),
+                        ins(CompilerOpCode.I32_DIV_S),
+                        ins(CompilerOpCode.RETURN));
+        assertEquals(division, WasmOptimizer.optimize(division, TYPE, BODY));
+
+        var overflow =
+                List.of(
+                        ins(CompilerOpCode.I64_CONST, Long.MIN_VALUE),
+                        ins(CompilerOpCode.I64_CONST, -1),
+                        ins(CompilerOpCode.I64_DIV_S),
+                        ins(CompilerOpCode.RETURN));
+        assertEquals(overflow, WasmOptimizer.optimize(overflow, TYPE, BODY));
+    }
+
+    @Test
+    public void shouldRemoveTheIdentities() {
+        assertEquals(
+                List.of(ins(CompilerOpCode.LOCAL_GET, 0), ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.I32_CONST, 0),
+                        ins(CompilerOpCode.I32_ADD),
+                        ins(CompilerOpCode.I32_CONST, 1),
+                        ins(CompilerOpCode.I32_MUL),
+                        ins(CompilerOpCode.RETURN)));
+    }
+
+    @Test
+    public void shouldPropagateTheLocals() {
+        // local.set 1 (i32.const 5); local.get 1; local.get 1; i32.add
+        assertEquals(
+                List.of(ins(CompilerOpCode.I32_CONST, 10), ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.I32_CONST, 5),
+                        ins(CompilerOpCode.LOCAL_SET, 1),
+                        ins(CompilerOpCode.LOCAL_GET, 1),
+                        ins(CompilerOpCode.LOCAL_GET, 1),
+                        ins(CompilerOpCode.I32_ADD),
+                        ins(CompilerOpCode.RETURN)));
+
+        // the copy of the parameter is read instead of the local
+        assertEquals(
+                List.of(
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.I32_MUL),
+                        ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.LOCAL_SET, 1),
+                        ins(CompilerOpCode.LOCAL_GET, 1),
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.I32_MUL),
+                        ins(CompilerOpCode.RETURN)));
+    }
+
+    @Test
+    public void shouldForgetTheLocalsAtTheJumpTargets() {
+        var loop =
+                List.of(
+                        ins(CompilerOpCode.I32_CONST, 5),
+                        ins(CompilerOpCode.LOCAL_SET, 1),
+                        ins(CompilerOpCode.LABEL, 100),
+                        ins(CompilerOpCode.LOCAL_GET, 1),
+                        ins(CompilerOpCode.I32_CONST, 1),
+                        ins(CompilerOpCode.I32_SUB),
+                        ins(CompilerOpCode.LOCAL_TEE, 1, ValType.I32.id()),
+                        ins(CompilerOpCode.IFNE, 100),
+                        ins(CompilerOpCode.RETURN));
+        assertEquals(loop, WasmOptimizer.optimize(loop, TYPE, BODY));
+    }
+
+    @Test
+    public void shouldUseTeeForSetThenGet() {
+        assertEquals(
+                List.of(
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.I32_EQZ),
+                        ins(CompilerOpCode.LOCAL_TEE, 1, ValType.I32.id()),
+                        ins(CompilerOpCode.IFNE, 100),
+                        ins(CompilerOpCode.LOCAL_GET, 1),
+                        ins(CompilerOpCode.RETURN),
+                        ins(CompilerOpCode.LABEL, 100),
+                        ins(CompilerOpCode.I32_CONST, 7),
+                        ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.I32_EQZ),
+                        ins(CompilerOpCode.LOCAL_SET, 1),
+                        ins(CompilerOpCode.LOCAL_GET, 1),
+                        ins(CompilerOpCode.IFNE, 100),
+                        ins(CompilerOpCode.LOCAL_GET, 1),
+                        ins(CompilerOpCode.RETURN),
+                        ins(CompilerOpCode.LABEL, 100),
+                        ins(CompilerOpCode.I32_CONST, 7),
+                        ins(CompilerOpCode.RETURN)));
+    }
+
+    @Test
+    public void shouldRemoveTheDeadBranches() {
+        assertEquals(
+                List.of(ins(CompilerOpCode.I32_CONST, 7), ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.I32_CONST, 0),
+                        ins(CompilerOpCode.IFEQ, 100),
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.RETURN),
+                        ins(CompilerOpCode.LABEL, 100),
+                        ins(CompilerOpCode.I32_CONST, 7),
+                        ins(CompilerOpCode.RETURN)));
+        assertEquals(
+                List.of(ins(CompilerOpCode.LOCAL_GET, 0), ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.I32_CONST, 2),
+                        ins(CompilerOpCode.SWITCH, 100, 101, 102),
+                        ins(CompilerOpCode.LABEL, 100),
+                        ins(CompilerOpCode.I32_CONST, 7),
+                        ins(CompilerOpCode.RETURN),
+                        ins(CompilerOpCode.LABEL, 101),
+                        ins(CompilerOpCode.I32_CONST, 8),
+                        ins(CompilerOpCode.RETURN),
+                        ins(CompilerOpCode.LABEL, 102),
+                        ins(CompilerOpCode.LOCAL_GET, 0),
+                        ins(CompilerOpCode.RETURN)));
+    }
+
+    @Test
+    public void shouldRemoveTheDeadStores() {
+        assertEquals(
+                List.of(
+                        ins(CompilerOpCode.CALL, 0),
+                        ins(CompilerOpCode.DROP, ValType.I32.id()),
+                        ins(CompilerOpCode.RETURN)),
+                optimize(
+                        ins(CompilerOpCode.I64_CONST, 3),
+                        ins(CompilerOpCode.LOCAL_SET, 2),
+                        ins(CompilerOpCode.CALL, 0),
+                        ins(CompilerOpCode.LOCAL_TEE, 1, ValType.I32.id()),
+                        ins(CompilerOpCode.LOCAL_SET, 0),
+                        ins(CompilerOpCode.RETURN)));
+    }
+
+    @Test
+    public void shouldRunTheOptimizedCode() {
+        var module = Parser.parse(getClass().getResourceAsStream("/compiled/iterfact.wat.wasm"));
+        var instance =
+                Instance.builder(module)
+                        .withMachineFactory(MachineFactoryCompiler.builder(module).compile())
+                        .build();
+        assertEquals(3628800L, instance.export("iterFact").apply(10)[0]);
+    }
+}
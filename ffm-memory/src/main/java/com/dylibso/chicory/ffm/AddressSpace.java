@@ -0,0 +1,211 @@
+package com.dylibso.chicory.ffm;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.ChicoryException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.util.Locale;
+
+/**
+ * The native memory backing a {@link MemorySegmentMemory}.
+ *
+ * The maximum size is reserved up front with {@code mmap} or {@code VirtualAlloc}, so that the
+ * memory grows in place. The pages are only backed by physical memory once they are touched.
+ * When the native calls are not available, e.g. on a 32-bit JVM or when the native access
+ * is denied, or when the reservation fails, the memory is allocated in an {@link Arena} and
+ * copied when it grows.
+ */
+abstract class AddressSpace {
+
+    /**
+     * Returns the first {@code size} bytes of the address space, ready to be read and written.
+     * The bytes returned by the previous calls keep their values.
+     */
+    abstract MemorySegment grow(long size);
+
+    static AddressSpace reserve(long maxSize) {
+        if (maxSize > 0 && ADDRESS.byteSize() == Long.BYTES) {
+            try {
+                var os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+                if (os.startsWith("windows")) {
+                    return Windows.reserve(maxSize);
+                } else if (os.startsWith("linux") || os.startsWith("mac")) {
+                    return Posix.reserve(maxSize);
+                }
+            } catch (UnsupportedOperationException | IllegalCallerException | LinkageError e) {
+                // the native access is not available, the linkage errors come from
+                // the initialization of the method handles: allocate the memory instead
+            } catch (ChicoryException e) {
+                // the address space can't be reserved, e.g. beyond the virtual memory limit
+            }
+        }
+        return new Allocated();
+    }
+
+    private static MethodHandle downcall(
+            SymbolLookup lookup, String name, FunctionDescriptor descriptor) {
+        var symbol =
+                lookup.find(name)
+                        .orElseThrow(
+                                () -> new UnsupportedOperationException("Missing symbol: " + name));
+        return Linker.nativeLinker().downcallHandle(symbol, descriptor);
+    }
+
+    private static final class Posix extends AddressSpace {
+        private static final int PROT_READ = 0x1;
+        private static final int PROT_WRITE = 0x2;
+        private static final int MAP_PRIVATE = 0x2;
+        private static final boolean MAC =
+                System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("mac");
+        private static final int MAP_ANONYMOUS = MAC ? 0x1000 : 0x20;
+        private static final int MAP_NORESERVE = MAC ? 0x40 : 0x4000;
+        private static final long MAP_FAILED = -1L;
+
+        private static final MethodHandle MMAP =
+                downcall(
+                        Linker.nativeLinker().defaultLookup(),
+                        "mmap",
+                        FunctionDescriptor.of(
+                                ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT, JAVA_INT,
+                                JAVA_LONG));
+        private static final MethodHandle MUNMAP =
+                downcall(
+                        Linker.nativeLinker().defaultLookup(),
+                        "munmap",
+                        FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG));
+
+        private final MemorySegment reserved;
+
+        private Posix(MemorySegment reserved) {
+            this.reserved = reserved;
+        }
+
+        static AddressSpace reserve(long maxSize) {
+            // an anonymous mapping reads as zeros, and is backed by memory once written
+            MemorySegment address;
+            try {
+                address =
+                        (MemorySegment)
+                                MMAP.invokeExact(
+                                        MemorySegment.NULL,
+                                        maxSize,
+                                        PROT_READ | PROT_WRITE,
+                                        MAP_PRIVATE | MAP_ANONYMOUS | MAP_NORESERVE,
+                                        -1,
+                                        0L);
+            } catch (Throwable e) {
+                throw new ChicoryException("Failed to reserve the memory", e);
+            }
+            if (address.address() == MAP_FAILED) {
+                throw new ChicoryException(
+                        "Failed to reserve " + maxSize + " bytes of address space");
+            }
+            // unmapped once the memory is no longer reachable
+            return new Posix(address.reinterpret(maxSize, Arena.ofAuto(), s -> unmap(s, maxSize)));
+        }
+
+        private static void unmap(MemorySegment address, long size) {
+            try {
+                int result = (int) MUNMAP.invokeExact(address, size);
+                assert result == 0;
+            } catch (Throwable e) {
+                throw new ChicoryException("Failed to release the memory", e);
+            }
+        }
+
+        @Override
+        MemorySegment grow(long size) {
+            return reserved.asSlice(0, size);
+        }
+    }
+
+    private static final class Windows extends AddressSpace {
+        private static final int MEM_COMMIT = 0x1000;
+        private static final int MEM_RESERVE = 0x2000;
+        private static final int MEM_RELEASE = 0x8000;
+        private static final int PAGE_NOACCESS = 0x01;
+        private static final int PAGE_READWRITE = 0x04;
+
+        private static final SymbolLookup KERNEL32 =
+                SymbolLookup.libraryLookup("kernel32", Arena.global());
+        private static final MethodHandle VIRTUAL_ALLOC =
+                downcall(
+                        KERNEL32,
+                        "VirtualAlloc",
+                        FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT));
+        private static final MethodHandle VIRTUAL_FREE =
+                downcall(
+                        KERNEL32,
+                        "VirtualFree",
+                        FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, JAVA_INT));
+
+        private final MemorySegment reserved;
+        private long committed;
+
+        private Windows(MemorySegment reserved) {
+            this.reserved = reserved;
+        }
+
+        static AddressSpace reserve(long maxSize) {
+            // the reserved pages count against the commit limit only once they are committed
+            var address = virtualAlloc(MemorySegment.NULL, maxSize, MEM_RESERVE, PAGE_NOACCESS);
+            return new Windows(address.reinterpret(maxSize, Arena.ofAuto(), Windows::release));
+        }
+
+        private static MemorySegment virtualAlloc(
+                MemorySegment address, long size, int type, int protect) {
+            MemorySegment result;
+            try {
+                result = (MemorySegment) VIRTUAL_ALLOC.invokeExact(address, size, type, protect);
+            } catch (Throwable e) {
+                throw new ChicoryException("Failed to reserve the memory", e);
+            }
+            if (result.equals(MemorySegment.NULL)) {
+                throw new ChicoryException("Failed to allocate " + size + " bytes of memory");
+            }
+            return result;
+        }
+
+        private static void release(MemorySegment address) {
+            try {
+                int result = (int) VIRTUAL_FREE.invokeExact(address, 0L, MEM_RELEASE);
+                assert result != 0;
+            } catch (Throwable e) {
+                throw new ChicoryException("Failed to release the memory", e);
+            }
+        }
+
+        @Override
+        MemorySegment grow(long size) {
+            if (size > committed) {
+                // the committed pages read as zeros
+                virtualAlloc(
+                        reserved.asSlice(committed), size - committed, MEM_COMMIT, PAGE_READWRITE);
+                committed = size;
+            }
+            return reserved.asSlice(0, size);
+        }
+    }
+
+    private static final class Allocated extends AddressSpace {
+        private MemorySegment segment = MemorySegment.NULL;
+
+        @Override
+        MemorySegment grow(long size) {
+            if (size > segment.byteSize()) {
+                var next = Arena.ofAuto().allocate(size, Memory.PAGE_SIZE);
+                MemorySegment.copy(segment, 0, next, 0, segment.byteSize());
+                segment = next;
+            }
+            return segment.asSlice(0, size);
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package com.dylibso.chicory.ffm;
+
+import static com.dylibso.chicory.runtime.ConstantEvaluators.computeConstantValue;
+import static java.lang.Math.min;
+
+import com.dylibso.chicory.runtime.ChicoryInterruptedException;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.runtime.WasmRuntimeException;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.UninstantiableException;
+import com.dylibso.chicory.wasm.types.ActiveDataSegment;
+import com.dylibso.chicory.wasm.types.DataSegment;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import com.dylibso.chicory.wasm.types.PassiveDataSegment;
+import com.dylibso.chicory.wasm.types.ValType;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents the linear memory in the Wasm program, stored off-heap in a {@link MemorySegment}.
+ *
+ * Unlike the memories backed by a Java array or buffer, it supports the full 4 GiB address space
+ * of Wasm: the addresses are read as unsigned 32-bit integers, e.g. {@code readInt(0x80000000)}
+ * reads the bytes at 2 GiB.
+ * The address space of the maximum size is reserved when the memory is created, and the memory
+ * grows in place, only the pages that are touched are backed by physical memory.
+ *
+ * The memory is released when it's no longer reachable.
+ */
+public final class MemorySegmentMemory implements Memory {
+    private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+    private static final ValueLayout.OfShort SHORT =
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT =
+            ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE =
+            ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    // the atomic accesses are aligned
+    private static final VarHandle ATOMIC_INT =
+            ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN).varHandle();
+    private static final VarHandle ATOMIC_LONG =
+            ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN).varHandle();
+
+    private final MemoryLimits limits;
+    private final AddressSpace addressSpace;
+    private DataSegment[] dataSegments;
+    // the current pages, the accesses beyond them are out of bounds
+    private MemorySegment segment;
+    private int nPages;
+
+    public MemorySegmentMemory(MemoryLimits limits) {
+        this.limits = limits;
+        this.addressSpace = AddressSpace.reserve(sizeOf(maximumPages()));
+        this.nPages = limits.initialPages();
+        this.segment = addressSpace.grow(sizeOf(nPages));
+        if (limits.shared()) {
+            monitors = new ConcurrentHashMap<>();
+            notifyInProgress = new ConcurrentHashMap<>();
+        } else {
+            monitors = null;
+            notifyInProgress = null;
+        }
+    }
+
+    private static long sizeOf(int pages) {
+        return (long) PAGE_SIZE * pages;
+    }
+
+    // atomic wait handling
+    private final Map<Integer, AtomicInteger> monitors;
+    private final Map<Integer, AtomicInteger> notifyInProgress;
+
+    @Override
+    public Object lock(int address) {
+        if (!shared()) {
+            // disable locking
+            return new Object();
+        }
+        return monitors.computeIfAbsent(address, k -> new AtomicInteger(0));
+    }
+
+    private AtomicInteger nextMonitor(int address) {
+        return monitors.compute(
+                address,
+                (k, v) -> {
+                    if (v == null) {
+                        return new AtomicInteger(1);
+                    } else {
+                        v.incrementAndGet();
+                        return v;
+                    }
+                });
+    }
+
+    // this method should only be invoked guarded in a "synchronized (monitor)" section
+    private int waitOnMonitor(int address, long timeout, AtomicInteger monitor) {
+        long endTime = System.nanoTime() + timeout;
+        try {
+            while (!notifyInProgress.containsKey(address) // prevents spurious wakeup
+                    && System.nanoTime() < endTime) {
+                var waitTime = endTime - System.nanoTime();
+                long millis = Math.max(waitTime / 1_000_000L, 0);
+                int nanos = Math.max((int) (waitTime % 1_000_000L), 0);
+                monitor.wait(millis, nanos);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt(); // Restore interrupt status
+            throw new ChicoryInterruptedException("Thread interrupted");
+        }
+        if (System.nanoTime() >= endTime) {
+            return 2; // timeout
+        } else {
+            return 0; // wake
+        }
+    }
+
+    private void endWaitOn(int address) {
+        AtomicInteger notifyCount = notifyInProgress.get(address);
+        if (notifyCount != null && notifyCount.decrementAndGet() == 0) {
+            notifyInProgress.remove(address);
+        }
+        AtomicInteger monitor = monitors.get(address);
+        if (monitor != null && monitor.decrementAndGet() == 0) {
+            monitors.remove(address);
+        }
+    }
+
+    // Wait until value at address != expected
+    @Override
+    public int waitOn(int address, int expected, long timeout) {
+        if (!shared()) {
+            throw new ChicoryException("Attempt to wait on a non-shared memory, not supported.");
+        }
+        AtomicInteger monitor = nextMonitor(address);
+
+        synchronized (monitor) {
+            try {
+                VarHandle.acquireFence();
+                if (readInt(address) == expected) {
+                    return waitOnMonitor(
+                            address, (timeout < 0) ? Long.MAX_VALUE : timeout, monitor);
+                } else {
+                    return 1; // not-equal
+                }
+            } finally {
+                endWaitOn(address);
+            }
+        }
+    }
+
+    @Override
+    public int waitOn(int address, long expected, long timeout) {
+        if (!shared()) {
+            throw new ChicoryException("Attempt to wait on a non-shared memory, not supported.");
+        }
+        AtomicInteger monitor = nextMonitor(address);
+
+        synchronized (monitor) {
+            try {
+                VarHandle.acquireFence();
+                if (readLong(address) == expected) {
+                    return waitOnMonitor(
+                            address, (timeout < 0) ? Long.MAX_VALUE : timeout, monitor);
+                } else {
+                    return 1; // not-equal
+                }
+            } finally {
+                endWaitOn(address);
+            }
+        }
+    }
+
+    // Notify all waiters at this address
+    @Override
+    public int notify(int address, int maxThreads) {
+        if (!shared()) {
+            return 0;
+        }
+
+        AtomicInteger monitor = monitors.get(address);
+        if (monitor == null) {
+            return 0;
+        }
+
+        synchronized (monitor) {
+            if (maxThreads < 0 || monitor.get() < maxThreads) {
+                notifyInProgress.put(address, new AtomicInteger(monitor.get()));
+                monitor.notifyAll();
+            } else {
+                var count = maxThreads;
+                notifyInProgress.put(address, new AtomicInteger(monitor.get() - maxThreads));
+                while (monitor.get() > 0 && count > 0) {
+                    monitor.notify();
+                    count--;
+                }
+            }
+        }
+        if (monitor.get() <= 0) {
+            monitors.remove(address);
+        }
+        return monitor.get();
+    }
+
+    // the atomic accesses are lock-free, the monitors are only used by wait and notify
+    @Override
+    public int atomicReadInt(int addr) {
+        try {
+            return (int) ATOMIC_INT.getVolatile(segment, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicReadLong(int addr) {
+        try {
+            return (long) ATOMIC_LONG.getVolatile(segment, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void atomicWriteInt(int addr, int value) {
+        try {
+            ATOMIC_INT.setVolatile(segment, Integer.toUnsignedLong(addr), value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void atomicWriteLong(int addr, long value) {
+        try {
+            ATOMIC_LONG.setVolatile(segment, Integer.toUnsignedLong(addr), value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public int atomicCompareAndExchangeInt(int addr, int expected, int value) {
+        try {
+            return (int)
+                    ATOMIC_INT.compareAndExchange(
+                            segment, Integer.toUnsignedLong(addr), expected, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicCompareAndExchangeLong(int addr, long expected, long value) {
+        try {
+            return (long)
+                    ATOMIC_LONG.compareAndExchange(
+                            segment, Integer.toUnsignedLong(addr), expected, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public int atomicGetAndAddInt(int addr, int delta) {
+        try {
+            return (int) ATOMIC_INT.getAndAdd(segment, Integer.toUnsignedLong(addr), delta);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicGetAndAddLong(int addr, long delta) {
+        try {
+            return (long) ATOMIC_LONG.getAndAdd(segment, Integer.toUnsignedLong(addr), delta);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public int atomicGetAndSetInt(int addr, int value) {
+        try {
+            return (int) ATOMIC_INT.getAndSet(segment, Integer.toUnsignedLong(addr), value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicGetAndSetLong(int addr, long value) {
+        try {
+            return (long) ATOMIC_LONG.getAndSet(segment, Integer.toUnsignedLong(addr), value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    /**
+     * Gets the size of the memory in number of pages
+     */
+    @Override
+    public int pages() {
+        return nPages;
+    }
+
+    @Override
+    public int grow(int size) {
+        var prevPages = nPages;
+        var numPages = prevPages + size;
+
+        if (numPages > maximumPages() || numPages < prevPages) {
+            return -1;
+        }
+
+        // the address space is already reserved: nothing is copied
+        segment = addressSpace.grow(sizeOf(numPages));
+        nPages = numPages;
+        return prevPages;
+    }
+
+    @Override
+    public int initialPages() {
+        return this.limits.initialPages();
+    }
+
+    @Override
+    public int maximumPages() {
+        return min(this.limits.maximumPages(), MemoryLimits.MAX_PAGES);
+    }
+
+    @Override
+    public boolean shared() {
+        return this.limits.shared();
+    }
+
+    @Override
+    public void initialize(Instance instance, DataSegment[] dataSegments) {
+        this.dataSegments = dataSegments;
+        if (dataSegments == null) {
+            return;
+        }
+
+        for (var s : dataSegments) {
+            if (s instanceof ActiveDataSegment) {
+                var segment = (ActiveDataSegment) s;
+                var offsetExpr = segment.offsetInstructions();
+                var data = segment.data();
+                var offset = computeConstantValue(instance, offsetExpr)[0];
+                // the offset is an unsigned i32, or an unsigned i64 with a 64-bit memory
+                var address =
+                        limits.addressType().equals(ValType.I64)
+                                ? offset
+                                : Integer.toUnsignedLong((int) offset);
+                if (address < 0 || address + data.length > sizeInBytes()) {
+                    throw new UninstantiableException(
+                            "out of bounds memory access: attempted to access address: "
+                                    + Long.toUnsignedString(address)
+                                    + " but limit is: "
+                                    + sizeInBytes()
+                                    + " and size: "
+                                    + data.length);
+                }
+                MemorySegment.copy(data, 0, this.segment, BYTE, address, data.length);
+            } else if (s instanceof PassiveDataSegment) {
+                // Passive segment should be skipped
+            } else {
+                throw new ChicoryException("Data segment should be active or passive: " + s);
+            }
+        }
+    }
+
+    private static String outOfBoundsMessage(int addr, long size, long limit) {
+        return "out of bounds memory access: attempted to access address: "
+                + Integer.toUnsignedString(addr)
+                + " but limit is: "
+                + limit
+                + " and size: "
+                + size;
+    }
+
+    private static RuntimeException outOfBoundsException(
+            RuntimeException e, int addr, long size, long limit) {
+        if (e instanceof IndexOutOfBoundsException
+                || e instanceof IllegalArgumentException
+                || e instanceof NegativeArraySizeException) {
+            return new WasmRuntimeException(outOfBoundsMessage(addr, size, limit));
+        } else {
+            return e;
+        }
+    }
+
+    @Override
+    public void initPassiveSegment(int segmentId, int dest, int offset, int size) {
+        var segment = dataSegments[segmentId];
+        write(dest, segment.data(), offset, size);
+    }
+
+    private long sizeInBytes() {
+        return segment.byteSize();
+    }
+
+    @Override
+    public void write(int addr, byte[] data, int offset, int size) {
+        try {
+            MemorySegment.copy(data, offset, segment, BYTE, Integer.toUnsignedLong(addr), size);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, size, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void write(int addr, ByteBuffer data) {
+        var size = data.remaining();
+        try {
+            segment.asSlice(Integer.toUnsignedLong(addr), size)
+                    .copyFrom(MemorySegment.ofBuffer(data));
+            data.position(data.limit());
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, size, sizeInBytes());
+        }
+    }
+
+    @Override
+    public byte read(int addr) {
+        try {
+            return segment.get(BYTE, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 1, sizeInBytes());
+        }
+    }
+
+    @Override
+    public byte[] readBytes(int addr, int len) {
+        try {
+            var bytes = new byte[len];
+            MemorySegment.copy(segment, BYTE, Integer.toUnsignedLong(addr), bytes, 0, len);
+            return bytes;
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, len, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void readInto(int addr, byte[] dest, int offset, int len) {
+        try {
+            MemorySegment.copy(segment, BYTE, Integer.toUnsignedLong(addr), dest, offset, len);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, len, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void readInto(int addr, ByteBuffer dest) {
+        var len = dest.remaining();
+        try {
+            MemorySegment.ofBuffer(dest)
+                    .copyFrom(segment.asSlice(Integer.toUnsignedLong(addr), len));
+            dest.position(dest.limit());
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, len, sizeInBytes());
+        }
+    }
+
+    @Override
+    public ByteBuffer view(int addr, int len) {
+        try {
+            return segment.asSlice(Integer.toUnsignedLong(addr), len)
+                    .asByteBuffer()
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, len, sizeInBytes());
+        }
+    }
+
+    @Override
+    public ByteBuffer readOnlyView(int addr, int len) {
+        return view(addr, len).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int transferFrom(ReadableByteChannel channel, int addr, int len) throws IOException {
+        var buffer = view(addr, len);
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            // keep reading
+        }
+        return buffer.position();
+    }
+
+    @Override
+    public void writeI32(int addr, int data) {
+        try {
+            segment.set(INT, Integer.toUnsignedLong(addr), data);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public int readInt(int addr) {
+        try {
+            return segment.get(INT, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void writeLong(int addr, long data) {
+        try {
+            segment.set(LONG, Integer.toUnsignedLong(addr), data);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long readLong(int addr) {
+        try {
+            return segment.get(LONG, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void writeShort(int addr, short data) {
+        try {
+            segment.set(SHORT, Integer.toUnsignedLong(addr), data);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 2, sizeInBytes());
+        }
+    }
+
+    @Override
+    public short readShort(int addr) {
+        try {
+            return segment.get(SHORT, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 2, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long readU16(int addr) {
+        try {
+            return segment.get(SHORT, Integer.toUnsignedLong(addr)) & 0xffff;
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 2, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void writeByte(int addr, byte data) {
+        try {
+            segment.set(BYTE, Integer.toUnsignedLong(addr), data);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 1, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void writeF32(int addr, float data) {
+        try {
+            segment.set(FLOAT, Integer.toUnsignedLong(addr), data);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long readF32(int addr) {
+        try {
+            return segment.get(INT, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public float readFloat(int addr) {
+        try {
+            return segment.get(FLOAT, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void writeF64(int addr, double data) {
+        try {
+            segment.set(DOUBLE, Integer.toUnsignedLong(addr), data);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public double readDouble(int addr) {
+        try {
+            return segment.get(DOUBLE, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long readF64(int addr) {
+        try {
+            return segment.get(LONG, Integer.toUnsignedLong(addr));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void zero() {
+        segment.fill((byte) 0);
+    }
+
+    @Override
+    public void fill(byte value, int fromIndex, int toIndex) {
+        var from = Integer.toUnsignedLong(fromIndex);
+        var to = Integer.toUnsignedLong(toIndex);
+        if (to < from) {
+            // the end has been computed with an int addition that overflowed
+            to += 1L << 32;
+        }
+        try {
+            segment.asSlice(from, to - from).fill(value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, fromIndex, to - from, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void copy(int dest, int src, int size) {
+        try {
+            MemorySegment.copy(
+                    segment,
+                    Integer.toUnsignedLong(src),
+                    segment,
+                    Integer.toUnsignedLong(dest),
+                    Integer.toUnsignedLong(size));
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(
+                    e,
+                    Integer.compareUnsigned(src, dest) > 0 ? src : dest,
+                    Integer.toUnsignedLong(size),
+                    sizeInBytes());
+        }
+    }
+
+    @Override
+    public void drop(int segment) {
+        dataSegments[segment] = PassiveDataSegment.EMPTY;
+    }
+}
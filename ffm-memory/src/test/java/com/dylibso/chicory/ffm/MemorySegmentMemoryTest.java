@@ -0,0 +1,138 @@
+package com.dylibso.chicory.ffm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.runtime.AtomicOps;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.WasmRuntimeException;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import org.junit.jupiter.api.Test;
+
+public class MemorySegmentMemoryTest {
+
+    @Test
+    public void shouldGrowInPlace() {
+        var memory = new MemorySegmentMemory(new MemoryLimits(1, 4));
+        memory.writeLong(8, 0x0102030405060708L);
+
+        assertEquals(1, memory.grow(3));
+        assertEquals(4, memory.pages());
+        assertEquals(0x0102030405060708L, memory.readLong(8));
+        assertEquals(0L, memory.readLong(3 * 65536));
+        assertEquals(-1, memory.grow(1));
+
+        memory.writeI32(4 * 65536 - 4, 42);
+        assertEquals(42, memory.readInt(4 * 65536 - 4));
+        assertThrows(WasmRuntimeException.class, () -> memory.readInt(4 * 65536 - 3));
+        assertThrows(WasmRuntimeException.class, () -> memory.readInt(-4));
+    }
+
+    @Test
+    public void shouldUseTheBulkOperations() {
+        var memory = new MemorySegmentMemory(new MemoryLimits(1));
+        memory.write(10, new byte[] {1, 2, 3, 4});
+        memory.copy(12, 10, 4);
+        assertArrayEquals(new byte[] {1, 2, 1, 2, 3, 4}, memory.readBytes(10, 6));
+
+        memory.fill((byte) 7, 11, 13);
+        assertArrayEquals(new byte[] {1, 7, 7, 2, 3, 4}, memory.readBytes(10, 6));
+        assertThrows(WasmRuntimeException.class, () -> memory.fill((byte) 0, 65530, 65540));
+        assertThrows(WasmRuntimeException.class, () -> memory.copy(0, 65530, 10));
+    }
+
+    @Test
+    public void shouldViewTheMemory() throws IOException {
+        var memory = new MemorySegmentMemory(new MemoryLimits(1));
+        var view = memory.view(16, 8);
+        view.putLong(0, 0x0102030405060708L);
+        assertEquals(0x0102030405060708L, memory.readLong(16));
+        assertEquals(0x05060708, memory.readOnlyView(16, 8).getInt(0));
+        assertThrows(WasmRuntimeException.class, () -> memory.view(65530, 8));
+
+        var dest = ByteBuffer.allocate(4);
+        memory.readInto(16, dest);
+        assertArrayEquals(new byte[] {8, 7, 6, 5}, dest.array());
+        memory.write(32, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        assertArrayEquals(new byte[] {1, 2, 3}, memory.readBytes(32, 3));
+
+        var out = new ByteArrayOutputStream();
+        assertEquals(3, memory.transferTo(32, 3, Channels.newChannel(out)));
+        assertArrayEquals(new byte[] {1, 2, 3}, out.toByteArray());
+    }
+
+    @Test
+    public void shouldUseAtomicAccesses() {
+        var memory = new MemorySegmentMemory(new MemoryLimits(1, 1, true));
+        memory.atomicWriteInt(8, 41);
+        assertEquals(41, memory.atomicGetAndAddInt(8, 1));
+        assertEquals(42, memory.atomicCompareAndExchangeInt(8, 42, 7));
+        assertEquals(7, memory.atomicGetAndSetInt(8, 0x11223344));
+        assertEquals(0x22, AtomicOps.rmw8(memory, 10, 1, AtomicOps.ADD));
+        assertEquals(0x11233344, memory.readInt(8));
+
+        memory.atomicWriteLong(16, -1L);
+        assertEquals(-1L, memory.atomicCompareAndExchangeLong(16, -1L, 5L));
+        assertEquals(5L, memory.atomicGetAndAddLong(16, 1L));
+        assertEquals(6L, memory.atomicReadLong(16));
+        assertThrows(WasmRuntimeException.class, () -> memory.atomicReadInt(65536));
+    }
+
+    @Test
+    public void shouldAddressTheWhole4GiB() {
+        var instance =
+                Instance.builder(
+                                Parser.parse(
+                                        MemorySegmentMemoryTest.class.getResourceAsStream(
+                                                "/compiled/memory-4gib.wat.wasm")))
+                        .withMemoryFactory(MemorySegmentMemory::new)
+                        .build();
+        var store = instance.export("store");
+        var load = instance.export("load");
+
+        assertEquals(1L, instance.export("grow").apply(65535)[0]);
+        assertEquals(65536, instance.memory().pages());
+
+        store.apply(0x80000000L, 123L);
+        assertEquals(123L, load.apply(0x80000000L)[0]);
+        assertEquals(123L, instance.export("load_high").apply(0L)[0]);
+
+        store.apply(0xFFFFFFF8L, 456L);
+        assertEquals(456L, load.apply(0xFFFFFFF8L)[0]);
+        assertThrows(WasmRuntimeException.class, () -> load.apply(0xFFFFFFF9L));
+        assertThrows(
+                WasmRuntimeException.class, () -> instance.export("load_high").apply(0x80000000L));
+
+        // up to the very last byte
+        instance.export("fill").apply(0xFFFF0000L, 1L, 0x10000L);
+        assertEquals(0x0101010101010101L, load.apply(0xFFFFFFF8L)[0]);
+        assertThrows(
+                WasmRuntimeException.class,
+                () -> instance.export("fill").apply(0xFFFF0000L, 1L, 0x10001L));
+    }
+
+    @Test
+    public void shouldAddressA64BitMemoryAbove2GiB() {
+        var instance =
+                Instance.builder(
+                                Parser.parse(
+                                        MemorySegmentMemoryTest.class.getResourceAsStream(
+                                                "/compiled/memory64.wat.wasm")))
+                        .withMemoryFactory(MemorySegmentMemory::new)
+                        .build();
+        var store = instance.export("store");
+        var load = instance.export("load");
+
+        assertEquals(1L, instance.export("grow").apply(65535L)[0]);
+        store.apply(0xFFFFFFF8L, 123L);
+        assertEquals(123L, load.apply(0xFFFFFFF8L)[0]);
+        assertThrows(WasmRuntimeException.class, () -> load.apply(0x1_0000_0000L));
+        assertThrows(WasmRuntimeException.class, () -> load.apply(0x1_FFFF_FFF8L));
+    }
+}
@@ -0,0 +1,109 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.ByteArrayMemory;
+import com.dylibso.chicory.runtime.ByteBufferMemory;
+import com.dylibso.chicory.runtime.ChunkedMemory;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.ImportMemory;
+import com.dylibso.chicory.runtime.ImportValues;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.InterpreterMachine;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Guest threads incrementing a counter in a shared memory with {@code i32.atomic.rmw.add}, each
+ * thread running its own instance of the module on the same memory.
+ *
+ * The ByteBufferMemory runs the atomic accesses synchronized on a monitor, the other memories
+ * are lock-free. Run with {@code -t} to change the number of threads.
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Threads(4)
+public class BenchmarkAtomics {
+
+    private static final File COUNTER =
+            new File("wasm-corpus/src/main/resources/compiled/atomic-counter.wat.wasm");
+
+    private static final int INCREMENTS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class SharedMemory {
+        @Param({"byte-array", "byte-buffer", "chunked"})
+        private String memory;
+
+        @Param({"compiler", "interpreter"})
+        private String machine;
+
+        WasmModule module;
+        Memory shared;
+
+        @Setup
+        public void setup() {
+            module = Parser.parse(COUNTER);
+            var limits = new MemoryLimits(1, 1, true);
+            switch (memory) {
+                case "byte-array":
+                    shared = new ByteArrayMemory(limits);
+                    break;
+                case "byte-buffer":
+                    shared = new ByteBufferMemory(limits);
+                    break;
+                case "chunked":
+                    shared = new ChunkedMemory(limits);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown memory " + memory);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class GuestThread {
+        ExportFunction increment;
+
+        @Setup
+        public void setup(SharedMemory state) {
+            var builder =
+                    Instance.builder(state.module)
+                            .withImportValues(
+                                    ImportValues.builder()
+                                            .addMemory(
+                                                    new ImportMemory("env", "memory", state.shared))
+                                            .build());
+            if (state.machine.equals("compiler")) {
+                builder.withMachineFactory(MachineFactoryCompiler::compile);
+            } else {
+                builder.withMachineFactory(InterpreterMachine::new);
+            }
+            increment = builder.build().export("increment");
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkIncrement(GuestThread thread, Blackhole bh) {
+        bh.consume(thread.increment.apply(0, INCREMENTS));
+    }
+}
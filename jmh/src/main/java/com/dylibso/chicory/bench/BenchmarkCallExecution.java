@@ -0,0 +1,77 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.runtime.BytecodeInterpreterMachine;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.InterpreterMachine;
+import com.dylibso.chicory.runtime.RegisterInterpreterMachine;
+import com.dylibso.chicory.runtime.ThreadedInterpreterMachine;
+import com.dylibso.chicory.wasm.Parser;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A call-heavy workload: each iteration of {@code fac-ssa} makes four calls to tiny functions.
+ *
+ * Run it with {@code -prof gc}: for the bytecode interpreters {@code gc.alloc.rate.norm} is the
+ * same for every {@code input}, as only the export call itself allocates, and not the
+ * {@code 4 * input} calls between the Wasm functions.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkCallExecution {
+
+    private static final File FAC =
+            new File("wasm-corpus/src/main/resources/compiled/fac.wat.wasm");
+
+    @Param({"interpreter", "bytecode", "register", "threaded"})
+    private String machine;
+
+    @Param({"10", "1000"})
+    private long input;
+
+    ExportFunction fac;
+
+    @Setup
+    public void setup() {
+        var builder = Instance.builder(Parser.parse(FAC));
+        switch (machine) {
+            case "interpreter":
+                builder.withMachineFactory(InterpreterMachine::new);
+                break;
+            case "bytecode":
+                builder.withMachineFactory(BytecodeInterpreterMachine::new);
+                break;
+            case "register":
+                builder.withMachineFactory(RegisterInterpreterMachine::new);
+                break;
+            case "threaded":
+                builder.withMachineFactory(ThreadedInterpreterMachine::new);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown machine " + machine);
+        }
+        fac = builder.build().export("fac-ssa");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkCalls(Blackhole bh) {
+        bh.consume(fac.apply(input));
+    }
+}
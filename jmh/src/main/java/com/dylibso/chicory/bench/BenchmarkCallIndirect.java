@@ -0,0 +1,70 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.compiler.CallIndirectDispatch;
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A loop of {@code call_indirect} in compiled code: {@code cache} calls two functions in turn
+ * and {@code megamorphic} six.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkCallIndirect {
+
+    private static final long INPUT = 1200;
+
+    @Param({"SWITCH", "METHOD_HANDLES"})
+    private CallIndirectDispatch dispatch;
+
+    @Param({"cache", "megamorphic"})
+    private String module;
+
+    ExportFunction sum;
+
+    @Setup
+    public void setup() {
+        var wasm =
+                Parser.parse(
+                        new File(
+                                "wasm-corpus/src/main/resources/compiled/call_indirect-"
+                                        + module
+                                        + ".wat.wasm"));
+        sum =
+                Instance.builder(wasm)
+                        .withMachineFactory(
+                                MachineFactoryCompiler.builder(wasm)
+                                        .withCallIndirectDispatch(dispatch)
+                                        .withInterruptionPolicy(
+                                                com.dylibso.chicory.compiler.InterruptionPolicy
+                                                        .NONE)
+                                        .compile())
+                        .build()
+                        .export("sum");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkCallIndirect(Blackhole bh) {
+        bh.consume(sum.apply(INPUT));
+    }
+}
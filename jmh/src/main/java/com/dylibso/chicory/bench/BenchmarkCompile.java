@@ -0,0 +1,58 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.compiler.internal.ClassLoadingCollector;
+import com.dylibso.chicory.compiler.internal.Compiler;
+import com.dylibso.chicory.corpus.WatGenerator;
+import com.dylibso.chicory.wabt.Wat2Wasm;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The wall-clock time to compile a module of many functions, in sequence and on the cores of the
+ * common ForkJoinPool.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BenchmarkCompile {
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    @Param("20000")
+    private int functions;
+
+    private WasmModule module;
+
+    @Setup
+    public void setup() {
+        module = Parser.parse(Wat2Wasm.parse(WatGenerator.bigWat(functions, 20)));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void compile(Blackhole bh) {
+        bh.consume(
+                Compiler.builder(module)
+                        .withParallelCompilation(parallel)
+                        .withClassCollectorFactory(ClassLoadingCollector::new)
+                        .build()
+                        .compile()
+                        .classBytes());
+    }
+}
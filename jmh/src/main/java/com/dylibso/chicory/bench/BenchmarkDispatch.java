@@ -0,0 +1,74 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.InterpreterMachine;
+import com.dylibso.chicory.runtime.RegisterInterpreterMachine;
+import com.dylibso.chicory.runtime.ThreadedInterpreterMachine;
+import com.dylibso.chicory.wasm.Parser;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the dispatch of the interpreters on loops of simple instructions: the {@code switch}
+ * of the {@link InterpreterMachine} and of the {@link RegisterInterpreterMachine}, and the handlers
+ * of the {@link ThreadedInterpreterMachine}, executing the same register code.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+public class BenchmarkDispatch {
+
+    private static final File FUSION =
+            new File("wasm-corpus/src/main/resources/compiled/fusion.wat.wasm");
+
+    @Param({"interpreter", "register", "threaded"})
+    private String machine;
+
+    @Param({"add_locals", "count_down", "load"})
+    private String workload;
+
+    @Param("1000")
+    private int input;
+
+    ExportFunction function;
+
+    @Setup
+    public void setup() {
+        var builder = Instance.builder(Parser.parse(FUSION));
+        switch (machine) {
+            case "interpreter":
+                builder.withMachineFactory(InterpreterMachine::new);
+                break;
+            case "register":
+                builder.withMachineFactory(RegisterInterpreterMachine::new);
+                break;
+            case "threaded":
+                builder.withMachineFactory(ThreadedInterpreterMachine::new);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown machine " + machine);
+        }
+        function = builder.build().export(workload);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkDispatch(Blackhole bh) {
+        bh.consume(function.apply(input));
+    }
+}
@@ -0,0 +1,77 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.BytecodeInterpreterMachine;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.InterpreterMachine;
+import com.dylibso.chicory.wasm.Parser;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The cost of fuel metering on a call-heavy loop: every iteration of {@code fac-ssa} enters four
+ * functions and jumps back once, so it consumes five units of fuel.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkFuel {
+
+    private static final File FAC =
+            new File("wasm-corpus/src/main/resources/compiled/fac.wat.wasm");
+
+    @Param({"interpreter", "bytecode", "compiler"})
+    private String machine;
+
+    @Param({"false", "true"})
+    private boolean fuel;
+
+    private static final long INPUT = 1000;
+
+    ExportFunction fac;
+
+    @Setup
+    public void setup() {
+        var module = Parser.parse(FAC);
+        var builder = Instance.builder(module);
+        switch (machine) {
+            case "interpreter":
+                builder.withMachineFactory(InterpreterMachine::new);
+                break;
+            case "bytecode":
+                builder.withMachineFactory(BytecodeInterpreterMachine::new);
+                break;
+            case "compiler":
+                builder.withMachineFactory(
+                        MachineFactoryCompiler.builder(module).withFuelMetering(fuel).compile());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown machine " + machine);
+        }
+        if (fuel) {
+            builder.withFuel(Long.MAX_VALUE);
+        }
+        fac = builder.build().export("fac-ssa");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkFuel(Blackhole bh) {
+        bh.consume(fac.apply(INPUT));
+    }
+}
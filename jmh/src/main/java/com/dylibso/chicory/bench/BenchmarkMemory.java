@@ -0,0 +1,91 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.ByteArrayMemory;
+import com.dylibso.chicory.runtime.ByteBufferMemory;
+import com.dylibso.chicory.runtime.ChunkedMemory;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The memory implementations compared on a memory grown one page at a time, as by a guest
+ * allocating incrementally, and on the loads and stores of a loop run by the compiler.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BenchmarkMemory {
+
+    @Param({"byte-array", "byte-buffer", "chunked"})
+    private String memory;
+
+    // 128 MiB
+    @Param("2048")
+    private int pages;
+
+    private static final File FUSION =
+            new File("wasm-corpus/src/main/resources/compiled/fusion.wat.wasm");
+
+    private static final int INPUT = 10000;
+
+    ExportFunction load;
+
+    @Setup
+    public void setup() {
+        var module = Parser.parse(FUSION);
+        load =
+                Instance.builder(module)
+                        .withMachineFactory(MachineFactoryCompiler::compile)
+                        .withMemoryFactory(this::newMemory)
+                        .build()
+                        .export("load");
+    }
+
+    private Memory newMemory(MemoryLimits limits) {
+        switch (memory) {
+            case "byte-array":
+                return new ByteArrayMemory(limits);
+            case "byte-buffer":
+                return new ByteBufferMemory(limits);
+            case "chunked":
+                return new ChunkedMemory(limits);
+            default:
+                throw new IllegalArgumentException("Unknown memory " + memory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public Memory benchmarkGrow() {
+        var grown = newMemory(new MemoryLimits(1, pages));
+        for (int i = 1; i < pages; i++) {
+            grown.grow(1);
+        }
+        return grown;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkAccess(Blackhole bh) {
+        bh.consume(load.apply(INPUT));
+    }
+}
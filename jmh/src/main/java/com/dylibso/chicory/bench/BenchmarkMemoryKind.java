@@ -0,0 +1,88 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.compiler.MemoryKind;
+import com.dylibso.chicory.runtime.ByteArrayMemory;
+import com.dylibso.chicory.runtime.ByteBufferMemory;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A loop of loads and stores run by the compiler, with the code compiled for any memory or
+ * specialized for the memory of the instance.
+ *
+ * The code compiled for any memory first runs on an instance with the other memory as well,
+ * as when a machine factory is shared by instances with different memories, so that its
+ * accesses are not monomorphic.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkMemoryKind {
+
+    private static final File FUSION =
+            new File("wasm-corpus/src/main/resources/compiled/fusion.wat.wasm");
+
+    @Param({"BYTE_BUFFER", "BYTE_ARRAY"})
+    private MemoryKind memory;
+
+    @Param({"true", "false"})
+    private boolean specialized;
+
+    @Param("10000")
+    private int input;
+
+    ExportFunction load;
+
+    @Setup
+    public void setup() {
+        var module = Parser.parse(FUSION);
+        var machineFactory =
+                MachineFactoryCompiler.builder(module)
+                        .withMemoryKind(specialized ? memory : MemoryKind.ANY)
+                        .compile();
+        var builder = Instance.builder(module).withMachineFactory(machineFactory);
+        if (!specialized) {
+            var other =
+                    memory == MemoryKind.BYTE_ARRAY
+                            ? MemoryKind.BYTE_BUFFER
+                            : MemoryKind.BYTE_ARRAY;
+            var warmup = withMemory(builder, other).build().export("load");
+            for (int i = 0; i < 20_000; i++) {
+                warmup.apply(input);
+            }
+        }
+        load = withMemory(builder, memory).build().export("load");
+    }
+
+    private static Instance.Builder withMemory(Instance.Builder builder, MemoryKind memory) {
+        if (memory == MemoryKind.BYTE_ARRAY) {
+            return builder.withMemoryFactory(ByteArrayMemory::new);
+        } else {
+            return builder.withMemoryFactory(ByteBufferMemory::new);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkLoad(Blackhole bh) {
+        bh.consume(load.apply(input));
+    }
+}
@@ -0,0 +1,72 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.runtime.BytecodeInterpreterMachine;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.Parser;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the superinstructions of the {@link BytecodeInterpreterMachine}: each workload is a
+ * loop dominated by some of the fused sequences, run with and without fusion.
+ *
+ * <ul>
+ *     <li>{@code add_locals}: {@code LOCAL_GET_2}, {@code LOCAL_I32_ADD} and
+ *     {@code LOCAL_I32_ADD_CONST_SET}</li>
+ *     <li>{@code count_down}: {@code BR_IF_EQZ}, {@code i32.eqz; if}, {@code LOCAL_GET_CONST}
+ *     and {@code LOCAL_I32_ADD_CONST_SET}</li>
+ *     <li>{@code load}: {@code LOCAL_I32_LOAD} and {@code LOCAL_GET_CONST}</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+public class BenchmarkSuperinstructions {
+
+    private static final File FUSION =
+            new File("wasm-corpus/src/main/resources/compiled/fusion.wat.wasm");
+
+    @Param({"add_locals", "count_down", "load"})
+    private String workload;
+
+    // every combination of the parameters runs in its own JVM,
+    // so the property is read when the first function is lowered
+    @Param({"true", "false"})
+    private String fusion;
+
+    @Param("1000")
+    private int input;
+
+    ExportFunction function;
+
+    @Setup
+    public void setup() {
+        System.setProperty("chicory.bytecode.fusion", fusion);
+        function =
+                Instance.builder(Parser.parse(FUSION))
+                        .withMachineFactory(BytecodeInterpreterMachine::new)
+                        .build()
+                        .export(workload);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void benchmarkWorkload(Blackhole bh) {
+        bh.consume(function.apply(input));
+    }
+}
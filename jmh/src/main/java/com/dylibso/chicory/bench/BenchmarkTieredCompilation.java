@@ -0,0 +1,85 @@
+package com.dylibso.chicory.bench;
+
+import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.corpus.WatGenerator;
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.wabt.Wat2Wasm;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Eager and lazy compilation: the time to the first call of a large module, and the throughput
+ * of a hot function once the lazily compiled machine has tiered up.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BenchmarkTieredCompilation {
+
+    private static final File FAC =
+            new File("wasm-corpus/src/main/resources/compiled/fac.wat.wasm");
+
+    @Param({"compile", "compileLazily"})
+    private String compilation;
+
+    private WasmModule big;
+    private ExportFunction fac;
+
+    private Function<Instance, Machine> machineFactory(WasmModule module) {
+        var builder = MachineFactoryCompiler.builder(module);
+        switch (compilation) {
+            case "compile":
+                return builder.compile();
+            case "compileLazily":
+                return builder.compileLazily();
+            default:
+                throw new IllegalArgumentException("Unknown compilation " + compilation);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        big = Parser.parse(Wat2Wasm.parse(WatGenerator.bigWat(5000, 10)));
+        var module = Parser.parse(FAC);
+        fac =
+                Instance.builder(module)
+                        .withMachineFactory(machineFactory(module))
+                        .build()
+                        .export("fac-ssa");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void firstCall(Blackhole bh) {
+        var instance = Instance.builder(big).withMachineFactory(machineFactory(big)).build();
+        bh.consume(instance.export("func_100").apply(1));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void hotFunction(Blackhole bh) {
+        bh.consume(fac.apply(1000));
+    }
+}
@@ -0,0 +1,224 @@
+package com.dylibso.chicory.testing;
+
+import static java.nio.file.Files.copy;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylibso.chicory.runtime.BytecodeInterpreterMachine;
+import com.dylibso.chicory.runtime.ImportValues;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.InterpreterMachine;
+import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.runtime.RegisterInterpreterMachine;
+import com.dylibso.chicory.runtime.ThreadedInterpreterMachine;
+import com.dylibso.chicory.runtime.WasmException;
+import com.dylibso.chicory.wabt.Wat2Wasm;
+import com.dylibso.chicory.wasi.WasiExitException;
+import com.dylibso.chicory.wasi.WasiOptions;
+import com.dylibso.chicory.wasi.WasiPreview1;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.ExternalType;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.ValType;
+import com.dylibso.chicory.wasm.types.Value;
+import io.roastedroot.zerofs.Configuration;
+import io.roastedroot.zerofs.ZeroFs;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+// the interpreters lowering the functions run the corpus like the InterpreterMachine,
+// the spec tests run on them too, see InterpreterMachineFactory in runtime-tests
+public class InterpretersTest {
+
+    private static final File WAT = new File("../wasm-corpus/src/main/resources/wat");
+    private static final File COMPILED = new File("../wasm-corpus/src/main/resources/compiled");
+
+    // the module the build time compiler compiled Wat2Wasm from, which keeps the function bodies
+    private static final WasmModule WAT2WASM =
+            Parser.parse(new File("../wabt/src/main/resources/wat2wasm"));
+
+    // the arguments of the exports, combined in turn
+    private static final int[] VALUES = {0, 1, 2, 7, 100, -1};
+
+    // bounds the calls that loop forever, or for too long, on some arguments
+    private static final long FUEL = 1_000_000L;
+
+    private static Stream<Arguments> machines() {
+        return Stream.of(
+                Arguments.of(
+                        "bytecode", (Function<Instance, Machine>) BytecodeInterpreterMachine::new),
+                Arguments.of(
+                        "register", (Function<Instance, Machine>) RegisterInterpreterMachine::new),
+                Arguments.of(
+                        "threaded", (Function<Instance, Machine>) ThreadedInterpreterMachine::new));
+    }
+
+    private static File[] files(File dir, String suffix) {
+        var files = dir.listFiles((d, name) -> name.endsWith(suffix));
+        Arrays.sort(files);
+        return files;
+    }
+
+    // runs wat2wasm on the machine, returning what it wrote and its exit code
+    private static String wat2wasm(File watFile, Function<Instance, Machine> machine)
+            throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (FileSystem fs =
+                ZeroFs.newFileSystem(
+                        Configuration.unix().toBuilder().setAttributeViews("unix").build())) {
+            Path target = fs.getPath("tmp");
+            java.nio.file.Files.createDirectory(target);
+            Path path = target.resolve(watFile.getName());
+            try (var in = new FileInputStream(watFile)) {
+                copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            WasiOptions wasiOpts =
+                    WasiOptions.builder()
+                            .withStdout(out)
+                            .withStderr(out)
+                            .withDirectory(target.toString(), target)
+                            .withArguments(List.of("wat2wasm", path.toString(), "--output=-"))
+                            .build();
+            var exitCode = 0;
+            try (var wasi = WasiPreview1.builder().withOptions(wasiOpts).build()) {
+                Instance.builder(WAT2WASM)
+                        .withMachineFactory(machine)
+                        .withImportValues(
+                                ImportValues.builder().addFunction(wasi.toHostFunctions()).build())
+                        .build();
+            } catch (WasiExitException e) {
+                exitCode = e.exitCode();
+            }
+            return exitCode + ": " + Base64.getEncoder().encodeToString(out.toByteArray());
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("machines")
+    public void shouldTranslateTheCorpusWithWat2Wasm(
+            String name, Function<Instance, Machine> machine) throws IOException {
+        for (var watFile : files(WAT, ".wat")) {
+            assertEquals(
+                    wat2wasm(watFile, Wat2Wasm::create),
+                    wat2wasm(watFile, machine),
+                    watFile.getName());
+        }
+    }
+
+    // the result of a call, or the exception it failed with
+    private static String call(Instance instance, String export, FunctionType type, long[] args) {
+        try {
+            var results = instance.export(export).apply(args);
+            if (results == null) {
+                return "[]";
+            }
+            // the machines are free to sign extend the 32-bit values, or not
+            for (int r = 0; r < results.length; r++) {
+                var returnType = type.returns().get(r);
+                if (returnType.equals(ValType.I32) || returnType.equals(ValType.F32)) {
+                    results[r] = (int) results[r];
+                }
+            }
+            return Arrays.toString(results);
+        } catch (ChicoryException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        } catch (WasmException e) {
+            return "WasmException: " + e.tagIdx() + Arrays.toString(e.args());
+        }
+    }
+
+    private static long value(ValType type, int value) {
+        switch (type.opcode()) {
+            case ValType.ID.F32:
+                return Value.floatToLong(value);
+            case ValType.ID.F64:
+                return Value.doubleToLong(value);
+            default:
+                return value;
+        }
+    }
+
+    private static boolean isNumeric(ValType type) {
+        return type.equals(ValType.I32)
+                || type.equals(ValType.I64)
+                || type.equals(ValType.F32)
+                || type.equals(ValType.F64);
+    }
+
+    // calls the exports with numeric params and results, in order, with a few combinations of the
+    // values
+    private static List<String> callExports(
+            WasmModule module, Function<Instance, Machine> machine) {
+        var results = new ArrayList<String>();
+        Instance instance;
+        try {
+            instance = Instance.builder(module).withMachineFactory(machine).withFuel(FUEL).build();
+        } catch (ChicoryException e) {
+            results.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+            return results;
+        }
+        var exports = module.exportSection();
+        for (int i = 0; i < exports.exportCount(); i++) {
+            var export = exports.getExport(i);
+            if (export.exportType() != ExternalType.FUNCTION) {
+                continue;
+            }
+            FunctionType type = instance.type(instance.functionType(export.index()));
+            if (!type.params().stream().allMatch(InterpretersTest::isNumeric)
+                    || !type.returns().stream().allMatch(InterpretersTest::isNumeric)) {
+                continue;
+            }
+            for (int k = 0; k < VALUES.length; k++) {
+                var args = new long[type.params().size()];
+                for (int p = 0; p < args.length; p++) {
+                    args[p] = value(type.params().get(p), VALUES[(k + p) % VALUES.length]);
+                }
+                results.add(
+                        export.name()
+                                + Arrays.toString(args)
+                                + " = "
+                                + call(instance, export.name(), type, args));
+            }
+        }
+        return results;
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("machines")
+    public void shouldCallTheCorpusExportsLikeTheInterpreterMachine(
+            String name, Function<Instance, Machine> machine) {
+        var modules = 0;
+        for (var wasmFile : files(COMPILED, ".wat.wasm")) {
+            var module = Parser.parse(wasmFile);
+            // the SIMD instructions run on the SimdInterpreterMachine only
+            if (module.importSection().importCount() > 0
+                    || wasmFile.getName().equals("simd-example.wat.wasm")) {
+                continue;
+            }
+            assertArrayEquals(
+                    callExports(module, InterpreterMachine::new).toArray(),
+                    callExports(module, machine).toArray(),
+                    wasmFile.getName());
+            modules++;
+        }
+        assertTrue(modules > 20, "modules: " + modules);
+    }
+}
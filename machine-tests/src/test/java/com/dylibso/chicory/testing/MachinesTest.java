@@ -8,13 +8,18 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.dylibso.chicory.compiler.MachineFactoryCompiler;
+import com.dylibso.chicory.runtime.BytecodeInterpreterMachine;
 import com.dylibso.chicory.runtime.ImportTable;
 import com.dylibso.chicory.runtime.ImportValues;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.runtime.InterpreterMachine;
+import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.runtime.RegisterInterpreterMachine;
 import com.dylibso.chicory.runtime.Store;
 import com.dylibso.chicory.runtime.TableInstance;
+import com.dylibso.chicory.runtime.ThreadedInterpreterMachine;
 import com.dylibso.chicory.runtime.TrapException;
+import com.dylibso.chicory.runtime.WasmRuntimeException;
 import com.dylibso.chicory.testing.gen.DynamicHelloJS;
 import com.dylibso.chicory.testing.gen.QuickJS;
 import com.dylibso.chicory.wabt.Wat2Wasm;
@@ -37,6 +42,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import org.junit.jupiter.api.Test;
 
 public final class MachinesTest {
@@ -167,6 +173,78 @@ public final class MachinesTest {
         assertEquals(expectedOutput + expectedOutput, stderr.toString(UTF_8));
     }
 
+    // quickjs -> build time compiled
+    // module -> bytecode interpreter
+    @Test
+    public void shouldRunQuickJsBytecodeInterpreted() {
+        var stderr = new ByteArrayOutputStream();
+
+        var wasi = setupWasi(stderr);
+        var quickjs =
+                quickJsInstanceBuilder()
+                        .withMachineFactory(QuickJS::create)
+                        .withImportValues(
+                                ImportValues.builder().addFunction(wasi.toHostFunctions()).build())
+                        .build();
+
+        var store = new Store().register("javy_quickjs_provider_v1", quickjs);
+
+        moduleInstanceBuilder()
+                .withMachineFactory(BytecodeInterpreterMachine::new)
+                .withImportValues(store.toImportValues())
+                .build();
+
+        assertEquals(expectedOutput, stderr.toString(UTF_8));
+    }
+
+    // quickjs -> build time compiled
+    // module -> register interpreter
+    @Test
+    public void shouldRunQuickJsRegisterInterpreted() {
+        var stderr = new ByteArrayOutputStream();
+
+        var wasi = setupWasi(stderr);
+        var quickjs =
+                quickJsInstanceBuilder()
+                        .withMachineFactory(QuickJS::create)
+                        .withImportValues(
+                                ImportValues.builder().addFunction(wasi.toHostFunctions()).build())
+                        .build();
+
+        var store = new Store().register("javy_quickjs_provider_v1", quickjs);
+
+        moduleInstanceBuilder()
+                .withMachineFactory(RegisterInterpreterMachine::new)
+                .withImportValues(store.toImportValues())
+                .build();
+
+        assertEquals(expectedOutput, stderr.toString(UTF_8));
+    }
+
+    // quickjs -> build time compiled
+    // module -> threaded interpreter
+    @Test
+    public void shouldRunQuickJsThreadedInterpreted() {
+        var stderr = new ByteArrayOutputStream();
+
+        var wasi = setupWasi(stderr);
+        var quickjs =
+                quickJsInstanceBuilder()
+                        .withMachineFactory(QuickJS::create)
+                        .withImportValues(
+                                ImportValues.builder().addFunction(wasi.toHostFunctions()).build())
+                        .build();
+
+        var store = new Store().register("javy_quickjs_provider_v1", quickjs);
+
+        moduleInstanceBuilder()
+                .withMachineFactory(ThreadedInterpreterMachine::new)
+                .withImportValues(store.toImportValues())
+                .build();
+
+        assertEquals(expectedOutput, stderr.toString(UTF_8));
+    }
+
     @Test
     public void shouldUseMachineCallOnlyForExport() throws Exception {
         ByteArrayOutputStream stdoutStream = new ByteArrayOutputStream();
@@ -279,4 +357,73 @@ public final class MachinesTest {
         var className = ex.getStackTrace()[0].getClassName();
         assertTrue(className.contains("InterpreterMachine"), className);
     }
+
+    @Test
+    public void shouldCallIndirectBytecodeToAot() {
+        var store = new Store();
+        var table =
+                new TableInstance(
+                        new Table(ValType.FuncRef, new TableLimits(3, 3)), REF_NULL_VALUE);
+        store.addTable(new ImportTable("test", "table", table));
+
+        var instance =
+                Instance.builder(loadModule("compiled/call_indirect-export.wat.wasm"))
+                        .withImportValues(store.toImportValues())
+                        .withMachineFactory(BytecodeInterpreterMachine::new)
+                        .build();
+        store.register("test", instance);
+
+        Instance.builder(loadModule("compiled/call_indirect-import.wat.wasm"))
+                .withImportValues(store.toImportValues())
+                .withMachineFactory(MachineFactoryCompiler::compile)
+                .build();
+
+        assertEquals(42, instance.export("call-self").apply()[0]);
+        assertEquals(88, instance.export("call-other").apply()[0]);
+
+        var ex = assertThrows(TrapException.class, instance.export("call-other-fail")::apply);
+        var className = ex.getStackTrace()[0].getClassName();
+        assertTrue(className.contains("CompiledMachine"), className);
+    }
+
+    @Test
+    public void shouldAddress64BitMemories() {
+        List<Function<Instance, Machine>> machines =
+                List.of(
+                        InterpreterMachine::new,
+                        BytecodeInterpreterMachine::new,
+                        MachineFactoryCompiler::compile);
+        for (var machine : machines) {
+            var instance =
+                    Instance.builder(loadModule("compiled/memory64.wat.wasm"))
+                            .withMachineFactory(machine)
+                            .build();
+
+            assertEquals(1L, instance.export("size").apply()[0]);
+            assertEquals((long) 'm', instance.export("load8_u").apply(0L)[0]);
+            assertEquals(1L, instance.export("grow").apply(1L)[0]);
+            assertEquals(-1L, instance.export("grow").apply(0x1_0000_0000L)[0]);
+            assertEquals(2L, instance.export("size").apply()[0]);
+
+            instance.export("store").apply(0x1FFF8L, 42L);
+            assertEquals(42L, instance.export("load").apply(0x1FFF8L)[0]);
+            instance.export("store_f64").apply(8L, Double.doubleToRawLongBits(1.5));
+            assertEquals(Double.doubleToRawLongBits(1.5), instance.export("load_f64").apply(8L)[0]);
+
+            instance.export("fill").apply(0x100L, 7L, 0x10L);
+            instance.export("copy").apply(0x200L, 0x108L, 8L);
+            assertEquals(0x0707070707070707L, instance.export("load").apply(0x200L)[0]);
+
+            assertThrows(WasmRuntimeException.class, () -> instance.export("load").apply(0x1FFF9L));
+            // the addresses are not truncated to 32 bits
+            assertThrows(
+                    WasmRuntimeException.class,
+                    () -> instance.export("load").apply(0x1_0000_0000L));
+            assertThrows(WasmRuntimeException.class, () -> instance.export("load").apply(-8L));
+            assertThrows(WasmRuntimeException.class, () -> instance.export("load_far").apply(0L));
+            assertThrows(
+                    WasmRuntimeException.class,
+                    () -> instance.export("fill").apply(0x1_0000_0000L, 0L, 0L));
+        }
+    }
 }
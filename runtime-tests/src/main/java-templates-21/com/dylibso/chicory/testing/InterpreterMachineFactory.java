@@ -1,13 +1,28 @@
 package com.dylibso.chicory.testing;
 
+import com.dylibso.chicory.runtime.BytecodeInterpreterMachine;
 import com.dylibso.chicory.runtime.Instance;
 import com.dylibso.chicory.runtime.Machine;
+import com.dylibso.chicory.runtime.RegisterInterpreterMachine;
+import com.dylibso.chicory.runtime.ThreadedInterpreterMachine;
 import com.dylibso.chicory.simd.SimdInterpreterMachine;
 
 public class InterpreterMachineFactory {
 
+    // the machine running the spec tests, selected by the surefire executions
+    private static final String MACHINE = System.getProperty("chicory.machine", "interpreter");
+
     public static Machine create(Instance instance) {
-        return new SimdInterpreterMachine(instance);
+        switch (MACHINE) {
+            case "bytecode":
+                return new BytecodeInterpreterMachine(instance);
+            case "register":
+                return new RegisterInterpreterMachine(instance);
+            case "threaded":
+                return new ThreadedInterpreterMachine(instance);
+            default:
+                return new SimdInterpreterMachine(instance);
+        }
     }
 
 }
@@ -0,0 +1,182 @@
+package com.dylibso.chicory.runtime;
+
+//
+// This class is used by compiler generated classes. It MUST remain backwards compatible
+// so that older generated code can run on newer versions of the library.
+//
+// The read-modify-write operations of the threads proposal that don't have a primitive on the
+// Memory: the 8 and 16-bit accesses, and the bitwise operations, are compare-and-exchange loops
+// on the aligned int or long containing them, they are lock-free when the memory is.
+public final class AtomicOps {
+
+    public static final int ADD = 0;
+    public static final int SUB = 1;
+    public static final int AND = 2;
+    public static final int OR = 3;
+    public static final int XOR = 4;
+    public static final int XCHG = 5;
+
+    private AtomicOps() {}
+
+    private static int apply(int op, int x, int y) {
+        switch (op) {
+            case ADD:
+                return x + y;
+            case SUB:
+                return x - y;
+            case AND:
+                return x & y;
+            case OR:
+                return x | y;
+            case XOR:
+                return x ^ y;
+            case XCHG:
+                return y;
+            default:
+                throw new IllegalArgumentException("Unknown atomic operation: " + op);
+        }
+    }
+
+    private static long apply(int op, long x, long y) {
+        switch (op) {
+            case ADD:
+                return x + y;
+            case SUB:
+                return x - y;
+            case AND:
+                return x & y;
+            case OR:
+                return x | y;
+            case XOR:
+                return x ^ y;
+            case XCHG:
+                return y;
+            default:
+                throw new IllegalArgumentException("Unknown atomic operation: " + op);
+        }
+    }
+
+    // the shift of the narrow value at addr in the little-endian int containing it
+    private static int shift(int addr) {
+        return (addr & 3) << 3;
+    }
+
+    public static int load8(Memory memory, int addr) {
+        return (memory.atomicReadInt(addr & ~3) >>> shift(addr)) & 0xFF;
+    }
+
+    public static int load16(Memory memory, int addr) {
+        return (memory.atomicReadInt(addr & ~3) >>> shift(addr)) & 0xFFFF;
+    }
+
+    public static void store8(Memory memory, int addr, int value) {
+        rmwNarrow(memory, addr, value, XCHG, 0xFF);
+    }
+
+    public static void store16(Memory memory, int addr, int value) {
+        rmwNarrow(memory, addr, value, XCHG, 0xFFFF);
+    }
+
+    /**
+     * Applies the operation to the byte at the address and the value, returns the previous byte,
+     * zero-extended.
+     */
+    public static int rmw8(Memory memory, int addr, int value, int op) {
+        return rmwNarrow(memory, addr, value, op, 0xFF);
+    }
+
+    public static int rmw16(Memory memory, int addr, int value, int op) {
+        return rmwNarrow(memory, addr, value, op, 0xFFFF);
+    }
+
+    public static int rmw32(Memory memory, int addr, int value, int op) {
+        switch (op) {
+            case ADD:
+                return memory.atomicGetAndAddInt(addr, value);
+            case SUB:
+                return memory.atomicGetAndAddInt(addr, -value);
+            case XCHG:
+                return memory.atomicGetAndSetInt(addr, value);
+            default:
+                var old = memory.atomicReadInt(addr);
+                while (true) {
+                    var witness =
+                            memory.atomicCompareAndExchangeInt(addr, old, apply(op, old, value));
+                    if (witness == old) {
+                        return old;
+                    }
+                    old = witness;
+                }
+        }
+    }
+
+    public static long rmw64(Memory memory, int addr, long value, int op) {
+        switch (op) {
+            case ADD:
+                return memory.atomicGetAndAddLong(addr, value);
+            case SUB:
+                return memory.atomicGetAndAddLong(addr, -value);
+            case XCHG:
+                return memory.atomicGetAndSetLong(addr, value);
+            default:
+                var old = memory.atomicReadLong(addr);
+                while (true) {
+                    var witness =
+                            memory.atomicCompareAndExchangeLong(addr, old, apply(op, old, value));
+                    if (witness == old) {
+                        return old;
+                    }
+                    old = witness;
+                }
+        }
+    }
+
+    private static int rmwNarrow(Memory memory, int addr, int value, int op, int mask) {
+        var word = addr & ~3;
+        var shift = shift(addr);
+        var old = memory.atomicReadInt(word);
+        while (true) {
+            var current = (old >>> shift) & mask;
+            var updated = apply(op, current, value) & mask;
+            var witness =
+                    memory.atomicCompareAndExchangeInt(
+                            word, old, (old & ~(mask << shift)) | (updated << shift));
+            if (witness == old) {
+                return current;
+            }
+            old = witness;
+        }
+    }
+
+    /**
+     * Replaces the byte at the address if it's equal to the expected value, wrapped to 8 bits,
+     * returns the previous byte, zero-extended.
+     */
+    public static int cmpxchg8(Memory memory, int addr, int expected, int replacement) {
+        return cmpxchgNarrow(memory, addr, expected, replacement, 0xFF);
+    }
+
+    public static int cmpxchg16(Memory memory, int addr, int expected, int replacement) {
+        return cmpxchgNarrow(memory, addr, expected, replacement, 0xFFFF);
+    }
+
+    private static int cmpxchgNarrow(
+            Memory memory, int addr, int expected, int replacement, int mask) {
+        var word = addr & ~3;
+        var shift = shift(addr);
+        var old = memory.atomicReadInt(word);
+        while (true) {
+            var current = (old >>> shift) & mask;
+            if (current != (expected & mask)) {
+                return current;
+            }
+            var witness =
+                    memory.atomicCompareAndExchangeInt(
+                            word, old, (old & ~(mask << shift)) | ((replacement & mask) << shift));
+            if (witness == old) {
+                return current;
+            }
+            old = witness;
+        }
+    }
+}
@@ -11,13 +11,17 @@ import com.dylibso.chicory.wasm.types.ActiveDataSegment;
 import com.dylibso.chicory.wasm.types.DataSegment;
 import com.dylibso.chicory.wasm.types.MemoryLimits;
 import com.dylibso.chicory.wasm.types.PassiveDataSegment;
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
@@ -203,6 +207,97 @@ public final class ByteArrayMemory implements Memory {
         return monitor.get();
     }
 
+    // the atomic accesses are lock-free, the monitors are only used by wait and notify
+    @Override
+    public int atomicReadInt(int addr) {
+        try {
+            return (int) INT_ARR_HANDLE.getVolatile(buffer, addr);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicReadLong(int addr) {
+        try {
+            return (long) LONG_ARR_HANDLE.getVolatile(buffer, addr);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void atomicWriteInt(int addr, int value) {
+        try {
+            INT_ARR_HANDLE.setVolatile(buffer, addr, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void atomicWriteLong(int addr, long value) {
+        try {
+            LONG_ARR_HANDLE.setVolatile(buffer, addr, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public int atomicCompareAndExchangeInt(int addr, int expected, int value) {
+        try {
+            return (int) INT_ARR_HANDLE.compareAndExchange(buffer, addr, expected, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicCompareAndExchangeLong(int addr, long expected, long value) {
+        try {
+            return (long) LONG_ARR_HANDLE.compareAndExchange(buffer, addr, expected, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public int atomicGetAndAddInt(int addr, int delta) {
+        try {
+            return (int) INT_ARR_HANDLE.getAndAdd(buffer, addr, delta);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicGetAndAddLong(int addr, long delta) {
+        try {
+            return (long) LONG_ARR_HANDLE.getAndAdd(buffer, addr, delta);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
+    @Override
+    public int atomicGetAndSetInt(int addr, int value) {
+        try {
+            return (int) INT_ARR_HANDLE.getAndSet(buffer, addr, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 4, sizeInBytes());
+        }
+    }
+
+    @Override
+    public long atomicGetAndSetLong(int addr, long value) {
+        try {
+            return (long) LONG_ARR_HANDLE.getAndSet(buffer, addr, value);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 8, sizeInBytes());
+        }
+    }
+
     private byte[] allocateByteBuffer(int capacity) {
         if (capacity > buffer.length) {
             int nextCapacity = allocStrategy.next(buffer.length, capacity);
@@ -266,7 +361,9 @@ public final class ByteArrayMemory implements Memory {
                 var segment = (ActiveDataSegment) s;
                 var offsetExpr = segment.offsetInstructions();
                 var data = segment.data();
-                var offset = (int) computeConstantValue(instance, offsetExpr)[0];
+                var value = computeConstantValue(instance, offsetExpr)[0];
+                // the i64 offsets of a 64-bit memory that don't fit are out of bounds
+                var offset = (value == (int) value) ? (int) value : -1;
                 checkBounds(
                         offset,
                         data.length,
@@ -334,6 +431,16 @@ public final class ByteArrayMemory implements Memory {
         }
     }
 
+    @Override
+    public void write(int addr, ByteBuffer data) {
+        var size = data.remaining();
+        try {
+            data.get(buffer, addr, size);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, size, sizeInBytes());
+        }
+    }
+
     @Override
     public byte read(int addr) {
         try {
@@ -354,6 +461,96 @@ public final class ByteArrayMemory implements Memory {
         }
     }
 
+    @Override
+    public void readInto(int addr, byte[] dest, int offset, int len) {
+        try {
+            System.arraycopy(buffer, addr, dest, offset, len);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, len, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void readInto(int addr, ByteBuffer dest) {
+        var len = dest.remaining();
+        try {
+            dest.put(buffer, addr, len);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, len, sizeInBytes());
+        }
+    }
+
+    @Override
+    public ByteBuffer view(int addr, int len) {
+        // the array may be larger than the memory
+        checkBounds(addr, len, sizeInBytes(), WasmRuntimeException::new);
+        return ByteBuffer.wrap(buffer, addr, len).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public ByteBuffer readOnlyView(int addr, int len) {
+        return view(addr, len).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int transferFrom(ReadableByteChannel channel, int addr, int len) throws IOException {
+        var buffer = view(addr, len);
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            // keep reading
+        }
+        return buffer.position();
+    }
+
+    @Override
+    public void readInts(int addr, int[] dest, int offset, int len) {
+        bulkView(addr, dest.length, offset, len, Integer.BYTES)
+                .asIntBuffer()
+                .get(dest, offset, len);
+    }
+
+    @Override
+    public void writeInts(int addr, int[] src, int offset, int len) {
+        bulkView(addr, src.length, offset, len, Integer.BYTES).asIntBuffer().put(src, offset, len);
+    }
+
+    @Override
+    public void readLongs(int addr, long[] dest, int offset, int len) {
+        bulkView(addr, dest.length, offset, len, Long.BYTES).asLongBuffer().get(dest, offset, len);
+    }
+
+    @Override
+    public void writeLongs(int addr, long[] src, int offset, int len) {
+        bulkView(addr, src.length, offset, len, Long.BYTES).asLongBuffer().put(src, offset, len);
+    }
+
+    @Override
+    public void readFloats(int addr, float[] dest, int offset, int len) {
+        bulkView(addr, dest.length, offset, len, Float.BYTES)
+                .asFloatBuffer()
+                .get(dest, offset, len);
+    }
+
+    @Override
+    public void writeFloats(int addr, float[] src, int offset, int len) {
+        bulkView(addr, src.length, offset, len, Float.BYTES).asFloatBuffer().put(src, offset, len);
+    }
+
+    // checks the whole range up front, so that nothing is written when it fails
+    private ByteBuffer bulkView(int addr, int arrayLength, int offset, int len, int size) {
+        Objects.checkFromIndexSize(offset, len, arrayLength);
+        var bytes = (long) len * size;
+        if (Integer.toUnsignedLong(addr) + bytes > sizeInBytes()) {
+            throw new WasmRuntimeException(
+                    "out of bounds memory access: attempted to access address: "
+                            + Integer.toUnsignedString(addr)
+                            + " but limit is: "
+                            + sizeInBytes()
+                            + " and size: "
+                            + bytes);
+        }
+        return view(addr, (int) bytes);
+    }
+
     @Override
     public void writeI32(int addr, int data) {
         try {
@@ -496,6 +693,15 @@ public final class ByteArrayMemory implements Memory {
         }
     }
 
+    @Override
+    public void copy(int dest, int src, int size) {
+        try {
+            System.arraycopy(buffer, src, buffer, dest, size);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, Math.max(src, dest), size, sizeInBytes());
+        }
+    }
+
     @Override
     public void drop(int segment) {
         dataSegments[segment] = PassiveDataSegment.EMPTY;
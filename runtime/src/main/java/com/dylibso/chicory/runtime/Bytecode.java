@@ -0,0 +1,42 @@
+package com.dylibso.chicory.runtime;
+
+/**
+ * A function body lowered once, at instantiation, to the compact form executed by
+ * {@link BytecodeInterpreterMachine}, or to its register form executed by
+ * {@link RegisterInterpreterMachine}.
+ * {@link ThreadedInterpreterMachine} extends the register form with the handlers of its instructions.
+ *
+ * The frame of a function is a contiguous region of the machine value stack:
+ * the parameters and the locals come first, followed by the operand stack.
+ * All the stack heights encoded in the code are relative to the start of the frame.
+ */
+class Bytecode {
+    // the lowered instructions, opcodes from BytecodeOpCode followed by their immediates
+    final int[] code;
+    // number of parameter slots, they are the first slots of the frame
+    final int paramCount;
+    // number of parameter and local slots, the operand stack starts right after them,
+    // in the register form the constant slots are counted as locals
+    final int localCount;
+    // number of result slots
+    final int resultCount;
+    // maximum number of slots used by the frame, locals included
+    final int frameSize;
+    // initial values of the non-parameter locals, constants included
+    final long[] localDefaults;
+
+    Bytecode(
+            int[] code,
+            int paramCount,
+            int localCount,
+            int resultCount,
+            int frameSize,
+            long[] localDefaults) {
+        this.code = code;
+        this.paramCount = paramCount;
+        this.localCount = localCount;
+        this.resultCount = resultCount;
+        this.frameSize = frameSize;
+        this.localDefaults = localDefaults;
+    }
+}
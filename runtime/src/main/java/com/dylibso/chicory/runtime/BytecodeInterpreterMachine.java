@@ -0,0 +1,1216 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.runtime.InterpreterMachine.verifyIndirectCall;
+import static com.dylibso.chicory.wasm.types.Value.REF_NULL_VALUE;
+import static java.util.Objects.requireNonNullElse;
+
+import com.dylibso.chicory.runtime.internal.CompilerInterpreterMachine;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.types.Value;
+import java.util.Arrays;
+
+/**
+ * An interpreter executing the function bodies pre-decoded into {@link Bytecode}.
+ *
+ * Each function is lowered once, when the machine is created, into a flat {@code int[]}
+ * with the opcodes and their immediates inline and all the branch targets resolved.
+ * Locals and operands live in a single {@code long[]} owned by the machine, each call
+ * using a contiguous frame on top of the one of the caller, with the arguments already in place.
+ * Everything a frame needs is precomputed in its {@link Bytecode}, and branches don't need a
+ * control stack, so calls between lowered functions don't allocate.
+ *
+ * Functions that can't be lowered (using v128 values, exception handling or atomics), and
+ * all the functions when an {@link ExecutionListener} is set, are executed by an
+ * {@link InterpreterMachine}.
+ */
+public class BytecodeInterpreterMachine implements Machine {
+
+    private static final int INITIAL_STACK_SIZE = 1024;
+    private static final int INITIAL_CALL_DEPTH = 64;
+
+    final Instance instance;
+
+    // the lowered functions, null for imported and interpreted functions
+    final Bytecode[] functions;
+
+    private final Machine interpreter;
+
+    long[] stack = new long[INITIAL_STACK_SIZE];
+
+    // the first slot available to a call entering the machine, the ones below
+    // are in use by the frames that called out of the machine
+    private int top;
+
+    // the frames suspended by calls between lowered functions: the function,
+    // its frame pointer and the position to resume from
+    Bytecode[] callers = new Bytecode[INITIAL_CALL_DEPTH];
+    int[] resumePoints = new int[2 * INITIAL_CALL_DEPTH];
+    int depth;
+    private final int maxCallDepth;
+
+    public BytecodeInterpreterMachine(Instance instance) {
+        this.instance = instance;
+        this.functions = new Bytecode[instance.functionCount()];
+        this.maxCallDepth = instance.maxCallDepth().orElse(Instance.DEFAULT_MAX_CALL_DEPTH);
+
+        var interpreted = new int[functions.length];
+        var interpretedCount = 0;
+        for (int i = instance.imports().functionCount(); i < functions.length; i++) {
+            if (!instance.hasExecutionListener()) {
+                functions[i] = lower(i);
+            }
+            if (functions[i] == null) {
+                interpreted[interpretedCount++] = i;
+            }
+        }
+        this.interpreter =
+                (interpretedCount == 0)
+                        ? null
+                        : new CompilerInterpreterMachine(
+                                instance, Arrays.copyOf(interpreted, interpretedCount));
+    }
+
+    // lowers a function body, null when it has to be interpreted
+    Bytecode lower(int funcId) {
+        return BytecodeLowering.lower(instance, funcId);
+    }
+
+    @Override
+    public long[] call(int funcId, long[] args) throws ChicoryException {
+        var function = functions[funcId];
+        if (function == null) {
+            return callExternal(funcId, args);
+        }
+
+        checkInterruption();
+        var fp = top;
+        var depth = this.depth;
+        ensureCapacity(fp + function.frameSize);
+        // missing arguments default to zero
+        var argCount = Math.min(args.length, function.paramCount);
+        System.arraycopy(args, 0, stack, fp, argCount);
+        Arrays.fill(stack, fp + argCount, fp + function.paramCount, 0L);
+        try {
+            execute(function, fp);
+        } catch (StackOverflowError e) {
+            throw new ChicoryException("call stack exhausted", e);
+        } finally {
+            top = fp;
+            this.depth = depth;
+        }
+
+        if (function.resultCount == 0) {
+            return null;
+        }
+        return Arrays.copyOfRange(stack, fp, fp + function.resultCount);
+    }
+
+    private long[] callExternal(int funcId, long[] args) {
+        checkInterruption();
+        if (funcId < instance.imports().functionCount()) {
+            return instance.imports().function(funcId).handle().apply(instance, args);
+        }
+        return interpreter.call(funcId, args);
+    }
+
+    void ensureCapacity(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size));
+        }
+    }
+
+    // initializes the locals of a frame, returns the stack pointer
+    int enter(Bytecode function, int fp) {
+        instance.consumeFuel();
+        ensureCapacity(fp + function.frameSize);
+        var localDefaults = function.localDefaults;
+        System.arraycopy(localDefaults, 0, stack, fp + function.paramCount, localDefaults.length);
+        return fp + function.localCount;
+    }
+
+    // saves the state of a caller, to be resumed when the callee returns
+    void suspend(Bytecode function, int fp, int pc) {
+        if (depth + 1 >= maxCallDepth) {
+            throw new ChicoryException("call stack exhausted");
+        }
+        if (depth == callers.length) {
+            callers = Arrays.copyOf(callers, depth * 2);
+            resumePoints = Arrays.copyOf(resumePoints, depth * 4);
+        }
+        callers[depth] = function;
+        resumePoints[2 * depth] = fp;
+        resumePoints[2 * depth + 1] = pc;
+        depth++;
+    }
+
+    // calls a function of another instance, an imported or an interpreted function
+    int callOut(Instance target, int funcId, int sp) {
+        var paramCount = target.type(target.functionType(funcId)).params().size();
+        var fp = sp - paramCount;
+        var args = Arrays.copyOfRange(stack, fp, sp);
+
+        var previousTop = top;
+        top = sp;
+        long[] results;
+        try {
+            results =
+                    (target == instance)
+                            ? callExternal(funcId, args)
+                            : target.getMachine().call(funcId, args);
+        } finally {
+            top = previousTop;
+        }
+
+        // a host function can return null or an array of values
+        if (results == null) {
+            return fp;
+        }
+        ensureCapacity(fp + results.length);
+        System.arraycopy(results, 0, stack, fp, results.length);
+        return fp + results.length;
+    }
+
+    // resolves the target of an indirect call, checking its type
+    int indirectTarget(int typeId, TableInstance table, int index, Instance refInstance) {
+        var funcId = table.requiredRef(index);
+        // the types are only compared when the canonical ids differ
+        if (!refInstance.hasCanonicalType(funcId, instance, typeId)) {
+            var expected = instance.type(typeId);
+            var actual = refInstance.type(refInstance.functionType(funcId));
+            verifyIndirectCall(actual, expected);
+        }
+        return funcId;
+    }
+
+    static int unwind(long[] stack, int sp, int arity, int height) {
+        if (arity > 0 && sp != height) {
+            System.arraycopy(stack, sp - arity, stack, height - arity, arity);
+        }
+        return height;
+    }
+
+    // the base and the offset are unsigned, see InterpreterMachine.readMemPtr
+    static int address(long base, int offset) {
+        var address = (base & 0xFFFFFFFFL) + Integer.toUnsignedLong(offset);
+        if (address > 0xFFFFFFFFL) {
+            throw new WasmRuntimeException("out of bounds memory access");
+        }
+        return (int) address;
+    }
+
+    // executes a function and the lowered functions it calls, without recursion
+    void execute(Bytecode function, int fp) {
+        // the frames below belong to the callers of this execution
+        var base = depth;
+        var code = function.code;
+        var sp = enter(function, fp);
+        var stack = this.stack;
+        var memory = instance.memory();
+        var pc = 0;
+
+        while (true) {
+            switch (code[pc++]) {
+                case BytecodeOpCode.UNREACHABLE:
+                    throw new TrapException("Trapped on unreachable instruction");
+                case BytecodeOpCode.BR:
+                    {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = fp + code[pc + 1];
+                        pc = target;
+                        break;
+                    }
+                case BytecodeOpCode.BR_UNWIND:
+                    {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = unwind(stack, sp, code[pc + 1], fp + code[pc + 2]);
+                        pc = target;
+                        break;
+                    }
+                case BytecodeOpCode.BR_IF:
+                    if ((int) stack[--sp] != 0) {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = fp + code[pc + 1];
+                        pc = target;
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                case BytecodeOpCode.BR_IF_UNWIND:
+                    if ((int) stack[--sp] != 0) {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = unwind(stack, sp, code[pc + 1], fp + code[pc + 2]);
+                        pc = target;
+                    } else {
+                        pc += 3;
+                    }
+                    break;
+                case BytecodeOpCode.BR_UNLESS:
+                    if ((int) stack[--sp] == 0) {
+                        pc = code[pc];
+                    } else {
+                        pc++;
+                    }
+                    break;
+                case BytecodeOpCode.BR_TABLE:
+                    {
+                        var index = (int) stack[--sp];
+                        var count = code[pc];
+                        if (index < 0 || index >= count) {
+                            // choose default
+                            index = count;
+                        }
+                        var entry = pc + 1 + 3 * index;
+                        var target = code[entry];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = unwind(stack, sp, code[entry + 1], fp + code[entry + 2]);
+                        pc = target;
+                        break;
+                    }
+                case BytecodeOpCode.BR_ON_NULL:
+                    if (stack[sp - 1] == REF_NULL_VALUE) {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = unwind(stack, sp - 1, code[pc + 1], fp + code[pc + 2]);
+                        pc = target;
+                    } else {
+                        pc += 3;
+                    }
+                    break;
+                case BytecodeOpCode.BR_ON_NON_NULL:
+                    if (stack[sp - 1] != REF_NULL_VALUE) {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = unwind(stack, sp, code[pc + 1], fp + code[pc + 2]);
+                        pc = target;
+                    } else {
+                        sp--;
+                        pc += 3;
+                    }
+                    break;
+                case BytecodeOpCode.RETURN:
+                    {
+                        var count = function.resultCount;
+                        System.arraycopy(stack, sp - count, stack, fp, count);
+                        if (depth == base) {
+                            return;
+                        }
+                        // resume the caller
+                        sp = fp + count;
+                        depth--;
+                        function = callers[depth];
+                        code = function.code;
+                        fp = resumePoints[2 * depth];
+                        pc = resumePoints[2 * depth + 1];
+                        break;
+                    }
+                case BytecodeOpCode.CALL:
+                case BytecodeOpCode.CALL_INDIRECT:
+                case BytecodeOpCode.CALL_REF:
+                case BytecodeOpCode.RETURN_CALL:
+                case BytecodeOpCode.RETURN_CALL_INDIRECT:
+                case BytecodeOpCode.RETURN_CALL_REF:
+                    {
+                        var op = code[pc - 1];
+                        int funcId;
+                        var target = instance;
+                        if (op == BytecodeOpCode.CALL || op == BytecodeOpCode.RETURN_CALL) {
+                            funcId = code[pc++];
+                        } else if (op == BytecodeOpCode.CALL_REF
+                                || op == BytecodeOpCode.RETURN_CALL_REF) {
+                            funcId = (int) stack[--sp];
+                            if (funcId == REF_NULL_VALUE) {
+                                throw new TrapException(
+                                        "Trapped on call_ref on null function reference");
+                            }
+                        } else {
+                            var table = instance.table(code[pc + 1]);
+                            var index = (int) stack[--sp];
+                            target = requireNonNullElse(table.instance(index), instance);
+                            funcId = indirectTarget(code[pc], table, index, target);
+                            pc += 2;
+                        }
+                        var tail = op >= BytecodeOpCode.RETURN_CALL;
+
+                        checkInterruption();
+                        var callee = (target == instance) ? functions[funcId] : null;
+                        if (callee == null) {
+                            sp = callOut(target, funcId, sp);
+                            // the stack grows when calls go deeper
+                            stack = this.stack;
+                            if (!tail) {
+                                break;
+                            }
+                            var count = function.resultCount;
+                            System.arraycopy(stack, sp - count, stack, fp, count);
+                            if (depth == base) {
+                                return;
+                            }
+                            sp = fp + count;
+                            depth--;
+                            function = callers[depth];
+                            code = function.code;
+                            fp = resumePoints[2 * depth];
+                            pc = resumePoints[2 * depth + 1];
+                            break;
+                        }
+
+                        if (tail) {
+                            // reuse the current frame
+                            System.arraycopy(
+                                    stack, sp - callee.paramCount, stack, fp, callee.paramCount);
+                        } else {
+                            suspend(function, fp, pc);
+                            fp = sp - callee.paramCount;
+                        }
+                        function = callee;
+                        code = callee.code;
+                        sp = enter(callee, fp);
+                        stack = this.stack;
+                        pc = 0;
+                        break;
+                    }
+                case BytecodeOpCode.DROP:
+                    sp--;
+                    break;
+                case BytecodeOpCode.SELECT:
+                    {
+                        var pred = (int) stack[--sp];
+                        sp--;
+                        if (pred == 0) {
+                            stack[sp - 1] = stack[sp];
+                        }
+                        break;
+                    }
+                case BytecodeOpCode.LOCAL_GET:
+                    stack[sp++] = stack[fp + code[pc++]];
+                    break;
+                case BytecodeOpCode.LOCAL_SET:
+                    stack[fp + code[pc++]] = stack[--sp];
+                    break;
+                case BytecodeOpCode.LOCAL_TEE:
+                    stack[fp + code[pc++]] = stack[sp - 1];
+                    break;
+                case BytecodeOpCode.GLOBAL_GET:
+                    stack[sp++] = instance.global(code[pc++]).getValueLow();
+                    break;
+                case BytecodeOpCode.GLOBAL_SET:
+                    instance.global(code[pc++]).setValue(stack[--sp]);
+                    break;
+                case BytecodeOpCode.CONST32:
+                    stack[sp++] = code[pc++];
+                    break;
+                case BytecodeOpCode.CONST64:
+                    stack[sp++] = ((long) code[pc] << 32) | (code[pc + 1] & 0xFFFFFFFFL);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I32_LOAD:
+                    stack[sp - 1] = memory.readI32(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I64_LOAD:
+                    stack[sp - 1] = memory.readI64(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I32_LOAD8_S:
+                case BytecodeOpCode.I64_LOAD8_S:
+                    stack[sp - 1] = memory.readI8(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I32_LOAD8_U:
+                case BytecodeOpCode.I64_LOAD8_U:
+                    stack[sp - 1] = memory.readU8(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I32_LOAD16_S:
+                case BytecodeOpCode.I64_LOAD16_S:
+                    stack[sp - 1] = memory.readI16(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I32_LOAD16_U:
+                case BytecodeOpCode.I64_LOAD16_U:
+                    stack[sp - 1] = memory.readU16(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I64_LOAD32_S:
+                    stack[sp - 1] = memory.readI32(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I64_LOAD32_U:
+                    stack[sp - 1] = memory.readU32(address(stack[sp - 1], code[pc++]));
+                    break;
+                case BytecodeOpCode.I32_STORE:
+                case BytecodeOpCode.STORE32:
+                    sp -= 2;
+                    memory.writeI32(address(stack[sp], code[pc++]), (int) stack[sp + 1]);
+                    break;
+                case BytecodeOpCode.I64_STORE:
+                    sp -= 2;
+                    memory.writeLong(address(stack[sp], code[pc++]), stack[sp + 1]);
+                    break;
+                case BytecodeOpCode.STORE8:
+                    sp -= 2;
+                    memory.writeByte(address(stack[sp], code[pc++]), (byte) stack[sp + 1]);
+                    break;
+                case BytecodeOpCode.STORE16:
+                    sp -= 2;
+                    memory.writeShort(address(stack[sp], code[pc++]), (short) stack[sp + 1]);
+                    break;
+                case BytecodeOpCode.MEMORY_OOB:
+                    throw new WasmRuntimeException("out of bounds memory access");
+                case BytecodeOpCode.MEMORY_SIZE:
+                    stack[sp++] = memory.pages();
+                    break;
+                case BytecodeOpCode.MEMORY_GROW:
+                    stack[sp - 1] = memory.grow((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.MEMORY_FILL:
+                    {
+                        sp -= 3;
+                        var offset = (int) stack[sp];
+                        var size = (int) stack[sp + 2];
+                        memory.fill((byte) stack[sp + 1], offset, offset + size);
+                        break;
+                    }
+                case BytecodeOpCode.MEMORY_COPY:
+                    sp -= 3;
+                    memory.copy((int) stack[sp], (int) stack[sp + 1], (int) stack[sp + 2]);
+                    break;
+                case BytecodeOpCode.MEMORY_INIT:
+                    sp -= 3;
+                    memory.initPassiveSegment(
+                            code[pc++], (int) stack[sp], (int) stack[sp + 1], (int) stack[sp + 2]);
+                    break;
+                case BytecodeOpCode.DATA_DROP:
+                    memory.drop(code[pc++]);
+                    break;
+                case BytecodeOpCode.TABLE_GET:
+                    stack[sp - 1] = OpcodeImpl.TABLE_GET(instance, code[pc++], (int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.TABLE_SET:
+                    sp -= 2;
+                    instance.table(code[pc++])
+                            .setRef((int) stack[sp], (int) stack[sp + 1], instance);
+                    break;
+                case BytecodeOpCode.TABLE_SIZE:
+                    stack[sp++] = instance.table(code[pc++]).size();
+                    break;
+                case BytecodeOpCode.TABLE_GROW:
+                    sp--;
+                    stack[sp - 1] =
+                            instance.table(code[pc++])
+                                    .grow((int) stack[sp], (int) stack[sp - 1], instance);
+                    break;
+                case BytecodeOpCode.TABLE_FILL:
+                    sp -= 3;
+                    OpcodeImpl.TABLE_FILL(
+                            instance,
+                            code[pc++],
+                            (int) stack[sp + 2],
+                            (int) stack[sp + 1],
+                            (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.TABLE_COPY:
+                    sp -= 3;
+                    OpcodeImpl.TABLE_COPY(
+                            instance,
+                            code[pc + 1],
+                            code[pc],
+                            (int) stack[sp + 2],
+                            (int) stack[sp + 1],
+                            (int) stack[sp]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.TABLE_INIT:
+                    sp -= 3;
+                    OpcodeImpl.TABLE_INIT(
+                            instance,
+                            code[pc + 1],
+                            code[pc],
+                            (int) stack[sp + 2],
+                            (int) stack[sp + 1],
+                            (int) stack[sp]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.ELEM_DROP:
+                    instance.setElement(code[pc++], null);
+                    break;
+                case BytecodeOpCode.REF_IS_NULL:
+                    stack[sp - 1] = (stack[sp - 1] == REF_NULL_VALUE) ? Value.TRUE : Value.FALSE;
+                    break;
+                case BytecodeOpCode.REF_AS_NON_NULL:
+                    if (stack[sp - 1] == REF_NULL_VALUE) {
+                        throw new TrapException("Trapped on ref_as_non_null on null reference");
+                    }
+                    break;
+                case BytecodeOpCode.I32_EQZ:
+                    stack[sp - 1] = OpcodeImpl.I32_EQZ((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I32_EQ:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_EQ((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_NE:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_NE((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_LT_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_LT_S((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_LT_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_LT_U((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_GT_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_GT_S((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_GT_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_GT_U((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_LE_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_LE_S((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_LE_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_LE_U((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_GE_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_GE_S((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_GE_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_GE_U((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_EQZ:
+                    stack[sp - 1] = OpcodeImpl.I64_EQZ(stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_EQ:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_EQ(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_NE:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_NE(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_LT_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_LT_S(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_LT_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_LT_U(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_GT_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_GT_S(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_GT_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_GT_U(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_LE_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_LE_S(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_LE_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_LE_U(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_GE_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_GE_S(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_GE_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_GE_U(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.F32_EQ:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F32_EQ(
+                                    Value.longToFloat(stack[sp - 1]), Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_NE:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F32_NE(
+                                    Value.longToFloat(stack[sp - 1]), Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_LT:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F32_LT(
+                                    Value.longToFloat(stack[sp - 1]), Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_GT:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F32_GT(
+                                    Value.longToFloat(stack[sp - 1]), Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_LE:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F32_LE(
+                                    Value.longToFloat(stack[sp - 1]), Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_GE:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F32_GE(
+                                    Value.longToFloat(stack[sp - 1]), Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_EQ:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F64_EQ(
+                                    Value.longToDouble(stack[sp - 1]),
+                                    Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_NE:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F64_NE(
+                                    Value.longToDouble(stack[sp - 1]),
+                                    Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_LT:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F64_LT(
+                                    Value.longToDouble(stack[sp - 1]),
+                                    Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_GT:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F64_GT(
+                                    Value.longToDouble(stack[sp - 1]),
+                                    Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_LE:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F64_LE(
+                                    Value.longToDouble(stack[sp - 1]),
+                                    Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_GE:
+                    sp--;
+                    stack[sp - 1] =
+                            OpcodeImpl.F64_GE(
+                                    Value.longToDouble(stack[sp - 1]),
+                                    Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.I32_CLZ:
+                    stack[sp - 1] = OpcodeImpl.I32_CLZ((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I32_CTZ:
+                    stack[sp - 1] = OpcodeImpl.I32_CTZ((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I32_POPCNT:
+                    stack[sp - 1] = OpcodeImpl.I32_POPCNT((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I32_ADD:
+                    sp--;
+                    stack[sp - 1] = (long) ((int) stack[sp - 1] + (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_SUB:
+                    sp--;
+                    stack[sp - 1] = (long) ((int) stack[sp - 1] - (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_MUL:
+                    sp--;
+                    stack[sp - 1] = (int) (stack[sp - 1] * stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_DIV_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_DIV_S((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_DIV_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_DIV_U((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_REM_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_REM_S((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_REM_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_REM_U((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_AND:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] & (int) stack[sp];
+                    break;
+                case BytecodeOpCode.I32_OR:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] | (int) stack[sp];
+                    break;
+                case BytecodeOpCode.I32_XOR:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] ^ (int) stack[sp];
+                    break;
+                case BytecodeOpCode.I32_SHL:
+                    sp--;
+                    stack[sp - 1] = (long) ((int) stack[sp - 1] << (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_SHR_S:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] >> (int) stack[sp];
+                    break;
+                case BytecodeOpCode.I32_SHR_U:
+                    sp--;
+                    stack[sp - 1] = (long) ((int) stack[sp - 1] >>> (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_ROTL:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_ROTL((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I32_ROTR:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I32_ROTR((int) stack[sp - 1], (int) stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_CLZ:
+                    stack[sp - 1] = OpcodeImpl.I64_CLZ(stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_CTZ:
+                    stack[sp - 1] = OpcodeImpl.I64_CTZ(stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_POPCNT:
+                    stack[sp - 1] = OpcodeImpl.I64_POPCNT(stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_ADD:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] + stack[sp];
+                    break;
+                case BytecodeOpCode.I64_SUB:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] - stack[sp];
+                    break;
+                case BytecodeOpCode.I64_MUL:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] * stack[sp];
+                    break;
+                case BytecodeOpCode.I64_DIV_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_DIV_S(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_DIV_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_DIV_U(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_REM_S:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_REM_S(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_REM_U:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_REM_U(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_AND:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] & stack[sp];
+                    break;
+                case BytecodeOpCode.I64_OR:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] | stack[sp];
+                    break;
+                case BytecodeOpCode.I64_XOR:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] ^ stack[sp];
+                    break;
+                case BytecodeOpCode.I64_SHL:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] << stack[sp];
+                    break;
+                case BytecodeOpCode.I64_SHR_S:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] >> stack[sp];
+                    break;
+                case BytecodeOpCode.I64_SHR_U:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] >>> stack[sp];
+                    break;
+                case BytecodeOpCode.I64_ROTL:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_ROTL(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.I64_ROTR:
+                    sp--;
+                    stack[sp - 1] = OpcodeImpl.I64_ROTR(stack[sp - 1], stack[sp]);
+                    break;
+                case BytecodeOpCode.F32_ABS:
+                    stack[sp - 1] =
+                            Value.floatToLong(OpcodeImpl.F32_ABS(Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_NEG:
+                    stack[sp - 1] = Value.floatToLong(-Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F32_CEIL:
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_CEIL(Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_FLOOR:
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_FLOOR(Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_TRUNC:
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_TRUNC(Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_NEAREST:
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_NEAREST(Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_SQRT:
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_SQRT(Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_ADD:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[sp - 1])
+                                            + Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_SUB:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[sp - 1])
+                                            - Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_MUL:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[sp])
+                                            * Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F32_DIV:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[sp - 1])
+                                            / Value.longToFloat(stack[sp]));
+                    break;
+                case BytecodeOpCode.F32_MIN:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_MIN(
+                                            Value.longToFloat(stack[sp]),
+                                            Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_MAX:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_MAX(
+                                            Value.longToFloat(stack[sp]),
+                                            Value.longToFloat(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F32_COPYSIGN:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_COPYSIGN(
+                                            Value.longToFloat(stack[sp - 1]),
+                                            Value.longToFloat(stack[sp])));
+                    break;
+                case BytecodeOpCode.F64_ABS:
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_ABS(Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_NEG:
+                    stack[sp - 1] = Value.doubleToLong(-Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F64_CEIL:
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_CEIL(Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_FLOOR:
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_FLOOR(Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_TRUNC:
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_TRUNC(Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_NEAREST:
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_NEAREST(Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_SQRT:
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_SQRT(Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_ADD:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[sp - 1])
+                                            + Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_SUB:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[sp - 1])
+                                            - Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_MUL:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[sp])
+                                            * Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F64_DIV:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[sp - 1])
+                                            / Value.longToDouble(stack[sp]));
+                    break;
+                case BytecodeOpCode.F64_MIN:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_MIN(
+                                            Value.longToDouble(stack[sp]),
+                                            Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_MAX:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_MAX(
+                                            Value.longToDouble(stack[sp]),
+                                            Value.longToDouble(stack[sp - 1])));
+                    break;
+                case BytecodeOpCode.F64_COPYSIGN:
+                    sp--;
+                    stack[sp - 1] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_COPYSIGN(
+                                            Value.longToDouble(stack[sp - 1]),
+                                            Value.longToDouble(stack[sp])));
+                    break;
+                case BytecodeOpCode.I32_WRAP_I64:
+                    stack[sp - 1] = (int) stack[sp - 1];
+                    break;
+                case BytecodeOpCode.I32_TRUNC_F32_S:
+                    stack[sp - 1] = OpcodeImpl.I32_TRUNC_F32_S(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I32_TRUNC_F32_U:
+                    stack[sp - 1] = OpcodeImpl.I32_TRUNC_F32_U(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I32_TRUNC_F64_S:
+                    stack[sp - 1] = OpcodeImpl.I32_TRUNC_F64_S(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I32_TRUNC_F64_U:
+                    stack[sp - 1] = OpcodeImpl.I32_TRUNC_F64_U(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_EXTEND_I32_S:
+                    stack[sp - 1] = (int) stack[sp - 1];
+                    break;
+                case BytecodeOpCode.I64_EXTEND_I32_U:
+                    stack[sp - 1] = OpcodeImpl.I64_EXTEND_I32_U((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_TRUNC_F32_S:
+                    stack[sp - 1] = OpcodeImpl.I64_TRUNC_F32_S(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_TRUNC_F32_U:
+                    stack[sp - 1] = OpcodeImpl.I64_TRUNC_F32_U(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_TRUNC_F64_S:
+                    stack[sp - 1] = OpcodeImpl.I64_TRUNC_F64_S(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_TRUNC_F64_U:
+                    stack[sp - 1] = OpcodeImpl.I64_TRUNC_F64_U(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F32_CONVERT_I32_S:
+                    stack[sp - 1] =
+                            Value.floatToLong(OpcodeImpl.F32_CONVERT_I32_S((int) stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F32_CONVERT_I32_U:
+                    stack[sp - 1] =
+                            Value.floatToLong(OpcodeImpl.F32_CONVERT_I32_U((int) stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F32_CONVERT_I64_S:
+                    stack[sp - 1] = Value.floatToLong(OpcodeImpl.F32_CONVERT_I64_S(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F32_CONVERT_I64_U:
+                    stack[sp - 1] = Value.floatToLong(OpcodeImpl.F32_CONVERT_I64_U(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F32_DEMOTE_F64:
+                    stack[sp - 1] = Value.floatToLong((float) Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F64_CONVERT_I32_S:
+                    stack[sp - 1] =
+                            Value.doubleToLong(OpcodeImpl.F64_CONVERT_I32_S((int) stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F64_CONVERT_I32_U:
+                    stack[sp - 1] =
+                            Value.doubleToLong(OpcodeImpl.F64_CONVERT_I32_U((int) stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F64_CONVERT_I64_S:
+                    stack[sp - 1] = Value.doubleToLong(OpcodeImpl.F64_CONVERT_I64_S(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F64_CONVERT_I64_U:
+                    stack[sp - 1] = Value.doubleToLong(OpcodeImpl.F64_CONVERT_I64_U(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.F64_PROMOTE_F32:
+                    stack[sp - 1] = Value.doubleToLong(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I32_REINTERPRET_F32:
+                    stack[sp - 1] = (int) stack[sp - 1];
+                    break;
+                case BytecodeOpCode.F32_REINTERPRET_I32:
+                    stack[sp - 1] = (int) stack[sp - 1];
+                    break;
+                case BytecodeOpCode.I32_EXTEND_8_S:
+                    stack[sp - 1] = OpcodeImpl.I32_EXTEND_8_S((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I32_EXTEND_16_S:
+                    stack[sp - 1] = OpcodeImpl.I32_EXTEND_16_S((int) stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_EXTEND_8_S:
+                    stack[sp - 1] = OpcodeImpl.I64_EXTEND_8_S(stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_EXTEND_16_S:
+                    stack[sp - 1] = OpcodeImpl.I64_EXTEND_16_S(stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I64_EXTEND_32_S:
+                    stack[sp - 1] = OpcodeImpl.I64_EXTEND_32_S(stack[sp - 1]);
+                    break;
+                case BytecodeOpCode.I32_TRUNC_SAT_F32_S:
+                    stack[sp - 1] =
+                            OpcodeImpl.I32_TRUNC_SAT_F32_S(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I32_TRUNC_SAT_F32_U:
+                    stack[sp - 1] =
+                            OpcodeImpl.I32_TRUNC_SAT_F32_U(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I32_TRUNC_SAT_F64_S:
+                    stack[sp - 1] =
+                            OpcodeImpl.I32_TRUNC_SAT_F64_S(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I32_TRUNC_SAT_F64_U:
+                    stack[sp - 1] =
+                            OpcodeImpl.I32_TRUNC_SAT_F64_U(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_TRUNC_SAT_F32_S:
+                    stack[sp - 1] =
+                            OpcodeImpl.I64_TRUNC_SAT_F32_S(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_TRUNC_SAT_F32_U:
+                    stack[sp - 1] =
+                            OpcodeImpl.I64_TRUNC_SAT_F32_U(Value.longToFloat(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_TRUNC_SAT_F64_S:
+                    stack[sp - 1] =
+                            OpcodeImpl.I64_TRUNC_SAT_F64_S(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.I64_TRUNC_SAT_F64_U:
+                    stack[sp - 1] =
+                            OpcodeImpl.I64_TRUNC_SAT_F64_U(Value.longToDouble(stack[sp - 1]));
+                    break;
+                case BytecodeOpCode.LOCAL_GET_2:
+                    stack[sp] = stack[fp + code[pc]];
+                    stack[sp + 1] = stack[fp + code[pc + 1]];
+                    sp += 2;
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.LOCAL_GET_CONST:
+                    stack[sp] = stack[fp + code[pc]];
+                    stack[sp + 1] = code[pc + 1];
+                    sp += 2;
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I32_ADD_CONST:
+                    stack[sp - 1] = (long) ((int) stack[sp - 1] + code[pc++]);
+                    break;
+                case BytecodeOpCode.LOCAL_I32_ADD_CONST:
+                    stack[sp++] = (long) ((int) stack[fp + code[pc]] + code[pc + 1]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.LOCAL_I32_ADD_CONST_SET:
+                    stack[fp + code[pc + 2]] = (long) ((int) stack[fp + code[pc]] + code[pc + 1]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.LOCAL_I32_ADD:
+                    stack[sp++] =
+                            (long) ((int) stack[fp + code[pc]] + (int) stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.LOCAL_I32_LOAD:
+                    stack[sp++] = memory.readI32(address(stack[fp + code[pc]], code[pc + 1]));
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.LOCAL_I64_LOAD:
+                    stack[sp++] = memory.readI64(address(stack[fp + code[pc]], code[pc + 1]));
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.BR_IF_EQZ:
+                    if ((int) stack[--sp] == 0) {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        sp = fp + code[pc + 1];
+                        pc = target;
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                default:
+                    throw new ChicoryException("Unknown bytecode " + code[pc - 1]);
+            }
+        }
+    }
+
+    // a taken backward branch, that starts a new iteration of a loop
+    final void backEdge() {
+        checkInterruption();
+        instance.consumeFuel();
+    }
+
+    /**
+     * Terminate WASM execution if requested.
+     * This is called at the start of each call and at backward branches.
+     */
+    static void checkInterruption() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ChicoryInterruptedException("Thread interrupted");
+        }
+    }
+}
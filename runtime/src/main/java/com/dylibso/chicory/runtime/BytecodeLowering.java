@@ -0,0 +1,1132 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.wasm.types.Value.REF_NULL_VALUE;
+
+import com.dylibso.chicory.wasm.types.AnnotatedInstruction;
+import com.dylibso.chicory.wasm.types.FunctionBody;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.OpCode;
+import com.dylibso.chicory.wasm.types.ValType;
+import com.dylibso.chicory.wasm.types.Value;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lowers a {@link FunctionBody} to the {@link Bytecode} executed by {@link BytecodeInterpreterMachine}.
+ *
+ * The lowering tracks the operand stack height statically, so that every branch carries
+ * everything it needs to be executed without a control stack:
+ * <ul>
+ *     <li>{@code BR target height}: jumps to {@code target} leaving {@code height} slots in the frame</li>
+ *     <li>{@code BR_UNWIND target arity height}: as {@code BR}, first moving the top {@code arity}
+ *     slots so that they end at {@code height}</li>
+ *     <li>{@code BR_IF} and {@code BR_IF_UNWIND}: as above, taken when the popped condition is not zero</li>
+ *     <li>{@code BR_UNLESS target}: taken when the popped condition is zero, used for {@code if}</li>
+ *     <li>{@code BR_TABLE n (target arity height) * (n + 1)}: the last entry is the default</li>
+ *     <li>{@code BR_ON_NULL} and {@code BR_ON_NON_NULL}: {@code target arity height}</li>
+ * </ul>
+ * {@code block}, {@code loop} and {@code end} don't produce any code, an {@code else} becomes a
+ * jump to the end of the {@code if}, and unreachable code is dropped.
+ * Constants are inlined as {@code CONST32 value} or {@code CONST64 high low}, memory accesses
+ * carry their static offset, all the other immediates are the ones of the original instruction.
+ *
+ * The most frequent instruction sequences are fused into superinstructions as they are emitted,
+ * each one executed with a single dispatch:
+ * <ul>
+ *     <li>{@code local.get a; local.get b}: {@code LOCAL_GET_2 a b}</li>
+ *     <li>{@code local.get a; i32.const c}: {@code LOCAL_GET_CONST a c}</li>
+ *     <li>{@code i32.const c; i32.add} or {@code i32.sub}: {@code I32_ADD_CONST c}</li>
+ *     <li>{@code local.get a; i32.const c; i32.add}: {@code LOCAL_I32_ADD_CONST a c}, followed
+ *     by {@code local.set b}: {@code LOCAL_I32_ADD_CONST_SET a c b}</li>
+ *     <li>{@code local.get a; local.get b; i32.add}: {@code LOCAL_I32_ADD a b}</li>
+ *     <li>{@code local.get a; i32.load} and {@code i64.load}: {@code LOCAL_I32_LOAD a offset}
+ *     and {@code LOCAL_I64_LOAD a offset}</li>
+ *     <li>{@code i32.eqz; br_if}: {@code BR_IF_EQZ target height}, and {@code i32.eqz; if}
+ *     becomes a {@code BR_IF} to the else</li>
+ * </ul>
+ * The table was chosen from the instruction pairs and triples that are the most frequent in
+ * compiled C, Rust, Go and JavaScript engine modules. An instruction is never fused with one
+ * preceding a label, as a branch could land in the middle of the superinstruction.
+ * Fusion can be disabled with the {@code chicory.bytecode.fusion=false} system property.
+ */
+final class BytecodeLowering {
+
+    private static final boolean FUSION =
+            Boolean.parseBoolean(System.getProperty("chicory.bytecode.fusion", "true"));
+
+    private static final class Control {
+        final boolean loop;
+        // the height of the frame below the parameters of the block
+        final int height;
+        final int paramCount;
+        final int resultCount;
+        // the position of the first instruction of a loop
+        final int start;
+        // the position of the BR_UNLESS target of an if, patched at the else or at the end
+        int elseFixup = -1;
+        // the positions of the forward branch targets, patched at the end
+        final List<Integer> endFixups = new ArrayList<>();
+
+        Control(boolean loop, int height, int paramCount, int resultCount, int start) {
+            this.loop = loop;
+            this.height = height;
+            this.paramCount = paramCount;
+            this.resultCount = resultCount;
+            this.start = start;
+        }
+
+        int labelArity() {
+            return loop ? paramCount : resultCount;
+        }
+    }
+
+    private final Instance instance;
+    private final List<Control> controls = new ArrayList<>();
+    private int[] code = new int[64];
+    private int size;
+    private int height;
+    private int maxHeight;
+    private boolean unreachable;
+    private int unreachableDepth;
+    // the position of the last instruction, -1 if a label was bound after it
+    private int last = -1;
+
+    private BytecodeLowering(Instance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * @return the lowered function, or {@code null} if the function uses features
+     *     not supported by the lowering: v128 values, exception handling, atomics
+     *     and 64-bit memories
+     */
+    static Bytecode lower(Instance instance, int funcId) {
+        var body = instance.function(funcId);
+        var type = instance.type(instance.functionType(funcId));
+        if (body == null
+                || hasV128(type)
+                || body.localTypes().contains(ValType.V128)
+                || InterpreterMachine.hasMemory64(instance)) {
+            return null;
+        }
+        return new BytecodeLowering(instance).lower(type, body);
+    }
+
+    private Bytecode lower(FunctionType type, FunctionBody body) {
+        var paramCount = type.params().size();
+        var localCount = paramCount + body.localTypes().size();
+        var localDefaults = new long[body.localTypes().size()];
+        for (int i = 0; i < localDefaults.length; i++) {
+            localDefaults[i] = Value.zero(body.localTypes().get(i));
+        }
+
+        height = localCount;
+        maxHeight = localCount;
+        controls.add(new Control(false, localCount, 0, type.returns().size(), 0));
+
+        for (var ins : body.instructions()) {
+            if (unreachable) {
+                // skip everything up to the end of the current block
+                // or to the else of the current if
+                switch (ins.opcode()) {
+                    case BLOCK:
+                    case LOOP:
+                    case IF:
+                    case TRY_TABLE:
+                        unreachableDepth++;
+                        continue;
+                    case ELSE:
+                        if (unreachableDepth > 0) {
+                            continue;
+                        }
+                        break;
+                    case END:
+                        if (unreachableDepth > 0) {
+                            unreachableDepth--;
+                            continue;
+                        }
+                        break;
+                    default:
+                        continue;
+                }
+            }
+
+            switch (ins.opcode()) {
+                case NOP:
+                    break;
+                case UNREACHABLE:
+                    emit(BytecodeOpCode.UNREACHABLE);
+                    unreachable = true;
+                    break;
+                case BLOCK:
+                case LOOP:
+                    {
+                        if (isV128Block(ins)) {
+                            return null;
+                        }
+                        var params = blockParamCount(ins);
+                        if (ins.opcode() == OpCode.LOOP) {
+                            last = -1;
+                        }
+                        controls.add(
+                                new Control(
+                                        ins.opcode() == OpCode.LOOP,
+                                        height - params,
+                                        params,
+                                        blockResultCount(ins),
+                                        size));
+                        break;
+                    }
+                case IF:
+                    {
+                        if (isV128Block(ins)) {
+                            return null;
+                        }
+                        pop(1);
+                        var params = blockParamCount(ins);
+                        var ctrl =
+                                new Control(
+                                        false,
+                                        height - params,
+                                        params,
+                                        blockResultCount(ins),
+                                        size);
+                        if (fuse(BytecodeOpCode.I32_EQZ)) {
+                            // taken when the condition is not zero
+                            emit(BytecodeOpCode.BR_IF, 0, height);
+                            ctrl.elseFixup = size - 2;
+                        } else {
+                            emit(BytecodeOpCode.BR_UNLESS, 0);
+                            ctrl.elseFixup = size - 1;
+                        }
+                        controls.add(ctrl);
+                        break;
+                    }
+                case ELSE:
+                    {
+                        var ctrl = controls.get(controls.size() - 1);
+                        if (!unreachable) {
+                            emit(BytecodeOpCode.BR, 0, height);
+                            ctrl.endFixups.add(size - 2);
+                        }
+                        code[ctrl.elseFixup] = size;
+                        ctrl.elseFixup = -1;
+                        height = ctrl.height + ctrl.paramCount;
+                        unreachable = false;
+                        last = -1;
+                        break;
+                    }
+                case END:
+                    {
+                        var ctrl = controls.remove(controls.size() - 1);
+                        if (controls.isEmpty()) {
+                            // the end of the function, branches to the function label land here
+                            emit(BytecodeOpCode.RETURN);
+                            for (var fixup : ctrl.endFixups) {
+                                code[fixup] = size - 1;
+                            }
+                        } else {
+                            if (ctrl.elseFixup >= 0) {
+                                code[ctrl.elseFixup] = size;
+                            }
+                            for (var fixup : ctrl.endFixups) {
+                                code[fixup] = size;
+                            }
+                        }
+                        height = ctrl.height + ctrl.resultCount;
+                        unreachable = false;
+                        last = -1;
+                        break;
+                    }
+                case BR:
+                    {
+                        var target = label((int) ins.operand(0));
+                        if (target == controls.get(0)) {
+                            emit(BytecodeOpCode.RETURN);
+                        } else {
+                            branch(BytecodeOpCode.BR, BytecodeOpCode.BR_UNWIND, target);
+                        }
+                        unreachable = true;
+                        break;
+                    }
+                case BR_IF:
+                    {
+                        pop(1);
+                        var target = label((int) ins.operand(0));
+                        if (!isUnwinding(target) && fuse(BytecodeOpCode.I32_EQZ)) {
+                            branch(BytecodeOpCode.BR_IF_EQZ, BytecodeOpCode.BR_IF_UNWIND, target);
+                        } else {
+                            branch(BytecodeOpCode.BR_IF, BytecodeOpCode.BR_IF_UNWIND, target);
+                        }
+                        break;
+                    }
+                case BR_TABLE:
+                    {
+                        pop(1);
+                        var count = ins.operandCount();
+                        emit(BytecodeOpCode.BR_TABLE, count - 1);
+                        for (int i = 0; i < count; i++) {
+                            branchEntry(label((int) ins.operand(i)));
+                        }
+                        unreachable = true;
+                        break;
+                    }
+                case BR_ON_NULL:
+                    pop(1);
+                    emit(BytecodeOpCode.BR_ON_NULL);
+                    branchEntry(label((int) ins.operand(0)));
+                    push(1);
+                    break;
+                case BR_ON_NON_NULL:
+                    emit(BytecodeOpCode.BR_ON_NON_NULL);
+                    branchEntry(label((int) ins.operand(0)));
+                    pop(1);
+                    break;
+                case RETURN:
+                    emit(BytecodeOpCode.RETURN);
+                    unreachable = true;
+                    break;
+                case CALL:
+                    {
+                        var funcId = (int) ins.operand(0);
+                        var calleeType = instance.type(instance.functionType(funcId));
+                        if (hasV128(calleeType)) {
+                            return null;
+                        }
+                        emit(BytecodeOpCode.CALL, funcId);
+                        call(calleeType);
+                        break;
+                    }
+                case CALL_INDIRECT:
+                case RETURN_CALL_INDIRECT:
+                    {
+                        var typeId = (int) ins.operand(0);
+                        var calleeType = instance.type(typeId);
+                        if (hasV128(calleeType)) {
+                            return null;
+                        }
+                        var tail = ins.opcode() == OpCode.RETURN_CALL_INDIRECT;
+                        emit(
+                                tail
+                                        ? BytecodeOpCode.RETURN_CALL_INDIRECT
+                                        : BytecodeOpCode.CALL_INDIRECT,
+                                typeId,
+                                (int) ins.operand(1));
+                        pop(1);
+                        call(calleeType);
+                        unreachable = tail;
+                        break;
+                    }
+                case CALL_REF:
+                case RETURN_CALL_REF:
+                    {
+                        var calleeType = instance.type((int) ins.operand(0));
+                        if (hasV128(calleeType)) {
+                            return null;
+                        }
+                        var tail = ins.opcode() == OpCode.RETURN_CALL_REF;
+                        emit(tail ? BytecodeOpCode.RETURN_CALL_REF : BytecodeOpCode.CALL_REF);
+                        pop(1);
+                        call(calleeType);
+                        unreachable = tail;
+                        break;
+                    }
+                case RETURN_CALL:
+                    {
+                        var funcId = (int) ins.operand(0);
+                        var calleeType = instance.type(instance.functionType(funcId));
+                        if (hasV128(calleeType)) {
+                            return null;
+                        }
+                        emit(BytecodeOpCode.RETURN_CALL, funcId);
+                        unreachable = true;
+                        break;
+                    }
+                case DROP:
+                    if (ins.operand(0) == ValType.ID.V128) {
+                        return null;
+                    }
+                    emit(BytecodeOpCode.DROP);
+                    pop(1);
+                    break;
+                case SELECT:
+                case SELECT_T:
+                    if (ins.operandCount() > 0
+                            && (ins.operand(0) == ValType.ID.V128
+                                    || ins.operand(0) == ValType.V128.id())) {
+                        return null;
+                    }
+                    emit(BytecodeOpCode.SELECT);
+                    pop(2);
+                    break;
+                case LOCAL_GET:
+                    if (fuse(BytecodeOpCode.LOCAL_GET)) {
+                        emit(BytecodeOpCode.LOCAL_GET_2, code[size + 1], (int) ins.operand(0));
+                    } else {
+                        emit(BytecodeOpCode.LOCAL_GET, (int) ins.operand(0));
+                    }
+                    push(1);
+                    break;
+                case LOCAL_SET:
+                    if (fuse(BytecodeOpCode.LOCAL_I32_ADD_CONST)) {
+                        emit(
+                                BytecodeOpCode.LOCAL_I32_ADD_CONST_SET,
+                                code[size + 1],
+                                code[size + 2],
+                                (int) ins.operand(0));
+                    } else {
+                        emit(BytecodeOpCode.LOCAL_SET, (int) ins.operand(0));
+                    }
+                    pop(1);
+                    break;
+                case LOCAL_TEE:
+                    emit(BytecodeOpCode.LOCAL_TEE, (int) ins.operand(0));
+                    break;
+                case GLOBAL_GET:
+                    if (isV128Global((int) ins.operand(0))) {
+                        return null;
+                    }
+                    emit(BytecodeOpCode.GLOBAL_GET, (int) ins.operand(0));
+                    push(1);
+                    break;
+                case GLOBAL_SET:
+                    if (isV128Global((int) ins.operand(0))) {
+                        return null;
+                    }
+                    emit(BytecodeOpCode.GLOBAL_SET, (int) ins.operand(0));
+                    pop(1);
+                    break;
+                case TABLE_GET:
+                    emit(BytecodeOpCode.TABLE_GET, (int) ins.operand(0));
+                    break;
+                case TABLE_SET:
+                    emit(BytecodeOpCode.TABLE_SET, (int) ins.operand(0));
+                    pop(2);
+                    break;
+                case I32_CONST:
+                case I64_CONST:
+                case F32_CONST:
+                case F64_CONST:
+                case REF_FUNC:
+                    constant(ins.operand(0));
+                    break;
+                case REF_NULL:
+                    constant(REF_NULL_VALUE);
+                    break;
+                case I32_LOAD:
+                case F32_LOAD:
+                    localLoad(BytecodeOpCode.I32_LOAD, BytecodeOpCode.LOCAL_I32_LOAD, ins);
+                    break;
+                case I64_LOAD:
+                case F64_LOAD:
+                    localLoad(BytecodeOpCode.I64_LOAD, BytecodeOpCode.LOCAL_I64_LOAD, ins);
+                    break;
+                case I32_LOAD8_S:
+                    load(BytecodeOpCode.I32_LOAD8_S, ins);
+                    break;
+                case I32_LOAD8_U:
+                    load(BytecodeOpCode.I32_LOAD8_U, ins);
+                    break;
+                case I32_LOAD16_S:
+                    load(BytecodeOpCode.I32_LOAD16_S, ins);
+                    break;
+                case I32_LOAD16_U:
+                    load(BytecodeOpCode.I32_LOAD16_U, ins);
+                    break;
+                case I64_LOAD8_S:
+                    load(BytecodeOpCode.I64_LOAD8_S, ins);
+                    break;
+                case I64_LOAD8_U:
+                    load(BytecodeOpCode.I64_LOAD8_U, ins);
+                    break;
+                case I64_LOAD16_S:
+                    load(BytecodeOpCode.I64_LOAD16_S, ins);
+                    break;
+                case I64_LOAD16_U:
+                    load(BytecodeOpCode.I64_LOAD16_U, ins);
+                    break;
+                case I64_LOAD32_S:
+                    load(BytecodeOpCode.I64_LOAD32_S, ins);
+                    break;
+                case I64_LOAD32_U:
+                    load(BytecodeOpCode.I64_LOAD32_U, ins);
+                    break;
+                case I32_STORE:
+                case F32_STORE:
+                    store(BytecodeOpCode.I32_STORE, ins);
+                    break;
+                case I64_STORE:
+                case F64_STORE:
+                    store(BytecodeOpCode.I64_STORE, ins);
+                    break;
+                case I32_STORE8:
+                case I64_STORE8:
+                    store(BytecodeOpCode.STORE8, ins);
+                    break;
+                case I32_STORE16:
+                case I64_STORE16:
+                    store(BytecodeOpCode.STORE16, ins);
+                    break;
+                case I64_STORE32:
+                    store(BytecodeOpCode.STORE32, ins);
+                    break;
+                case MEMORY_SIZE:
+                    emit(BytecodeOpCode.MEMORY_SIZE);
+                    push(1);
+                    break;
+                case MEMORY_GROW:
+                    emit(BytecodeOpCode.MEMORY_GROW);
+                    break;
+                case MEMORY_FILL:
+                    emit(BytecodeOpCode.MEMORY_FILL);
+                    pop(3);
+                    break;
+                case MEMORY_COPY:
+                    emit(BytecodeOpCode.MEMORY_COPY);
+                    pop(3);
+                    break;
+                case MEMORY_INIT:
+                    emit(BytecodeOpCode.MEMORY_INIT, (int) ins.operand(0));
+                    pop(3);
+                    break;
+                case DATA_DROP:
+                    emit(BytecodeOpCode.DATA_DROP, (int) ins.operand(0));
+                    break;
+                case TABLE_SIZE:
+                    emit(BytecodeOpCode.TABLE_SIZE, (int) ins.operand(0));
+                    push(1);
+                    break;
+                case TABLE_GROW:
+                    emit(BytecodeOpCode.TABLE_GROW, (int) ins.operand(0));
+                    pop(1);
+                    break;
+                case TABLE_FILL:
+                    emit(BytecodeOpCode.TABLE_FILL, (int) ins.operand(0));
+                    pop(3);
+                    break;
+                case TABLE_COPY:
+                    // destination table, source table
+                    emit(BytecodeOpCode.TABLE_COPY, (int) ins.operand(0), (int) ins.operand(1));
+                    pop(3);
+                    break;
+                case TABLE_INIT:
+                    // element segment, table
+                    emit(BytecodeOpCode.TABLE_INIT, (int) ins.operand(0), (int) ins.operand(1));
+                    pop(3);
+                    break;
+                case ELEM_DROP:
+                    emit(BytecodeOpCode.ELEM_DROP, (int) ins.operand(0));
+                    break;
+                case REF_IS_NULL:
+                    unary(BytecodeOpCode.REF_IS_NULL);
+                    break;
+                case REF_AS_NON_NULL:
+                    unary(BytecodeOpCode.REF_AS_NON_NULL);
+                    break;
+                case I64_REINTERPRET_F64:
+                case F64_REINTERPRET_I64:
+                    // the bits are already stored as a long
+                    break;
+                case I32_EQZ:
+                    unary(BytecodeOpCode.I32_EQZ);
+                    break;
+                case I32_EQ:
+                    binary(BytecodeOpCode.I32_EQ);
+                    break;
+                case I32_NE:
+                    binary(BytecodeOpCode.I32_NE);
+                    break;
+                case I32_LT_S:
+                    binary(BytecodeOpCode.I32_LT_S);
+                    break;
+                case I32_LT_U:
+                    binary(BytecodeOpCode.I32_LT_U);
+                    break;
+                case I32_GT_S:
+                    binary(BytecodeOpCode.I32_GT_S);
+                    break;
+                case I32_GT_U:
+                    binary(BytecodeOpCode.I32_GT_U);
+                    break;
+                case I32_LE_S:
+                    binary(BytecodeOpCode.I32_LE_S);
+                    break;
+                case I32_LE_U:
+                    binary(BytecodeOpCode.I32_LE_U);
+                    break;
+                case I32_GE_S:
+                    binary(BytecodeOpCode.I32_GE_S);
+                    break;
+                case I32_GE_U:
+                    binary(BytecodeOpCode.I32_GE_U);
+                    break;
+                case I64_EQZ:
+                    unary(BytecodeOpCode.I64_EQZ);
+                    break;
+                case I64_EQ:
+                    binary(BytecodeOpCode.I64_EQ);
+                    break;
+                case I64_NE:
+                    binary(BytecodeOpCode.I64_NE);
+                    break;
+                case I64_LT_S:
+                    binary(BytecodeOpCode.I64_LT_S);
+                    break;
+                case I64_LT_U:
+                    binary(BytecodeOpCode.I64_LT_U);
+                    break;
+                case I64_GT_S:
+                    binary(BytecodeOpCode.I64_GT_S);
+                    break;
+                case I64_GT_U:
+                    binary(BytecodeOpCode.I64_GT_U);
+                    break;
+                case I64_LE_S:
+                    binary(BytecodeOpCode.I64_LE_S);
+                    break;
+                case I64_LE_U:
+                    binary(BytecodeOpCode.I64_LE_U);
+                    break;
+                case I64_GE_S:
+                    binary(BytecodeOpCode.I64_GE_S);
+                    break;
+                case I64_GE_U:
+                    binary(BytecodeOpCode.I64_GE_U);
+                    break;
+                case F32_EQ:
+                    binary(BytecodeOpCode.F32_EQ);
+                    break;
+                case F32_NE:
+                    binary(BytecodeOpCode.F32_NE);
+                    break;
+                case F32_LT:
+                    binary(BytecodeOpCode.F32_LT);
+                    break;
+                case F32_GT:
+                    binary(BytecodeOpCode.F32_GT);
+                    break;
+                case F32_LE:
+                    binary(BytecodeOpCode.F32_LE);
+                    break;
+                case F32_GE:
+                    binary(BytecodeOpCode.F32_GE);
+                    break;
+                case F64_EQ:
+                    binary(BytecodeOpCode.F64_EQ);
+                    break;
+                case F64_NE:
+                    binary(BytecodeOpCode.F64_NE);
+                    break;
+                case F64_LT:
+                    binary(BytecodeOpCode.F64_LT);
+                    break;
+                case F64_GT:
+                    binary(BytecodeOpCode.F64_GT);
+                    break;
+                case F64_LE:
+                    binary(BytecodeOpCode.F64_LE);
+                    break;
+                case F64_GE:
+                    binary(BytecodeOpCode.F64_GE);
+                    break;
+                case I32_CLZ:
+                    unary(BytecodeOpCode.I32_CLZ);
+                    break;
+                case I32_CTZ:
+                    unary(BytecodeOpCode.I32_CTZ);
+                    break;
+                case I32_POPCNT:
+                    unary(BytecodeOpCode.I32_POPCNT);
+                    break;
+                case I32_ADD:
+                    if (fuse(BytecodeOpCode.CONST32)) {
+                        emit(BytecodeOpCode.I32_ADD_CONST, code[size + 1]);
+                    } else if (fuse(BytecodeOpCode.LOCAL_GET_CONST)) {
+                        emit(BytecodeOpCode.LOCAL_I32_ADD_CONST, code[size + 1], code[size + 2]);
+                    } else if (fuse(BytecodeOpCode.LOCAL_GET_2)) {
+                        emit(BytecodeOpCode.LOCAL_I32_ADD, code[size + 1], code[size + 2]);
+                    } else {
+                        emit(BytecodeOpCode.I32_ADD);
+                    }
+                    pop(1);
+                    break;
+                case I32_SUB:
+                    // subtracting a constant is adding its negation, modulo 2^32
+                    if (fuse(BytecodeOpCode.CONST32)) {
+                        emit(BytecodeOpCode.I32_ADD_CONST, -code[size + 1]);
+                    } else if (fuse(BytecodeOpCode.LOCAL_GET_CONST)) {
+                        emit(BytecodeOpCode.LOCAL_I32_ADD_CONST, code[size + 1], -code[size + 2]);
+                    } else {
+                        emit(BytecodeOpCode.I32_SUB);
+                    }
+                    pop(1);
+                    break;
+                case I32_MUL:
+                    binary(BytecodeOpCode.I32_MUL);
+                    break;
+                case I32_DIV_S:
+                    binary(BytecodeOpCode.I32_DIV_S);
+                    break;
+                case I32_DIV_U:
+                    binary(BytecodeOpCode.I32_DIV_U);
+                    break;
+                case I32_REM_S:
+                    binary(BytecodeOpCode.I32_REM_S);
+                    break;
+                case I32_REM_U:
+                    binary(BytecodeOpCode.I32_REM_U);
+                    break;
+                case I32_AND:
+                    binary(BytecodeOpCode.I32_AND);
+                    break;
+                case I32_OR:
+                    binary(BytecodeOpCode.I32_OR);
+                    break;
+                case I32_XOR:
+                    binary(BytecodeOpCode.I32_XOR);
+                    break;
+                case I32_SHL:
+                    binary(BytecodeOpCode.I32_SHL);
+                    break;
+                case I32_SHR_S:
+                    binary(BytecodeOpCode.I32_SHR_S);
+                    break;
+                case I32_SHR_U:
+                    binary(BytecodeOpCode.I32_SHR_U);
+                    break;
+                case I32_ROTL:
+                    binary(BytecodeOpCode.I32_ROTL);
+                    break;
+                case I32_ROTR:
+                    binary(BytecodeOpCode.I32_ROTR);
+                    break;
+                case I64_CLZ:
+                    unary(BytecodeOpCode.I64_CLZ);
+                    break;
+                case I64_CTZ:
+                    unary(BytecodeOpCode.I64_CTZ);
+                    break;
+                case I64_POPCNT:
+                    unary(BytecodeOpCode.I64_POPCNT);
+                    break;
+                case I64_ADD:
+                    binary(BytecodeOpCode.I64_ADD);
+                    break;
+                case I64_SUB:
+                    binary(BytecodeOpCode.I64_SUB);
+                    break;
+                case I64_MUL:
+                    binary(BytecodeOpCode.I64_MUL);
+                    break;
+                case I64_DIV_S:
+                    binary(BytecodeOpCode.I64_DIV_S);
+                    break;
+                case I64_DIV_U:
+                    binary(BytecodeOpCode.I64_DIV_U);
+                    break;
+                case I64_REM_S:
+                    binary(BytecodeOpCode.I64_REM_S);
+                    break;
+                case I64_REM_U:
+                    binary(BytecodeOpCode.I64_REM_U);
+                    break;
+                case I64_AND:
+                    binary(BytecodeOpCode.I64_AND);
+                    break;
+                case I64_OR:
+                    binary(BytecodeOpCode.I64_OR);
+                    break;
+                case I64_XOR:
+                    binary(BytecodeOpCode.I64_XOR);
+                    break;
+                case I64_SHL:
+                    binary(BytecodeOpCode.I64_SHL);
+                    break;
+                case I64_SHR_S:
+                    binary(BytecodeOpCode.I64_SHR_S);
+                    break;
+                case I64_SHR_U:
+                    binary(BytecodeOpCode.I64_SHR_U);
+                    break;
+                case I64_ROTL:
+                    binary(BytecodeOpCode.I64_ROTL);
+                    break;
+                case I64_ROTR:
+                    binary(BytecodeOpCode.I64_ROTR);
+                    break;
+                case F32_ABS:
+                    unary(BytecodeOpCode.F32_ABS);
+                    break;
+                case F32_NEG:
+                    unary(BytecodeOpCode.F32_NEG);
+                    break;
+                case F32_CEIL:
+                    unary(BytecodeOpCode.F32_CEIL);
+                    break;
+                case F32_FLOOR:
+                    unary(BytecodeOpCode.F32_FLOOR);
+                    break;
+                case F32_TRUNC:
+                    unary(BytecodeOpCode.F32_TRUNC);
+                    break;
+                case F32_NEAREST:
+                    unary(BytecodeOpCode.F32_NEAREST);
+                    break;
+                case F32_SQRT:
+                    unary(BytecodeOpCode.F32_SQRT);
+                    break;
+                case F32_ADD:
+                    binary(BytecodeOpCode.F32_ADD);
+                    break;
+                case F32_SUB:
+                    binary(BytecodeOpCode.F32_SUB);
+                    break;
+                case F32_MUL:
+                    binary(BytecodeOpCode.F32_MUL);
+                    break;
+                case F32_DIV:
+                    binary(BytecodeOpCode.F32_DIV);
+                    break;
+                case F32_MIN:
+                    binary(BytecodeOpCode.F32_MIN);
+                    break;
+                case F32_MAX:
+                    binary(BytecodeOpCode.F32_MAX);
+                    break;
+                case F32_COPYSIGN:
+                    binary(BytecodeOpCode.F32_COPYSIGN);
+                    break;
+                case F64_ABS:
+                    unary(BytecodeOpCode.F64_ABS);
+                    break;
+                case F64_NEG:
+                    unary(BytecodeOpCode.F64_NEG);
+                    break;
+                case F64_CEIL:
+                    unary(BytecodeOpCode.F64_CEIL);
+                    break;
+                case F64_FLOOR:
+                    unary(BytecodeOpCode.F64_FLOOR);
+                    break;
+                case F64_TRUNC:
+                    unary(BytecodeOpCode.F64_TRUNC);
+                    break;
+                case F64_NEAREST:
+                    unary(BytecodeOpCode.F64_NEAREST);
+                    break;
+                case F64_SQRT:
+                    unary(BytecodeOpCode.F64_SQRT);
+                    break;
+                case F64_ADD:
+                    binary(BytecodeOpCode.F64_ADD);
+                    break;
+                case F64_SUB:
+                    binary(BytecodeOpCode.F64_SUB);
+                    break;
+                case F64_MUL:
+                    binary(BytecodeOpCode.F64_MUL);
+                    break;
+                case F64_DIV:
+                    binary(BytecodeOpCode.F64_DIV);
+                    break;
+                case F64_MIN:
+                    binary(BytecodeOpCode.F64_MIN);
+                    break;
+                case F64_MAX:
+                    binary(BytecodeOpCode.F64_MAX);
+                    break;
+                case F64_COPYSIGN:
+                    binary(BytecodeOpCode.F64_COPYSIGN);
+                    break;
+                case I32_WRAP_I64:
+                    unary(BytecodeOpCode.I32_WRAP_I64);
+                    break;
+                case I32_TRUNC_F32_S:
+                    unary(BytecodeOpCode.I32_TRUNC_F32_S);
+                    break;
+                case I32_TRUNC_F32_U:
+                    unary(BytecodeOpCode.I32_TRUNC_F32_U);
+                    break;
+                case I32_TRUNC_F64_S:
+                    unary(BytecodeOpCode.I32_TRUNC_F64_S);
+                    break;
+                case I32_TRUNC_F64_U:
+                    unary(BytecodeOpCode.I32_TRUNC_F64_U);
+                    break;
+                case I64_EXTEND_I32_S:
+                    unary(BytecodeOpCode.I64_EXTEND_I32_S);
+                    break;
+                case I64_EXTEND_I32_U:
+                    unary(BytecodeOpCode.I64_EXTEND_I32_U);
+                    break;
+                case I64_TRUNC_F32_S:
+                    unary(BytecodeOpCode.I64_TRUNC_F32_S);
+                    break;
+                case I64_TRUNC_F32_U:
+                    unary(BytecodeOpCode.I64_TRUNC_F32_U);
+                    break;
+                case I64_TRUNC_F64_S:
+                    unary(BytecodeOpCode.I64_TRUNC_F64_S);
+                    break;
+                case I64_TRUNC_F64_U:
+                    unary(BytecodeOpCode.I64_TRUNC_F64_U);
+                    break;
+                case F32_CONVERT_I32_S:
+                    unary(BytecodeOpCode.F32_CONVERT_I32_S);
+                    break;
+                case F32_CONVERT_I32_U:
+                    unary(BytecodeOpCode.F32_CONVERT_I32_U);
+                    break;
+                case F32_CONVERT_I64_S:
+                    unary(BytecodeOpCode.F32_CONVERT_I64_S);
+                    break;
+                case F32_CONVERT_I64_U:
+                    unary(BytecodeOpCode.F32_CONVERT_I64_U);
+                    break;
+                case F32_DEMOTE_F64:
+                    unary(BytecodeOpCode.F32_DEMOTE_F64);
+                    break;
+                case F64_CONVERT_I32_S:
+                    unary(BytecodeOpCode.F64_CONVERT_I32_S);
+                    break;
+                case F64_CONVERT_I32_U:
+                    unary(BytecodeOpCode.F64_CONVERT_I32_U);
+                    break;
+                case F64_CONVERT_I64_S:
+                    unary(BytecodeOpCode.F64_CONVERT_I64_S);
+                    break;
+                case F64_CONVERT_I64_U:
+                    unary(BytecodeOpCode.F64_CONVERT_I64_U);
+                    break;
+                case F64_PROMOTE_F32:
+                    unary(BytecodeOpCode.F64_PROMOTE_F32);
+                    break;
+                case I32_REINTERPRET_F32:
+                    unary(BytecodeOpCode.I32_REINTERPRET_F32);
+                    break;
+                case F32_REINTERPRET_I32:
+                    unary(BytecodeOpCode.F32_REINTERPRET_I32);
+                    break;
+                case I32_EXTEND_8_S:
+                    unary(BytecodeOpCode.I32_EXTEND_8_S);
+                    break;
+                case I32_EXTEND_16_S:
+                    unary(BytecodeOpCode.I32_EXTEND_16_S);
+                    break;
+                case I64_EXTEND_8_S:
+                    unary(BytecodeOpCode.I64_EXTEND_8_S);
+                    break;
+                case I64_EXTEND_16_S:
+                    unary(BytecodeOpCode.I64_EXTEND_16_S);
+                    break;
+                case I64_EXTEND_32_S:
+                    unary(BytecodeOpCode.I64_EXTEND_32_S);
+                    break;
+                case I32_TRUNC_SAT_F32_S:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F32_S);
+                    break;
+                case I32_TRUNC_SAT_F32_U:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F32_U);
+                    break;
+                case I32_TRUNC_SAT_F64_S:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F64_S);
+                    break;
+                case I32_TRUNC_SAT_F64_U:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F64_U);
+                    break;
+                case I64_TRUNC_SAT_F32_S:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F32_S);
+                    break;
+                case I64_TRUNC_SAT_F32_U:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F32_U);
+                    break;
+                case I64_TRUNC_SAT_F64_S:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F64_S);
+                    break;
+                case I64_TRUNC_SAT_F64_U:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F64_U);
+                    break;
+                default:
+                    // exception handling, atomics and SIMD
+                    return null;
+            }
+        }
+
+        return new Bytecode(
+                Arrays.copyOf(code, size),
+                paramCount,
+                localCount,
+                type.returns().size(),
+                maxHeight,
+                localDefaults);
+    }
+
+    private Control label(int depth) {
+        return controls.get(controls.size() - 1 - depth);
+    }
+
+    private void branch(int op, int unwindOp, Control target) {
+        var arity = target.labelArity();
+        var targetHeight = target.height + arity;
+        var position = size + 1;
+        if (arity == 0 || height == targetHeight) {
+            emit(op, 0, targetHeight);
+        } else {
+            emit(unwindOp, 0, arity, targetHeight);
+        }
+        fixup(target, position);
+    }
+
+    private boolean isUnwinding(Control target) {
+        var arity = target.labelArity();
+        return arity != 0 && height != target.height + arity;
+    }
+
+    private void branchEntry(Control target) {
+        var arity = target.labelArity();
+        var position = size;
+        emit(0, arity, target.height + arity);
+        fixup(target, position);
+        // not an instruction
+        last = -1;
+    }
+
+    private void fixup(Control target, int position) {
+        if (target.loop) {
+            code[position] = target.start;
+        } else {
+            target.endFixups.add(position);
+        }
+    }
+
+    private void call(FunctionType type) {
+        pop(type.params().size());
+        push(type.returns().size());
+    }
+
+    private void constant(long value) {
+        if (value == (int) value) {
+            if (fuse(BytecodeOpCode.LOCAL_GET)) {
+                emit(BytecodeOpCode.LOCAL_GET_CONST, code[size + 1], (int) value);
+            } else {
+                emit(BytecodeOpCode.CONST32, (int) value);
+            }
+        } else {
+            emit(BytecodeOpCode.CONST64, (int) (value >>> 32), (int) value);
+        }
+        push(1);
+    }
+
+    private void load(int op, AnnotatedInstruction ins) {
+        memoryAccess(op, ins);
+    }
+
+    private void localLoad(int op, int localOp, AnnotatedInstruction ins) {
+        var offset = ins.operand(1);
+        if (offset >= 0 && offset <= 0xFFFFFFFFL && fuse(BytecodeOpCode.LOCAL_GET)) {
+            emit(localOp, code[size + 1], (int) offset);
+        } else {
+            memoryAccess(op, ins);
+        }
+    }
+
+    private void store(int op, AnnotatedInstruction ins) {
+        memoryAccess(op, ins);
+        pop(2);
+    }
+
+    private void memoryAccess(int op, AnnotatedInstruction ins) {
+        var offset = ins.operand(1);
+        if (offset < 0 || offset > 0xFFFFFFFFL) {
+            // any access with such an offset is out of bounds
+            emit(BytecodeOpCode.MEMORY_OOB);
+        } else {
+            emit(op, (int) offset);
+        }
+    }
+
+    private void unary(int op) {
+        emit(op);
+    }
+
+    private void binary(int op) {
+        emit(op);
+        pop(1);
+    }
+
+    private void push(int n) {
+        height += n;
+        maxHeight = Math.max(maxHeight, height);
+    }
+
+    private void pop(int n) {
+        height -= n;
+    }
+
+    /**
+     * Rewinds the code to the last instruction if it is {@code op}, so that it can be replaced by a
+     * superinstruction. Its immediates are still readable from {@code code[size + 1]} onwards.
+     */
+    private boolean fuse(int op) {
+        if (!FUSION || last < 0 || code[last] != op) {
+            return false;
+        }
+        size = last;
+        return true;
+    }
+
+    private void emit(int... values) {
+        if (size + values.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + values.length));
+        }
+        last = size;
+        System.arraycopy(values, 0, code, size, values.length);
+        size += values.length;
+    }
+
+    private int blockParamCount(AnnotatedInstruction ins) {
+        var typeId = ins.operand(0);
+        if (typeId == 0x40 || ValType.isValid(typeId)) {
+            return 0;
+        }
+        return instance.type((int) typeId).params().size();
+    }
+
+    private int blockResultCount(AnnotatedInstruction ins) {
+        var typeId = ins.operand(0);
+        if (typeId == 0x40) { // epsilon
+            return 0;
+        }
+        if (ValType.isValid(typeId)) {
+            return 1;
+        }
+        return instance.type((int) typeId).returns().size();
+    }
+
+    private boolean isV128Block(AnnotatedInstruction ins) {
+        var typeId = ins.operand(0);
+        if (typeId == 0x40) {
+            return false;
+        }
+        if (ValType.isValid(typeId)) {
+            return typeId == ValType.V128.id();
+        }
+        return hasV128(instance.type((int) typeId));
+    }
+
+    private boolean isV128Global(int idx) {
+        var importCount = instance.imports().globalCount();
+        ValType type;
+        if (idx < importCount) {
+            type = instance.imports().global(idx).instance().getType();
+        } else {
+            type = instance.module().globalSection().getGlobal(idx - importCount).valueType();
+        }
+        return type.equals(ValType.V128);
+    }
+
+    private static boolean hasV128(FunctionType type) {
+        return type.params().contains(ValType.V128) || type.returns().contains(ValType.V128);
+    }
+}
@@ -0,0 +1,228 @@
+package com.dylibso.chicory.runtime;
+
+/**
+ * The internal opcodes of the pre-decoded code stream executed by {@link BytecodeInterpreterMachine}.
+ *
+ * The values are dense so that the interpreter loop compiles to a single table switch.
+ * Immediates follow the opcode inline in the same {@code int[]}, their layout is documented
+ * in {@link BytecodeLowering}.
+ */
+final class BytecodeOpCode {
+
+    // control flow, calls, locals and constants
+    static final int UNREACHABLE = 0;
+    static final int BR = 1;
+    static final int BR_UNWIND = 2;
+    static final int BR_IF = 3;
+    static final int BR_IF_UNWIND = 4;
+    static final int BR_UNLESS = 5;
+    static final int BR_TABLE = 6;
+    static final int BR_ON_NULL = 7;
+    static final int BR_ON_NON_NULL = 8;
+    static final int RETURN = 9;
+    static final int CALL = 10;
+    static final int CALL_INDIRECT = 11;
+    static final int CALL_REF = 12;
+    static final int RETURN_CALL = 13;
+    static final int RETURN_CALL_INDIRECT = 14;
+    static final int RETURN_CALL_REF = 15;
+    static final int DROP = 16;
+    static final int SELECT = 17;
+    static final int LOCAL_GET = 18;
+    static final int LOCAL_SET = 19;
+    static final int LOCAL_TEE = 20;
+    static final int GLOBAL_GET = 21;
+    static final int GLOBAL_SET = 22;
+    static final int CONST32 = 23;
+    static final int CONST64 = 24;
+
+    // linear memory
+    static final int I32_LOAD = 25;
+    static final int I64_LOAD = 26;
+    static final int I32_LOAD8_S = 27;
+    static final int I32_LOAD8_U = 28;
+    static final int I32_LOAD16_S = 29;
+    static final int I32_LOAD16_U = 30;
+    static final int I64_LOAD8_S = 31;
+    static final int I64_LOAD8_U = 32;
+    static final int I64_LOAD16_S = 33;
+    static final int I64_LOAD16_U = 34;
+    static final int I64_LOAD32_S = 35;
+    static final int I64_LOAD32_U = 36;
+    static final int I32_STORE = 37;
+    static final int I64_STORE = 38;
+    static final int STORE8 = 39;
+    static final int STORE16 = 40;
+    static final int STORE32 = 41;
+    static final int MEMORY_OOB = 42;
+    static final int MEMORY_SIZE = 43;
+    static final int MEMORY_GROW = 44;
+    static final int MEMORY_FILL = 45;
+    static final int MEMORY_COPY = 46;
+    static final int MEMORY_INIT = 47;
+    static final int DATA_DROP = 48;
+
+    // tables and references
+    static final int TABLE_GET = 49;
+    static final int TABLE_SET = 50;
+    static final int TABLE_SIZE = 51;
+    static final int TABLE_GROW = 52;
+    static final int TABLE_FILL = 53;
+    static final int TABLE_COPY = 54;
+    static final int TABLE_INIT = 55;
+    static final int ELEM_DROP = 56;
+    static final int REF_IS_NULL = 57;
+    static final int REF_AS_NON_NULL = 58;
+
+    // numeric instructions, operating in place on the top of the stack
+    static final int I32_EQZ = 59;
+    static final int I32_EQ = 60;
+    static final int I32_NE = 61;
+    static final int I32_LT_S = 62;
+    static final int I32_LT_U = 63;
+    static final int I32_GT_S = 64;
+    static final int I32_GT_U = 65;
+    static final int I32_LE_S = 66;
+    static final int I32_LE_U = 67;
+    static final int I32_GE_S = 68;
+    static final int I32_GE_U = 69;
+    static final int I64_EQZ = 70;
+    static final int I64_EQ = 71;
+    static final int I64_NE = 72;
+    static final int I64_LT_S = 73;
+    static final int I64_LT_U = 74;
+    static final int I64_GT_S = 75;
+    static final int I64_GT_U = 76;
+    static final int I64_LE_S = 77;
+    static final int I64_LE_U = 78;
+    static final int I64_GE_S = 79;
+    static final int I64_GE_U = 80;
+    static final int F32_EQ = 81;
+    static final int F32_NE = 82;
+    static final int F32_LT = 83;
+    static final int F32_GT = 84;
+    static final int F32_LE = 85;
+    static final int F32_GE = 86;
+    static final int F64_EQ = 87;
+    static final int F64_NE = 88;
+    static final int F64_LT = 89;
+    static final int F64_GT = 90;
+    static final int F64_LE = 91;
+    static final int F64_GE = 92;
+    static final int I32_CLZ = 93;
+    static final int I32_CTZ = 94;
+    static final int I32_POPCNT = 95;
+    static final int I32_ADD = 96;
+    static final int I32_SUB = 97;
+    static final int I32_MUL = 98;
+    static final int I32_DIV_S = 99;
+    static final int I32_DIV_U = 100;
+    static final int I32_REM_S = 101;
+    static final int I32_REM_U = 102;
+    static final int I32_AND = 103;
+    static final int I32_OR = 104;
+    static final int I32_XOR = 105;
+    static final int I32_SHL = 106;
+    static final int I32_SHR_S = 107;
+    static final int I32_SHR_U = 108;
+    static final int I32_ROTL = 109;
+    static final int I32_ROTR = 110;
+    static final int I64_CLZ = 111;
+    static final int I64_CTZ = 112;
+    static final int I64_POPCNT = 113;
+    static final int I64_ADD = 114;
+    static final int I64_SUB = 115;
+    static final int I64_MUL = 116;
+    static final int I64_DIV_S = 117;
+    static final int I64_DIV_U = 118;
+    static final int I64_REM_S = 119;
+    static final int I64_REM_U = 120;
+    static final int I64_AND = 121;
+    static final int I64_OR = 122;
+    static final int I64_XOR = 123;
+    static final int I64_SHL = 124;
+    static final int I64_SHR_S = 125;
+    static final int I64_SHR_U = 126;
+    static final int I64_ROTL = 127;
+    static final int I64_ROTR = 128;
+    static final int F32_ABS = 129;
+    static final int F32_NEG = 130;
+    static final int F32_CEIL = 131;
+    static final int F32_FLOOR = 132;
+    static final int F32_TRUNC = 133;
+    static final int F32_NEAREST = 134;
+    static final int F32_SQRT = 135;
+    static final int F32_ADD = 136;
+    static final int F32_SUB = 137;
+    static final int F32_MUL = 138;
+    static final int F32_DIV = 139;
+    static final int F32_MIN = 140;
+    static final int F32_MAX = 141;
+    static final int F32_COPYSIGN = 142;
+    static final int F64_ABS = 143;
+    static final int F64_NEG = 144;
+    static final int F64_CEIL = 145;
+    static final int F64_FLOOR = 146;
+    static final int F64_TRUNC = 147;
+    static final int F64_NEAREST = 148;
+    static final int F64_SQRT = 149;
+    static final int F64_ADD = 150;
+    static final int F64_SUB = 151;
+    static final int F64_MUL = 152;
+    static final int F64_DIV = 153;
+    static final int F64_MIN = 154;
+    static final int F64_MAX = 155;
+    static final int F64_COPYSIGN = 156;
+    static final int I32_WRAP_I64 = 157;
+    static final int I32_TRUNC_F32_S = 158;
+    static final int I32_TRUNC_F32_U = 159;
+    static final int I32_TRUNC_F64_S = 160;
+    static final int I32_TRUNC_F64_U = 161;
+    static final int I64_EXTEND_I32_S = 162;
+    static final int I64_EXTEND_I32_U = 163;
+    static final int I64_TRUNC_F32_S = 164;
+    static final int I64_TRUNC_F32_U = 165;
+    static final int I64_TRUNC_F64_S = 166;
+    static final int I64_TRUNC_F64_U = 167;
+    static final int F32_CONVERT_I32_S = 168;
+    static final int F32_CONVERT_I32_U = 169;
+    static final int F32_CONVERT_I64_S = 170;
+    static final int F32_CONVERT_I64_U = 171;
+    static final int F32_DEMOTE_F64 = 172;
+    static final int F64_CONVERT_I32_S = 173;
+    static final int F64_CONVERT_I32_U = 174;
+    static final int F64_CONVERT_I64_S = 175;
+    static final int F64_CONVERT_I64_U = 176;
+    static final int F64_PROMOTE_F32 = 177;
+    static final int I32_REINTERPRET_F32 = 178;
+    static final int F32_REINTERPRET_I32 = 179;
+    static final int I32_EXTEND_8_S = 180;
+    static final int I32_EXTEND_16_S = 181;
+    static final int I64_EXTEND_8_S = 182;
+    static final int I64_EXTEND_16_S = 183;
+    static final int I64_EXTEND_32_S = 184;
+    static final int I32_TRUNC_SAT_F32_S = 185;
+    static final int I32_TRUNC_SAT_F32_U = 186;
+    static final int I32_TRUNC_SAT_F64_S = 187;
+    static final int I32_TRUNC_SAT_F64_U = 188;
+    static final int I64_TRUNC_SAT_F32_S = 189;
+    static final int I64_TRUNC_SAT_F32_U = 190;
+    static final int I64_TRUNC_SAT_F64_S = 191;
+    static final int I64_TRUNC_SAT_F64_U = 192;
+
+    // register form only, copies a slot of the frame to another one
+    static final int MOVE = 193;
+
+    // superinstructions, fused from the most frequent sequences by BytecodeLowering
+    static final int LOCAL_GET_2 = 194;
+    static final int LOCAL_GET_CONST = 195;
+    static final int I32_ADD_CONST = 196;
+    static final int LOCAL_I32_ADD_CONST = 197;
+    static final int LOCAL_I32_ADD_CONST_SET = 198;
+    static final int LOCAL_I32_ADD = 199;
+    static final int LOCAL_I32_LOAD = 200;
+    static final int LOCAL_I64_LOAD = 201;
+    static final int BR_IF_EQZ = 202;
+
+    private BytecodeOpCode() {}
+}
@@ -0,0 +1,758 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.runtime.ConstantEvaluators.computeConstantValue;
+import static java.lang.Math.min;
+
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.UninstantiableException;
+import com.dylibso.chicory.wasm.types.ActiveDataSegment;
+import com.dylibso.chicory.wasm.types.DataSegment;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import com.dylibso.chicory.wasm.types.PassiveDataSegment;
+import com.dylibso.chicory.wasm.types.ValType;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents the linear memory in the Wasm program, stored in a table of {@code byte[]} chunks
+ * of one page each.
+ *
+ * Growing only allocates the new pages, the existing ones are never copied, and there is no
+ * over-allocation: use it for the modules that grow their memory incrementally to a large size.
+ * The accesses within a single chunk, i.e. all but the few that straddle two pages, are as
+ * direct as with a {@link ByteArrayMemory}: as there, try-catch is faster than explicit checks,
+ * and the accesses straddling two chunks fail on the first one and take a slow path.
+ *
+ * As the chunks are indexed with the upper bits of the address, the addresses are read as
+ * unsigned 32-bit integers, and the memory supports the full 4 GiB address space of Wasm.
+ */
+public final class ChunkedMemory implements Memory {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final VarHandle SHORT_ARR_HANDLE =
+            MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_ARR_HANDLE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle FLOAT_ARR_HANDLE =
+            MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_ARR_HANDLE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle DOUBLE_ARR_HANDLE =
+            MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final MemoryLimits limits;
+    private DataSegment[] dataSegments;
+    // the chunks of the current pages, followed by null entries up to the table capacity
+    private byte[][] chunks;
+    private int nPages;
+
+    public ChunkedMemory(MemoryLimits limits) {
+        this.limits = limits;
+        this.nPages = limits.initialPages();
+        this.chunks = new byte[nPages][];
+        for (int i = 0; i < nPages; i++) {
+            chunks[i] = new byte[CHUNK_SIZE];
+        }
+        if (limits.shared()) {
+            monitors = new ConcurrentHashMap<>();
+            notifyInProgress = new ConcurrentHashMap<>();
+        } else {
+            monitors = null;
+            notifyInProgress = null;
+        }
+    }
+
+    // atomic wait handling
+    private final Map<Integer, AtomicInteger> monitors;
+    private final Map<Integer, AtomicInteger> notifyInProgress;
+
+    @Override
+    public Object lock(int address) {
+        if (!shared()) {
+            // disable locking
+            return new Object();
+        }
+        return monitors.computeIfAbsent(address, k -> new AtomicInteger(0));
+    }
+
+    private AtomicInteger nextMonitor(int address) {
+        return monitors.compute(
+                address,
+                (k, v) -> {
+                    if (v == null) {
+                        return new AtomicInteger(1);
+                    } else {
+                        v.incrementAndGet();
+                        return v;
+                    }
+                });
+    }
+
+    // this method should only be invoked guarded in a "synchronized (monitor)" section
+    private int waitOnMonitor(int address, long timeout, AtomicInteger monitor) {
+        long endTime = System.nanoTime() + timeout;
+        try {
+            while (!notifyInProgress.containsKey(address) // prevents spurious wakeup
+                    && System.nanoTime() < endTime) {
+                var waitTime = endTime - System.nanoTime();
+                long millis = Math.max(waitTime / 1_000_000L, 0);
+                int nanos = Math.max((int) (waitTime % 1_000_000L), 0);
+                monitor.wait(millis, nanos);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt(); // Restore interrupt status
+            throw new ChicoryInterruptedException("Thread interrupted");
+        }
+        if (System.nanoTime() >= endTime) {
+            return 2; // timeout
+        } else {
+            return 0; // wake
+        }
+    }
+
+    private void endWaitOn(int address) {
+        AtomicInteger notifyCount = notifyInProgress.get(address);
+        if (notifyCount != null && notifyCount.decrementAndGet() == 0) {
+            notifyInProgress.remove(address);
+        }
+        AtomicInteger monitor = monitors.get(address);
+        if (monitor != null && monitor.decrementAndGet() == 0) {
+            monitors.remove(address);
+        }
+    }
+
+    // Wait until value at address != expected
+    @Override
+    public int waitOn(int address, int expected, long timeout) {
+        if (!shared()) {
+            throw new ChicoryException("Attempt to wait on a non-shared memory, not supported.");
+        }
+        AtomicInteger monitor = nextMonitor(address);
+
+        synchronized (monitor) {
+            try {
+                // the atomic accesses are aligned, and never straddle two chunks
+                if (((int) INT_ARR_HANDLE.getVolatile(chunk(address, 4), address & CHUNK_MASK))
+                        == expected) {
+                    return waitOnMonitor(
+                            address, (timeout < 0) ? Long.MAX_VALUE : timeout, monitor);
+                } else {
+                    return 1; // not-equal
+                }
+            } finally {
+                endWaitOn(address);
+            }
+        }
+    }
+
+    @Override
+    public int waitOn(int address, long expected, long timeout) {
+        if (!shared()) {
+            throw new ChicoryException("Attempt to wait on a non-shared memory, not supported.");
+        }
+        AtomicInteger monitor = nextMonitor(address);
+
+        synchronized (monitor) {
+            try {
+                if (((long) LONG_ARR_HANDLE.getVolatile(chunk(address, 8), address & CHUNK_MASK))
+                        == expected) {
+                    return waitOnMonitor(
+                            address, (timeout < 0) ? Long.MAX_VALUE : timeout, monitor);
+                } else {
+                    return 1; // not-equal
+                }
+            } finally {
+                endWaitOn(address);
+            }
+        }
+    }
+
+    // Notify all waiters at this address
+    @Override
+    public int notify(int address, int maxThreads) {
+        if (!shared()) {
+            return 0;
+        }
+
+        AtomicInteger monitor = monitors.get(address);
+        if (monitor == null) {
+            return 0;
+        }
+
+        synchronized (monitor) {
+            if (maxThreads < 0 || monitor.get() < maxThreads) {
+                notifyInProgress.put(address, new AtomicInteger(monitor.get()));
+                monitor.notifyAll();
+            } else {
+                var count = maxThreads;
+                notifyInProgress.put(address, new AtomicInteger(monitor.get() - maxThreads));
+                while (monitor.get() > 0 && count > 0) {
+                    monitor.notify();
+                    count--;
+                }
+            }
+        }
+        if (monitor.get() <= 0) {
+            monitors.remove(address);
+        }
+        return monitor.get();
+    }
+
+    // the atomic accesses are aligned, they never straddle two chunks
+    @Override
+    public int atomicReadInt(int addr) {
+        return (int) INT_ARR_HANDLE.getVolatile(chunk(addr, 4), addr & CHUNK_MASK);
+    }
+
+    @Override
+    public long atomicReadLong(int addr) {
+        return (long) LONG_ARR_HANDLE.getVolatile(chunk(addr, 8), addr & CHUNK_MASK);
+    }
+
+    @Override
+    public void atomicWriteInt(int addr, int value) {
+        INT_ARR_HANDLE.setVolatile(chunk(addr, 4), addr & CHUNK_MASK, value);
+    }
+
+    @Override
+    public void atomicWriteLong(int addr, long value) {
+        LONG_ARR_HANDLE.setVolatile(chunk(addr, 8), addr & CHUNK_MASK, value);
+    }
+
+    @Override
+    public int atomicCompareAndExchangeInt(int addr, int expected, int value) {
+        return (int)
+                INT_ARR_HANDLE.compareAndExchange(
+                        chunk(addr, 4), addr & CHUNK_MASK, expected, value);
+    }
+
+    @Override
+    public long atomicCompareAndExchangeLong(int addr, long expected, long value) {
+        return (long)
+                LONG_ARR_HANDLE.compareAndExchange(
+                        chunk(addr, 8), addr & CHUNK_MASK, expected, value);
+    }
+
+    @Override
+    public int atomicGetAndAddInt(int addr, int delta) {
+        return (int) INT_ARR_HANDLE.getAndAdd(chunk(addr, 4), addr & CHUNK_MASK, delta);
+    }
+
+    @Override
+    public long atomicGetAndAddLong(int addr, long delta) {
+        return (long) LONG_ARR_HANDLE.getAndAdd(chunk(addr, 8), addr & CHUNK_MASK, delta);
+    }
+
+    @Override
+    public int atomicGetAndSetInt(int addr, int value) {
+        return (int) INT_ARR_HANDLE.getAndSet(chunk(addr, 4), addr & CHUNK_MASK, value);
+    }
+
+    @Override
+    public long atomicGetAndSetLong(int addr, long value) {
+        return (long) LONG_ARR_HANDLE.getAndSet(chunk(addr, 8), addr & CHUNK_MASK, value);
+    }
+
+    /**
+     * Gets the size of the memory in number of pages
+     */
+    @Override
+    public int pages() {
+        return nPages;
+    }
+
+    @Override
+    public int grow(int size) {
+        var prevPages = nPages;
+        var numPages = prevPages + size;
+
+        if (numPages > maximumPages() || numPages < prevPages) {
+            return -1;
+        }
+
+        var table = chunks;
+        if (numPages > table.length) {
+            // only the references are copied, the table is doubled to amortize it
+            table = Arrays.copyOf(table, min(Math.max(numPages, 2 * table.length), maximumPages()));
+        }
+        for (int i = prevPages; i < numPages; i++) {
+            table[i] = new byte[CHUNK_SIZE];
+        }
+
+        chunks = table;
+        nPages = numPages;
+        return prevPages;
+    }
+
+    @Override
+    public int initialPages() {
+        return this.limits.initialPages();
+    }
+
+    @Override
+    public int maximumPages() {
+        return min(this.limits.maximumPages(), MemoryLimits.MAX_PAGES);
+    }
+
+    @Override
+    public boolean shared() {
+        return this.limits.shared();
+    }
+
+    @Override
+    public void initialize(Instance instance, DataSegment[] dataSegments) {
+        this.dataSegments = dataSegments;
+        if (dataSegments == null) {
+            return;
+        }
+
+        for (var s : dataSegments) {
+            if (s instanceof ActiveDataSegment) {
+                var segment = (ActiveDataSegment) s;
+                var offsetExpr = segment.offsetInstructions();
+                var data = segment.data();
+                var offset = computeConstantValue(instance, offsetExpr)[0];
+                // the offset is an unsigned i32, or an unsigned i64 with a 64-bit memory
+                var address =
+                        limits.addressType().equals(ValType.I64)
+                                ? offset
+                                : Integer.toUnsignedLong((int) offset);
+                if (address < 0 || address + data.length > sizeInBytes()) {
+                    throw new UninstantiableException(
+                            "out of bounds memory access: attempted to access address: "
+                                    + Long.toUnsignedString(address)
+                                    + " but limit is: "
+                                    + sizeInBytes()
+                                    + " and size: "
+                                    + data.length);
+                }
+                copyIn(address, data, 0, data.length);
+            } else if (s instanceof PassiveDataSegment) {
+                // Passive segment should be skipped
+            } else {
+                throw new ChicoryException("Data segment should be active or passive: " + s);
+            }
+        }
+    }
+
+    private static WasmRuntimeException outOfBoundsException(int addr, long size, long limit) {
+        return new WasmRuntimeException(
+                "out of bounds memory access: attempted to access address: "
+                        + Integer.toUnsignedString(addr)
+                        + " but limit is: "
+                        + limit
+                        + " and size: "
+                        + size);
+    }
+
+    private static RuntimeException outOfBoundsException(
+            RuntimeException e, int addr, long size, long limit) {
+        // the chunks past the current pages are null, or past the end of the table
+        if (e instanceof IndexOutOfBoundsException
+                || e instanceof NullPointerException
+                || e instanceof NegativeArraySizeException) {
+            return outOfBoundsException(addr, size, limit);
+        } else {
+            return e;
+        }
+    }
+
+    @Override
+    public void initPassiveSegment(int segmentId, int dest, int offset, int size) {
+        var segment = dataSegments[segmentId];
+        write(dest, segment.data(), offset, size);
+    }
+
+    private long sizeInBytes() {
+        return (long) PAGE_SIZE * nPages;
+    }
+
+    // the chunk of an access of size bytes that doesn't straddle two chunks
+    private byte[] chunk(int addr, int size) {
+        try {
+            return Objects.requireNonNull(chunks[addr >>> CHUNK_SHIFT]);
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, size, sizeInBytes());
+        }
+    }
+
+    private void checkBounds(int addr, long size) {
+        if (size < 0 || Integer.toUnsignedLong(addr) + size > sizeInBytes()) {
+            throw outOfBoundsException(addr, size, sizeInBytes());
+        }
+    }
+
+    // the slow path of the accesses that failed on a single chunk: they are either out of
+    // bounds, or straddle two chunks and are done byte by byte, in little-endian order
+    private long readStraddling(int addr, int size) {
+        checkBounds(addr, size);
+        long value = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            var a = addr + i;
+            value = (value << 8) | (chunks[a >>> CHUNK_SHIFT][a & CHUNK_MASK] & 0xFF);
+        }
+        return value;
+    }
+
+    private void writeStraddling(int addr, long value, int size) {
+        // nothing is written by an access that is partially out of bounds
+        checkBounds(addr, size);
+        for (int i = 0; i < size; i++) {
+            var a = addr + i;
+            chunks[a >>> CHUNK_SHIFT][a & CHUNK_MASK] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    // copies the bytes of data to the memory, the range must be in bounds
+    private void copyIn(long address, byte[] data, int offset, int size) {
+        while (size > 0) {
+            var chunkOffset = (int) (address & CHUNK_MASK);
+            var n = min(size, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(data, offset, chunks[(int) (address >>> CHUNK_SHIFT)], chunkOffset, n);
+            address += n;
+            offset += n;
+            size -= n;
+        }
+    }
+
+    @Override
+    public void write(int addr, byte[] data, int offset, int size) {
+        try {
+            Objects.checkFromIndexSize(offset, size, data.length);
+        } catch (IndexOutOfBoundsException e) {
+            throw outOfBoundsException(e, addr, size, sizeInBytes());
+        }
+        checkBounds(addr, size);
+        copyIn(Integer.toUnsignedLong(addr), data, offset, size);
+    }
+
+    @Override
+    public void write(int addr, ByteBuffer data) {
+        checkBounds(addr, data.remaining());
+        var address = Integer.toUnsignedLong(addr);
+        while (data.hasRemaining()) {
+            var chunkOffset = (int) (address & CHUNK_MASK);
+            var n = min(data.remaining(), CHUNK_SIZE - chunkOffset);
+            data.get(chunks[(int) (address >>> CHUNK_SHIFT)], chunkOffset, n);
+            address += n;
+        }
+    }
+
+    @Override
+    public byte read(int addr) {
+        try {
+            return chunks[addr >>> CHUNK_SHIFT][addr & CHUNK_MASK];
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 1, sizeInBytes());
+        }
+    }
+
+    @Override
+    public byte[] readBytes(int addr, int len) {
+        checkBounds(addr, len);
+        var bytes = new byte[len];
+        readInto(addr, bytes, 0, len);
+        return bytes;
+    }
+
+    @Override
+    public void readInto(int addr, byte[] dest, int offset, int len) {
+        try {
+            Objects.checkFromIndexSize(offset, len, dest.length);
+        } catch (IndexOutOfBoundsException e) {
+            throw outOfBoundsException(e, addr, len, sizeInBytes());
+        }
+        checkBounds(addr, len);
+        var address = Integer.toUnsignedLong(addr);
+        var end = offset + len;
+        while (offset < end) {
+            var chunkOffset = (int) (address & CHUNK_MASK);
+            var n = min(end - offset, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(chunks[(int) (address >>> CHUNK_SHIFT)], chunkOffset, dest, offset, n);
+            address += n;
+            offset += n;
+        }
+    }
+
+    @Override
+    public void readInto(int addr, ByteBuffer dest) {
+        checkBounds(addr, dest.remaining());
+        var address = Integer.toUnsignedLong(addr);
+        while (dest.hasRemaining()) {
+            var chunkOffset = (int) (address & CHUNK_MASK);
+            var n = min(dest.remaining(), CHUNK_SIZE - chunkOffset);
+            dest.put(chunks[(int) (address >>> CHUNK_SHIFT)], chunkOffset, n);
+            address += n;
+        }
+    }
+
+    @Override
+    public ByteBuffer view(int addr, int len) {
+        checkBounds(addr, len);
+        if (len == 0) {
+            return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        var chunkOffset = addr & CHUNK_MASK;
+        if (len > CHUNK_SIZE - chunkOffset) {
+            throw new UnsupportedOperationException(
+                    "Cannot view "
+                            + len
+                            + " bytes at address "
+                            + Integer.toUnsignedString(addr)
+                            + ", they straddle several pages");
+        }
+        return ByteBuffer.wrap(chunks[addr >>> CHUNK_SHIFT], chunkOffset, len)
+                .slice()
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public ByteBuffer readOnlyView(int addr, int len) {
+        if (len > CHUNK_SIZE - (addr & CHUNK_MASK)) {
+            // a copy of the bytes
+            return Memory.super.readOnlyView(addr, len);
+        }
+        return view(addr, len).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int transferTo(int addr, int len, WritableByteChannel channel) throws IOException {
+        checkBounds(addr, len);
+        var address = Integer.toUnsignedLong(addr);
+        int transferred = 0;
+        while (transferred < len) {
+            var chunkOffset = (int) (address & CHUNK_MASK);
+            var n = min(len - transferred, CHUNK_SIZE - chunkOffset);
+            var buffer = ByteBuffer.wrap(chunks[(int) (address >>> CHUNK_SHIFT)], chunkOffset, n);
+            while (buffer.hasRemaining() && channel.write(buffer) > 0) {
+                // keep writing
+            }
+            transferred += n - buffer.remaining();
+            address += n;
+            if (buffer.hasRemaining()) {
+                break;
+            }
+        }
+        return transferred;
+    }
+
+    @Override
+    public int transferFrom(ReadableByteChannel channel, int addr, int len) throws IOException {
+        checkBounds(addr, len);
+        var address = Integer.toUnsignedLong(addr);
+        int transferred = 0;
+        while (transferred < len) {
+            var chunkOffset = (int) (address & CHUNK_MASK);
+            var n = min(len - transferred, CHUNK_SIZE - chunkOffset);
+            var buffer = ByteBuffer.wrap(chunks[(int) (address >>> CHUNK_SHIFT)], chunkOffset, n);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // keep reading
+            }
+            transferred += n - buffer.remaining();
+            address += n;
+            if (buffer.hasRemaining()) {
+                break;
+            }
+        }
+        return transferred;
+    }
+
+    @Override
+    public void writeI32(int addr, int data) {
+        try {
+            INT_ARR_HANDLE.set(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK, data);
+        } catch (RuntimeException e) {
+            writeStraddling(addr, data, 4);
+        }
+    }
+
+    @Override
+    public int readInt(int addr) {
+        try {
+            return (int) INT_ARR_HANDLE.get(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK);
+        } catch (RuntimeException e) {
+            return (int) readStraddling(addr, 4);
+        }
+    }
+
+    @Override
+    public void writeLong(int addr, long data) {
+        try {
+            LONG_ARR_HANDLE.set(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK, data);
+        } catch (RuntimeException e) {
+            writeStraddling(addr, data, 8);
+        }
+    }
+
+    @Override
+    public long readLong(int addr) {
+        try {
+            return (long) LONG_ARR_HANDLE.get(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK);
+        } catch (RuntimeException e) {
+            return readStraddling(addr, 8);
+        }
+    }
+
+    @Override
+    public void writeShort(int addr, short data) {
+        try {
+            SHORT_ARR_HANDLE.set(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK, data);
+        } catch (RuntimeException e) {
+            writeStraddling(addr, data, 2);
+        }
+    }
+
+    @Override
+    public short readShort(int addr) {
+        try {
+            return (short) SHORT_ARR_HANDLE.get(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK);
+        } catch (RuntimeException e) {
+            return (short) readStraddling(addr, 2);
+        }
+    }
+
+    @Override
+    public long readU16(int addr) {
+        return readShort(addr) & 0xffff;
+    }
+
+    @Override
+    public void writeByte(int addr, byte data) {
+        try {
+            chunks[addr >>> CHUNK_SHIFT][addr & CHUNK_MASK] = data;
+        } catch (RuntimeException e) {
+            throw outOfBoundsException(e, addr, 1, sizeInBytes());
+        }
+    }
+
+    @Override
+    public void writeF32(int addr, float data) {
+        try {
+            FLOAT_ARR_HANDLE.set(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK, data);
+        } catch (RuntimeException e) {
+            writeStraddling(addr, Float.floatToRawIntBits(data), 4);
+        }
+    }
+
+    @Override
+    public long readF32(int addr) {
+        return readInt(addr);
+    }
+
+    @Override
+    public float readFloat(int addr) {
+        try {
+            return (float) FLOAT_ARR_HANDLE.get(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK);
+        } catch (RuntimeException e) {
+            return Float.intBitsToFloat((int) readStraddling(addr, 4));
+        }
+    }
+
+    @Override
+    public void writeF64(int addr, double data) {
+        try {
+            DOUBLE_ARR_HANDLE.set(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK, data);
+        } catch (RuntimeException e) {
+            writeStraddling(addr, Double.doubleToRawLongBits(data), 8);
+        }
+    }
+
+    @Override
+    public double readDouble(int addr) {
+        try {
+            return (double) DOUBLE_ARR_HANDLE.get(chunks[addr >>> CHUNK_SHIFT], addr & CHUNK_MASK);
+        } catch (RuntimeException e) {
+            return Double.longBitsToDouble(readStraddling(addr, 8));
+        }
+    }
+
+    @Override
+    public long readF64(int addr) {
+        return readLong(addr);
+    }
+
+    @Override
+    public void zero() {
+        for (int i = 0; i < nPages; i++) {
+            Arrays.fill(chunks[i], (byte) 0);
+        }
+    }
+
+    @Override
+    public void fill(byte value, int fromIndex, int toIndex) {
+        var from = Integer.toUnsignedLong(fromIndex);
+        var to = Integer.toUnsignedLong(toIndex);
+        if (to < from) {
+            // the end has been computed with an int addition that overflowed
+            to += 1L << 32;
+        }
+        checkBounds(fromIndex, to - from);
+        while (from < to) {
+            var chunkOffset = (int) (from & CHUNK_MASK);
+            var n = (int) min(to - from, CHUNK_SIZE - chunkOffset);
+            var chunk = chunks[(int) (from >>> CHUNK_SHIFT)];
+            Arrays.fill(chunk, chunkOffset, chunkOffset + n, value);
+            from += n;
+        }
+    }
+
+    @Override
+    public void copy(int dest, int src, int size) {
+        var length = Integer.toUnsignedLong(size);
+        checkBounds(src, length);
+        checkBounds(dest, length);
+        var from = Integer.toUnsignedLong(src);
+        var to = Integer.toUnsignedLong(dest);
+        // the ranges may overlap: copy the pieces in the order that doesn't overwrite
+        // the bytes yet to be copied, each piece is within a single chunk of both ranges
+        if (to <= from) {
+            while (length > 0) {
+                var n =
+                        (int)
+                                min(
+                                        length,
+                                        CHUNK_SIZE - Math.max(from & CHUNK_MASK, to & CHUNK_MASK));
+                copyPiece(from, to, n);
+                from += n;
+                to += n;
+                length -= n;
+            }
+        } else {
+            from += length;
+            to += length;
+            while (length > 0) {
+                var n = (int) min(length, min((from - 1) & CHUNK_MASK, (to - 1) & CHUNK_MASK) + 1);
+                from -= n;
+                to -= n;
+                length -= n;
+                copyPiece(from, to, n);
+            }
+        }
+    }
+
+    private void copyPiece(long from, long to, int n) {
+        System.arraycopy(
+                chunks[(int) (from >>> CHUNK_SHIFT)],
+                (int) (from & CHUNK_MASK),
+                chunks[(int) (to >>> CHUNK_SHIFT)],
+                (int) (to & CHUNK_MASK),
+                n);
+    }
+
+    @Override
+    public void drop(int segment) {
+        dataSegments[segment] = PassiveDataSegment.EMPTY;
+    }
+}
@@ -8,7 +8,7 @@ import com.dylibso.chicory.wasm.types.Value;
 import java.util.Arrays;
 import java.util.List;
 
-final class ConstantEvaluators {
+public final class ConstantEvaluators {
     private ConstantEvaluators() {}
 
     public static long[] computeConstantValue(Instance instance, Instruction[] expr) {
@@ -0,0 +1,22 @@
+package com.dylibso.chicory.runtime;
+
+import com.dylibso.chicory.wasm.types.FunctionType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the function types into canonical ids: two types have the same id exactly when they
+ * have the same params and returns.
+ *
+ * The instances built with the same registry, e.g. by a {@link Store}, check the signatures of
+ * their indirect calls and of their imports with one integer comparison.
+ * A registry keeps the types of every module instantiated with it, and is collected with the
+ * instances sharing it.
+ */
+public final class FunctionTypeRegistry {
+    private final Map<FunctionType, Integer> ids = new HashMap<>();
+
+    public synchronized int id(FunctionType type) {
+        return ids.computeIfAbsent(type, t -> ids.size());
+    }
+}
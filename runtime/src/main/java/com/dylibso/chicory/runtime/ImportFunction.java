@@ -12,6 +12,9 @@ public class ImportFunction implements ImportValue {
     private final List<ValType> paramTypes;
     private final List<ValType> returnTypes;
     private final WasmFunctionHandle handle;
+    // the canonical type of the function exported by an instance, see Store.register
+    private final FunctionTypeRegistry typeRegistry;
+    private final int typeId;
 
     @Deprecated(since = "1.3.0")
     protected static List<ValType> convert(List objs) {
@@ -32,11 +35,23 @@ public class ImportFunction implements ImportValue {
 
     public ImportFunction(
             String module, String name, FunctionType type, WasmFunctionHandle handle) {
+        this(module, name, type, handle, null, -1);
+    }
+
+    ImportFunction(
+            String module,
+            String name,
+            FunctionType type,
+            WasmFunctionHandle handle,
+            FunctionTypeRegistry typeRegistry,
+            int typeId) {
         this.module = module;
         this.name = name;
         this.paramTypes = type.params();
         this.returnTypes = type.returns();
         this.handle = handle;
+        this.typeRegistry = typeRegistry;
+        this.typeId = typeId;
     }
 
     @Deprecated(since = "1.3.0")
@@ -51,6 +66,8 @@ public class ImportFunction implements ImportValue {
         this.paramTypes = convert(paramTypes);
         this.returnTypes = convert(returnTypes);
         this.handle = handle;
+        this.typeRegistry = null;
+        this.typeId = -1;
     }
 
     public WasmFunctionHandle handle() {
@@ -83,4 +100,12 @@ public class ImportFunction implements ImportValue {
     public FunctionType functionType() {
         return FunctionType.of(paramTypes, returnTypes);
     }
+
+    FunctionTypeRegistry typeRegistry() {
+        return typeRegistry;
+    }
+
+    int typeId() {
+        return typeId;
+    }
 }
@@ -0,0 +1,74 @@
+package com.dylibso.chicory.runtime;
+
+import com.dylibso.chicory.wasm.types.FunctionType;
+
+/**
+ * The inline cache of a {@code call_indirect} instruction: the targets of the last table slots
+ * called, already resolved and with their type already verified.
+ *
+ * The entries stay valid as long as the table is not modified, any change to it increments its
+ * {@link TableInstance#version()} and empties the cache on the next lookup.
+ */
+final class IndirectCallCache {
+
+    // enough for the few implementations usually called through the same virtual call site
+    private static final int SIZE = 4;
+
+    static final class Target {
+        final int funcId;
+        final Instance instance;
+        // the type expected by the call, the one of the target already matched it
+        final FunctionType type;
+
+        Target(int funcId, Instance instance, FunctionType type) {
+            this.funcId = funcId;
+            this.instance = instance;
+            this.type = type;
+        }
+    }
+
+    private final TableInstance table;
+    private int version;
+    private final int[] slots = new int[SIZE];
+    private final Target[] targets = new Target[SIZE];
+    private int count;
+    // the entry to replace when the cache is full
+    private int next;
+
+    IndirectCallCache(TableInstance table) {
+        this.table = table;
+        this.version = table.version();
+    }
+
+    /**
+     * @return the target cached for the slot, or {@code null} if it has to be resolved
+     */
+    Target get(int slot) {
+        if (table.version() != version) {
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            if (slots[i] == slot) {
+                return targets[i];
+            }
+        }
+        return null;
+    }
+
+    void put(int slot, Target target) {
+        if (table.version() != version) {
+            version = table.version();
+            count = 0;
+            next = 0;
+        }
+        int i;
+        if (count < SIZE) {
+            i = count++;
+        } else {
+            i = next;
+            next = (next + 1) % SIZE;
+        }
+        slots[i] = slot;
+        targets[i] = target;
+    }
+}
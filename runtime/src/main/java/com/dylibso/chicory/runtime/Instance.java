@@ -44,11 +44,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.OptionalInt;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class Instance {
     public static final String START_FUNCTION_NAME = "_start";
+    // the call depth limit of the interpreters keeping their frames on the heap
+    public static final int DEFAULT_MAX_CALL_DEPTH = 100_000;
 
     private final WasmModule module;
     private final Machine machine;
@@ -59,12 +62,17 @@ public class Instance {
     private final GlobalInstance[] globals;
     private final FunctionType[] types;
     private final int[] functionTypes;
+    private final FunctionTypeRegistry typeRegistry;
+    private final int[] typeIds;
     private final ImportValues imports;
     private final TableInstance[] tables;
     private final Element[] elements;
     private final TagInstance[] tags;
     private final Map<String, Export> exports;
     private final ExecutionListener listener;
+    private final OptionalInt maxCallDepth;
+    private final boolean fuelMetered;
+    private long fuel;
     private final Exports fluentExports;
 
     private final Map<Integer, WasmException> exnRefs;
@@ -77,6 +85,8 @@ public class Instance {
             FunctionBody[] functions,
             FunctionType[] types,
             int[] functionTypes,
+            FunctionTypeRegistry typeRegistry,
+            int[] typeIds,
             ImportValues imports,
             Table[] tables,
             Element[] elements,
@@ -85,7 +95,10 @@ public class Instance {
             Function<Instance, Machine> machineFactory,
             boolean initialize,
             boolean start,
-            ExecutionListener listener) {
+            ExecutionListener listener,
+            OptionalInt maxCallDepth,
+            boolean fuelMetered,
+            long fuel) {
         this.module = module;
         this.globalInitializers = globalInitializers.clone();
         this.globals = new GlobalInstance[globalInitializers.length];
@@ -94,7 +107,13 @@ public class Instance {
         this.functions = functions.clone();
         this.types = types.clone();
         this.functionTypes = functionTypes.clone();
+        this.typeRegistry = typeRegistry;
+        this.typeIds = typeIds;
         this.imports = imports;
+        this.listener = listener;
+        this.maxCallDepth = maxCallDepth;
+        this.fuelMetered = fuelMetered;
+        this.fuel = fuel;
         this.machine = machineFactory.apply(this);
         this.tables = new TableInstance[tables.length];
         this.elements = elements.clone();
@@ -104,7 +123,6 @@ public class Instance {
             this.tags[i].setType(types[tags[i].typeIdx()]);
         }
         this.exports = exports;
-        this.listener = listener;
         this.fluentExports = new Exports(this);
 
         this.exnRefs = new HashMap<>();
@@ -286,6 +304,32 @@ public class Instance {
         return functionTypes[idx];
     }
 
+    public FunctionTypeRegistry typeRegistry() {
+        return typeRegistry;
+    }
+
+    /**
+     * Returns the id of the type {@code idx} in the {@link #typeRegistry()}, the same signature
+     * has the same id in every instance sharing the registry.
+     */
+    public int canonicalTypeId(int idx) {
+        if (idx >= typeIds.length) {
+            throw new InvalidException("unknown type " + idx);
+        }
+        return typeIds[idx];
+    }
+
+    /**
+     * Returns true when the function {@code funcIdx} of this instance has the type
+     * {@code typeIdx} of the {@code caller}, comparing the canonical ids.
+     * False only means a mismatch when both instances share a registry, and the type isn't
+     * a subtype: otherwise the caller compares the types themselves.
+     */
+    public boolean hasCanonicalType(int funcIdx, Instance caller, int typeIdx) {
+        return typeRegistry == caller.typeRegistry
+                && typeIds[functionType(funcIdx)] == caller.canonicalTypeId(typeIdx);
+    }
+
     public ImportValues imports() {
         return imports;
     }
@@ -343,12 +387,72 @@ public class Instance {
         return machine;
     }
 
-    void onExecution(Instruction instruction, MStack stack) {
-        if (listener != null) {
-            listener.onExecution(instruction, stack);
+    /**
+     * @return the maximum number of nested calls set with {@link Builder#withMaxCallDepth(int)}.
+     *     When it's not set, the interpreters use {@link #DEFAULT_MAX_CALL_DEPTH}
+     */
+    public OptionalInt maxCallDepth() {
+        return maxCallDepth;
+    }
+
+    /**
+     * @return whether the machines meter the execution of this instance with fuel
+     */
+    public boolean isFuelMetered() {
+        return fuelMetered;
+    }
+
+    /**
+     * @return the fuel left, one unit is consumed every time a Wasm function is entered
+     *     and every time a loop jumps back to its start
+     */
+    public long fuel() {
+        return fuel;
+    }
+
+    /**
+     * Adds fuel to a metered instance, for example to call it again after an
+     * {@link OutOfFuelException}.
+     */
+    public void addFuel(long fuel) {
+        if (!fuelMetered) {
+            throw new IllegalStateException("The instance is not metered");
+        }
+        this.fuel = (Long.MAX_VALUE - this.fuel < fuel) ? Long.MAX_VALUE : this.fuel + fuel;
+    }
+
+    /**
+     * Sets the fuel left of a metered instance, the compiled code calls it to write back
+     * the fuel it counts locally.
+     */
+    public void setFuel(long fuel) {
+        if (!fuelMetered) {
+            throw new IllegalStateException("The instance is not metered");
+        }
+        this.fuel = fuel;
+    }
+
+    /**
+     * Consumes one unit of fuel, the machines call it when a Wasm function is entered
+     * and when a loop jumps back to its start.
+     *
+     * @throws OutOfFuelException if the instance is metered and its fuel is exhausted
+     */
+    public void consumeFuel() {
+        if (fuelMetered && --fuel < 0) {
+            fuel = 0;
+            throw new OutOfFuelException("out of fuel");
         }
     }
 
+    boolean hasExecutionListener() {
+        return listener != null;
+    }
+
+    ExecutionListener executionListener() {
+        return listener;
+    }
+
     public static Builder builder(WasmModule module) {
         return new Builder(module);
     }
@@ -363,6 +467,10 @@ public class Instance {
         private ExecutionListener listener;
         private ImportValues importValues;
         private Function<Instance, Machine> machineFactory;
+        private OptionalInt maxCallDepth = OptionalInt.empty();
+        private FunctionTypeRegistry typeRegistry;
+        private boolean fuelMetered;
+        private long fuel;
 
         private Builder(WasmModule module) {
             this.module = Objects.requireNonNull(module);
@@ -406,16 +514,61 @@ public class Instance {
             return this;
         }
 
-        private boolean checkExternalFunctionSignature(FunctionImport imprt, ImportFunction f) {
+        /**
+         * Limits the depth of the Wasm call stack, deeper calls fail with "call stack exhausted".
+         * The interpreters keep their frames on the heap, so the limit doesn't depend on the
+         * stack size of the calling thread, and defaults to {@link #DEFAULT_MAX_CALL_DEPTH}.
+         */
+        public Builder withMaxCallDepth(int maxCallDepth) {
+            this.maxCallDepth = OptionalInt.of(maxCallDepth);
+            return this;
+        }
+
+        /**
+         * Interns the function types of the module in the given registry, so that the calls
+         * and the imports between the instances sharing it check their signatures with one
+         * integer comparison. {@link Store#instantiate} uses the registry of the store, the
+         * instances get a registry of their own by default.
+         */
+        public Builder withTypeRegistry(FunctionTypeRegistry typeRegistry) {
+            this.typeRegistry = typeRegistry;
+            return this;
+        }
+
+        /**
+         * Meters the execution with a budget of fuel: every Wasm function call and every
+         * iteration of a loop after the first one consume a unit, and an
+         * {@link OutOfFuelException} is thrown when none is left.
+         * Unlike an interruption, the limit doesn't depend on the speed of the machine.
+         */
+        public Builder withFuel(long fuel) {
+            this.fuelMetered = true;
+            this.fuel = fuel;
+            return this;
+        }
+
+        private boolean checkExternalFunctionSignature(
+                FunctionImport imprt,
+                ImportFunction f,
+                FunctionTypeRegistry registry,
+                int[] typeIds) {
             try {
-                validateExternalFunctionSignature(imprt, f);
+                validateExternalFunctionSignature(imprt, f, registry, typeIds);
                 return true;
             } catch (UnlinkableException e) {
                 return false;
             }
         }
 
-        private void validateExternalFunctionSignature(FunctionImport imprt, ImportFunction f) {
+        private void validateExternalFunctionSignature(
+                FunctionImport imprt,
+                ImportFunction f,
+                FunctionTypeRegistry registry,
+                int[] typeIds) {
+            // the exports of an instance sharing the registry are checked from the ids
+            if (f.typeRegistry() == registry && f.typeId() == typeIds[imprt.typeIndex()]) {
+                return;
+            }
             var expectedType = module.typeSection().getType(imprt.typeIndex());
 
             if (!f.functionType().equals(expectedType)) {
@@ -529,10 +682,7 @@ public class Instance {
             var hostMemCurrentPages = m.memory().pages();
             var hostMemMaxPages = m.memory().maximumPages();
             var importInitialPages = i.limits().initialPages();
-            var importMaxPages =
-                    (i.limits().maximumPages() == MemoryLimits.MAX_PAGES)
-                            ? Memory.RUNTIME_MAX_PAGES
-                            : i.limits().maximumPages();
+            var importMaxPages = i.limits().maximumPages();
 
             // HostMem bounds [x,y] must be within the import bounds [a, b]; i.e., a <= x, y >= b.
             // In other words, the bounds are not valid when:
@@ -603,7 +753,11 @@ public class Instance {
         }
 
         private ImportValues mapHostImports(
-                Import[] imports, ImportValues importValues, int memoryCount) {
+                Import[] imports,
+                ImportValues importValues,
+                int memoryCount,
+                FunctionTypeRegistry registry,
+                int[] typeIds) {
             Function<ExternalType, Integer> count =
                     t -> (int) Arrays.stream(imports).filter(i -> i.importType() == t).count();
 
@@ -644,8 +798,10 @@ public class Instance {
                             ImportFunction f = importValues.function(j);
                             if (checkName.apply(f)) {
                                 if (aliasesCount == 1 || ++aliasNum == aliasesCount) {
-                                    validateExternalFunctionSignature((FunctionImport) i, f);
-                                } else if (!checkExternalFunctionSignature((FunctionImport) i, f)) {
+                                    validateExternalFunctionSignature(
+                                            (FunctionImport) i, f, registry, typeIds);
+                                } else if (!checkExternalFunctionSignature(
+                                        (FunctionImport) i, f, registry, typeIds)) {
                                     continue;
                                 }
                                 hostFuncs[hostFuncIdx] = f;
@@ -757,6 +913,11 @@ public class Instance {
 
             var dataSegments = module.dataSection().dataSegments();
             var types = module.typeSection().types();
+            var registry = requireNonNullElseGet(typeRegistry, FunctionTypeRegistry::new);
+            var typeIds = new int[types.length];
+            for (int i = 0; i < types.length; i++) {
+                typeIds[i] = registry.id(types[i]);
+            }
             int numFuncTypes =
                     module.functionSection().functionCount()
                             + module.importSection().count(FUNCTION);
@@ -786,7 +947,9 @@ public class Instance {
                     mapHostImports(
                             imports,
                             requireNonNullElseGet(importValues, ImportValues::empty),
-                            module.memorySection().map(MemorySection::memoryCount).orElse(0));
+                            module.memorySection().map(MemorySection::memoryCount).orElse(0),
+                            registry,
+                            typeIds);
 
             for (int i = 0; i < module.functionSection().functionCount(); i++) {
                 functionTypes[funcIdx++] = module.functionSection().getFunctionType(i);
@@ -878,6 +1041,8 @@ public class Instance {
                     functions,
                     types,
                     functionTypes,
+                    registry,
+                    typeIds,
                     mappedHostImports,
                     tables,
                     elements,
@@ -886,7 +1051,10 @@ public class Instance {
                     machineFactory,
                     initialize,
                     start,
-                    listener);
+                    listener,
+                    maxCallDepth,
+                    fuelMetered,
+                    fuel);
         }
     }
 }
@@ -8,15 +8,16 @@ import com.dylibso.chicory.wasm.ChicoryException;
 import com.dylibso.chicory.wasm.InvalidException;
 import com.dylibso.chicory.wasm.types.AnnotatedInstruction;
 import com.dylibso.chicory.wasm.types.CatchOpCode;
+import com.dylibso.chicory.wasm.types.FunctionBody;
 import com.dylibso.chicory.wasm.types.FunctionType;
 import com.dylibso.chicory.wasm.types.Instruction;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
 import com.dylibso.chicory.wasm.types.OpCode;
 import com.dylibso.chicory.wasm.types.ValType;
 import com.dylibso.chicory.wasm.types.Value;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
-import java.util.function.BiFunction;
 
 /**
  * This is responsible for holding and interpreting the Wasm code.
@@ -29,8 +30,25 @@ public class InterpreterMachine implements Machine {
 
     private final Instance instance;
 
+    // the addresses of a 64-bit memory are narrowed before running the memory instructions
+    private final boolean memory64;
+
+    // the calls between the Wasm functions of the instance push their frames on the call stack,
+    // instead of recursing on the Java stack, so its size is the call depth
+    private final int maxCallDepth;
+
+    // the size of the call stack when the innermost eval started: the frames below it belong to
+    // its callers, e.g. a host function calling an export, and an exception unwinding them is
+    // thrown to those callers instead
+    private int evalBase;
+
+    // the inline caches of the indirect calls, by function and then by instruction
+    private IndirectCallCache[][] indirectCallCaches;
+
     public InterpreterMachine(Instance instance) {
         this.instance = instance;
+        this.memory64 = hasMemory64(instance);
+        this.maxCallDepth = instance.maxCallDepth().orElse(Instance.DEFAULT_MAX_CALL_DEPTH);
         stack = new MStack();
         this.callStack = new ArrayDeque<>();
     }
@@ -40,6 +58,17 @@ public class InterpreterMachine implements Machine {
         long get(int index);
     }
 
+    // the operands of the instruction being evaluated, one per eval
+    // so that no lambda is allocated for every instruction
+    private static final class InstructionOperands implements Operands {
+        private Instruction instruction;
+
+        @Override
+        public long get(int index) {
+            return instruction.operand(index);
+        }
+    }
+
     @SuppressWarnings("DoNotCallSuggester")
     protected void evalDefault(
             MStack stack,
@@ -53,7 +82,15 @@ public class InterpreterMachine implements Machine {
 
     @Override
     public long[] call(int funcId, long[] args) throws ChicoryException {
-        return call(stack, instance, callStack, funcId, args, null, true);
+        // e.g. a host function calling an export: the exceptions of this call are thrown to it,
+        // not to the frames of the evaluation calling the host function
+        var outerBase = evalBase;
+        evalBase = callStack.size() + 1;
+        try {
+            return call(stack, instance, callStack, funcId, args, null, true);
+        } finally {
+            evalBase = outerBase;
+        }
     }
 
     protected long[] call(
@@ -74,47 +111,42 @@ public class InterpreterMachine implements Machine {
             verifyIndirectCall(type, callType);
         }
 
-        var func = instance.function(funcId);
-        if (func != null) {
-            var stackFrame =
-                    new StackFrame(
-                            instance,
-                            funcId,
-                            args,
-                            type.params(),
-                            func.localTypes(),
-                            func.instructions());
-            stackFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
-            callStack.push(stackFrame);
-
-            try {
+        // the frames left by this call, also when it fails
+        var callers = callStack.size();
+        try {
+            var func = instance.function(funcId);
+            if (func != null) {
+                var stackFrame = pushFrame(stack, instance, callStack, funcId, type, func, args);
                 eval(stack, instance, callStack);
-            } catch (StackOverflowError e) {
-                throw new ChicoryException("call stack exhausted", e);
-            }
-        } else {
-            var stackFrame = new StackFrame(instance, funcId, args);
-            stackFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
-            callStack.push(stackFrame);
-
-            var imprt = instance.imports().function(funcId);
-
-            try {
-                var results = imprt.handle().apply(instance, args);
-                // a host function can return null or an array of ints
-                // which we will push onto the stack
-                if (results != null) {
-                    for (var result : results) {
-                        stack.push(result);
+                profile(funcId, stackFrame.loopIterations());
+            } else {
+                var stackFrame = new StackFrame(instance, funcId, args);
+                stackFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
+                callStack.push(stackFrame);
+
+                var imprt = instance.imports().function(funcId);
+
+                try {
+                    var results = imprt.handle().apply(instance, args);
+                    // a host function can return null or an array of ints
+                    // which we will push onto the stack
+                    if (results != null) {
+                        for (var result : results) {
+                            stack.push(result);
+                        }
                     }
+                } catch (WasmException e) {
+                    // the frame catching it, if any, is below the frame of the host function
+                    unwind(instance.registerException(e), stackFrame);
+                    return null;
                 }
-            } catch (WasmException e) {
-                THROW_REF(instance, instance.registerException(e), stack, stackFrame, callStack);
             }
-        }
-
-        if (!callStack.isEmpty()) {
-            callStack.pop();
+        } catch (StackOverflowError e) {
+            throw new ChicoryException("call stack exhausted", e);
+        } finally {
+            while (callStack.size() > callers) {
+                callStack.pop();
+            }
         }
 
         if (!popResults) {
@@ -136,6 +168,115 @@ public class InterpreterMachine implements Machine {
         return results;
     }
 
+    /**
+     * Called when a Wasm function returns, with the number of iterations of its loops.
+     * Does nothing by default, a machine compiling the hot functions overrides it.
+     */
+    protected void profile(int funcId, int loopIterations) {}
+
+    // pushes the frame of a Wasm function, for eval to run it next
+    private StackFrame pushFrame(
+            MStack stack,
+            Instance instance,
+            Deque<StackFrame> callStack,
+            int funcId,
+            FunctionType type,
+            FunctionBody func,
+            long[] args) {
+        if (callStack.size() >= maxCallDepth) {
+            throw new ChicoryException("call stack exhausted");
+        }
+        instance.consumeFuel();
+        var frame =
+                new StackFrame(
+                        instance,
+                        funcId,
+                        args,
+                        type.params(),
+                        func.localTypes(),
+                        func.instructions());
+        frame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
+        callStack.push(frame);
+        return frame;
+    }
+
+    // calls a function from the current frame: a Wasm function runs in this evaluation,
+    // from the frame pushed on the call stack, that eval continues with
+    private void invoke(int funcId, FunctionType type, long[] args) {
+        var func = instance.function(funcId);
+        if (func == null) {
+            call(stack, instance, callStack, funcId, args, null, false);
+            return;
+        }
+        checkInterruption();
+        pushFrame(stack, instance, callStack, funcId, type, func, args);
+    }
+
+    // replaces the current frame with the frame of the function it tail calls, and returns it
+    private StackFrame tailCall(
+            Instance refInstance, int funcId, FunctionType type, long[] args, StackFrame frame) {
+        // optimizing when the tail call happens in the same function
+        if (frame.funcId() == funcId && refInstance.equals(instance)) {
+            instance.consumeFuel();
+            var ctrlFrame = frame.popCtrlTillCall();
+            StackFrame.doControlTransfer(ctrlFrame, stack);
+            frame.reset(args);
+            frame.pushCtrl(ctrlFrame);
+            return frame;
+        }
+        StackFrame.doControlTransfer(frame.popCtrlTillCall(), stack);
+        callStack.pop();
+
+        var func = instance.function(funcId);
+        if (func != null && refInstance.equals(instance)) {
+            return pushFrame(stack, instance, callStack, funcId, type, func, args);
+        }
+        // a host function, or a function of another instance, returns right away:
+        // eval returns from its empty frame to the caller of the current frame
+        var newFrame = new StackFrame(refInstance, funcId, args);
+        newFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
+        callStack.push(newFrame);
+        try {
+            var results =
+                    (func == null && refInstance.equals(instance))
+                            ? instance.imports().function(funcId).handle().apply(instance, args)
+                            : refInstance.getMachine().call(funcId, args);
+            // a host function can return null or an array of ints
+            // which we will push onto the stack
+            if (results != null) {
+                for (var result : results) {
+                    stack.push(result);
+                }
+            }
+        } catch (WasmException e) {
+            return unwind(instance.registerException(e), newFrame);
+        }
+        return newFrame;
+    }
+
+    /**
+     * Unwinds the frames of the current evaluation to the handler of the exception, starting
+     * from the frame that threw it, and returns the frame of the handler.
+     * The exception is thrown when none of them catches it.
+     */
+    protected StackFrame unwind(int exceptionIdx, StackFrame frame) {
+        return THROW_REF(instance, exceptionIdx, stack, frame, callStack, evalBase);
+    }
+
+    // the function of the frame returned: resumes its caller, or ends the evaluation when
+    // it's the frame the evaluation started with, that the call popping it profiles
+    private StackFrame returnFrom(StackFrame frame, Deque<StackFrame> callStack, int base) {
+        if (callStack.size() <= base) {
+            return null;
+        }
+        callStack.pop();
+        // the empty frames of the host functions and of the other instances aren't profiled
+        if (frame.instance().equals(instance) && instance.function(frame.funcId()) != null) {
+            profile(frame.funcId(), frame.loopIterations());
+        }
+        return callStack.peek();
+    }
+
     protected Instance instance() {
         return instance;
     }
@@ -146,13 +287,33 @@ public class InterpreterMachine implements Machine {
 
     protected void eval(MStack stack, Instance instance, Deque<StackFrame> callStack)
             throws ChicoryException {
-        var frame = callStack.peek();
-        boolean shouldReturn = false;
+        var outerBase = evalBase;
+        evalBase = callStack.size();
+        try {
+            eval(stack, instance, callStack, evalBase);
+        } finally {
+            evalBase = outerBase;
+        }
+    }
 
-        loop:
-        while (!frame.terminated()) {
-            if (shouldReturn) {
-                return;
+    // runs the frame on top of the call stack, and the frames of the Wasm functions it calls
+    private void eval(MStack stack, Instance instance, Deque<StackFrame> callStack, int base)
+            throws ChicoryException {
+        var frame = callStack.peek();
+        var operands = new InstructionOperands();
+        // resolved once: without a listener the loop doesn't pay for tracing
+        var listener = instance.executionListener();
+        // and the 32-bit memories don't pay for the 64-bit addresses
+        var memory64 = this.memory64;
+
+        while (true) {
+            if (frame.terminated()) {
+                // e.g. a host function called by a tail call
+                frame = returnFrom(frame, callStack, base);
+                if (frame == null) {
+                    return;
+                }
+                continue;
             }
             var instruction = frame.loadCurrentInstruction();
             //                LOGGER.log(
@@ -166,8 +327,13 @@ public class InterpreterMachine implements Machine {
             //                                + " stack="
             //                                + stack);
             var opcode = instruction.opcode();
-            Operands operands = instruction::operand;
-            instance.onExecution(instruction, stack);
+            operands.instruction = instruction;
+            if (listener != null) {
+                listener.onExecution(instruction, stack);
+            }
+            if (memory64) {
+                narrowAddresses(stack, opcode);
+            }
             switch (opcode) {
                 case UNREACHABLE:
                     throw new TrapException("Trapped on unreachable instruction");
@@ -209,7 +375,10 @@ public class InterpreterMachine implements Machine {
                         // if this is the last end, then we're done with
                         // the function
                         if (frame.isLastBlock()) {
-                            break loop;
+                            frame = returnFrom(frame, callStack, base);
+                            if (frame == null) {
+                                return;
+                            }
                         }
                         break;
                     }
@@ -218,22 +387,24 @@ public class InterpreterMachine implements Machine {
                         // RETURN doesn't pass through the END
                         var ctrlFrame = frame.popCtrlTillCall();
                         StackFrame.doControlTransfer(ctrlFrame, stack);
-                        callStack.clear();
 
-                        shouldReturn = true;
+                        frame = returnFrom(frame, callStack, base);
+                        if (frame == null) {
+                            return;
+                        }
                         break;
                     }
                 case RETURN_CALL:
                     // swap in place the current frame
-                    frame = RETURN_CALL(stack, instance, callStack, operands, frame);
+                    frame = RETURN_CALL(stack, instance, operands, frame);
                     break;
                 case RETURN_CALL_INDIRECT:
                     // swap in place the current frame
-                    frame = RETURN_CALL_INDIRECT(stack, instance, callStack, operands, frame);
+                    frame = RETURN_CALL_INDIRECT(stack, instance, operands, frame);
                     break;
                 case RETURN_CALL_REF:
                     // swap in place the current frame
-                    frame = RETURN_CALL_REF(stack, instance, callStack, frame);
+                    frame = RETURN_CALL_REF(stack, instance, frame);
                     break;
                 case THROW:
                     {
@@ -244,17 +415,19 @@ public class InterpreterMachine implements Machine {
                         var args = extractArgsForParams(stack, type.params());
                         var exception = new WasmException(instance, tagNumber, args);
                         var exceptionIdx = instance.registerException(exception);
-                        frame = THROW_REF(instance, exceptionIdx, stack, frame, callStack);
+                        frame = THROW_REF(instance, exceptionIdx, stack, frame, callStack, base);
                         break;
                     }
                 case THROW_REF:
                     {
                         var exceptionIdx = (int) stack.pop();
-                        frame = THROW_REF(instance, exceptionIdx, stack, frame, callStack);
+                        frame = THROW_REF(instance, exceptionIdx, stack, frame, callStack, base);
                         break;
                     }
                 case CALL_INDIRECT:
-                    CALL_INDIRECT(stack, instance, callStack, operands);
+                    CALL_INDIRECT(stack, instance, operands, frame);
+                    // the frame of the called function, or of the handler of its exception
+                    frame = callStack.peek();
                     break;
                 case DROP:
                     DROP(stack, operands);
@@ -538,9 +711,12 @@ public class InterpreterMachine implements Machine {
                     break;
                 case CALL:
                     CALL(operands);
+                    // the frame of the called function, or of the handler of its exception
+                    frame = callStack.peek();
                     break;
                 case CALL_REF:
                     CALL_REF();
+                    frame = callStack.peek();
                     break;
                 case I32_AND:
                     I32_AND(stack);
@@ -837,15 +1013,11 @@ public class InterpreterMachine implements Machine {
                 case I64_ATOMIC_LOAD:
                     I64_ATOMIC_LOAD(stack, instance, operands);
                     break;
+                case I32_ATOMIC_LOAD8_U:
                 case I64_ATOMIC_LOAD8_U:
                     I64_ATOMIC_LOAD8_U(stack, instance, operands);
                     break;
-                case I32_ATOMIC_LOAD8_U:
-                    I32_ATOMIC_LOAD8_U(stack, instance, operands);
-                    break;
                 case I32_ATOMIC_LOAD16_U:
-                    I32_ATOMIC_LOAD16_U(stack, instance, operands);
-                    break;
                 case I64_ATOMIC_LOAD16_U:
                     I64_ATOMIC_LOAD16_U(stack, instance, operands);
                     break;
@@ -870,70 +1042,70 @@ public class InterpreterMachine implements Machine {
                     I64_ATOMIC_STORE32(stack, instance, operands);
                     break;
                 case I32_ATOMIC_RMW_ADD:
-                    I32_ATOMIC_RMW(stack, instance, operands, (x, y) -> x + y);
+                    I32_ATOMIC_RMW(stack, instance, operands, AtomicOps.ADD);
                     break;
                 case I32_ATOMIC_RMW_SUB:
-                    I32_ATOMIC_RMW(stack, instance, operands, (x, y) -> x - y);
+                    I32_ATOMIC_RMW(stack, instance, operands, AtomicOps.SUB);
                     break;
                 case I32_ATOMIC_RMW_AND:
-                    I32_ATOMIC_RMW(stack, instance, operands, (x, y) -> x & y);
+                    I32_ATOMIC_RMW(stack, instance, operands, AtomicOps.AND);
                     break;
                 case I32_ATOMIC_RMW_OR:
-                    I32_ATOMIC_RMW(stack, instance, operands, (x, y) -> x | y);
+                    I32_ATOMIC_RMW(stack, instance, operands, AtomicOps.OR);
                     break;
                 case I32_ATOMIC_RMW_XOR:
-                    I32_ATOMIC_RMW(stack, instance, operands, (x, y) -> x ^ y);
+                    I32_ATOMIC_RMW(stack, instance, operands, AtomicOps.XOR);
                     break;
                 case I32_ATOMIC_RMW_XCHG:
-                    I32_ATOMIC_RMW(stack, instance, operands, (x, y) -> y);
+                    I32_ATOMIC_RMW(stack, instance, operands, AtomicOps.XCHG);
                     break;
                 case I32_ATOMIC_RMW_CMPXCHG:
                     I32_ATOMIC_RMW_CMPXCHG(stack, instance, operands);
                     break;
                 case I64_ATOMIC_RMW_ADD:
-                    I64_ATOMIC_RMW(stack, instance, operands, (x, y) -> x + y);
+                    I64_ATOMIC_RMW(stack, instance, operands, AtomicOps.ADD);
                     break;
                 case I64_ATOMIC_RMW_SUB:
-                    I64_ATOMIC_RMW(stack, instance, operands, (x, y) -> x - y);
+                    I64_ATOMIC_RMW(stack, instance, operands, AtomicOps.SUB);
                     break;
                 case I64_ATOMIC_RMW_AND:
-                    I64_ATOMIC_RMW(stack, instance, operands, (x, y) -> x & y);
+                    I64_ATOMIC_RMW(stack, instance, operands, AtomicOps.AND);
                     break;
                 case I64_ATOMIC_RMW_OR:
-                    I64_ATOMIC_RMW(stack, instance, operands, (x, y) -> x | y);
+                    I64_ATOMIC_RMW(stack, instance, operands, AtomicOps.OR);
                     break;
                 case I64_ATOMIC_RMW_XOR:
-                    I64_ATOMIC_RMW(stack, instance, operands, (x, y) -> x ^ y);
+                    I64_ATOMIC_RMW(stack, instance, operands, AtomicOps.XOR);
                     break;
                 case I64_ATOMIC_RMW_XCHG:
-                    I64_ATOMIC_RMW(stack, instance, operands, (x, y) -> y);
+                    I64_ATOMIC_RMW(stack, instance, operands, AtomicOps.XCHG);
                     break;
                 case I64_ATOMIC_RMW_CMPXCHG:
                     I64_ATOMIC_RMW_CMPXCHG(stack, instance, operands);
                     break;
                 case I32_ATOMIC_RMW8_ADD_U:
                 case I64_ATOMIC_RMW8_ADD_U:
-                    I64_ATOMIC_RMW8_U(stack, instance, operands, (x, y) -> (byte) (x + y));
+                    I64_ATOMIC_RMW8_U(stack, instance, operands, AtomicOps.ADD);
                     break;
                 case I32_ATOMIC_RMW8_SUB_U:
                 case I64_ATOMIC_RMW8_SUB_U:
-                    I64_ATOMIC_RMW8_U(stack, instance, operands, (x, y) -> (byte) (x - y));
+                    I64_ATOMIC_RMW8_U(stack, instance, operands, AtomicOps.SUB);
                     break;
                 case I32_ATOMIC_RMW8_AND_U:
                 case I64_ATOMIC_RMW8_AND_U:
-                    I64_ATOMIC_RMW8_U(stack, instance, operands, (x, y) -> (byte) (x & y));
+                    I64_ATOMIC_RMW8_U(stack, instance, operands, AtomicOps.AND);
                     break;
                 case I32_ATOMIC_RMW8_OR_U:
                 case I64_ATOMIC_RMW8_OR_U:
-                    I64_ATOMIC_RMW8_U(stack, instance, operands, (x, y) -> (byte) (x | y));
+                    I64_ATOMIC_RMW8_U(stack, instance, operands, AtomicOps.OR);
                     break;
                 case I32_ATOMIC_RMW8_XOR_U:
                 case I64_ATOMIC_RMW8_XOR_U:
-                    I64_ATOMIC_RMW8_U(stack, instance, operands, (x, y) -> (byte) (x ^ y));
+                    I64_ATOMIC_RMW8_U(stack, instance, operands, AtomicOps.XOR);
                     break;
                 case I32_ATOMIC_RMW8_XCHG_U:
                 case I64_ATOMIC_RMW8_XCHG_U:
-                    I64_ATOMIC_RMW8_U(stack, instance, operands, (x, y) -> y);
+                    I64_ATOMIC_RMW8_U(stack, instance, operands, AtomicOps.XCHG);
                     break;
                 case I32_ATOMIC_RMW8_CMPXCHG_U:
                 case I64_ATOMIC_RMW8_CMPXCHG_U:
@@ -941,49 +1113,49 @@ public class InterpreterMachine implements Machine {
                     break;
                 case I32_ATOMIC_RMW16_ADD_U:
                 case I64_ATOMIC_RMW16_ADD_U:
-                    I64_ATOMIC_RMW16_U(stack, instance, operands, (x, y) -> (short) (x + y));
+                    I64_ATOMIC_RMW16_U(stack, instance, operands, AtomicOps.ADD);
                     break;
                 case I32_ATOMIC_RMW16_SUB_U:
                 case I64_ATOMIC_RMW16_SUB_U:
-                    I64_ATOMIC_RMW16_U(stack, instance, operands, (x, y) -> (short) (x - y));
+                    I64_ATOMIC_RMW16_U(stack, instance, operands, AtomicOps.SUB);
                     break;
                 case I32_ATOMIC_RMW16_AND_U:
                 case I64_ATOMIC_RMW16_AND_U:
-                    I64_ATOMIC_RMW16_U(stack, instance, operands, (x, y) -> (short) (x & y));
+                    I64_ATOMIC_RMW16_U(stack, instance, operands, AtomicOps.AND);
                     break;
                 case I32_ATOMIC_RMW16_OR_U:
                 case I64_ATOMIC_RMW16_OR_U:
-                    I64_ATOMIC_RMW16_U(stack, instance, operands, (x, y) -> (short) (x | y));
+                    I64_ATOMIC_RMW16_U(stack, instance, operands, AtomicOps.OR);
                     break;
                 case I32_ATOMIC_RMW16_XOR_U:
                 case I64_ATOMIC_RMW16_XOR_U:
-                    I64_ATOMIC_RMW16_U(stack, instance, operands, (x, y) -> (short) (x ^ y));
+                    I64_ATOMIC_RMW16_U(stack, instance, operands, AtomicOps.XOR);
                     break;
                 case I32_ATOMIC_RMW16_XCHG_U:
                 case I64_ATOMIC_RMW16_XCHG_U:
-                    I64_ATOMIC_RMW16_U(stack, instance, operands, (x, y) -> y);
+                    I64_ATOMIC_RMW16_U(stack, instance, operands, AtomicOps.XCHG);
                     break;
                 case I32_ATOMIC_RMW16_CMPXCHG_U:
                 case I64_ATOMIC_RMW16_CMPXCHG_U:
                     I64_ATOMIC_RMW16_CMPXCHG_U(stack, instance, operands);
                     break;
                 case I64_ATOMIC_RMW32_ADD_U:
-                    I64_ATOMIC_RMW32_U(stack, instance, operands, (x, y) -> x + y);
+                    I64_ATOMIC_RMW32_U(stack, instance, operands, AtomicOps.ADD);
                     break;
                 case I64_ATOMIC_RMW32_SUB_U:
-                    I64_ATOMIC_RMW32_U(stack, instance, operands, (x, y) -> x - y);
+                    I64_ATOMIC_RMW32_U(stack, instance, operands, AtomicOps.SUB);
                     break;
                 case I64_ATOMIC_RMW32_AND_U:
-                    I64_ATOMIC_RMW32_U(stack, instance, operands, (x, y) -> x & y);
+                    I64_ATOMIC_RMW32_U(stack, instance, operands, AtomicOps.AND);
                     break;
                 case I64_ATOMIC_RMW32_OR_U:
-                    I64_ATOMIC_RMW32_U(stack, instance, operands, (x, y) -> x | y);
+                    I64_ATOMIC_RMW32_U(stack, instance, operands, AtomicOps.OR);
                     break;
                 case I64_ATOMIC_RMW32_XOR_U:
-                    I64_ATOMIC_RMW32_U(stack, instance, operands, (x, y) -> x ^ y);
+                    I64_ATOMIC_RMW32_U(stack, instance, operands, AtomicOps.XOR);
                     break;
                 case I64_ATOMIC_RMW32_XCHG_U:
-                    I64_ATOMIC_RMW32_U(stack, instance, operands, (x, y) -> y);
+                    I64_ATOMIC_RMW32_U(stack, instance, operands, AtomicOps.XCHG);
                     break;
                 case I64_ATOMIC_RMW32_CMPXCHG_U:
                     I64_ATOMIC_RMW32_CMPXCHG_U(stack, instance, operands);
@@ -1869,7 +2041,7 @@ public class InterpreterMachine implements Machine {
         // given a list of param types, let's pop those params off the stack
         // and pass as args to the function call
         var args = extractArgsForParams(stack, type.params());
-        call(stack, instance, callStack, funcId, args, type, false);
+        invoke(funcId, type, args);
     }
 
     private void CALL_REF() {
@@ -1882,7 +2054,8 @@ public class InterpreterMachine implements Machine {
         // given a list of param types, let's pop those params off the stack
         // and pass as args to the function call
         var args = extractArgsForParams(stack, type.params());
-        call(stack, instance, callStack, funcId, args, type, false);
+        // the reference is typed, the validation of the module checked its type already
+        invoke(funcId, type, args);
     }
 
     private static void F64_NEG(MStack stack) {
@@ -1909,13 +2082,186 @@ public class InterpreterMachine implements Machine {
         stack.push(nPages);
     }
 
+    static boolean hasMemory64(Instance instance) {
+        return instance.module()
+                .memoryLimits()
+                .map(l -> l.addressType().equals(ValType.I64))
+                .orElse(false);
+    }
+
+    /**
+     * Replaces the 64-bit addresses used by a memory instruction with the 32-bit addresses
+     * of the memory, that can't be larger than 4 GiB, so that the instruction runs as with
+     * a 32-bit memory. The addresses above 4 GiB are always out of bounds.
+     */
+    private static void narrowAddresses(MStack stack, OpCode opcode) {
+        switch (opcode) {
+            case MEMORY_GROW:
+                {
+                    // growing by more than 4 GiB fails, as growing by a negative size
+                    var elements = stack.array();
+                    var top = stack.size() - 1;
+                    if (Long.compareUnsigned(elements[top], MemoryLimits.MAX_PAGES) > 0) {
+                        elements[top] = -1;
+                    }
+                    return;
+                }
+            case MEMORY_FILL:
+                narrowAddress(stack, 0);
+                narrowAddress(stack, 2);
+                return;
+            case MEMORY_COPY:
+                narrowAddress(stack, 0);
+                narrowAddress(stack, 1);
+                narrowAddress(stack, 2);
+                return;
+            case MEMORY_INIT:
+                narrowAddress(stack, 2);
+                return;
+                // the loads and the atomic loads
+            case I32_LOAD:
+            case I64_LOAD:
+            case F32_LOAD:
+            case F64_LOAD:
+            case I32_LOAD8_S:
+            case I32_LOAD8_U:
+            case I32_LOAD16_S:
+            case I32_LOAD16_U:
+            case I64_LOAD8_S:
+            case I64_LOAD8_U:
+            case I64_LOAD16_S:
+            case I64_LOAD16_U:
+            case I64_LOAD32_S:
+            case I64_LOAD32_U:
+            case V128_LOAD:
+            case V128_LOAD8x8_S:
+            case V128_LOAD8x8_U:
+            case V128_LOAD16x4_S:
+            case V128_LOAD16x4_U:
+            case V128_LOAD32x2_S:
+            case V128_LOAD32x2_U:
+            case V128_LOAD8_SPLAT:
+            case V128_LOAD16_SPLAT:
+            case V128_LOAD32_SPLAT:
+            case V128_LOAD64_SPLAT:
+            case V128_LOAD32_ZERO:
+            case V128_LOAD64_ZERO:
+            case I32_ATOMIC_LOAD:
+            case I64_ATOMIC_LOAD:
+            case I32_ATOMIC_LOAD8_U:
+            case I32_ATOMIC_LOAD16_U:
+            case I64_ATOMIC_LOAD8_U:
+            case I64_ATOMIC_LOAD16_U:
+            case I64_ATOMIC_LOAD32_U:
+                narrowAddress(stack, 0);
+                return;
+                // the stores, the atomic stores and read-modify-writes, and notify
+            case I32_STORE:
+            case I64_STORE:
+            case F32_STORE:
+            case F64_STORE:
+            case I32_STORE8:
+            case I32_STORE16:
+            case I64_STORE8:
+            case I64_STORE16:
+            case I64_STORE32:
+            case MEM_ATOMIC_NOTIFY:
+            case I32_ATOMIC_STORE:
+            case I64_ATOMIC_STORE:
+            case I32_ATOMIC_STORE8:
+            case I32_ATOMIC_STORE16:
+            case I64_ATOMIC_STORE8:
+            case I64_ATOMIC_STORE16:
+            case I64_ATOMIC_STORE32:
+            case I32_ATOMIC_RMW_ADD:
+            case I64_ATOMIC_RMW_ADD:
+            case I32_ATOMIC_RMW8_ADD_U:
+            case I32_ATOMIC_RMW16_ADD_U:
+            case I64_ATOMIC_RMW8_ADD_U:
+            case I64_ATOMIC_RMW16_ADD_U:
+            case I64_ATOMIC_RMW32_ADD_U:
+            case I32_ATOMIC_RMW_SUB:
+            case I64_ATOMIC_RMW_SUB:
+            case I32_ATOMIC_RMW8_SUB_U:
+            case I32_ATOMIC_RMW16_SUB_U:
+            case I64_ATOMIC_RMW8_SUB_U:
+            case I64_ATOMIC_RMW16_SUB_U:
+            case I64_ATOMIC_RMW32_SUB_U:
+            case I32_ATOMIC_RMW_AND:
+            case I64_ATOMIC_RMW_AND:
+            case I32_ATOMIC_RMW8_AND_U:
+            case I32_ATOMIC_RMW16_AND_U:
+            case I64_ATOMIC_RMW8_AND_U:
+            case I64_ATOMIC_RMW16_AND_U:
+            case I64_ATOMIC_RMW32_AND_U:
+            case I32_ATOMIC_RMW_OR:
+            case I64_ATOMIC_RMW_OR:
+            case I32_ATOMIC_RMW8_OR_U:
+            case I32_ATOMIC_RMW16_OR_U:
+            case I64_ATOMIC_RMW8_OR_U:
+            case I64_ATOMIC_RMW16_OR_U:
+            case I64_ATOMIC_RMW32_OR_U:
+            case I32_ATOMIC_RMW_XOR:
+            case I64_ATOMIC_RMW_XOR:
+            case I32_ATOMIC_RMW8_XOR_U:
+            case I32_ATOMIC_RMW16_XOR_U:
+            case I64_ATOMIC_RMW8_XOR_U:
+            case I64_ATOMIC_RMW16_XOR_U:
+            case I64_ATOMIC_RMW32_XOR_U:
+            case I32_ATOMIC_RMW_XCHG:
+            case I64_ATOMIC_RMW_XCHG:
+            case I32_ATOMIC_RMW8_XCHG_U:
+            case I32_ATOMIC_RMW16_XCHG_U:
+            case I64_ATOMIC_RMW8_XCHG_U:
+            case I64_ATOMIC_RMW16_XCHG_U:
+            case I64_ATOMIC_RMW32_XCHG_U:
+                narrowAddress(stack, 1);
+                return;
+                // a v128 or the expected value of a wait or cmpxchg takes two slots
+            case V128_STORE:
+            case V128_LOAD8_LANE:
+            case V128_LOAD16_LANE:
+            case V128_LOAD32_LANE:
+            case V128_LOAD64_LANE:
+            case V128_STORE8_LANE:
+            case V128_STORE16_LANE:
+            case V128_STORE32_LANE:
+            case V128_STORE64_LANE:
+            case MEM_ATOMIC_WAIT32:
+            case MEM_ATOMIC_WAIT64:
+            case I32_ATOMIC_RMW_CMPXCHG:
+            case I64_ATOMIC_RMW_CMPXCHG:
+            case I32_ATOMIC_RMW8_CMPXCHG_U:
+            case I32_ATOMIC_RMW16_CMPXCHG_U:
+            case I64_ATOMIC_RMW8_CMPXCHG_U:
+            case I64_ATOMIC_RMW16_CMPXCHG_U:
+            case I64_ATOMIC_RMW32_CMPXCHG_U:
+                narrowAddress(stack, 2);
+                return;
+            default:
+                return;
+        }
+    }
+
+    private static void narrowAddress(MStack stack, int depth) {
+        var elements = stack.array();
+        var index = stack.size() - 1 - depth;
+        if (Long.compareUnsigned(elements[index], 0xFFFFFFFFL) > 0) {
+            throw new WasmRuntimeException("out of bounds memory access");
+        }
+        elements[index] = (int) elements[index];
+    }
+
+    // the effective address is an unsigned 32-bit integer, the memories smaller than 2 GiB
+    // see the upper half as negative addresses and report them out of bounds
     protected static int readMemPtr(MStack stack, Operands operands) {
-        int address = (int) stack.pop();
-        if (operands.get(1) < 0 || operands.get(1) >= Integer.MAX_VALUE || address < 0) {
+        long offset = operands.get(1);
+        long address = Integer.toUnsignedLong((int) stack.pop()) + offset;
+        if (offset < 0 || address > 0xFFFFFFFFL) {
             throw new WasmRuntimeException("out of bounds memory access");
         }
 
-        return (int) (operands.get(1) + address);
+        return (int) address;
     }
 
     private static void F64_STORE(MStack stack, Instance instance, Operands operands) {
@@ -2170,10 +2516,7 @@ public class InterpreterMachine implements Machine {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readI32(ptr);
-            stack.push(val);
-        }
+        stack.push(instance.memory().atomicReadInt(ptr));
     }
 
     private static void I64_ATOMIC_LOAD(MStack stack, Instance instance, Operands operands) {
@@ -2181,37 +2524,12 @@ public class InterpreterMachine implements Machine {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readI64(ptr);
-            stack.push(val);
-        }
+        stack.push(instance.memory().atomicReadLong(ptr));
     }
 
     private static void I64_ATOMIC_LOAD8_U(MStack stack, Instance instance, Operands operands) {
         var ptr = readMemPtr(stack, operands);
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readU8(ptr);
-            stack.push(val);
-        }
-    }
-
-    private static void I32_ATOMIC_LOAD8_U(MStack stack, Instance instance, Operands operands) {
-        var ptr = readMemPtr(stack, operands);
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readU8(ptr);
-            stack.push(val);
-        }
-    }
-
-    private static void I32_ATOMIC_LOAD16_U(MStack stack, Instance instance, Operands operands) {
-        var ptr = readMemPtr(stack, operands);
-        if (ptr % 2 != 0) {
-            throw new InvalidException("unaligned atomic");
-        }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readU16(ptr);
-            stack.push(val);
-        }
+        stack.push(AtomicOps.load8(instance.memory(), ptr));
     }
 
     private static void I64_ATOMIC_LOAD16_U(MStack stack, Instance instance, Operands operands) {
@@ -2219,10 +2537,7 @@ public class InterpreterMachine implements Machine {
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readU16(ptr);
-            stack.push(val);
-        }
+        stack.push(AtomicOps.load16(instance.memory(), ptr));
     }
 
     private static void I64_ATOMIC_LOAD32_U(MStack stack, Instance instance, Operands operands) {
@@ -2230,10 +2545,7 @@ public class InterpreterMachine implements Machine {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readU32(ptr);
-            stack.push(val);
-        }
+        stack.push(Integer.toUnsignedLong(instance.memory().atomicReadInt(ptr)));
     }
 
     private static void I32_ATOMIC_STORE(MStack stack, Instance instance, Operands operands) {
@@ -2242,39 +2554,31 @@ public class InterpreterMachine implements Machine {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            instance.memory().writeI32(ptr, value);
-        }
+        instance.memory().atomicWriteInt(ptr, value);
     }
 
     private static void I64_ATOMIC_STORE8(MStack stack, Instance instance, Operands operands) {
-        var value = (byte) stack.pop();
+        var value = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
-        synchronized (instance.memory().lock(ptr)) {
-            instance.memory().writeByte(ptr, value);
-        }
+        AtomicOps.store8(instance.memory(), ptr, value);
     }
 
     private static void I64_ATOMIC_STORE16(MStack stack, Instance instance, Operands operands) {
-        var value = (short) stack.pop();
+        var value = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            instance.memory().writeShort(ptr, value);
-        }
+        AtomicOps.store16(instance.memory(), ptr, value);
     }
 
     private static void I64_ATOMIC_STORE32(MStack stack, Instance instance, Operands operands) {
-        var value = stack.pop();
+        var value = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            instance.memory().writeI32(ptr, (int) value);
-        }
+        instance.memory().atomicWriteInt(ptr, value);
     }
 
     private static void I64_ATOMIC_STORE(MStack stack, Instance instance, Operands operands) {
@@ -2283,26 +2587,16 @@ public class InterpreterMachine implements Machine {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            instance.memory().writeLong(ptr, value);
-        }
+        instance.memory().atomicWriteLong(ptr, value);
     }
 
-    private static void I32_ATOMIC_RMW(
-            MStack stack,
-            Instance instance,
-            Operands operands,
-            BiFunction<Integer, Integer, Integer> op) {
-        var toOp = (int) stack.pop();
+    private static void I32_ATOMIC_RMW(MStack stack, Instance instance, Operands operands, int op) {
+        var value = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = (int) instance.memory().readI32(ptr);
-            instance.memory().writeI32(ptr, op.apply(val, toOp));
-            stack.push(val);
-        }
+        stack.push(AtomicOps.rmw32(instance.memory(), ptr, value, op));
     }
 
     private static void I32_ATOMIC_RMW_CMPXCHG(MStack stack, Instance instance, Operands operands) {
@@ -2312,27 +2606,16 @@ public class InterpreterMachine implements Machine {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var loaded = (int) instance.memory().readI32(ptr);
-            if (loaded == expected) {
-                instance.memory().writeI32(ptr, replacement);
-            }
-            stack.push(loaded);
-        }
+        stack.push(instance.memory().atomicCompareAndExchangeInt(ptr, expected, replacement));
     }
 
-    private static void I64_ATOMIC_RMW(
-            MStack stack, Instance instance, Operands operands, BiFunction<Long, Long, Long> op) {
-        var toOp = stack.pop();
+    private static void I64_ATOMIC_RMW(MStack stack, Instance instance, Operands operands, int op) {
+        var value = stack.pop();
         var ptr = readMemPtr(stack, operands);
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readI64(ptr);
-            instance.memory().writeLong(ptr, op.apply(val, toOp));
-            stack.push(val);
-        }
+        stack.push(AtomicOps.rmw64(instance.memory(), ptr, value, op));
     }
 
     private static void I64_ATOMIC_RMW_CMPXCHG(MStack stack, Instance instance, Operands operands) {
@@ -2342,89 +2625,53 @@ public class InterpreterMachine implements Machine {
         if (ptr % 8 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = instance.memory().readI64(ptr);
-            if (val == expected) {
-                instance.memory().writeLong(ptr, replacement);
-            }
-            stack.push(val);
-        }
+        stack.push(instance.memory().atomicCompareAndExchangeLong(ptr, expected, replacement));
     }
 
     private static void I64_ATOMIC_RMW8_U(
-            MStack stack, Instance instance, Operands operands, BiFunction<Byte, Byte, Byte> op) {
-        var toOp = (byte) stack.pop();
+            MStack stack, Instance instance, Operands operands, int op) {
+        var value = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
-        synchronized (instance.memory().lock(ptr)) {
-            var val = (byte) instance.memory().readU8(ptr);
-            instance.memory().writeByte(ptr, op.apply(val, toOp));
-            stack.push(val);
-        }
+        stack.push(AtomicOps.rmw8(instance.memory(), ptr, value, op));
     }
 
     private static void I64_ATOMIC_RMW8_CMPXCHG_U(
             MStack stack, Instance instance, Operands operands) {
-        var replacement = (byte) stack.pop();
-        var expected = (byte) stack.pop();
+        var replacement = (int) stack.pop();
+        var expected = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
-        synchronized (instance.memory().lock(ptr)) {
-            var val = (byte) instance.memory().readU8(ptr);
-            if (val == expected) {
-                instance.memory().writeByte(ptr, replacement);
-            }
-            stack.push(val);
-        }
+        stack.push(AtomicOps.cmpxchg8(instance.memory(), ptr, expected, replacement));
     }
 
     private static void I64_ATOMIC_RMW16_U(
-            MStack stack,
-            Instance instance,
-            Operands operands,
-            BiFunction<Short, Short, Short> op) {
-        var toOp = (short) stack.pop();
+            MStack stack, Instance instance, Operands operands, int op) {
+        var value = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = (short) instance.memory().readU16(ptr);
-            instance.memory().writeShort(ptr, op.apply(val, toOp));
-            stack.push(val);
-        }
+        stack.push(AtomicOps.rmw16(instance.memory(), ptr, value, op));
     }
 
     private static void I64_ATOMIC_RMW16_CMPXCHG_U(
             MStack stack, Instance instance, Operands operands) {
-        var replacement = (short) stack.pop();
-        var expected = (short) stack.pop();
+        var replacement = (int) stack.pop();
+        var expected = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
         if (ptr % 2 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = (short) instance.memory().readU16(ptr);
-            if (val == expected) {
-                instance.memory().writeShort(ptr, replacement);
-            }
-            stack.push(val);
-        }
+        stack.push(AtomicOps.cmpxchg16(instance.memory(), ptr, expected, replacement));
     }
 
     private static void I64_ATOMIC_RMW32_U(
-            MStack stack,
-            Instance instance,
-            Operands operands,
-            BiFunction<Integer, Integer, Integer> op) {
-        var toOp = (int) stack.pop();
+            MStack stack, Instance instance, Operands operands, int op) {
+        var value = (int) stack.pop();
         var ptr = readMemPtr(stack, operands);
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = (int) instance.memory().readU32(ptr);
-            instance.memory().writeI32(ptr, op.apply(val, toOp));
-            stack.push(val);
-        }
+        stack.push(Integer.toUnsignedLong(AtomicOps.rmw32(instance.memory(), ptr, value, op)));
     }
 
     private static void I64_ATOMIC_RMW32_CMPXCHG_U(
@@ -2435,13 +2682,8 @@ public class InterpreterMachine implements Machine {
         if (ptr % 4 != 0) {
             throw new InvalidException("unaligned atomic");
         }
-        synchronized (instance.memory().lock(ptr)) {
-            var val = (int) instance.memory().readU32(ptr);
-            if (val == expected) {
-                instance.memory().writeI32(ptr, replacement);
-            }
-            stack.push(val);
-        }
+        var loaded = instance.memory().atomicCompareAndExchangeInt(ptr, expected, replacement);
+        stack.push(Integer.toUnsignedLong(loaded));
     }
 
     private static void MEM_ATOMIC_WAIT32(MStack stack, Instance instance, Operands operands) {
@@ -2480,92 +2722,21 @@ public class InterpreterMachine implements Machine {
         }
     }
 
-    private static StackFrame RETURN_CALL(
-            MStack stack,
-            Instance instance,
-            Deque<StackFrame> callStack,
-            Operands operands,
-            StackFrame currentStackFrame) {
+    private StackFrame RETURN_CALL(
+            MStack stack, Instance instance, Operands operands, StackFrame currentStackFrame) {
         var funcId = (int) operands.get(0);
         var typeId = instance.functionType(funcId);
         var type = instance.type(typeId);
-        var func = instance.function(funcId);
         var args = extractArgsForParams(stack, type.params());
-
-        // optimizing when the tail call happens in the same function
-        if (currentStackFrame.funcId() == funcId) {
-            var ctrlFrame = currentStackFrame.popCtrlTillCall();
-            StackFrame.doControlTransfer(ctrlFrame, stack);
-            currentStackFrame.reset(args);
-            currentStackFrame.pushCtrl(ctrlFrame);
-            return currentStackFrame;
-        } else {
-            var fromCallStack = !callStack.isEmpty();
-            var ctrlFrame =
-                    (fromCallStack)
-                            ? callStack.pop().popCtrlTillCall()
-                            : currentStackFrame.popCtrlTillCall();
-            StackFrame.doControlTransfer(ctrlFrame, stack);
-
-            if (func != null) {
-                var newFrame =
-                        new StackFrame(
-                                instance,
-                                funcId,
-                                args,
-                                type.params(),
-                                func.localTypes(),
-                                func.instructions());
-                newFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
-                if (fromCallStack) {
-                    callStack.push(newFrame);
-                }
-                return newFrame;
-            } else {
-                var newFrame = new StackFrame(instance, funcId, args);
-                newFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
-                callStack.push(newFrame);
-
-                var imprt = instance.imports().function(funcId);
-
-                try {
-                    var results = imprt.handle().apply(instance, args);
-                    // a host function can return null or an array of ints
-                    // which we will push onto the stack
-                    if (results != null) {
-                        for (var result : results) {
-                            stack.push(result);
-                        }
-                    }
-                } catch (WasmException e) {
-                    THROW_REF(instance, instance.registerException(e), stack, newFrame, callStack);
-                }
-                if (fromCallStack) {
-                    callStack.push(newFrame);
-                }
-                return newFrame;
-            }
-        }
+        return tailCall(instance, funcId, type, args, currentStackFrame);
     }
 
-    private static StackFrame RETURN_CALL_INDIRECT(
-            MStack stack,
-            Instance instance,
-            Deque<StackFrame> callStack,
-            Operands operands,
-            StackFrame currentStackFrame) {
-        var tableIdx = (int) operands.get(1);
-        var table = instance.table(tableIdx);
-
-        var typeId = (int) operands.get(0);
-        int funcTableIdx = (int) stack.pop();
-
-        int funcId = table.requiredRef(funcTableIdx);
-        var refInstance = requireNonNullElse(table.instance(funcTableIdx), instance);
-        var type = refInstance.type(typeId);
-
-        var callType = refInstance.type(refInstance.functionType(funcId));
-        verifyIndirectCall(callType, type);
+    private StackFrame RETURN_CALL_INDIRECT(
+            MStack stack, Instance instance, Operands operands, StackFrame currentStackFrame) {
+        var target = indirectCallTarget(stack, instance, operands, currentStackFrame);
+        int funcId = target.funcId;
+        var refInstance = target.instance;
+        var type = target.type;
 
         var refMachine = refInstance.getMachine().getClass();
         if (!refInstance.equals(instance) && !refMachine.equals(instance.getMachine().getClass())) {
@@ -2575,125 +2746,38 @@ public class InterpreterMachine implements Machine {
         }
 
         var args = extractArgsForParams(stack, type.params());
-
-        // optimizing when the tail call happens in the same function
-        if (currentStackFrame.funcId() == funcId) {
-            var ctrlFrame = currentStackFrame.popCtrlTillCall();
-            StackFrame.doControlTransfer(ctrlFrame, stack);
-            currentStackFrame.reset(args);
-            currentStackFrame.pushCtrl(ctrlFrame);
-            return currentStackFrame;
-        } else {
-            var func = instance.function(funcId);
-            var fromCallStack = !callStack.isEmpty();
-
-            if (func != null) {
-                var ctrlFrame =
-                        (fromCallStack)
-                                ? callStack.pop().popCtrlTillCall()
-                                : currentStackFrame.popCtrlTillCall();
-                StackFrame.doControlTransfer(ctrlFrame, stack);
-                var newFrame =
-                        new StackFrame(
-                                instance,
-                                funcId,
-                                args,
-                                type.params(),
-                                func.localTypes(),
-                                func.instructions());
-                newFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
-                if (fromCallStack) {
-                    callStack.push(newFrame);
-                }
-                return newFrame;
-            } else {
-                var newFrame = new StackFrame(instance, funcId, args);
-                newFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
-                callStack.push(newFrame);
-
-                var imprt = instance.imports().function(funcId);
-
-                try {
-                    var results = imprt.handle().apply(instance, args);
-                    // a host function can return null or an array of ints
-                    // which we will push onto the stack
-                    if (results != null) {
-                        for (var result : results) {
-                            stack.push(result);
-                        }
-                    }
-                } catch (WasmException e) {
-                    THROW_REF(instance, instance.registerException(e), stack, newFrame, callStack);
-                }
-                if (fromCallStack) {
-                    callStack.push(newFrame);
-                }
-                return newFrame;
-            }
-        }
+        return tailCall(refInstance, funcId, type, args, currentStackFrame);
     }
 
-    private static StackFrame RETURN_CALL_REF(
-            MStack stack,
-            Instance instance,
-            Deque<StackFrame> callStack,
-            StackFrame currentStackFrame) {
+    private StackFrame RETURN_CALL_REF(
+            MStack stack, Instance instance, StackFrame currentStackFrame) {
         int funcId = (int) stack.pop();
         if (funcId == REF_NULL_VALUE) {
             throw new TrapException("Trapped on call_ref on null function reference");
         }
         var typeId = instance.functionType(funcId);
         var type = instance.type(typeId);
-        var func = instance.function(funcId);
         // given a list of param types, let's pop those params off the stack
         // and pass as args to the function call
         var args = extractArgsForParams(stack, type.params());
-
-        // optimizing when the tail call happens in the same function
-        if (currentStackFrame.funcId() == funcId) {
-            var ctrlFrame = currentStackFrame.popCtrlTillCall();
-            StackFrame.doControlTransfer(ctrlFrame, stack);
-            currentStackFrame.reset(args);
-            currentStackFrame.pushCtrl(ctrlFrame);
-            return currentStackFrame;
-        } else {
-            var ctrlFrame = callStack.pop();
-            StackFrame.doControlTransfer(ctrlFrame.popCtrlTillCall(), stack);
-            var newFrame =
-                    new StackFrame(
-                            instance,
-                            funcId,
-                            args,
-                            type.params(),
-                            func.localTypes(),
-                            func.instructions());
-            newFrame.pushCtrl(OpCode.CALL, 0, sizeOf(type.returns()), stack.size());
-            callStack.push(newFrame);
-            return newFrame;
-        }
+        return tailCall(instance, funcId, type, args, currentStackFrame);
     }
 
     private void CALL_INDIRECT(
-            MStack stack, Instance instance, Deque<StackFrame> callStack, Operands operands) {
-        var tableIdx = (int) operands.get(1);
-        var table = instance.table(tableIdx);
-
-        var typeId = (int) operands.get(0);
-        int funcTableIdx = (int) stack.pop();
-
-        int funcId = table.requiredRef(funcTableIdx);
-        var refInstance = requireNonNullElse(table.instance(funcTableIdx), instance);
-        var type = refInstance.type(typeId);
+            MStack stack, Instance instance, Operands operands, StackFrame frame) {
+        var target = indirectCallTarget(stack, instance, operands, frame);
+        int funcId = target.funcId;
+        var refInstance = target.instance;
 
         // given a list of param types, let's pop those params off the stack
         // and pass as args to the function call
-        var args = extractArgsForParams(stack, type.params());
+        var args = extractArgsForParams(stack, target.type.params());
+        // no callType to check: the type of the target has been verified
+        // when it was put in the cache, by indirectCallTarget
         if (useCurrentInstanceInterpreter(instance, refInstance, funcId)) {
-            call(stack, instance, callStack, funcId, args, type, false);
+            invoke(funcId, target.type, args);
         } else {
             checkInterruption();
-            var callType = refInstance.type(refInstance.functionType(funcId));
-            verifyIndirectCall(callType, type);
             var results = refInstance.getMachine().call(funcId, args);
             if (results != null) {
                 for (var result : results) {
@@ -2703,6 +2787,54 @@ public class InterpreterMachine implements Machine {
         }
     }
 
+    // pops the table slot and resolves the function it refers to,
+    // from the inline cache of the instruction if it has been called already
+    private IndirectCallCache.Target indirectCallTarget(
+            MStack stack, Instance instance, Operands operands, StackFrame frame) {
+        var tableIdx = (int) operands.get(1);
+        var table = instance.table(tableIdx);
+        int funcTableIdx = (int) stack.pop();
+
+        var cache = indirectCallCache(instance, table, frame);
+        var target = cache.get(funcTableIdx);
+        if (target == null) {
+            var typeId = (int) operands.get(0);
+            int funcId = table.requiredRef(funcTableIdx);
+            var refInstance = requireNonNullElse(table.instance(funcTableIdx), instance);
+            var type = instance.type(typeId);
+
+            // the types are only compared when the canonical ids differ
+            if (!refInstance.hasCanonicalType(funcId, instance, typeId)) {
+                var callType = refInstance.type(refInstance.functionType(funcId));
+                verifyIndirectCall(callType, type);
+            }
+
+            target = new IndirectCallCache.Target(funcId, refInstance, type);
+            cache.put(funcTableIdx, target);
+        }
+        return target;
+    }
+
+    private IndirectCallCache indirectCallCache(
+            Instance instance, TableInstance table, StackFrame frame) {
+        if (indirectCallCaches == null) {
+            indirectCallCaches = new IndirectCallCache[instance.functionCount()][];
+        }
+        var funcId = frame.funcId();
+        var caches = indirectCallCaches[funcId];
+        if (caches == null) {
+            caches = new IndirectCallCache[instance.function(funcId).instructions().size()];
+            indirectCallCaches[funcId] = caches;
+        }
+        var pc = frame.currentPc();
+        var cache = caches[pc];
+        if (cache == null) {
+            cache = new IndirectCallCache(table);
+            caches[pc] = cache;
+        }
+        return cache;
+    }
+
     protected boolean useCurrentInstanceInterpreter(
             Instance instance, Instance refInstance, int funcId) {
         return refInstance.equals(instance);
@@ -2743,6 +2875,18 @@ public class InterpreterMachine implements Machine {
             MStack stack,
             StackFrame frame,
             Deque<StackFrame> callStack) {
+        return THROW_REF(instance, exceptionIdx, stack, frame, callStack, 1);
+    }
+
+    // unwinds the frames down to the given size of the call stack,
+    // the frames below it belong to the callers of the evaluation
+    private static StackFrame THROW_REF(
+            Instance instance,
+            int exceptionIdx,
+            MStack stack,
+            StackFrame frame,
+            Deque<StackFrame> callStack,
+            int bottom) {
         var exception = instance.exn(exceptionIdx);
         boolean found = false;
         while (!found) {
@@ -2813,11 +2957,14 @@ public class InterpreterMachine implements Machine {
                 }
             }
             if (!found) {
-                if (callStack.isEmpty()) {
+                // the frame thrown from can be an empty one, that is not on the call stack
+                if (callStack.peek() == frame) {
+                    callStack.pop();
+                }
+                if (callStack.isEmpty() || callStack.size() < bottom) {
                     throw exception;
-                } else {
-                    frame = callStack.pop();
                 }
+                frame = callStack.peek();
             }
         }
         throw new RuntimeException("unreacheable");
@@ -2857,6 +3004,8 @@ public class InterpreterMachine implements Machine {
         frame.pushCtrl(ctrlFrame);
         // a LOOP jumps back to the first instruction without passing through an END
         if (ctrlFrame.opCode == OpCode.LOOP) {
+            frame.instance().consumeFuel();
+            frame.countLoopIteration();
             StackFrame.doControlTransfer(ctrlFrame, stack);
         }
     }
@@ -2953,7 +3102,7 @@ public class InterpreterMachine implements Machine {
 
     protected static void verifyIndirectCall(FunctionType actual, FunctionType expected)
             throws ChicoryException {
-        if (!functionTypeMatch(actual, expected)) {
+        if (!actual.typesMatch(expected) && !functionTypeMatch(actual, expected)) {
             throw new ChicoryException("indirect call type mismatch");
         }
     }
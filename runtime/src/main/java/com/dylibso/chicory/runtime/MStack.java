@@ -45,4 +45,16 @@ public class MStack {
     public int size() {
         return count;
     }
+
+    /**
+     * Drops the values above {@code height}, except for the top {@code keep} ones
+     * that are moved down in their place.
+     */
+    void unwind(int height, int keep) {
+        int from = count - keep;
+        if (from > height) {
+            System.arraycopy(elements, from, elements, height, keep);
+            count = height + keep;
+        }
+    }
 }
@@ -1,8 +1,14 @@
 package com.dylibso.chicory.runtime;
 
 import com.dylibso.chicory.wasm.types.DataSegment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 public interface Memory {
 
@@ -40,6 +46,91 @@ public interface Memory {
 
     int notify(int address, int maxThreads);
 
+    /**
+     * Reads the aligned int at the address with the sequentially consistent semantics of the
+     * atomic instructions. The default implementation synchronizes on {@link #lock(int)},
+     * implementations should override the atomic accesses with lock-free ones.
+     */
+    default int atomicReadInt(int addr) {
+        synchronized (lock(addr)) {
+            return readInt(addr);
+        }
+    }
+
+    default long atomicReadLong(int addr) {
+        synchronized (lock(addr)) {
+            return readLong(addr);
+        }
+    }
+
+    default void atomicWriteInt(int addr, int value) {
+        synchronized (lock(addr)) {
+            writeI32(addr, value);
+        }
+    }
+
+    default void atomicWriteLong(int addr, long value) {
+        synchronized (lock(addr)) {
+            writeLong(addr, value);
+        }
+    }
+
+    /**
+     * Atomically replaces the aligned int at the address if it's equal to the expected value,
+     * returns the value read.
+     */
+    default int atomicCompareAndExchangeInt(int addr, int expected, int value) {
+        synchronized (lock(addr)) {
+            var old = readInt(addr);
+            if (old == expected) {
+                writeI32(addr, value);
+            }
+            return old;
+        }
+    }
+
+    default long atomicCompareAndExchangeLong(int addr, long expected, long value) {
+        synchronized (lock(addr)) {
+            var old = readLong(addr);
+            if (old == expected) {
+                writeLong(addr, value);
+            }
+            return old;
+        }
+    }
+
+    default int atomicGetAndAddInt(int addr, int delta) {
+        synchronized (lock(addr)) {
+            var old = readInt(addr);
+            writeI32(addr, old + delta);
+            return old;
+        }
+    }
+
+    default long atomicGetAndAddLong(int addr, long delta) {
+        synchronized (lock(addr)) {
+            var old = readLong(addr);
+            writeLong(addr, old + delta);
+            return old;
+        }
+    }
+
+    default int atomicGetAndSetInt(int addr, int value) {
+        synchronized (lock(addr)) {
+            var old = readInt(addr);
+            writeI32(addr, value);
+            return old;
+        }
+    }
+
+    default long atomicGetAndSetLong(int addr, long value) {
+        synchronized (lock(addr)) {
+            var old = readLong(addr);
+            writeLong(addr, value);
+            return old;
+        }
+    }
+
     void initialize(Instance instance, DataSegment[] dataSegments);
 
     void initPassiveSegment(int segmentId, int dest, int offset, int size);
@@ -86,14 +177,126 @@ public interface Memory {
 
     void write(int addr, byte[] data, int offset, int size);
 
+    /**
+     * Writes the remaining bytes of {@code data} at {@code addr}, advancing its position.
+     */
+    default void write(int addr, ByteBuffer data) {
+        var bytes = new byte[data.remaining()];
+        data.get(bytes);
+        write(addr, bytes);
+    }
+
     byte read(int addr);
 
     byte[] readBytes(int addr, int len);
 
+    /**
+     * Reads {@code dest.length} bytes at {@code addr} into {@code dest}.
+     */
+    default void readInto(int addr, byte[] dest) {
+        readInto(addr, dest, 0, dest.length);
+    }
+
+    /**
+     * Reads {@code len} bytes at {@code addr} into {@code dest}, starting at {@code offset}.
+     * Unlike {@link #readBytes(int, int)}, the implementations don't allocate.
+     */
+    default void readInto(int addr, byte[] dest, int offset, int len) {
+        System.arraycopy(readBytes(addr, len), 0, dest, offset, len);
+    }
+
+    /**
+     * Reads the remaining bytes of {@code dest} at {@code addr}, advancing its position.
+     */
+    default void readInto(int addr, ByteBuffer dest) {
+        dest.put(readBytes(addr, dest.remaining()));
+    }
+
+    /**
+     * Returns a little-endian buffer viewing the {@code len} bytes at {@code addr}: writing to
+     * the buffer writes to the memory, without any copy.
+     * The view is only valid until the memory grows.
+     *
+     * @throws UnsupportedOperationException if the range can't be viewed as a single buffer
+     */
+    default ByteBuffer view(int addr, int len) {
+        throw new UnsupportedOperationException(
+                "Cannot view the memory of " + getClass().getName());
+    }
+
+    /**
+     * Returns a read-only little-endian buffer with the {@code len} bytes at {@code addr}.
+     * It's a view of the memory, valid until the memory grows, if the implementation supports
+     * it, and a copy of the bytes otherwise.
+     */
+    default ByteBuffer readOnlyView(int addr, int len) {
+        return ByteBuffer.wrap(readBytes(addr, len))
+                .asReadOnlyBuffer()
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes the {@code len} bytes at {@code addr} to {@code channel}, without copying them
+     * when the memory supports views.
+     * The transfer stops early if the channel doesn't accept more bytes, e.g. when it's
+     * non-blocking.
+     *
+     * @return the number of bytes written
+     */
+    default int transferTo(int addr, int len, WritableByteChannel channel) throws IOException {
+        var buffer = readOnlyView(addr, len);
+        while (buffer.hasRemaining() && channel.write(buffer) > 0) {
+            // keep writing
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Reads up to {@code len} bytes from {@code channel} at {@code addr}.
+     * The default implementation reads them into a temporary buffer, the implementations read
+     * them directly into the memory when they can.
+     * The transfer stops early at the end of the stream, or if no bytes are available on a
+     * non-blocking channel.
+     *
+     * @return the number of bytes read
+     */
+    default int transferFrom(ReadableByteChannel channel, int addr, int len) throws IOException {
+        // nothing is consumed from the channel when the range is out of bounds
+        checkBulkAccess(addr, len, 0, len, 1);
+        var buffer = ByteBuffer.allocate(len);
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            // keep reading
+        }
+        write(addr, buffer.flip());
+        return buffer.position();
+    }
+
     void writeI32(int addr, int data);
 
     int readInt(int addr);
 
+    /**
+     * Reads {@code len} little-endian ints at {@code addr} into {@code dest}, starting at
+     * {@code offset}.
+     */
+    default void readInts(int addr, int[] dest, int offset, int len) {
+        checkBulkAccess(addr, dest.length, offset, len, Integer.BYTES);
+        for (int i = 0; i < len; i++) {
+            dest[offset + i] = readInt(addr + i * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Writes {@code len} ints of {@code src}, starting at {@code offset}, at {@code addr} as
+     * little-endian values.
+     */
+    default void writeInts(int addr, int[] src, int offset, int len) {
+        checkBulkAccess(addr, src.length, offset, len, Integer.BYTES);
+        for (int i = 0; i < len; i++) {
+            writeI32(addr + i * Integer.BYTES, src[offset + i]);
+        }
+    }
+
     default long readI32(int addr) {
         return readInt(addr);
     }
@@ -106,6 +309,28 @@ public interface Memory {
 
     long readLong(int addr);
 
+    /**
+     * Reads {@code len} little-endian longs at {@code addr} into {@code dest}, starting at
+     * {@code offset}.
+     */
+    default void readLongs(int addr, long[] dest, int offset, int len) {
+        checkBulkAccess(addr, dest.length, offset, len, Long.BYTES);
+        for (int i = 0; i < len; i++) {
+            dest[offset + i] = readLong(addr + i * Long.BYTES);
+        }
+    }
+
+    /**
+     * Writes {@code len} longs of {@code src}, starting at {@code offset}, at {@code addr} as
+     * little-endian values.
+     */
+    default void writeLongs(int addr, long[] src, int offset, int len) {
+        checkBulkAccess(addr, src.length, offset, len, Long.BYTES);
+        for (int i = 0; i < len; i++) {
+            writeLong(addr + i * Long.BYTES, src[offset + i]);
+        }
+    }
+
     default long readI64(int addr) {
         return readLong(addr);
     }
@@ -136,6 +361,43 @@ public interface Memory {
 
     float readFloat(int addr);
 
+    /**
+     * Reads {@code len} little-endian floats at {@code addr} into {@code dest}, starting at
+     * {@code offset}.
+     */
+    default void readFloats(int addr, float[] dest, int offset, int len) {
+        checkBulkAccess(addr, dest.length, offset, len, Float.BYTES);
+        for (int i = 0; i < len; i++) {
+            dest[offset + i] = readFloat(addr + i * Float.BYTES);
+        }
+    }
+
+    /**
+     * Writes {@code len} floats of {@code src}, starting at {@code offset}, at {@code addr} as
+     * little-endian values.
+     */
+    default void writeFloats(int addr, float[] src, int offset, int len) {
+        checkBulkAccess(addr, src.length, offset, len, Float.BYTES);
+        for (int i = 0; i < len; i++) {
+            writeF32(addr + i * Float.BYTES, src[offset + i]);
+        }
+    }
+
+    // checks a bulk access up front, so that nothing is written when it fails
+    private void checkBulkAccess(int addr, int arrayLength, int offset, int len, int size) {
+        Objects.checkFromIndexSize(offset, len, arrayLength);
+        var limit = (long) PAGE_SIZE * pages();
+        if (Integer.toUnsignedLong(addr) + (long) len * size > limit) {
+            throw new WasmRuntimeException(
+                    "out of bounds memory access: attempted to access address: "
+                            + Integer.toUnsignedString(addr)
+                            + " but limit is: "
+                            + limit
+                            + " and size: "
+                            + (long) len * size);
+        }
+    }
+
     void writeF64(int addr, double data);
 
     double readDouble(int addr);
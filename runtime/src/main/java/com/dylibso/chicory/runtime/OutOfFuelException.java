@@ -0,0 +1,14 @@
+package com.dylibso.chicory.runtime;
+
+import com.dylibso.chicory.wasm.ChicoryException;
+
+/**
+ * Thrown when a metered instance has consumed all its fuel, see
+ * {@link Instance.Builder#withFuel(long)}. The instance can be called again after
+ * {@link Instance#addFuel(long)}.
+ */
+public class OutOfFuelException extends ChicoryException {
+    public OutOfFuelException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,1113 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.wasm.types.Value.REF_NULL_VALUE;
+import static java.util.Objects.requireNonNullElse;
+
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.types.Value;
+
+/**
+ * An interpreter executing the register form of {@link Bytecode}, produced by {@link RegisterLowering}.
+ *
+ * Instructions read their operands and write their result directly in the slots of the frame,
+ * so most local accesses and constants don't need an instruction of their own and there is no
+ * stack pointer to maintain.
+ * Calls, the frame layout and the fallback to {@link InterpreterMachine} are the same of
+ * {@link BytecodeInterpreterMachine}.
+ */
+public class RegisterInterpreterMachine extends BytecodeInterpreterMachine {
+
+    public RegisterInterpreterMachine(Instance instance) {
+        super(instance);
+    }
+
+    @Override
+    Bytecode lower(int funcId) {
+        return RegisterLowering.lower(instance, funcId);
+    }
+
+    @Override
+    void execute(Bytecode function, int fp) {
+        // the frames below belong to the callers of this execution
+        var base = depth;
+        var code = function.code;
+        enter(function, fp);
+        var stack = this.stack;
+        var memory = instance.memory();
+        var pc = 0;
+
+        while (true) {
+            switch (code[pc++]) {
+                case BytecodeOpCode.UNREACHABLE:
+                    throw new TrapException("Trapped on unreachable instruction");
+                case BytecodeOpCode.BR:
+                    {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        pc = target;
+                        break;
+                    }
+                case BytecodeOpCode.BR_UNWIND:
+                    {
+                        var target = code[pc];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        unwind(stack, fp + code[pc + 2], code[pc + 1], fp + code[pc + 3]);
+                        pc = target;
+                        break;
+                    }
+                case BytecodeOpCode.BR_IF:
+                    if ((int) stack[fp + code[pc]] != 0) {
+                        var target = code[pc + 1];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        pc = target;
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                case BytecodeOpCode.BR_IF_UNWIND:
+                    if ((int) stack[fp + code[pc]] != 0) {
+                        var target = code[pc + 1];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        unwind(stack, fp + code[pc + 3], code[pc + 2], fp + code[pc + 4]);
+                        pc = target;
+                    } else {
+                        pc += 5;
+                    }
+                    break;
+                case BytecodeOpCode.BR_UNLESS:
+                    if ((int) stack[fp + code[pc]] == 0) {
+                        pc = code[pc + 1];
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                case BytecodeOpCode.BR_TABLE:
+                    {
+                        var index = (int) stack[fp + code[pc]];
+                        var count = code[pc + 2];
+                        if (index < 0 || index >= count) {
+                            // choose default
+                            index = count;
+                        }
+                        var entry = pc + 3 + 3 * index;
+                        var target = code[entry];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        unwind(stack, fp + code[pc + 1], code[entry + 1], fp + code[entry + 2]);
+                        pc = target;
+                        break;
+                    }
+                case BytecodeOpCode.BR_ON_NULL:
+                    if (stack[fp + code[pc]] == REF_NULL_VALUE) {
+                        var target = code[pc + 2];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        unwind(stack, fp + code[pc + 1], code[pc + 3], fp + code[pc + 4]);
+                        pc = target;
+                    } else {
+                        pc += 5;
+                    }
+                    break;
+                case BytecodeOpCode.BR_ON_NON_NULL:
+                    if (stack[fp + code[pc] - 1] != REF_NULL_VALUE) {
+                        var target = code[pc + 1];
+                        if (target < pc) {
+                            backEdge();
+                        }
+                        unwind(stack, fp + code[pc], code[pc + 2], fp + code[pc + 3]);
+                        pc = target;
+                    } else {
+                        pc += 4;
+                    }
+                    break;
+                case BytecodeOpCode.RETURN:
+                    {
+                        var count = function.resultCount;
+                        System.arraycopy(stack, fp + code[pc] - count, stack, fp, count);
+                        if (depth == base) {
+                            return;
+                        }
+                        // resume the caller
+                        depth--;
+                        function = callers[depth];
+                        code = function.code;
+                        fp = resumePoints[2 * depth];
+                        pc = resumePoints[2 * depth + 1];
+                        break;
+                    }
+                case BytecodeOpCode.CALL:
+                case BytecodeOpCode.CALL_INDIRECT:
+                case BytecodeOpCode.CALL_REF:
+                case BytecodeOpCode.RETURN_CALL:
+                case BytecodeOpCode.RETURN_CALL_INDIRECT:
+                case BytecodeOpCode.RETURN_CALL_REF:
+                    {
+                        var op = code[pc - 1];
+                        int funcId;
+                        int sp;
+                        var target = instance;
+                        if (op == BytecodeOpCode.CALL || op == BytecodeOpCode.RETURN_CALL) {
+                            funcId = code[pc];
+                            sp = fp + code[pc + 1];
+                            pc += 2;
+                        } else if (op == BytecodeOpCode.CALL_REF
+                                || op == BytecodeOpCode.RETURN_CALL_REF) {
+                            funcId = (int) stack[fp + code[pc]];
+                            if (funcId == REF_NULL_VALUE) {
+                                throw new TrapException(
+                                        "Trapped on call_ref on null function reference");
+                            }
+                            sp = fp + code[pc + 1];
+                            pc += 2;
+                        } else {
+                            var table = instance.table(code[pc + 1]);
+                            var index = (int) stack[fp + code[pc + 2]];
+                            target = requireNonNullElse(table.instance(index), instance);
+                            funcId = indirectTarget(code[pc], table, index, target);
+                            sp = fp + code[pc + 3];
+                            pc += 4;
+                        }
+                        var tail = op >= BytecodeOpCode.RETURN_CALL;
+
+                        checkInterruption();
+                        var callee = (target == instance) ? functions[funcId] : null;
+                        if (callee == null) {
+                            sp = callOut(target, funcId, sp);
+                            // the stack grows when calls go deeper
+                            stack = this.stack;
+                            if (!tail) {
+                                break;
+                            }
+                            var count = function.resultCount;
+                            System.arraycopy(stack, sp - count, stack, fp, count);
+                            if (depth == base) {
+                                return;
+                            }
+                            depth--;
+                            function = callers[depth];
+                            code = function.code;
+                            fp = resumePoints[2 * depth];
+                            pc = resumePoints[2 * depth + 1];
+                            break;
+                        }
+
+                        if (tail) {
+                            // reuse the current frame
+                            System.arraycopy(
+                                    stack, sp - callee.paramCount, stack, fp, callee.paramCount);
+                        } else {
+                            suspend(function, fp, pc);
+                            fp = sp - callee.paramCount;
+                        }
+                        function = callee;
+                        code = callee.code;
+                        enter(callee, fp);
+                        stack = this.stack;
+                        pc = 0;
+                        break;
+                    }
+                case BytecodeOpCode.MOVE:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.SELECT:
+                    stack[fp + code[pc]] =
+                            ((int) stack[fp + code[pc + 3]] != 0)
+                                    ? stack[fp + code[pc + 1]]
+                                    : stack[fp + code[pc + 2]];
+                    pc += 4;
+                    break;
+                case BytecodeOpCode.GLOBAL_GET:
+                    stack[fp + code[pc]] = instance.global(code[pc + 1]).getValueLow();
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.GLOBAL_SET:
+                    instance.global(code[pc]).setValue(stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.CONST32:
+                    stack[fp + code[pc]] = code[pc + 1];
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.CONST64:
+                    stack[fp + code[pc]] =
+                            ((long) code[pc + 1] << 32) | (code[pc + 2] & 0xFFFFFFFFL);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LOAD:
+                    stack[fp + code[pc]] =
+                            memory.readI32(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_LOAD:
+                    stack[fp + code[pc]] =
+                            memory.readI64(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LOAD8_S:
+                case BytecodeOpCode.I64_LOAD8_S:
+                    stack[fp + code[pc]] =
+                            memory.readI8(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LOAD8_U:
+                case BytecodeOpCode.I64_LOAD8_U:
+                    stack[fp + code[pc]] =
+                            memory.readU8(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LOAD16_S:
+                case BytecodeOpCode.I64_LOAD16_S:
+                    stack[fp + code[pc]] =
+                            memory.readI16(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LOAD16_U:
+                case BytecodeOpCode.I64_LOAD16_U:
+                    stack[fp + code[pc]] =
+                            memory.readU16(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_LOAD32_S:
+                    stack[fp + code[pc]] =
+                            memory.readI32(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_LOAD32_U:
+                    stack[fp + code[pc]] =
+                            memory.readU32(address(stack[fp + code[pc + 1]], code[pc + 2]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_STORE:
+                case BytecodeOpCode.STORE32:
+                    memory.writeI32(
+                            address(stack[fp + code[pc]], code[pc + 2]),
+                            (int) stack[fp + code[pc + 1]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_STORE:
+                    memory.writeLong(
+                            address(stack[fp + code[pc]], code[pc + 2]), stack[fp + code[pc + 1]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.STORE8:
+                    memory.writeByte(
+                            address(stack[fp + code[pc]], code[pc + 2]),
+                            (byte) stack[fp + code[pc + 1]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.STORE16:
+                    memory.writeShort(
+                            address(stack[fp + code[pc]], code[pc + 2]),
+                            (short) stack[fp + code[pc + 1]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.MEMORY_OOB:
+                    throw new WasmRuntimeException("out of bounds memory access");
+                case BytecodeOpCode.MEMORY_SIZE:
+                    stack[fp + code[pc++]] = memory.pages();
+                    break;
+                case BytecodeOpCode.MEMORY_GROW:
+                    stack[fp + code[pc]] = memory.grow((int) stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.MEMORY_FILL:
+                case BytecodeOpCode.MEMORY_COPY:
+                case BytecodeOpCode.MEMORY_INIT:
+                case BytecodeOpCode.TABLE_GET:
+                case BytecodeOpCode.TABLE_SET:
+                case BytecodeOpCode.TABLE_SIZE:
+                case BytecodeOpCode.TABLE_GROW:
+                case BytecodeOpCode.TABLE_FILL:
+                case BytecodeOpCode.TABLE_COPY:
+                case BytecodeOpCode.TABLE_INIT:
+                    pc = executeBulk(code[pc - 1], code, pc, fp);
+                    break;
+                case BytecodeOpCode.DATA_DROP:
+                    memory.drop(code[pc++]);
+                    break;
+                case BytecodeOpCode.ELEM_DROP:
+                    instance.setElement(code[pc++], null);
+                    break;
+                case BytecodeOpCode.REF_IS_NULL:
+                    stack[fp + code[pc]] =
+                            (stack[fp + code[pc + 1]] == REF_NULL_VALUE) ? Value.TRUE : Value.FALSE;
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.REF_AS_NON_NULL:
+                    {
+                        var ref = stack[fp + code[pc + 1]];
+                        if (ref == REF_NULL_VALUE) {
+                            throw new TrapException("Trapped on ref_as_non_null on null reference");
+                        }
+                        stack[fp + code[pc]] = ref;
+                        pc += 2;
+                        break;
+                    }
+                case BytecodeOpCode.I32_EQZ:
+                    stack[fp + code[pc]] = OpcodeImpl.I32_EQZ((int) stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I32_EQ:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_EQ(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_NE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_NE(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LT_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_LT_S(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LT_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_LT_U(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_GT_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_GT_S(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_GT_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_GT_U(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LE_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_LE_S(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_LE_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_LE_U(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_GE_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_GE_S(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_GE_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_GE_U(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_EQZ:
+                    stack[fp + code[pc]] = OpcodeImpl.I64_EQZ(stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I64_EQ:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_EQ(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_NE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_NE(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_LT_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_LT_S(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_LT_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_LT_U(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_GT_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_GT_S(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_GT_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_GT_U(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_LE_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_LE_S(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_LE_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_LE_U(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_GE_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_GE_S(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_GE_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_GE_U(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_EQ:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F32_EQ(
+                                    Value.longToFloat(stack[fp + code[pc + 1]]),
+                                    Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_NE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F32_NE(
+                                    Value.longToFloat(stack[fp + code[pc + 1]]),
+                                    Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_LT:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F32_LT(
+                                    Value.longToFloat(stack[fp + code[pc + 1]]),
+                                    Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_GT:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F32_GT(
+                                    Value.longToFloat(stack[fp + code[pc + 1]]),
+                                    Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_LE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F32_LE(
+                                    Value.longToFloat(stack[fp + code[pc + 1]]),
+                                    Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_GE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F32_GE(
+                                    Value.longToFloat(stack[fp + code[pc + 1]]),
+                                    Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_EQ:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F64_EQ(
+                                    Value.longToDouble(stack[fp + code[pc + 1]]),
+                                    Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_NE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F64_NE(
+                                    Value.longToDouble(stack[fp + code[pc + 1]]),
+                                    Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_LT:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F64_LT(
+                                    Value.longToDouble(stack[fp + code[pc + 1]]),
+                                    Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_GT:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F64_GT(
+                                    Value.longToDouble(stack[fp + code[pc + 1]]),
+                                    Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_LE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F64_LE(
+                                    Value.longToDouble(stack[fp + code[pc + 1]]),
+                                    Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_GE:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.F64_GE(
+                                    Value.longToDouble(stack[fp + code[pc + 1]]),
+                                    Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_ADD:
+                    stack[fp + code[pc]] =
+                            (long)
+                                    ((int) stack[fp + code[pc + 1]]
+                                            + (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_SUB:
+                    stack[fp + code[pc]] =
+                            (long)
+                                    ((int) stack[fp + code[pc + 1]]
+                                            - (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_MUL:
+                    stack[fp + code[pc]] =
+                            (int) (stack[fp + code[pc + 1]] * stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_DIV_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_DIV_S(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_DIV_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_DIV_U(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_REM_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_REM_S(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_REM_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_REM_U(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_AND:
+                    stack[fp + code[pc]] =
+                            (int) stack[fp + code[pc + 1]] & (int) stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_OR:
+                    stack[fp + code[pc]] =
+                            (int) stack[fp + code[pc + 1]] | (int) stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_XOR:
+                    stack[fp + code[pc]] =
+                            (int) stack[fp + code[pc + 1]] ^ (int) stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_SHL:
+                    stack[fp + code[pc]] =
+                            (long)
+                                    ((int) stack[fp + code[pc + 1]]
+                                            << (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_SHR_S:
+                    stack[fp + code[pc]] =
+                            (int) stack[fp + code[pc + 1]] >> (int) stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_SHR_U:
+                    stack[fp + code[pc]] =
+                            (long)
+                                    ((int) stack[fp + code[pc + 1]]
+                                            >>> (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_ROTL:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_ROTL(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_ROTR:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_ROTR(
+                                    (int) stack[fp + code[pc + 1]], (int) stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_ADD:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] + stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_SUB:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] - stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_MUL:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] * stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_DIV_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_DIV_S(
+                                    stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_DIV_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_DIV_U(
+                                    stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_REM_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_REM_S(
+                                    stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_REM_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_REM_U(
+                                    stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_AND:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] & stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_OR:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] | stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_XOR:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] ^ stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_SHL:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] << stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_SHR_S:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] >> stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_SHR_U:
+                    stack[fp + code[pc]] = stack[fp + code[pc + 1]] >>> stack[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_ROTL:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_ROTL(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I64_ROTR:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_ROTR(stack[fp + code[pc + 1]], stack[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_ABS:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_ABS(
+                                            Value.longToFloat(stack[fp + code[pc + 1]])));
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.F32_NEG:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(-Value.longToFloat(stack[fp + code[pc + 1]]));
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.F32_ADD:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + code[pc + 1]])
+                                            + Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_SUB:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + code[pc + 1]])
+                                            - Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_MUL:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + code[pc + 2]])
+                                            * Value.longToFloat(stack[fp + code[pc + 1]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_DIV:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + code[pc + 1]])
+                                            / Value.longToFloat(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_MIN:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_MIN(
+                                            Value.longToFloat(stack[fp + code[pc + 2]]),
+                                            Value.longToFloat(stack[fp + code[pc + 1]])));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_MAX:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_MAX(
+                                            Value.longToFloat(stack[fp + code[pc + 2]]),
+                                            Value.longToFloat(stack[fp + code[pc + 1]])));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F32_COPYSIGN:
+                    stack[fp + code[pc]] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_COPYSIGN(
+                                            Value.longToFloat(stack[fp + code[pc + 1]]),
+                                            Value.longToFloat(stack[fp + code[pc + 2]])));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_ABS:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_ABS(
+                                            Value.longToDouble(stack[fp + code[pc + 1]])));
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.F64_NEG:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(-Value.longToDouble(stack[fp + code[pc + 1]]));
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.F64_ADD:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + code[pc + 1]])
+                                            + Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_SUB:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + code[pc + 1]])
+                                            - Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_MUL:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + code[pc + 2]])
+                                            * Value.longToDouble(stack[fp + code[pc + 1]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_DIV:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + code[pc + 1]])
+                                            / Value.longToDouble(stack[fp + code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_MIN:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_MIN(
+                                            Value.longToDouble(stack[fp + code[pc + 2]]),
+                                            Value.longToDouble(stack[fp + code[pc + 1]])));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_MAX:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_MAX(
+                                            Value.longToDouble(stack[fp + code[pc + 2]]),
+                                            Value.longToDouble(stack[fp + code[pc + 1]])));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.F64_COPYSIGN:
+                    stack[fp + code[pc]] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_COPYSIGN(
+                                            Value.longToDouble(stack[fp + code[pc + 1]]),
+                                            Value.longToDouble(stack[fp + code[pc + 2]])));
+                    pc += 3;
+                    break;
+                case BytecodeOpCode.I32_WRAP_I64:
+                    stack[fp + code[pc]] = (int) stack[fp + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I64_EXTEND_I32_S:
+                    stack[fp + code[pc]] = (int) stack[fp + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I64_EXTEND_I32_U:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I64_EXTEND_I32_U((int) stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I32_REINTERPRET_F32:
+                    stack[fp + code[pc]] = (int) stack[fp + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.F32_REINTERPRET_I32:
+                    stack[fp + code[pc]] = (int) stack[fp + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I32_EXTEND_8_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_EXTEND_8_S((int) stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I32_EXTEND_16_S:
+                    stack[fp + code[pc]] =
+                            OpcodeImpl.I32_EXTEND_16_S((int) stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I64_EXTEND_8_S:
+                    stack[fp + code[pc]] = OpcodeImpl.I64_EXTEND_8_S(stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I64_EXTEND_16_S:
+                    stack[fp + code[pc]] = OpcodeImpl.I64_EXTEND_16_S(stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I64_EXTEND_32_S:
+                    stack[fp + code[pc]] = OpcodeImpl.I64_EXTEND_32_S(stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case BytecodeOpCode.I32_CLZ:
+                case BytecodeOpCode.I32_CTZ:
+                case BytecodeOpCode.I32_POPCNT:
+                case BytecodeOpCode.I64_CLZ:
+                case BytecodeOpCode.I64_CTZ:
+                case BytecodeOpCode.I64_POPCNT:
+                case BytecodeOpCode.F32_CEIL:
+                case BytecodeOpCode.F32_FLOOR:
+                case BytecodeOpCode.F32_TRUNC:
+                case BytecodeOpCode.F32_NEAREST:
+                case BytecodeOpCode.F32_SQRT:
+                case BytecodeOpCode.F64_CEIL:
+                case BytecodeOpCode.F64_FLOOR:
+                case BytecodeOpCode.F64_TRUNC:
+                case BytecodeOpCode.F64_NEAREST:
+                case BytecodeOpCode.F64_SQRT:
+                case BytecodeOpCode.I32_TRUNC_F32_S:
+                case BytecodeOpCode.I32_TRUNC_SAT_F32_S:
+                case BytecodeOpCode.I32_TRUNC_F32_U:
+                case BytecodeOpCode.I32_TRUNC_SAT_F32_U:
+                case BytecodeOpCode.I32_TRUNC_F64_S:
+                case BytecodeOpCode.I32_TRUNC_SAT_F64_S:
+                case BytecodeOpCode.I32_TRUNC_F64_U:
+                case BytecodeOpCode.I32_TRUNC_SAT_F64_U:
+                case BytecodeOpCode.I64_TRUNC_F32_S:
+                case BytecodeOpCode.I64_TRUNC_SAT_F32_S:
+                case BytecodeOpCode.I64_TRUNC_F32_U:
+                case BytecodeOpCode.I64_TRUNC_SAT_F32_U:
+                case BytecodeOpCode.I64_TRUNC_F64_S:
+                case BytecodeOpCode.I64_TRUNC_SAT_F64_S:
+                case BytecodeOpCode.I64_TRUNC_F64_U:
+                case BytecodeOpCode.I64_TRUNC_SAT_F64_U:
+                case BytecodeOpCode.F32_CONVERT_I32_S:
+                case BytecodeOpCode.F32_CONVERT_I32_U:
+                case BytecodeOpCode.F32_CONVERT_I64_S:
+                case BytecodeOpCode.F32_CONVERT_I64_U:
+                case BytecodeOpCode.F64_CONVERT_I32_S:
+                case BytecodeOpCode.F64_CONVERT_I32_U:
+                case BytecodeOpCode.F64_CONVERT_I64_S:
+                case BytecodeOpCode.F64_CONVERT_I64_U:
+                case BytecodeOpCode.F32_DEMOTE_F64:
+                case BytecodeOpCode.F64_PROMOTE_F32:
+                    stack[fp + code[pc]] = executeUnary(code[pc - 1], stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                default:
+                    throw new ChicoryException("Unknown bytecode " + code[pc - 1]);
+            }
+        }
+    }
+
+    // the table and bulk memory instructions, out of the main loop to keep it small enough
+    // to be compiled, returns the position of the next instruction
+    int executeBulk(int op, int[] code, int pc, int fp) {
+        var stack = this.stack;
+        switch (op) {
+            case BytecodeOpCode.MEMORY_FILL:
+                {
+                    var offset = (int) stack[fp + code[pc]];
+                    var size = (int) stack[fp + code[pc + 2]];
+                    instance.memory().fill((byte) stack[fp + code[pc + 1]], offset, offset + size);
+                    return pc + 3;
+                }
+            case BytecodeOpCode.MEMORY_COPY:
+                instance.memory()
+                        .copy(
+                                (int) stack[fp + code[pc]],
+                                (int) stack[fp + code[pc + 1]],
+                                (int) stack[fp + code[pc + 2]]);
+                return pc + 3;
+            case BytecodeOpCode.MEMORY_INIT:
+                instance.memory()
+                        .initPassiveSegment(
+                                code[pc],
+                                (int) stack[fp + code[pc + 1]],
+                                (int) stack[fp + code[pc + 2]],
+                                (int) stack[fp + code[pc + 3]]);
+                return pc + 4;
+            case BytecodeOpCode.TABLE_GET:
+                stack[fp + code[pc]] =
+                        OpcodeImpl.TABLE_GET(
+                                instance, code[pc + 1], (int) stack[fp + code[pc + 2]]);
+                return pc + 3;
+            case BytecodeOpCode.TABLE_SET:
+                instance.table(code[pc])
+                        .setRef(
+                                (int) stack[fp + code[pc + 1]],
+                                (int) stack[fp + code[pc + 2]],
+                                instance);
+                return pc + 3;
+            case BytecodeOpCode.TABLE_SIZE:
+                stack[fp + code[pc]] = instance.table(code[pc + 1]).size();
+                return pc + 2;
+            case BytecodeOpCode.TABLE_GROW:
+                stack[fp + code[pc]] =
+                        instance.table(code[pc + 1])
+                                .grow(
+                                        (int) stack[fp + code[pc + 3]],
+                                        (int) stack[fp + code[pc + 2]],
+                                        instance);
+                return pc + 4;
+            case BytecodeOpCode.TABLE_FILL:
+                OpcodeImpl.TABLE_FILL(
+                        instance,
+                        code[pc],
+                        (int) stack[fp + code[pc + 3]],
+                        (int) stack[fp + code[pc + 2]],
+                        (int) stack[fp + code[pc + 1]]);
+                return pc + 4;
+            case BytecodeOpCode.TABLE_COPY:
+                OpcodeImpl.TABLE_COPY(
+                        instance,
+                        code[pc + 1],
+                        code[pc],
+                        (int) stack[fp + code[pc + 4]],
+                        (int) stack[fp + code[pc + 3]],
+                        (int) stack[fp + code[pc + 2]]);
+                return pc + 5;
+            case BytecodeOpCode.TABLE_INIT:
+                OpcodeImpl.TABLE_INIT(
+                        instance,
+                        code[pc + 1],
+                        code[pc],
+                        (int) stack[fp + code[pc + 4]],
+                        (int) stack[fp + code[pc + 3]],
+                        (int) stack[fp + code[pc + 2]]);
+                return pc + 5;
+            default:
+                throw new ChicoryException("Unknown bytecode " + op);
+        }
+    }
+
+    // the less common numeric instructions, out of the main loop to keep it small enough
+    // to be compiled
+    static long executeUnary(int op, long value) {
+        switch (op) {
+            case BytecodeOpCode.I32_CLZ:
+                return OpcodeImpl.I32_CLZ((int) value);
+            case BytecodeOpCode.I32_CTZ:
+                return OpcodeImpl.I32_CTZ((int) value);
+            case BytecodeOpCode.I32_POPCNT:
+                return OpcodeImpl.I32_POPCNT((int) value);
+            case BytecodeOpCode.I64_CLZ:
+                return OpcodeImpl.I64_CLZ(value);
+            case BytecodeOpCode.I64_CTZ:
+                return OpcodeImpl.I64_CTZ(value);
+            case BytecodeOpCode.I64_POPCNT:
+                return OpcodeImpl.I64_POPCNT(value);
+            case BytecodeOpCode.F32_CEIL:
+                return Value.floatToLong(OpcodeImpl.F32_CEIL(Value.longToFloat(value)));
+            case BytecodeOpCode.F32_FLOOR:
+                return Value.floatToLong(OpcodeImpl.F32_FLOOR(Value.longToFloat(value)));
+            case BytecodeOpCode.F32_TRUNC:
+                return Value.floatToLong(OpcodeImpl.F32_TRUNC(Value.longToFloat(value)));
+            case BytecodeOpCode.F32_NEAREST:
+                return Value.floatToLong(OpcodeImpl.F32_NEAREST(Value.longToFloat(value)));
+            case BytecodeOpCode.F32_SQRT:
+                return Value.floatToLong(OpcodeImpl.F32_SQRT(Value.longToFloat(value)));
+            case BytecodeOpCode.F64_CEIL:
+                return Value.doubleToLong(OpcodeImpl.F64_CEIL(Value.longToDouble(value)));
+            case BytecodeOpCode.F64_FLOOR:
+                return Value.doubleToLong(OpcodeImpl.F64_FLOOR(Value.longToDouble(value)));
+            case BytecodeOpCode.F64_TRUNC:
+                return Value.doubleToLong(OpcodeImpl.F64_TRUNC(Value.longToDouble(value)));
+            case BytecodeOpCode.F64_NEAREST:
+                return Value.doubleToLong(OpcodeImpl.F64_NEAREST(Value.longToDouble(value)));
+            case BytecodeOpCode.F64_SQRT:
+                return Value.doubleToLong(OpcodeImpl.F64_SQRT(Value.longToDouble(value)));
+            case BytecodeOpCode.I32_TRUNC_F32_S:
+                return OpcodeImpl.I32_TRUNC_F32_S(Value.longToFloat(value));
+            case BytecodeOpCode.I32_TRUNC_SAT_F32_S:
+                return OpcodeImpl.I32_TRUNC_SAT_F32_S(Value.longToFloat(value));
+            case BytecodeOpCode.I32_TRUNC_F32_U:
+                return OpcodeImpl.I32_TRUNC_F32_U(Value.longToFloat(value));
+            case BytecodeOpCode.I32_TRUNC_SAT_F32_U:
+                return OpcodeImpl.I32_TRUNC_SAT_F32_U(Value.longToFloat(value));
+            case BytecodeOpCode.I32_TRUNC_F64_S:
+                return OpcodeImpl.I32_TRUNC_F64_S(Value.longToDouble(value));
+            case BytecodeOpCode.I32_TRUNC_SAT_F64_S:
+                return OpcodeImpl.I32_TRUNC_SAT_F64_S(Value.longToDouble(value));
+            case BytecodeOpCode.I32_TRUNC_F64_U:
+                return OpcodeImpl.I32_TRUNC_F64_U(Value.longToDouble(value));
+            case BytecodeOpCode.I32_TRUNC_SAT_F64_U:
+                return OpcodeImpl.I32_TRUNC_SAT_F64_U(Value.longToDouble(value));
+            case BytecodeOpCode.I64_TRUNC_F32_S:
+                return OpcodeImpl.I64_TRUNC_F32_S(Value.longToFloat(value));
+            case BytecodeOpCode.I64_TRUNC_SAT_F32_S:
+                return OpcodeImpl.I64_TRUNC_SAT_F32_S(Value.longToFloat(value));
+            case BytecodeOpCode.I64_TRUNC_F32_U:
+                return OpcodeImpl.I64_TRUNC_F32_U(Value.longToFloat(value));
+            case BytecodeOpCode.I64_TRUNC_SAT_F32_U:
+                return OpcodeImpl.I64_TRUNC_SAT_F32_U(Value.longToFloat(value));
+            case BytecodeOpCode.I64_TRUNC_F64_S:
+                return OpcodeImpl.I64_TRUNC_F64_S(Value.longToDouble(value));
+            case BytecodeOpCode.I64_TRUNC_SAT_F64_S:
+                return OpcodeImpl.I64_TRUNC_SAT_F64_S(Value.longToDouble(value));
+            case BytecodeOpCode.I64_TRUNC_F64_U:
+                return OpcodeImpl.I64_TRUNC_F64_U(Value.longToDouble(value));
+            case BytecodeOpCode.I64_TRUNC_SAT_F64_U:
+                return OpcodeImpl.I64_TRUNC_SAT_F64_U(Value.longToDouble(value));
+            case BytecodeOpCode.F32_CONVERT_I32_S:
+                return Value.floatToLong(OpcodeImpl.F32_CONVERT_I32_S((int) value));
+            case BytecodeOpCode.F32_CONVERT_I32_U:
+                return Value.floatToLong(OpcodeImpl.F32_CONVERT_I32_U((int) value));
+            case BytecodeOpCode.F32_CONVERT_I64_S:
+                return Value.floatToLong(OpcodeImpl.F32_CONVERT_I64_S(value));
+            case BytecodeOpCode.F32_CONVERT_I64_U:
+                return Value.floatToLong(OpcodeImpl.F32_CONVERT_I64_U(value));
+            case BytecodeOpCode.F64_CONVERT_I32_S:
+                return Value.doubleToLong(OpcodeImpl.F64_CONVERT_I32_S((int) value));
+            case BytecodeOpCode.F64_CONVERT_I32_U:
+                return Value.doubleToLong(OpcodeImpl.F64_CONVERT_I32_U((int) value));
+            case BytecodeOpCode.F64_CONVERT_I64_S:
+                return Value.doubleToLong(OpcodeImpl.F64_CONVERT_I64_S(value));
+            case BytecodeOpCode.F64_CONVERT_I64_U:
+                return Value.doubleToLong(OpcodeImpl.F64_CONVERT_I64_U(value));
+            case BytecodeOpCode.F32_DEMOTE_F64:
+                return Value.floatToLong((float) Value.longToDouble(value));
+            case BytecodeOpCode.F64_PROMOTE_F32:
+                return Value.doubleToLong(Value.longToFloat(value));
+            default:
+                throw new ChicoryException("Unknown bytecode " + op);
+        }
+    }
+}
@@ -0,0 +1,1232 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.wasm.types.Value.REF_NULL_VALUE;
+
+import com.dylibso.chicory.wasm.types.AnnotatedInstruction;
+import com.dylibso.chicory.wasm.types.FunctionBody;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.OpCode;
+import com.dylibso.chicory.wasm.types.ValType;
+import com.dylibso.chicory.wasm.types.Value;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers a {@link FunctionBody} to the register form of {@link Bytecode} executed by
+ * {@link RegisterInterpreterMachine}.
+ *
+ * Instead of pushing and popping operands, every instruction names the frame slots it reads
+ * and the one it writes, as in {@code I32_ADD dst a b}.
+ * The value at operand stack height {@code h} still belongs to slot {@code h}, but the lowering
+ * tracks a virtual stack whose entries can also refer to a local or to a constant, so that
+ * {@code local.get} and most constants produce no code and are read in place by the instruction
+ * consuming them, and a result immediately stored in a local is written there directly.
+ * An entry is copied to its own slot with {@code MOVE dst src} only when needed: before the local
+ * it refers to is overwritten, on block entry, and for the values carried by branches and calls.
+ *
+ * The most used constants of a function, up to {@link #MAX_CONSTANTS}, get a slot after the locals,
+ * initialized on entry together with them, the others are stored with {@code CONST32 dst value}
+ * or {@code CONST64 dst high low}.
+ * Branches have the same shape as in {@link BytecodeLowering}, with the height of the carried
+ * values made explicit as {@code from}:
+ * <ul>
+ *     <li>{@code BR target} and {@code BR_UNWIND target arity from to}</li>
+ *     <li>{@code BR_IF cond target} and {@code BR_IF_UNWIND cond target arity from to}</li>
+ *     <li>{@code BR_UNLESS cond target}</li>
+ *     <li>{@code BR_TABLE index from n (target arity to) * (n + 1)}</li>
+ *     <li>{@code BR_ON_NULL ref from target arity to} and {@code BR_ON_NON_NULL from target arity to}</li>
+ *     <li>{@code RETURN from}</li>
+ * </ul>
+ * Calls find their arguments right below {@code top} and leave their results starting from the
+ * first argument slot: {@code CALL funcId top}, {@code CALL_INDIRECT typeId table index top}
+ * and {@code CALL_REF ref top}, the same goes for the tail calls.
+ */
+final class RegisterLowering {
+
+    static final int MAX_CONSTANTS = 64;
+
+    private static final class Control {
+        final boolean loop;
+        // the height of the frame below the parameters of the block
+        final int height;
+        final int paramCount;
+        final int resultCount;
+        // the position of the first instruction of a loop
+        final int start;
+        // the position of the BR_UNLESS target of an if, patched at the else or at the end
+        int elseFixup = -1;
+        // the positions of the forward branch targets, patched at the end
+        final List<Integer> endFixups = new ArrayList<>();
+
+        Control(boolean loop, int height, int paramCount, int resultCount, int start) {
+            this.loop = loop;
+            this.height = height;
+            this.paramCount = paramCount;
+            this.resultCount = resultCount;
+            this.start = start;
+        }
+
+        int labelArity() {
+            return loop ? paramCount : resultCount;
+        }
+    }
+
+    private final Instance instance;
+    private final List<Control> controls = new ArrayList<>();
+    // the slots of the constants
+    private final Map<Long, Integer> constants = new HashMap<>();
+    private int[] code = new int[64];
+    private int size;
+    // the virtual operand stack: the slot holding the value at each height, starting from base
+    private int[] slots = new int[16];
+    private int base;
+    private int height;
+    private int maxHeight;
+    // the position of the destination of the last instruction emitted, if it produced a value
+    private int resultFixup = -1;
+    private boolean unreachable;
+    private int unreachableDepth;
+
+    private RegisterLowering(Instance instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * @return the lowered function, or {@code null} if the function uses features
+     *     not supported by the lowering: v128 values, exception handling, atomics
+     *     and 64-bit memories
+     */
+    static Bytecode lower(Instance instance, int funcId) {
+        var body = instance.function(funcId);
+        var type = instance.type(instance.functionType(funcId));
+        if (body == null
+                || hasV128(type)
+                || body.localTypes().contains(ValType.V128)
+                || InterpreterMachine.hasMemory64(instance)) {
+            return null;
+        }
+        return new RegisterLowering(instance).lower(type, body);
+    }
+
+    private Bytecode lower(FunctionType type, FunctionBody body) {
+        var paramCount = type.params().size();
+        var localCount = paramCount + body.localTypes().size();
+        var constantValues = constants(body);
+        base = localCount + constantValues.length;
+        var localDefaults = new long[base - paramCount];
+        for (int i = 0; i < body.localTypes().size(); i++) {
+            localDefaults[i] = Value.zero(body.localTypes().get(i));
+        }
+        for (int i = 0; i < constantValues.length; i++) {
+            localDefaults[localCount - paramCount + i] = constantValues[i];
+            constants.put(constantValues[i], localCount + i);
+        }
+
+        height = base;
+        maxHeight = base;
+        controls.add(new Control(false, base, 0, type.returns().size(), 0));
+
+        for (var ins : body.instructions()) {
+            if (unreachable) {
+                // skip everything up to the end of the current block
+                // or to the else of the current if
+                switch (ins.opcode()) {
+                    case BLOCK:
+                    case LOOP:
+                    case IF:
+                    case TRY_TABLE:
+                        unreachableDepth++;
+                        continue;
+                    case ELSE:
+                        if (unreachableDepth > 0) {
+                            continue;
+                        }
+                        break;
+                    case END:
+                        if (unreachableDepth > 0) {
+                            unreachableDepth--;
+                            continue;
+                        }
+                        break;
+                    default:
+                        continue;
+                }
+            }
+
+            switch (ins.opcode()) {
+                case NOP:
+                    break;
+                case UNREACHABLE:
+                    emit(BytecodeOpCode.UNREACHABLE);
+                    unreachable = true;
+                    break;
+                case BLOCK:
+                case LOOP:
+                    {
+                        if (isV128Block(ins)) {
+                            return null;
+                        }
+                        materialize(height - base);
+                        var params = blockParamCount(ins);
+                        controls.add(
+                                new Control(
+                                        ins.opcode() == OpCode.LOOP,
+                                        height - params,
+                                        params,
+                                        blockResultCount(ins),
+                                        size));
+                        resultFixup = -1;
+                        break;
+                    }
+                case IF:
+                    {
+                        if (isV128Block(ins)) {
+                            return null;
+                        }
+                        var cond = pop();
+                        materialize(height - base);
+                        var params = blockParamCount(ins);
+                        var ctrl =
+                                new Control(
+                                        false,
+                                        height - params,
+                                        params,
+                                        blockResultCount(ins),
+                                        size);
+                        emit(BytecodeOpCode.BR_UNLESS, cond, 0);
+                        ctrl.elseFixup = size - 1;
+                        controls.add(ctrl);
+                        break;
+                    }
+                case ELSE:
+                    {
+                        var ctrl = controls.get(controls.size() - 1);
+                        if (!unreachable) {
+                            materialize(ctrl.resultCount);
+                            emit(BytecodeOpCode.BR, 0);
+                            ctrl.endFixups.add(size - 1);
+                        }
+                        code[ctrl.elseFixup] = size;
+                        ctrl.elseFixup = -1;
+                        reset(ctrl.height, ctrl.height + ctrl.paramCount);
+                        unreachable = false;
+                        break;
+                    }
+                case END:
+                    {
+                        var ctrl = controls.remove(controls.size() - 1);
+                        if (!unreachable) {
+                            materialize(ctrl.resultCount);
+                        }
+                        var resultHeight = ctrl.height + ctrl.resultCount;
+                        if (controls.isEmpty()) {
+                            // the end of the function, branches to the function label land here
+                            emit(BytecodeOpCode.RETURN, resultHeight);
+                            for (var fixup : ctrl.endFixups) {
+                                code[fixup] = size - 2;
+                            }
+                        } else {
+                            if (ctrl.elseFixup >= 0) {
+                                code[ctrl.elseFixup] = size;
+                            }
+                            for (var fixup : ctrl.endFixups) {
+                                code[fixup] = size;
+                            }
+                        }
+                        reset(ctrl.height, resultHeight);
+                        unreachable = false;
+                        break;
+                    }
+                case BR:
+                    {
+                        var target = label((int) ins.operand(0));
+                        if (target == controls.get(0)) {
+                            materialize(target.resultCount);
+                            emit(BytecodeOpCode.RETURN, height);
+                        } else {
+                            branch(BytecodeOpCode.BR, BytecodeOpCode.BR_UNWIND, -1, target);
+                        }
+                        unreachable = true;
+                        break;
+                    }
+                case BR_IF:
+                    {
+                        var cond = pop();
+                        branch(
+                                BytecodeOpCode.BR_IF,
+                                BytecodeOpCode.BR_IF_UNWIND,
+                                cond,
+                                label((int) ins.operand(0)));
+                        break;
+                    }
+                case BR_TABLE:
+                    {
+                        var index = pop();
+                        var count = ins.operandCount();
+                        // all the labels have the same arity
+                        materialize(label((int) ins.operand(0)).labelArity());
+                        emit(BytecodeOpCode.BR_TABLE, index, height, count - 1);
+                        for (int i = 0; i < count; i++) {
+                            branchEntry(label((int) ins.operand(i)));
+                        }
+                        unreachable = true;
+                        break;
+                    }
+                case BR_ON_NULL:
+                    {
+                        var ref = pop();
+                        var target = label((int) ins.operand(0));
+                        materialize(target.labelArity());
+                        emit(BytecodeOpCode.BR_ON_NULL, ref, height);
+                        branchEntry(target);
+                        push(ref);
+                        break;
+                    }
+                case BR_ON_NON_NULL:
+                    {
+                        var target = label((int) ins.operand(0));
+                        materialize(target.labelArity());
+                        emit(BytecodeOpCode.BR_ON_NON_NULL, height);
+                        branchEntry(target);
+                        pop();
+                        break;
+                    }
+                case RETURN:
+                    materialize(controls.get(0).resultCount);
+                    emit(BytecodeOpCode.RETURN, height);
+                    unreachable = true;
+                    break;
+                case CALL:
+                case RETURN_CALL:
+                    {
+                        var funcId = (int) ins.operand(0);
+                        var calleeType = instance.type(instance.functionType(funcId));
+                        if (hasV128(calleeType)) {
+                            return null;
+                        }
+                        var tail = ins.opcode() == OpCode.RETURN_CALL;
+                        var top = arguments(calleeType);
+                        emit(tail ? BytecodeOpCode.RETURN_CALL : BytecodeOpCode.CALL, funcId, top);
+                        results(calleeType);
+                        unreachable = tail;
+                        break;
+                    }
+                case CALL_INDIRECT:
+                case RETURN_CALL_INDIRECT:
+                    {
+                        var typeId = (int) ins.operand(0);
+                        var calleeType = instance.type(typeId);
+                        if (hasV128(calleeType)) {
+                            return null;
+                        }
+                        var tail = ins.opcode() == OpCode.RETURN_CALL_INDIRECT;
+                        var index = pop();
+                        var top = arguments(calleeType);
+                        emit(
+                                tail
+                                        ? BytecodeOpCode.RETURN_CALL_INDIRECT
+                                        : BytecodeOpCode.CALL_INDIRECT,
+                                typeId,
+                                (int) ins.operand(1),
+                                index,
+                                top);
+                        results(calleeType);
+                        unreachable = tail;
+                        break;
+                    }
+                case CALL_REF:
+                case RETURN_CALL_REF:
+                    {
+                        var calleeType = instance.type((int) ins.operand(0));
+                        if (hasV128(calleeType)) {
+                            return null;
+                        }
+                        var tail = ins.opcode() == OpCode.RETURN_CALL_REF;
+                        var ref = pop();
+                        var top = arguments(calleeType);
+                        emit(
+                                tail ? BytecodeOpCode.RETURN_CALL_REF : BytecodeOpCode.CALL_REF,
+                                ref,
+                                top);
+                        results(calleeType);
+                        unreachable = tail;
+                        break;
+                    }
+                case DROP:
+                    if (ins.operand(0) == ValType.ID.V128) {
+                        return null;
+                    }
+                    pop();
+                    break;
+                case SELECT:
+                case SELECT_T:
+                    {
+                        if (ins.operandCount() > 0
+                                && (ins.operand(0) == ValType.ID.V128
+                                        || ins.operand(0) == ValType.V128.id())) {
+                            return null;
+                        }
+                        var cond = pop();
+                        var b = pop();
+                        var a = pop();
+                        produce(BytecodeOpCode.SELECT, a, b, cond);
+                        break;
+                    }
+                case LOCAL_GET:
+                    push((int) ins.operand(0));
+                    break;
+                case LOCAL_SET:
+                    localSet((int) ins.operand(0), pop(), height);
+                    break;
+                case LOCAL_TEE:
+                    localSet((int) ins.operand(0), slots[height - 1 - base], height - 1);
+                    break;
+                case GLOBAL_GET:
+                    if (isV128Global((int) ins.operand(0))) {
+                        return null;
+                    }
+                    produce(BytecodeOpCode.GLOBAL_GET, (int) ins.operand(0));
+                    break;
+                case GLOBAL_SET:
+                    if (isV128Global((int) ins.operand(0))) {
+                        return null;
+                    }
+                    emit(BytecodeOpCode.GLOBAL_SET, (int) ins.operand(0), pop());
+                    break;
+                case TABLE_GET:
+                    produce(BytecodeOpCode.TABLE_GET, (int) ins.operand(0), pop());
+                    break;
+                case TABLE_SET:
+                    {
+                        var value = pop();
+                        var index = pop();
+                        emit(BytecodeOpCode.TABLE_SET, (int) ins.operand(0), index, value);
+                        break;
+                    }
+                case I32_CONST:
+                case I64_CONST:
+                case F32_CONST:
+                case F64_CONST:
+                case REF_FUNC:
+                    constant(ins.operand(0));
+                    break;
+                case REF_NULL:
+                    constant(REF_NULL_VALUE);
+                    break;
+                case I32_LOAD:
+                case F32_LOAD:
+                    load(BytecodeOpCode.I32_LOAD, ins);
+                    break;
+                case I64_LOAD:
+                case F64_LOAD:
+                    load(BytecodeOpCode.I64_LOAD, ins);
+                    break;
+                case I32_LOAD8_S:
+                    load(BytecodeOpCode.I32_LOAD8_S, ins);
+                    break;
+                case I32_LOAD8_U:
+                    load(BytecodeOpCode.I32_LOAD8_U, ins);
+                    break;
+                case I32_LOAD16_S:
+                    load(BytecodeOpCode.I32_LOAD16_S, ins);
+                    break;
+                case I32_LOAD16_U:
+                    load(BytecodeOpCode.I32_LOAD16_U, ins);
+                    break;
+                case I64_LOAD8_S:
+                    load(BytecodeOpCode.I64_LOAD8_S, ins);
+                    break;
+                case I64_LOAD8_U:
+                    load(BytecodeOpCode.I64_LOAD8_U, ins);
+                    break;
+                case I64_LOAD16_S:
+                    load(BytecodeOpCode.I64_LOAD16_S, ins);
+                    break;
+                case I64_LOAD16_U:
+                    load(BytecodeOpCode.I64_LOAD16_U, ins);
+                    break;
+                case I64_LOAD32_S:
+                    load(BytecodeOpCode.I64_LOAD32_S, ins);
+                    break;
+                case I64_LOAD32_U:
+                    load(BytecodeOpCode.I64_LOAD32_U, ins);
+                    break;
+                case I32_STORE:
+                case F32_STORE:
+                    store(BytecodeOpCode.I32_STORE, ins);
+                    break;
+                case I64_STORE:
+                case F64_STORE:
+                    store(BytecodeOpCode.I64_STORE, ins);
+                    break;
+                case I32_STORE8:
+                case I64_STORE8:
+                    store(BytecodeOpCode.STORE8, ins);
+                    break;
+                case I32_STORE16:
+                case I64_STORE16:
+                    store(BytecodeOpCode.STORE16, ins);
+                    break;
+                case I64_STORE32:
+                    store(BytecodeOpCode.STORE32, ins);
+                    break;
+                case MEMORY_SIZE:
+                    produce(BytecodeOpCode.MEMORY_SIZE);
+                    break;
+                case MEMORY_GROW:
+                    produce(BytecodeOpCode.MEMORY_GROW, pop());
+                    break;
+                case MEMORY_FILL:
+                    {
+                        var count = pop();
+                        var value = pop();
+                        var offset = pop();
+                        emit(BytecodeOpCode.MEMORY_FILL, offset, value, count);
+                        break;
+                    }
+                case MEMORY_COPY:
+                    {
+                        var count = pop();
+                        var source = pop();
+                        var destination = pop();
+                        emit(BytecodeOpCode.MEMORY_COPY, destination, source, count);
+                        break;
+                    }
+                case MEMORY_INIT:
+                    {
+                        var count = pop();
+                        var source = pop();
+                        var destination = pop();
+                        emit(
+                                BytecodeOpCode.MEMORY_INIT,
+                                (int) ins.operand(0),
+                                destination,
+                                source,
+                                count);
+                        break;
+                    }
+                case DATA_DROP:
+                    emit(BytecodeOpCode.DATA_DROP, (int) ins.operand(0));
+                    break;
+                case TABLE_SIZE:
+                    produce(BytecodeOpCode.TABLE_SIZE, (int) ins.operand(0));
+                    break;
+                case TABLE_GROW:
+                    {
+                        var count = pop();
+                        var value = pop();
+                        produce(BytecodeOpCode.TABLE_GROW, (int) ins.operand(0), value, count);
+                        break;
+                    }
+                case TABLE_FILL:
+                    {
+                        var count = pop();
+                        var value = pop();
+                        var offset = pop();
+                        emit(BytecodeOpCode.TABLE_FILL, (int) ins.operand(0), offset, value, count);
+                        break;
+                    }
+                case TABLE_COPY:
+                case TABLE_INIT:
+                    {
+                        var count = pop();
+                        var source = pop();
+                        var destination = pop();
+                        // destination table and source table, or element segment and table
+                        emit(
+                                ins.opcode() == OpCode.TABLE_COPY
+                                        ? BytecodeOpCode.TABLE_COPY
+                                        : BytecodeOpCode.TABLE_INIT,
+                                (int) ins.operand(0),
+                                (int) ins.operand(1),
+                                destination,
+                                source,
+                                count);
+                        break;
+                    }
+                case ELEM_DROP:
+                    emit(BytecodeOpCode.ELEM_DROP, (int) ins.operand(0));
+                    break;
+                case REF_IS_NULL:
+                    unary(BytecodeOpCode.REF_IS_NULL);
+                    break;
+                case REF_AS_NON_NULL:
+                    unary(BytecodeOpCode.REF_AS_NON_NULL);
+                    break;
+                case I64_REINTERPRET_F64:
+                case F64_REINTERPRET_I64:
+                    // the bits are already stored as a long
+                    break;
+                case I32_EQZ:
+                    unary(BytecodeOpCode.I32_EQZ);
+                    break;
+                case I32_EQ:
+                    binary(BytecodeOpCode.I32_EQ);
+                    break;
+                case I32_NE:
+                    binary(BytecodeOpCode.I32_NE);
+                    break;
+                case I32_LT_S:
+                    binary(BytecodeOpCode.I32_LT_S);
+                    break;
+                case I32_LT_U:
+                    binary(BytecodeOpCode.I32_LT_U);
+                    break;
+                case I32_GT_S:
+                    binary(BytecodeOpCode.I32_GT_S);
+                    break;
+                case I32_GT_U:
+                    binary(BytecodeOpCode.I32_GT_U);
+                    break;
+                case I32_LE_S:
+                    binary(BytecodeOpCode.I32_LE_S);
+                    break;
+                case I32_LE_U:
+                    binary(BytecodeOpCode.I32_LE_U);
+                    break;
+                case I32_GE_S:
+                    binary(BytecodeOpCode.I32_GE_S);
+                    break;
+                case I32_GE_U:
+                    binary(BytecodeOpCode.I32_GE_U);
+                    break;
+                case I64_EQZ:
+                    unary(BytecodeOpCode.I64_EQZ);
+                    break;
+                case I64_EQ:
+                    binary(BytecodeOpCode.I64_EQ);
+                    break;
+                case I64_NE:
+                    binary(BytecodeOpCode.I64_NE);
+                    break;
+                case I64_LT_S:
+                    binary(BytecodeOpCode.I64_LT_S);
+                    break;
+                case I64_LT_U:
+                    binary(BytecodeOpCode.I64_LT_U);
+                    break;
+                case I64_GT_S:
+                    binary(BytecodeOpCode.I64_GT_S);
+                    break;
+                case I64_GT_U:
+                    binary(BytecodeOpCode.I64_GT_U);
+                    break;
+                case I64_LE_S:
+                    binary(BytecodeOpCode.I64_LE_S);
+                    break;
+                case I64_LE_U:
+                    binary(BytecodeOpCode.I64_LE_U);
+                    break;
+                case I64_GE_S:
+                    binary(BytecodeOpCode.I64_GE_S);
+                    break;
+                case I64_GE_U:
+                    binary(BytecodeOpCode.I64_GE_U);
+                    break;
+                case F32_EQ:
+                    binary(BytecodeOpCode.F32_EQ);
+                    break;
+                case F32_NE:
+                    binary(BytecodeOpCode.F32_NE);
+                    break;
+                case F32_LT:
+                    binary(BytecodeOpCode.F32_LT);
+                    break;
+                case F32_GT:
+                    binary(BytecodeOpCode.F32_GT);
+                    break;
+                case F32_LE:
+                    binary(BytecodeOpCode.F32_LE);
+                    break;
+                case F32_GE:
+                    binary(BytecodeOpCode.F32_GE);
+                    break;
+                case F64_EQ:
+                    binary(BytecodeOpCode.F64_EQ);
+                    break;
+                case F64_NE:
+                    binary(BytecodeOpCode.F64_NE);
+                    break;
+                case F64_LT:
+                    binary(BytecodeOpCode.F64_LT);
+                    break;
+                case F64_GT:
+                    binary(BytecodeOpCode.F64_GT);
+                    break;
+                case F64_LE:
+                    binary(BytecodeOpCode.F64_LE);
+                    break;
+                case F64_GE:
+                    binary(BytecodeOpCode.F64_GE);
+                    break;
+                case I32_CLZ:
+                    unary(BytecodeOpCode.I32_CLZ);
+                    break;
+                case I32_CTZ:
+                    unary(BytecodeOpCode.I32_CTZ);
+                    break;
+                case I32_POPCNT:
+                    unary(BytecodeOpCode.I32_POPCNT);
+                    break;
+                case I32_ADD:
+                    binary(BytecodeOpCode.I32_ADD);
+                    break;
+                case I32_SUB:
+                    binary(BytecodeOpCode.I32_SUB);
+                    break;
+                case I32_MUL:
+                    binary(BytecodeOpCode.I32_MUL);
+                    break;
+                case I32_DIV_S:
+                    binary(BytecodeOpCode.I32_DIV_S);
+                    break;
+                case I32_DIV_U:
+                    binary(BytecodeOpCode.I32_DIV_U);
+                    break;
+                case I32_REM_S:
+                    binary(BytecodeOpCode.I32_REM_S);
+                    break;
+                case I32_REM_U:
+                    binary(BytecodeOpCode.I32_REM_U);
+                    break;
+                case I32_AND:
+                    binary(BytecodeOpCode.I32_AND);
+                    break;
+                case I32_OR:
+                    binary(BytecodeOpCode.I32_OR);
+                    break;
+                case I32_XOR:
+                    binary(BytecodeOpCode.I32_XOR);
+                    break;
+                case I32_SHL:
+                    binary(BytecodeOpCode.I32_SHL);
+                    break;
+                case I32_SHR_S:
+                    binary(BytecodeOpCode.I32_SHR_S);
+                    break;
+                case I32_SHR_U:
+                    binary(BytecodeOpCode.I32_SHR_U);
+                    break;
+                case I32_ROTL:
+                    binary(BytecodeOpCode.I32_ROTL);
+                    break;
+                case I32_ROTR:
+                    binary(BytecodeOpCode.I32_ROTR);
+                    break;
+                case I64_CLZ:
+                    unary(BytecodeOpCode.I64_CLZ);
+                    break;
+                case I64_CTZ:
+                    unary(BytecodeOpCode.I64_CTZ);
+                    break;
+                case I64_POPCNT:
+                    unary(BytecodeOpCode.I64_POPCNT);
+                    break;
+                case I64_ADD:
+                    binary(BytecodeOpCode.I64_ADD);
+                    break;
+                case I64_SUB:
+                    binary(BytecodeOpCode.I64_SUB);
+                    break;
+                case I64_MUL:
+                    binary(BytecodeOpCode.I64_MUL);
+                    break;
+                case I64_DIV_S:
+                    binary(BytecodeOpCode.I64_DIV_S);
+                    break;
+                case I64_DIV_U:
+                    binary(BytecodeOpCode.I64_DIV_U);
+                    break;
+                case I64_REM_S:
+                    binary(BytecodeOpCode.I64_REM_S);
+                    break;
+                case I64_REM_U:
+                    binary(BytecodeOpCode.I64_REM_U);
+                    break;
+                case I64_AND:
+                    binary(BytecodeOpCode.I64_AND);
+                    break;
+                case I64_OR:
+                    binary(BytecodeOpCode.I64_OR);
+                    break;
+                case I64_XOR:
+                    binary(BytecodeOpCode.I64_XOR);
+                    break;
+                case I64_SHL:
+                    binary(BytecodeOpCode.I64_SHL);
+                    break;
+                case I64_SHR_S:
+                    binary(BytecodeOpCode.I64_SHR_S);
+                    break;
+                case I64_SHR_U:
+                    binary(BytecodeOpCode.I64_SHR_U);
+                    break;
+                case I64_ROTL:
+                    binary(BytecodeOpCode.I64_ROTL);
+                    break;
+                case I64_ROTR:
+                    binary(BytecodeOpCode.I64_ROTR);
+                    break;
+                case F32_ABS:
+                    unary(BytecodeOpCode.F32_ABS);
+                    break;
+                case F32_NEG:
+                    unary(BytecodeOpCode.F32_NEG);
+                    break;
+                case F32_CEIL:
+                    unary(BytecodeOpCode.F32_CEIL);
+                    break;
+                case F32_FLOOR:
+                    unary(BytecodeOpCode.F32_FLOOR);
+                    break;
+                case F32_TRUNC:
+                    unary(BytecodeOpCode.F32_TRUNC);
+                    break;
+                case F32_NEAREST:
+                    unary(BytecodeOpCode.F32_NEAREST);
+                    break;
+                case F32_SQRT:
+                    unary(BytecodeOpCode.F32_SQRT);
+                    break;
+                case F32_ADD:
+                    binary(BytecodeOpCode.F32_ADD);
+                    break;
+                case F32_SUB:
+                    binary(BytecodeOpCode.F32_SUB);
+                    break;
+                case F32_MUL:
+                    binary(BytecodeOpCode.F32_MUL);
+                    break;
+                case F32_DIV:
+                    binary(BytecodeOpCode.F32_DIV);
+                    break;
+                case F32_MIN:
+                    binary(BytecodeOpCode.F32_MIN);
+                    break;
+                case F32_MAX:
+                    binary(BytecodeOpCode.F32_MAX);
+                    break;
+                case F32_COPYSIGN:
+                    binary(BytecodeOpCode.F32_COPYSIGN);
+                    break;
+                case F64_ABS:
+                    unary(BytecodeOpCode.F64_ABS);
+                    break;
+                case F64_NEG:
+                    unary(BytecodeOpCode.F64_NEG);
+                    break;
+                case F64_CEIL:
+                    unary(BytecodeOpCode.F64_CEIL);
+                    break;
+                case F64_FLOOR:
+                    unary(BytecodeOpCode.F64_FLOOR);
+                    break;
+                case F64_TRUNC:
+                    unary(BytecodeOpCode.F64_TRUNC);
+                    break;
+                case F64_NEAREST:
+                    unary(BytecodeOpCode.F64_NEAREST);
+                    break;
+                case F64_SQRT:
+                    unary(BytecodeOpCode.F64_SQRT);
+                    break;
+                case F64_ADD:
+                    binary(BytecodeOpCode.F64_ADD);
+                    break;
+                case F64_SUB:
+                    binary(BytecodeOpCode.F64_SUB);
+                    break;
+                case F64_MUL:
+                    binary(BytecodeOpCode.F64_MUL);
+                    break;
+                case F64_DIV:
+                    binary(BytecodeOpCode.F64_DIV);
+                    break;
+                case F64_MIN:
+                    binary(BytecodeOpCode.F64_MIN);
+                    break;
+                case F64_MAX:
+                    binary(BytecodeOpCode.F64_MAX);
+                    break;
+                case F64_COPYSIGN:
+                    binary(BytecodeOpCode.F64_COPYSIGN);
+                    break;
+                case I32_WRAP_I64:
+                    unary(BytecodeOpCode.I32_WRAP_I64);
+                    break;
+                case I32_TRUNC_F32_S:
+                    unary(BytecodeOpCode.I32_TRUNC_F32_S);
+                    break;
+                case I32_TRUNC_F32_U:
+                    unary(BytecodeOpCode.I32_TRUNC_F32_U);
+                    break;
+                case I32_TRUNC_F64_S:
+                    unary(BytecodeOpCode.I32_TRUNC_F64_S);
+                    break;
+                case I32_TRUNC_F64_U:
+                    unary(BytecodeOpCode.I32_TRUNC_F64_U);
+                    break;
+                case I64_EXTEND_I32_S:
+                    unary(BytecodeOpCode.I64_EXTEND_I32_S);
+                    break;
+                case I64_EXTEND_I32_U:
+                    unary(BytecodeOpCode.I64_EXTEND_I32_U);
+                    break;
+                case I64_TRUNC_F32_S:
+                    unary(BytecodeOpCode.I64_TRUNC_F32_S);
+                    break;
+                case I64_TRUNC_F32_U:
+                    unary(BytecodeOpCode.I64_TRUNC_F32_U);
+                    break;
+                case I64_TRUNC_F64_S:
+                    unary(BytecodeOpCode.I64_TRUNC_F64_S);
+                    break;
+                case I64_TRUNC_F64_U:
+                    unary(BytecodeOpCode.I64_TRUNC_F64_U);
+                    break;
+                case F32_CONVERT_I32_S:
+                    unary(BytecodeOpCode.F32_CONVERT_I32_S);
+                    break;
+                case F32_CONVERT_I32_U:
+                    unary(BytecodeOpCode.F32_CONVERT_I32_U);
+                    break;
+                case F32_CONVERT_I64_S:
+                    unary(BytecodeOpCode.F32_CONVERT_I64_S);
+                    break;
+                case F32_CONVERT_I64_U:
+                    unary(BytecodeOpCode.F32_CONVERT_I64_U);
+                    break;
+                case F32_DEMOTE_F64:
+                    unary(BytecodeOpCode.F32_DEMOTE_F64);
+                    break;
+                case F64_CONVERT_I32_S:
+                    unary(BytecodeOpCode.F64_CONVERT_I32_S);
+                    break;
+                case F64_CONVERT_I32_U:
+                    unary(BytecodeOpCode.F64_CONVERT_I32_U);
+                    break;
+                case F64_CONVERT_I64_S:
+                    unary(BytecodeOpCode.F64_CONVERT_I64_S);
+                    break;
+                case F64_CONVERT_I64_U:
+                    unary(BytecodeOpCode.F64_CONVERT_I64_U);
+                    break;
+                case F64_PROMOTE_F32:
+                    unary(BytecodeOpCode.F64_PROMOTE_F32);
+                    break;
+                case I32_REINTERPRET_F32:
+                    unary(BytecodeOpCode.I32_REINTERPRET_F32);
+                    break;
+                case F32_REINTERPRET_I32:
+                    unary(BytecodeOpCode.F32_REINTERPRET_I32);
+                    break;
+                case I32_EXTEND_8_S:
+                    unary(BytecodeOpCode.I32_EXTEND_8_S);
+                    break;
+                case I32_EXTEND_16_S:
+                    unary(BytecodeOpCode.I32_EXTEND_16_S);
+                    break;
+                case I64_EXTEND_8_S:
+                    unary(BytecodeOpCode.I64_EXTEND_8_S);
+                    break;
+                case I64_EXTEND_16_S:
+                    unary(BytecodeOpCode.I64_EXTEND_16_S);
+                    break;
+                case I64_EXTEND_32_S:
+                    unary(BytecodeOpCode.I64_EXTEND_32_S);
+                    break;
+                case I32_TRUNC_SAT_F32_S:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F32_S);
+                    break;
+                case I32_TRUNC_SAT_F32_U:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F32_U);
+                    break;
+                case I32_TRUNC_SAT_F64_S:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F64_S);
+                    break;
+                case I32_TRUNC_SAT_F64_U:
+                    unary(BytecodeOpCode.I32_TRUNC_SAT_F64_U);
+                    break;
+                case I64_TRUNC_SAT_F32_S:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F32_S);
+                    break;
+                case I64_TRUNC_SAT_F32_U:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F32_U);
+                    break;
+                case I64_TRUNC_SAT_F64_S:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F64_S);
+                    break;
+                case I64_TRUNC_SAT_F64_U:
+                    unary(BytecodeOpCode.I64_TRUNC_SAT_F64_U);
+                    break;
+                default:
+                    // exception handling, atomics and SIMD
+                    return null;
+            }
+        }
+
+        return new Bytecode(
+                Arrays.copyOf(code, size),
+                paramCount,
+                base,
+                type.returns().size(),
+                maxHeight,
+                localDefaults);
+    }
+
+    // the most used constants of the function, up to MAX_CONSTANTS
+    private static long[] constants(FunctionBody body) {
+        var counts = new LinkedHashMap<Long, Integer>();
+        for (var ins : body.instructions()) {
+            switch (ins.opcode()) {
+                case I32_CONST:
+                case I64_CONST:
+                case F32_CONST:
+                case F64_CONST:
+                case REF_FUNC:
+                    counts.merge(ins.operand(0), 1, Integer::sum);
+                    break;
+                case REF_NULL:
+                    counts.merge((long) REF_NULL_VALUE, 1, Integer::sum);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
+                .limit(MAX_CONSTANTS)
+                .mapToLong(Map.Entry::getKey)
+                .toArray();
+    }
+
+    private Control label(int depth) {
+        return controls.get(controls.size() - 1 - depth);
+    }
+
+    // emits a branch, with its condition first when cond is a slot
+    private void branch(int op, int unwindOp, int cond, Control target) {
+        var arity = target.labelArity();
+        materialize(arity);
+        var targetHeight = target.height + arity;
+        var unwind = arity > 0 && height != targetHeight;
+        emit(unwind ? unwindOp : op);
+        if (cond >= 0) {
+            emit(cond);
+        }
+        emit(0);
+        fixup(target, size - 1);
+        if (unwind) {
+            emit(arity, height, targetHeight);
+        }
+    }
+
+    private void branchEntry(Control target) {
+        var arity = target.labelArity();
+        var position = size;
+        emit(0, arity, target.height + arity);
+        fixup(target, position);
+    }
+
+    private void fixup(Control target, int position) {
+        if (target.loop) {
+            code[position] = target.start;
+        } else {
+            target.endFixups.add(position);
+        }
+    }
+
+    // moves the arguments of a call in place, returns the height after them
+    private int arguments(FunctionType type) {
+        materialize(type.params().size());
+        return height;
+    }
+
+    private void results(FunctionType type) {
+        height -= type.params().size();
+        for (int i = 0; i < type.returns().size(); i++) {
+            push(height);
+        }
+    }
+
+    private void constant(long value) {
+        var slot = constants.get(value);
+        if (slot != null) {
+            push(slot);
+        } else if (value == (int) value) {
+            produce(BytecodeOpCode.CONST32, (int) value);
+        } else {
+            produce(BytecodeOpCode.CONST64, (int) (value >>> 32), (int) value);
+        }
+    }
+
+    private void load(int op, AnnotatedInstruction ins) {
+        var address = pop();
+        var offset = ins.operand(1);
+        if (offset < 0 || offset > 0xFFFFFFFFL) {
+            // any access with such an offset is out of bounds
+            emit(BytecodeOpCode.MEMORY_OOB);
+            push(height);
+        } else {
+            produce(op, address, (int) offset);
+        }
+    }
+
+    private void store(int op, AnnotatedInstruction ins) {
+        var value = pop();
+        var address = pop();
+        var offset = ins.operand(1);
+        if (offset < 0 || offset > 0xFFFFFFFFL) {
+            // any access with such an offset is out of bounds
+            emit(BytecodeOpCode.MEMORY_OOB);
+        } else {
+            emit(op, address, value, (int) offset);
+        }
+    }
+
+    private void unary(int op) {
+        produce(op, pop());
+    }
+
+    private void binary(int op) {
+        var b = pop();
+        var a = pop();
+        produce(op, a, b);
+    }
+
+    // stores the value at the given height of the stack in a local
+    private void localSet(int local, int value, int position) {
+        if (value == local) {
+            return;
+        }
+        if (value == position
+                && resultFixup >= 0
+                && code[resultFixup] == position
+                && !isReferenced(local)) {
+            // the instruction producing the value writes it to the local directly
+            code[resultFixup] = local;
+            if (position < height) {
+                slots[position - base] = local;
+            }
+        } else {
+            // the entries still referring to the old value need their own copy
+            for (int i = base; i < height; i++) {
+                if (slots[i - base] == local) {
+                    emit(BytecodeOpCode.MOVE, i, local);
+                    slots[i - base] = i;
+                }
+            }
+            emit(BytecodeOpCode.MOVE, local, value);
+        }
+        resultFixup = -1;
+    }
+
+    private boolean isReferenced(int slot) {
+        for (int i = base; i < height; i++) {
+            if (slots[i - base] == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // copies the top n entries of the stack to their own slot
+    private void materialize(int n) {
+        for (int i = height - n; i < height; i++) {
+            var slot = slots[i - base];
+            if (slot != i) {
+                emit(BytecodeOpCode.MOVE, i, slot);
+                slots[i - base] = i;
+            }
+        }
+    }
+
+    // emits an instruction storing its result on top of the stack
+    private void produce(int op, int... operands) {
+        var dst = height;
+        emit(op, dst);
+        emit(operands);
+        push(dst);
+        resultFixup = size - operands.length - 1;
+    }
+
+    // restarts from a label, with all the entries in their own slot
+    private void reset(int from, int to) {
+        height = from;
+        while (height < to) {
+            push(height);
+        }
+        resultFixup = -1;
+    }
+
+    private void push(int slot) {
+        if (height - base == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        slots[height - base] = slot;
+        height++;
+        maxHeight = Math.max(maxHeight, height);
+    }
+
+    private int pop() {
+        return slots[--height - base];
+    }
+
+    private void emit(int... values) {
+        if (size + values.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + values.length));
+        }
+        System.arraycopy(values, 0, code, size, values.length);
+        size += values.length;
+        resultFixup = -1;
+    }
+
+    private int blockParamCount(AnnotatedInstruction ins) {
+        var typeId = ins.operand(0);
+        if (typeId == 0x40 || ValType.isValid(typeId)) {
+            return 0;
+        }
+        return instance.type((int) typeId).params().size();
+    }
+
+    private int blockResultCount(AnnotatedInstruction ins) {
+        var typeId = ins.operand(0);
+        if (typeId == 0x40) { // epsilon
+            return 0;
+        }
+        if (ValType.isValid(typeId)) {
+            return 1;
+        }
+        return instance.type((int) typeId).returns().size();
+    }
+
+    private boolean isV128Block(AnnotatedInstruction ins) {
+        var typeId = ins.operand(0);
+        if (typeId == 0x40) {
+            return false;
+        }
+        if (ValType.isValid(typeId)) {
+            return typeId == ValType.V128.id();
+        }
+        return hasV128(instance.type((int) typeId));
+    }
+
+    private boolean isV128Global(int idx) {
+        var importCount = instance.imports().globalCount();
+        ValType type;
+        if (idx < importCount) {
+            type = instance.imports().global(idx).instance().getType();
+        } else {
+            type = instance.module().globalSection().getGlobal(idx - importCount).valueType();
+        }
+        return type.equals(ValType.V128);
+    }
+
+    private static boolean hasV128(FunctionType type) {
+        return type.params().contains(ValType.V128) || type.returns().contains(ValType.V128);
+    }
+}
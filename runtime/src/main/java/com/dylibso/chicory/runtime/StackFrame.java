@@ -30,6 +30,8 @@ public class StackFrame {
     private final ValType[] localTypes;
     private final int[] localIdx;
     private final Instance instance;
+    // the jumps back to the start of a loop, to find the hot functions
+    private int loopIterations;
 
     private final List<CtrlFrame> ctrlStack = new ArrayList<>();
 
@@ -102,6 +104,18 @@ public class StackFrame {
         return funcId;
     }
 
+    Instance instance() {
+        return instance;
+    }
+
+    int loopIterations() {
+        return loopIterations;
+    }
+
+    void countLoopIteration() {
+        loopIterations++;
+    }
+
     ValType localType(int i) {
         return this.localTypes[i];
     }
@@ -199,6 +213,12 @@ public class StackFrame {
 
     static void doControlTransfer(CtrlFrame ctrlFrame, MStack stack) {
         var endResults = ctrlFrame.startValues + ctrlFrame.endValues; // unwind stack
+        if (stack.size() >= endResults) {
+            // the results are all on the stack: a single copy moves them to the height
+            stack.unwind(ctrlFrame.height, endResults);
+            return;
+        }
+
         long[] returns = new long[endResults];
         for (int i = 0; i < returns.length; i++) {
             if (stack.size() > 0) {
@@ -17,9 +17,18 @@ public class Store {
     final LinkedHashMap<QualifiedName, ImportMemory> memories = new LinkedHashMap<>();
     final LinkedHashMap<QualifiedName, ImportTable> tables = new LinkedHashMap<>();
     final LinkedHashMap<QualifiedName, ImportTag> tags = new LinkedHashMap<>();
+    private final FunctionTypeRegistry typeRegistry = new FunctionTypeRegistry();
 
     public Store() {}
 
+    /**
+     * The registry of the function types of the instances created by {@link #instantiate}.
+     * The custom instance factories can share it with {@link Instance.Builder#withTypeRegistry}.
+     */
+    public FunctionTypeRegistry typeRegistry() {
+        return typeRegistry;
+    }
+
     /**
      * Add a function to the store.
      */
@@ -112,9 +121,15 @@ public class Store {
                 case FUNCTION:
                     ExportFunction f = instance.export(exportName);
                     FunctionType ftype = instance.exportType(exportName);
+                    var typeIdx = instance.functionType(export.index());
                     this.addFunction(
                             new ImportFunction(
-                                    name, exportName, ftype, (inst, args) -> f.apply(args)));
+                                    name,
+                                    exportName,
+                                    ftype,
+                                    (inst, args) -> f.apply(args),
+                                    instance.typeRegistry(),
+                                    instance.canonicalTypeId(typeIdx)));
                     break;
 
                 case TABLE:
@@ -144,7 +159,12 @@ public class Store {
      */
     public Instance instantiate(String name, WasmModule m) {
         return this.instantiate(
-                name, imports -> Instance.builder(m).withImportValues(imports).build());
+                name,
+                imports ->
+                        Instance.builder(m)
+                                .withImportValues(imports)
+                                .withTypeRegistry(typeRegistry)
+                                .build());
     }
 
     /**
@@ -8,12 +8,16 @@ import com.dylibso.chicory.wasm.types.Table;
 import com.dylibso.chicory.wasm.types.TableLimits;
 import com.dylibso.chicory.wasm.types.ValType;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TableInstance {
 
     private final Table table;
     private Instance[] instances;
     private int[] refs;
+    // incremented by every change to the elements, see IndirectCallCache,
+    // atomic so that the instances sharing the table on other threads see the changes
+    private final AtomicInteger version = new AtomicInteger();
 
     public TableInstance(Table table, int initialValue) {
         this.table = table;
@@ -47,6 +51,7 @@ public class TableInstance {
         refs = newRefs;
         instances = newInstances;
         table.limits().grow(size);
+        version.incrementAndGet();
         return oldSize;
     }
 
@@ -71,9 +76,13 @@ public class TableInstance {
         }
         this.refs[index] = value;
         this.instances[index] = instance;
+        version.incrementAndGet();
     }
 
     public Instance instance(int index) {
+        if (index < 0 || index >= this.instances.length) {
+            throw new ChicoryException("undefined element");
+        }
         return instances[index];
     }
 
@@ -81,5 +90,14 @@ public class TableInstance {
         for (int i = 0; i < refs.length; i++) {
             this.refs[i] = REF_NULL_VALUE;
         }
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return a number changing every time the elements of the table change,
+     *     so that anything derived from them can be cached until then
+     */
+    int version() {
+        return version.get();
     }
 }
@@ -0,0 +1,146 @@
+package com.dylibso.chicory.runtime;
+
+/**
+ * An interpreter dispatching through a handler per instruction, instead of a {@code switch}.
+ *
+ * The functions are lowered to the register form of {@link RegisterInterpreterMachine}, then each
+ * instruction is turned by {@link ThreadedLowering} into a small {@link Handler} capturing its
+ * immediates. The loop only calls the handler of the current instruction, which returns the
+ * position of the next one: every handler is compiled on its own by the JIT, rather than as a
+ * part of a single huge method, at the cost of a virtual call per instruction.
+ * Calls, the frame layout and the fallback to {@link InterpreterMachine} are the same of
+ * {@link BytecodeInterpreterMachine}.
+ */
+public class ThreadedInterpreterMachine extends RegisterInterpreterMachine {
+
+    // returned by the handlers, instead of the position of the next instruction,
+    // when the loop has to switch frames:
+    // the function returns, with its results at the start of its frame
+    static final int RETURN = -1;
+    // the callee is entered, suspending the caller
+    static final int CALL = -2;
+    // the callee is entered, replacing the caller
+    static final int TAIL_CALL = -3;
+    // the execution continues after a call out of the machine, the stack could have grown
+    static final int RESUME = -4;
+
+    /**
+     * The code of a single instruction.
+     */
+    @FunctionalInterface
+    interface Handler {
+        /**
+         * @return the position of the next instruction, or one of the frame switches
+         */
+        int execute(ThreadedInterpreterMachine machine, long[] stack, int fp);
+    }
+
+    static final class ThreadedFunction extends Bytecode {
+        // the handlers, at the positions of the instructions in the code
+        final Handler[] handlers;
+
+        ThreadedFunction(Bytecode function, Handler[] handlers) {
+            super(
+                    function.code,
+                    function.paramCount,
+                    function.localCount,
+                    function.resultCount,
+                    function.frameSize,
+                    function.localDefaults);
+            this.handlers = handlers;
+        }
+    }
+
+    // the function to enter and the stack pointer of its arguments, on CALL and TAIL_CALL
+    private ThreadedFunction callee;
+    private int calleeSp;
+    // the position to continue from, on CALL and RESUME
+    private int resume;
+
+    public ThreadedInterpreterMachine(Instance instance) {
+        super(instance);
+    }
+
+    @Override
+    Bytecode lower(int funcId) {
+        var function = super.lower(funcId);
+        if (function == null) {
+            return null;
+        }
+        return new ThreadedFunction(function, ThreadedLowering.lower(function));
+    }
+
+    @Override
+    void execute(Bytecode entry, int fp) {
+        // the frames below belong to the callers of this execution
+        var base = depth;
+        var function = (ThreadedFunction) entry;
+        var handlers = function.handlers;
+        enter(function, fp);
+        var stack = this.stack;
+        var pc = 0;
+
+        while (true) {
+            pc = handlers[pc].execute(this, stack, fp);
+            if (pc < 0) {
+                switch (pc) {
+                    case RETURN:
+                        if (depth == base) {
+                            return;
+                        }
+                        // resume the caller
+                        depth--;
+                        function = (ThreadedFunction) callers[depth];
+                        fp = resumePoints[2 * depth];
+                        pc = resumePoints[2 * depth + 1];
+                        break;
+                    case CALL:
+                        suspend(function, fp, resume);
+                        fp = calleeSp - callee.paramCount;
+                        function = callee;
+                        enter(function, fp);
+                        pc = 0;
+                        break;
+                    case TAIL_CALL:
+                        // reuse the current frame
+                        System.arraycopy(
+                                this.stack,
+                                calleeSp - callee.paramCount,
+                                this.stack,
+                                fp,
+                                callee.paramCount);
+                        function = callee;
+                        enter(function, fp);
+                        pc = 0;
+                        break;
+                    default:
+                        pc = resume;
+                        break;
+                }
+                handlers = function.handlers;
+                // the stack grows when calls go deeper
+                stack = this.stack;
+            }
+        }
+    }
+
+    // a call from a handler: the functions that aren't lowered are called right away,
+    // the others are entered by the loop of execute
+    int invoke(
+            Instance target, int funcId, int sp, int fp, int next, boolean tail, int resultCount) {
+        checkInterruption();
+        var function = (target == instance) ? functions[funcId] : null;
+        resume = next;
+        if (function == null) {
+            sp = callOut(target, funcId, sp);
+            if (!tail) {
+                return RESUME;
+            }
+            System.arraycopy(stack, sp - resultCount, stack, fp, resultCount);
+            return RETURN;
+        }
+        callee = (ThreadedFunction) function;
+        calleeSp = sp;
+        return tail ? TAIL_CALL : CALL;
+    }
+}
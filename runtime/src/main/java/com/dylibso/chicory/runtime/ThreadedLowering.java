@@ -0,0 +1,1145 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.runtime.BytecodeInterpreterMachine.address;
+import static com.dylibso.chicory.runtime.BytecodeInterpreterMachine.unwind;
+import static com.dylibso.chicory.runtime.RegisterInterpreterMachine.executeUnary;
+import static com.dylibso.chicory.wasm.types.Value.REF_NULL_VALUE;
+import static java.util.Objects.requireNonNullElse;
+
+import com.dylibso.chicory.runtime.ThreadedInterpreterMachine.Handler;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.types.Value;
+
+/**
+ * Turns the register form of a {@link Bytecode}, produced by {@link RegisterLowering}, into the
+ * {@link Handler}s executed by {@link ThreadedInterpreterMachine}.
+ *
+ * Every instruction becomes a handler capturing its immediates, stored at the position of the
+ * instruction in the register code, so that the branch targets and the resume points of the calls
+ * are the same of the register form.
+ * The bodies of the handlers are the ones of the cases of {@link RegisterInterpreterMachine}, with
+ * the calls and the returns handed back to the loop of the machine.
+ */
+final class ThreadedLowering {
+
+    private ThreadedLowering() {}
+
+    static Handler[] lower(Bytecode function) {
+        var code = function.code;
+        var handlers = new Handler[code.length];
+        var at = 0;
+        while (at < code.length) {
+            var next = at + 1 + immediateCount(code, at);
+            handlers[at] = handler(function, code, at + 1, next);
+            at = next;
+        }
+        return handlers;
+    }
+
+    // the number of immediates following the opcode at the given position
+    private static int immediateCount(int[] code, int at) {
+        switch (code[at]) {
+            case BytecodeOpCode.BR_TABLE:
+                // index, from, count and the count + 1 entries
+                return 3 + 3 * (code[at + 3] + 1);
+            case BytecodeOpCode.UNREACHABLE:
+            case BytecodeOpCode.MEMORY_OOB:
+                return 0;
+            case BytecodeOpCode.BR:
+            case BytecodeOpCode.RETURN:
+            case BytecodeOpCode.MEMORY_SIZE:
+            case BytecodeOpCode.DATA_DROP:
+            case BytecodeOpCode.ELEM_DROP:
+                return 1;
+            case BytecodeOpCode.BR_IF:
+            case BytecodeOpCode.BR_UNLESS:
+            case BytecodeOpCode.CALL:
+            case BytecodeOpCode.CALL_REF:
+            case BytecodeOpCode.RETURN_CALL:
+            case BytecodeOpCode.RETURN_CALL_REF:
+            case BytecodeOpCode.TABLE_SIZE:
+            case BytecodeOpCode.MOVE:
+            case BytecodeOpCode.GLOBAL_GET:
+            case BytecodeOpCode.GLOBAL_SET:
+            case BytecodeOpCode.CONST32:
+            case BytecodeOpCode.MEMORY_GROW:
+            case BytecodeOpCode.REF_IS_NULL:
+            case BytecodeOpCode.REF_AS_NON_NULL:
+            case BytecodeOpCode.I32_EQZ:
+            case BytecodeOpCode.I64_EQZ:
+            case BytecodeOpCode.F32_ABS:
+            case BytecodeOpCode.F32_NEG:
+            case BytecodeOpCode.F64_ABS:
+            case BytecodeOpCode.F64_NEG:
+            case BytecodeOpCode.I32_WRAP_I64:
+            case BytecodeOpCode.I64_EXTEND_I32_S:
+            case BytecodeOpCode.I64_EXTEND_I32_U:
+            case BytecodeOpCode.I32_REINTERPRET_F32:
+            case BytecodeOpCode.F32_REINTERPRET_I32:
+            case BytecodeOpCode.I32_EXTEND_8_S:
+            case BytecodeOpCode.I32_EXTEND_16_S:
+            case BytecodeOpCode.I64_EXTEND_8_S:
+            case BytecodeOpCode.I64_EXTEND_16_S:
+            case BytecodeOpCode.I64_EXTEND_32_S:
+            case BytecodeOpCode.I32_CLZ:
+            case BytecodeOpCode.I32_CTZ:
+            case BytecodeOpCode.I32_POPCNT:
+            case BytecodeOpCode.I64_CLZ:
+            case BytecodeOpCode.I64_CTZ:
+            case BytecodeOpCode.I64_POPCNT:
+            case BytecodeOpCode.F32_CEIL:
+            case BytecodeOpCode.F32_FLOOR:
+            case BytecodeOpCode.F32_TRUNC:
+            case BytecodeOpCode.F32_NEAREST:
+            case BytecodeOpCode.F32_SQRT:
+            case BytecodeOpCode.F64_CEIL:
+            case BytecodeOpCode.F64_FLOOR:
+            case BytecodeOpCode.F64_TRUNC:
+            case BytecodeOpCode.F64_NEAREST:
+            case BytecodeOpCode.F64_SQRT:
+            case BytecodeOpCode.I32_TRUNC_F32_S:
+            case BytecodeOpCode.I32_TRUNC_SAT_F32_S:
+            case BytecodeOpCode.I32_TRUNC_F32_U:
+            case BytecodeOpCode.I32_TRUNC_SAT_F32_U:
+            case BytecodeOpCode.I32_TRUNC_F64_S:
+            case BytecodeOpCode.I32_TRUNC_SAT_F64_S:
+            case BytecodeOpCode.I32_TRUNC_F64_U:
+            case BytecodeOpCode.I32_TRUNC_SAT_F64_U:
+            case BytecodeOpCode.I64_TRUNC_F32_S:
+            case BytecodeOpCode.I64_TRUNC_SAT_F32_S:
+            case BytecodeOpCode.I64_TRUNC_F32_U:
+            case BytecodeOpCode.I64_TRUNC_SAT_F32_U:
+            case BytecodeOpCode.I64_TRUNC_F64_S:
+            case BytecodeOpCode.I64_TRUNC_SAT_F64_S:
+            case BytecodeOpCode.I64_TRUNC_F64_U:
+            case BytecodeOpCode.I64_TRUNC_SAT_F64_U:
+            case BytecodeOpCode.F32_CONVERT_I32_S:
+            case BytecodeOpCode.F32_CONVERT_I32_U:
+            case BytecodeOpCode.F32_CONVERT_I64_S:
+            case BytecodeOpCode.F32_CONVERT_I64_U:
+            case BytecodeOpCode.F64_CONVERT_I32_S:
+            case BytecodeOpCode.F64_CONVERT_I32_U:
+            case BytecodeOpCode.F64_CONVERT_I64_S:
+            case BytecodeOpCode.F64_CONVERT_I64_U:
+            case BytecodeOpCode.F32_DEMOTE_F64:
+            case BytecodeOpCode.F64_PROMOTE_F32:
+                return 2;
+            case BytecodeOpCode.MEMORY_FILL:
+            case BytecodeOpCode.MEMORY_COPY:
+            case BytecodeOpCode.TABLE_GET:
+            case BytecodeOpCode.TABLE_SET:
+            case BytecodeOpCode.CONST64:
+            case BytecodeOpCode.I32_LOAD:
+            case BytecodeOpCode.I64_LOAD:
+            case BytecodeOpCode.I32_LOAD8_S:
+            case BytecodeOpCode.I64_LOAD8_S:
+            case BytecodeOpCode.I32_LOAD8_U:
+            case BytecodeOpCode.I64_LOAD8_U:
+            case BytecodeOpCode.I32_LOAD16_S:
+            case BytecodeOpCode.I64_LOAD16_S:
+            case BytecodeOpCode.I32_LOAD16_U:
+            case BytecodeOpCode.I64_LOAD16_U:
+            case BytecodeOpCode.I64_LOAD32_S:
+            case BytecodeOpCode.I64_LOAD32_U:
+            case BytecodeOpCode.I32_STORE:
+            case BytecodeOpCode.STORE32:
+            case BytecodeOpCode.I64_STORE:
+            case BytecodeOpCode.STORE8:
+            case BytecodeOpCode.STORE16:
+            case BytecodeOpCode.I32_EQ:
+            case BytecodeOpCode.I32_NE:
+            case BytecodeOpCode.I32_LT_S:
+            case BytecodeOpCode.I32_LT_U:
+            case BytecodeOpCode.I32_GT_S:
+            case BytecodeOpCode.I32_GT_U:
+            case BytecodeOpCode.I32_LE_S:
+            case BytecodeOpCode.I32_LE_U:
+            case BytecodeOpCode.I32_GE_S:
+            case BytecodeOpCode.I32_GE_U:
+            case BytecodeOpCode.I64_EQ:
+            case BytecodeOpCode.I64_NE:
+            case BytecodeOpCode.I64_LT_S:
+            case BytecodeOpCode.I64_LT_U:
+            case BytecodeOpCode.I64_GT_S:
+            case BytecodeOpCode.I64_GT_U:
+            case BytecodeOpCode.I64_LE_S:
+            case BytecodeOpCode.I64_LE_U:
+            case BytecodeOpCode.I64_GE_S:
+            case BytecodeOpCode.I64_GE_U:
+            case BytecodeOpCode.F32_EQ:
+            case BytecodeOpCode.F32_NE:
+            case BytecodeOpCode.F32_LT:
+            case BytecodeOpCode.F32_GT:
+            case BytecodeOpCode.F32_LE:
+            case BytecodeOpCode.F32_GE:
+            case BytecodeOpCode.F64_EQ:
+            case BytecodeOpCode.F64_NE:
+            case BytecodeOpCode.F64_LT:
+            case BytecodeOpCode.F64_GT:
+            case BytecodeOpCode.F64_LE:
+            case BytecodeOpCode.F64_GE:
+            case BytecodeOpCode.I32_ADD:
+            case BytecodeOpCode.I32_SUB:
+            case BytecodeOpCode.I32_MUL:
+            case BytecodeOpCode.I32_DIV_S:
+            case BytecodeOpCode.I32_DIV_U:
+            case BytecodeOpCode.I32_REM_S:
+            case BytecodeOpCode.I32_REM_U:
+            case BytecodeOpCode.I32_AND:
+            case BytecodeOpCode.I32_OR:
+            case BytecodeOpCode.I32_XOR:
+            case BytecodeOpCode.I32_SHL:
+            case BytecodeOpCode.I32_SHR_S:
+            case BytecodeOpCode.I32_SHR_U:
+            case BytecodeOpCode.I32_ROTL:
+            case BytecodeOpCode.I32_ROTR:
+            case BytecodeOpCode.I64_ADD:
+            case BytecodeOpCode.I64_SUB:
+            case BytecodeOpCode.I64_MUL:
+            case BytecodeOpCode.I64_DIV_S:
+            case BytecodeOpCode.I64_DIV_U:
+            case BytecodeOpCode.I64_REM_S:
+            case BytecodeOpCode.I64_REM_U:
+            case BytecodeOpCode.I64_AND:
+            case BytecodeOpCode.I64_OR:
+            case BytecodeOpCode.I64_XOR:
+            case BytecodeOpCode.I64_SHL:
+            case BytecodeOpCode.I64_SHR_S:
+            case BytecodeOpCode.I64_SHR_U:
+            case BytecodeOpCode.I64_ROTL:
+            case BytecodeOpCode.I64_ROTR:
+            case BytecodeOpCode.F32_ADD:
+            case BytecodeOpCode.F32_SUB:
+            case BytecodeOpCode.F32_MUL:
+            case BytecodeOpCode.F32_DIV:
+            case BytecodeOpCode.F32_MIN:
+            case BytecodeOpCode.F32_MAX:
+            case BytecodeOpCode.F32_COPYSIGN:
+            case BytecodeOpCode.F64_ADD:
+            case BytecodeOpCode.F64_SUB:
+            case BytecodeOpCode.F64_MUL:
+            case BytecodeOpCode.F64_DIV:
+            case BytecodeOpCode.F64_MIN:
+            case BytecodeOpCode.F64_MAX:
+            case BytecodeOpCode.F64_COPYSIGN:
+                return 3;
+            case BytecodeOpCode.BR_UNWIND:
+            case BytecodeOpCode.BR_ON_NON_NULL:
+            case BytecodeOpCode.CALL_INDIRECT:
+            case BytecodeOpCode.RETURN_CALL_INDIRECT:
+            case BytecodeOpCode.MEMORY_INIT:
+            case BytecodeOpCode.TABLE_GROW:
+            case BytecodeOpCode.TABLE_FILL:
+            case BytecodeOpCode.SELECT:
+                return 4;
+            case BytecodeOpCode.BR_IF_UNWIND:
+            case BytecodeOpCode.BR_ON_NULL:
+            case BytecodeOpCode.TABLE_COPY:
+            case BytecodeOpCode.TABLE_INIT:
+                return 5;
+            default:
+                throw new ChicoryException("Unknown bytecode " + code[at]);
+        }
+    }
+
+    private static Handler handler(Bytecode function, int[] code, int pc, int next) {
+        var op = code[pc - 1];
+        var count = next - pc;
+        var i0 = (count > 0) ? code[pc] : 0;
+        var i1 = (count > 1) ? code[pc + 1] : 0;
+        var i2 = (count > 2) ? code[pc + 2] : 0;
+        var i3 = (count > 3) ? code[pc + 3] : 0;
+        var i4 = (count > 4) ? code[pc + 4] : 0;
+        var resultCount = function.resultCount;
+        var tail = op >= BytecodeOpCode.RETURN_CALL && op <= BytecodeOpCode.RETURN_CALL_REF;
+
+        switch (op) {
+            case BytecodeOpCode.UNREACHABLE:
+                return (machine, stack, fp) -> {
+                    throw new TrapException("Trapped on unreachable instruction");
+                };
+            case BytecodeOpCode.BR:
+                if (i0 < pc) {
+                    return (machine, stack, fp) -> {
+                        machine.backEdge();
+                        return i0;
+                    };
+                }
+                return (machine, stack, fp) -> i0;
+            case BytecodeOpCode.BR_UNWIND:
+                {
+                    var backward = i0 < pc;
+                    return (machine, stack, fp) -> {
+                        if (backward) {
+                            machine.backEdge();
+                        }
+                        unwind(stack, fp + i2, i1, fp + i3);
+                        return i0;
+                    };
+                }
+            case BytecodeOpCode.BR_IF:
+                {
+                    var backward = i1 < pc;
+                    return (machine, stack, fp) -> {
+                        if ((int) stack[fp + i0] == 0) {
+                            return next;
+                        }
+                        if (backward) {
+                            machine.backEdge();
+                        }
+                        return i1;
+                    };
+                }
+            case BytecodeOpCode.BR_IF_UNWIND:
+                {
+                    var backward = i1 < pc;
+                    return (machine, stack, fp) -> {
+                        if ((int) stack[fp + i0] == 0) {
+                            return next;
+                        }
+                        if (backward) {
+                            machine.backEdge();
+                        }
+                        unwind(stack, fp + i3, i2, fp + i4);
+                        return i1;
+                    };
+                }
+            case BytecodeOpCode.BR_UNLESS:
+                return (machine, stack, fp) -> ((int) stack[fp + i0] == 0) ? i1 : next;
+            case BytecodeOpCode.BR_TABLE:
+                return (machine, stack, fp) -> {
+                    var index = (int) stack[fp + i0];
+                    if (index < 0 || index >= i2) {
+                        // choose default
+                        index = i2;
+                    }
+                    var entry = pc + 3 + 3 * index;
+                    var target = code[entry];
+                    if (target < pc) {
+                        machine.backEdge();
+                    }
+                    unwind(stack, fp + i1, code[entry + 1], fp + code[entry + 2]);
+                    return target;
+                };
+            case BytecodeOpCode.BR_ON_NULL:
+                {
+                    var backward = i2 < pc;
+                    return (machine, stack, fp) -> {
+                        if (stack[fp + i0] != REF_NULL_VALUE) {
+                            return next;
+                        }
+                        if (backward) {
+                            machine.backEdge();
+                        }
+                        unwind(stack, fp + i1, i3, fp + i4);
+                        return i2;
+                    };
+                }
+            case BytecodeOpCode.BR_ON_NON_NULL:
+                {
+                    var backward = i1 < pc;
+                    return (machine, stack, fp) -> {
+                        if (stack[fp + i0 - 1] == REF_NULL_VALUE) {
+                            return next;
+                        }
+                        if (backward) {
+                            machine.backEdge();
+                        }
+                        unwind(stack, fp + i0, i2, fp + i3);
+                        return i1;
+                    };
+                }
+            case BytecodeOpCode.RETURN:
+                return (machine, stack, fp) -> {
+                    System.arraycopy(stack, fp + i0 - resultCount, stack, fp, resultCount);
+                    return ThreadedInterpreterMachine.RETURN;
+                };
+            case BytecodeOpCode.CALL:
+            case BytecodeOpCode.RETURN_CALL:
+                return (machine, stack, fp) ->
+                        machine.invoke(machine.instance, i0, fp + i1, fp, next, tail, resultCount);
+            case BytecodeOpCode.CALL_REF:
+            case BytecodeOpCode.RETURN_CALL_REF:
+                return (machine, stack, fp) -> {
+                    var funcId = (int) stack[fp + i0];
+                    if (funcId == REF_NULL_VALUE) {
+                        throw new TrapException("Trapped on call_ref on null function reference");
+                    }
+                    return machine.invoke(
+                            machine.instance, funcId, fp + i1, fp, next, tail, resultCount);
+                };
+            case BytecodeOpCode.CALL_INDIRECT:
+            case BytecodeOpCode.RETURN_CALL_INDIRECT:
+                return (machine, stack, fp) -> {
+                    var instance = machine.instance;
+                    var table = instance.table(i1);
+                    var index = (int) stack[fp + i2];
+                    var target = requireNonNullElse(table.instance(index), instance);
+                    var funcId = machine.indirectTarget(i0, table, index, target);
+                    return machine.invoke(target, funcId, fp + i3, fp, next, tail, resultCount);
+                };
+            case BytecodeOpCode.MEMORY_FILL:
+            case BytecodeOpCode.MEMORY_COPY:
+            case BytecodeOpCode.MEMORY_INIT:
+            case BytecodeOpCode.TABLE_GET:
+            case BytecodeOpCode.TABLE_SET:
+            case BytecodeOpCode.TABLE_SIZE:
+            case BytecodeOpCode.TABLE_GROW:
+            case BytecodeOpCode.TABLE_FILL:
+            case BytecodeOpCode.TABLE_COPY:
+            case BytecodeOpCode.TABLE_INIT:
+                return (machine, stack, fp) -> machine.executeBulk(op, code, pc, fp);
+            case BytecodeOpCode.MOVE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1];
+                    return next;
+                };
+            case BytecodeOpCode.SELECT:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = ((int) stack[fp + i3] != 0) ? stack[fp + i1] : stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.GLOBAL_GET:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.global(i1).getValueLow();
+                    return next;
+                };
+            case BytecodeOpCode.GLOBAL_SET:
+                return (machine, stack, fp) -> {
+                    machine.instance.global(i0).setValue(stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.CONST32:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = i1;
+                    return next;
+                };
+            case BytecodeOpCode.CONST64:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = ((long) i1 << 32) | (i2 & 0xFFFFFFFFL);
+                    return next;
+                };
+            case BytecodeOpCode.I32_LOAD:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readI32(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I64_LOAD:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readI64(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I32_LOAD8_S:
+            case BytecodeOpCode.I64_LOAD8_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readI8(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I32_LOAD8_U:
+            case BytecodeOpCode.I64_LOAD8_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readU8(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I32_LOAD16_S:
+            case BytecodeOpCode.I64_LOAD16_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readI16(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I32_LOAD16_U:
+            case BytecodeOpCode.I64_LOAD16_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readU16(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I64_LOAD32_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readI32(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I64_LOAD32_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().readU32(address(stack[fp + i1], i2));
+                    return next;
+                };
+            case BytecodeOpCode.I32_STORE:
+            case BytecodeOpCode.STORE32:
+                return (machine, stack, fp) -> {
+                    machine.instance
+                            .memory()
+                            .writeI32(address(stack[fp + i0], i2), (int) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_STORE:
+                return (machine, stack, fp) -> {
+                    machine.instance
+                            .memory()
+                            .writeLong(address(stack[fp + i0], i2), stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.STORE8:
+                return (machine, stack, fp) -> {
+                    machine.instance
+                            .memory()
+                            .writeByte(address(stack[fp + i0], i2), (byte) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.STORE16:
+                return (machine, stack, fp) -> {
+                    machine.instance
+                            .memory()
+                            .writeShort(address(stack[fp + i0], i2), (short) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.MEMORY_OOB:
+                return (machine, stack, fp) -> {
+                    throw new WasmRuntimeException("out of bounds memory access");
+                };
+            case BytecodeOpCode.MEMORY_SIZE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().pages();
+                    return next;
+                };
+            case BytecodeOpCode.MEMORY_GROW:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = machine.instance.memory().grow((int) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.DATA_DROP:
+                return (machine, stack, fp) -> {
+                    machine.instance.memory().drop(i0);
+                    return next;
+                };
+            case BytecodeOpCode.ELEM_DROP:
+                return (machine, stack, fp) -> {
+                    machine.instance.setElement(i0, null);
+                    return next;
+                };
+            case BytecodeOpCode.REF_IS_NULL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (stack[fp + i1] == REF_NULL_VALUE) ? Value.TRUE : Value.FALSE;
+                    return next;
+                };
+            case BytecodeOpCode.REF_AS_NON_NULL:
+                return (machine, stack, fp) -> {
+                    var ref = stack[fp + i1];
+                    if (ref == REF_NULL_VALUE) {
+                        throw new TrapException("Trapped on ref_as_non_null on null reference");
+                    }
+                    stack[fp + i0] = ref;
+                    return next;
+                };
+            case BytecodeOpCode.I32_EQZ:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I32_EQZ((int) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_EQ:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I32_EQ((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_NE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I32_NE((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_LT_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_LT_S((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_LT_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_LT_U((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_GT_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_GT_S((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_GT_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_GT_U((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_LE_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_LE_S((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_LE_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_LE_U((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_GE_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_GE_S((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_GE_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_GE_U((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_EQZ:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_EQZ(stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_EQ:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_EQ(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_NE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_NE(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_LT_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_LT_S(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_LT_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_LT_U(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_GT_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_GT_S(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_GT_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_GT_U(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_LE_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_LE_S(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_LE_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_LE_U(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_GE_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_GE_S(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_GE_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_GE_U(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.F32_EQ:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F32_EQ(
+                                    Value.longToFloat(stack[fp + i1]),
+                                    Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_NE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F32_NE(
+                                    Value.longToFloat(stack[fp + i1]),
+                                    Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_LT:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F32_LT(
+                                    Value.longToFloat(stack[fp + i1]),
+                                    Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_GT:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F32_GT(
+                                    Value.longToFloat(stack[fp + i1]),
+                                    Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_LE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F32_LE(
+                                    Value.longToFloat(stack[fp + i1]),
+                                    Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_GE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F32_GE(
+                                    Value.longToFloat(stack[fp + i1]),
+                                    Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_EQ:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F64_EQ(
+                                    Value.longToDouble(stack[fp + i1]),
+                                    Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_NE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F64_NE(
+                                    Value.longToDouble(stack[fp + i1]),
+                                    Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_LT:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F64_LT(
+                                    Value.longToDouble(stack[fp + i1]),
+                                    Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_GT:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F64_GT(
+                                    Value.longToDouble(stack[fp + i1]),
+                                    Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_LE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F64_LE(
+                                    Value.longToDouble(stack[fp + i1]),
+                                    Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_GE:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.F64_GE(
+                                    Value.longToDouble(stack[fp + i1]),
+                                    Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.I32_ADD:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (long) ((int) stack[fp + i1] + (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_SUB:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (long) ((int) stack[fp + i1] - (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_MUL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) (stack[fp + i1] * stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_DIV_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_DIV_S((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_DIV_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_DIV_U((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_REM_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_REM_S((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_REM_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_REM_U((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_AND:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1] & (int) stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I32_OR:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1] | (int) stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I32_XOR:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1] ^ (int) stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I32_SHL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (long) ((int) stack[fp + i1] << (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_SHR_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1] >> (int) stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I32_SHR_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (long) ((int) stack[fp + i1] >>> (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_ROTL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_ROTL((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_ROTR:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            OpcodeImpl.I32_ROTR((int) stack[fp + i1], (int) stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_ADD:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] + stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_SUB:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] - stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_MUL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] * stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_DIV_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_DIV_S(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_DIV_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_DIV_U(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_REM_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_REM_S(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_REM_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_REM_U(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_AND:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] & stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_OR:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] | stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_XOR:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] ^ stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_SHL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] << stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_SHR_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] >> stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_SHR_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = stack[fp + i1] >>> stack[fp + i2];
+                    return next;
+                };
+            case BytecodeOpCode.I64_ROTL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_ROTL(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_ROTR:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_ROTR(stack[fp + i1], stack[fp + i2]);
+                    return next;
+                };
+            case BytecodeOpCode.F32_ABS:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_ABS(Value.longToFloat(stack[fp + i1])));
+                    return next;
+                };
+            case BytecodeOpCode.F32_NEG:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = Value.floatToLong(-Value.longToFloat(stack[fp + i1]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_ADD:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + i1])
+                                            + Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_SUB:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + i1])
+                                            - Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_MUL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + i2])
+                                            * Value.longToFloat(stack[fp + i1]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_DIV:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    Value.longToFloat(stack[fp + i1])
+                                            / Value.longToFloat(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F32_MIN:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_MIN(
+                                            Value.longToFloat(stack[fp + i2]),
+                                            Value.longToFloat(stack[fp + i1])));
+                    return next;
+                };
+            case BytecodeOpCode.F32_MAX:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_MAX(
+                                            Value.longToFloat(stack[fp + i2]),
+                                            Value.longToFloat(stack[fp + i1])));
+                    return next;
+                };
+            case BytecodeOpCode.F32_COPYSIGN:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.floatToLong(
+                                    OpcodeImpl.F32_COPYSIGN(
+                                            Value.longToFloat(stack[fp + i1]),
+                                            Value.longToFloat(stack[fp + i2])));
+                    return next;
+                };
+            case BytecodeOpCode.F64_ABS:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_ABS(Value.longToDouble(stack[fp + i1])));
+                    return next;
+                };
+            case BytecodeOpCode.F64_NEG:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = Value.doubleToLong(-Value.longToDouble(stack[fp + i1]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_ADD:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + i1])
+                                            + Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_SUB:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + i1])
+                                            - Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_MUL:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + i2])
+                                            * Value.longToDouble(stack[fp + i1]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_DIV:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    Value.longToDouble(stack[fp + i1])
+                                            / Value.longToDouble(stack[fp + i2]));
+                    return next;
+                };
+            case BytecodeOpCode.F64_MIN:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_MIN(
+                                            Value.longToDouble(stack[fp + i2]),
+                                            Value.longToDouble(stack[fp + i1])));
+                    return next;
+                };
+            case BytecodeOpCode.F64_MAX:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_MAX(
+                                            Value.longToDouble(stack[fp + i2]),
+                                            Value.longToDouble(stack[fp + i1])));
+                    return next;
+                };
+            case BytecodeOpCode.F64_COPYSIGN:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] =
+                            Value.doubleToLong(
+                                    OpcodeImpl.F64_COPYSIGN(
+                                            Value.longToDouble(stack[fp + i1]),
+                                            Value.longToDouble(stack[fp + i2])));
+                    return next;
+                };
+            case BytecodeOpCode.I32_WRAP_I64:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1];
+                    return next;
+                };
+            case BytecodeOpCode.I64_EXTEND_I32_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1];
+                    return next;
+                };
+            case BytecodeOpCode.I64_EXTEND_I32_U:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_EXTEND_I32_U((int) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_REINTERPRET_F32:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1];
+                    return next;
+                };
+            case BytecodeOpCode.F32_REINTERPRET_I32:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = (int) stack[fp + i1];
+                    return next;
+                };
+            case BytecodeOpCode.I32_EXTEND_8_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I32_EXTEND_8_S((int) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_EXTEND_16_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I32_EXTEND_16_S((int) stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_EXTEND_8_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_EXTEND_8_S(stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_EXTEND_16_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_EXTEND_16_S(stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I64_EXTEND_32_S:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = OpcodeImpl.I64_EXTEND_32_S(stack[fp + i1]);
+                    return next;
+                };
+            case BytecodeOpCode.I32_CLZ:
+            case BytecodeOpCode.I32_CTZ:
+            case BytecodeOpCode.I32_POPCNT:
+            case BytecodeOpCode.I64_CLZ:
+            case BytecodeOpCode.I64_CTZ:
+            case BytecodeOpCode.I64_POPCNT:
+            case BytecodeOpCode.F32_CEIL:
+            case BytecodeOpCode.F32_FLOOR:
+            case BytecodeOpCode.F32_TRUNC:
+            case BytecodeOpCode.F32_NEAREST:
+            case BytecodeOpCode.F32_SQRT:
+            case BytecodeOpCode.F64_CEIL:
+            case BytecodeOpCode.F64_FLOOR:
+            case BytecodeOpCode.F64_TRUNC:
+            case BytecodeOpCode.F64_NEAREST:
+            case BytecodeOpCode.F64_SQRT:
+            case BytecodeOpCode.I32_TRUNC_F32_S:
+            case BytecodeOpCode.I32_TRUNC_SAT_F32_S:
+            case BytecodeOpCode.I32_TRUNC_F32_U:
+            case BytecodeOpCode.I32_TRUNC_SAT_F32_U:
+            case BytecodeOpCode.I32_TRUNC_F64_S:
+            case BytecodeOpCode.I32_TRUNC_SAT_F64_S:
+            case BytecodeOpCode.I32_TRUNC_F64_U:
+            case BytecodeOpCode.I32_TRUNC_SAT_F64_U:
+            case BytecodeOpCode.I64_TRUNC_F32_S:
+            case BytecodeOpCode.I64_TRUNC_SAT_F32_S:
+            case BytecodeOpCode.I64_TRUNC_F32_U:
+            case BytecodeOpCode.I64_TRUNC_SAT_F32_U:
+            case BytecodeOpCode.I64_TRUNC_F64_S:
+            case BytecodeOpCode.I64_TRUNC_SAT_F64_S:
+            case BytecodeOpCode.I64_TRUNC_F64_U:
+            case BytecodeOpCode.I64_TRUNC_SAT_F64_U:
+            case BytecodeOpCode.F32_CONVERT_I32_S:
+            case BytecodeOpCode.F32_CONVERT_I32_U:
+            case BytecodeOpCode.F32_CONVERT_I64_S:
+            case BytecodeOpCode.F32_CONVERT_I64_U:
+            case BytecodeOpCode.F64_CONVERT_I32_S:
+            case BytecodeOpCode.F64_CONVERT_I32_U:
+            case BytecodeOpCode.F64_CONVERT_I64_S:
+            case BytecodeOpCode.F64_CONVERT_I64_U:
+            case BytecodeOpCode.F32_DEMOTE_F64:
+            case BytecodeOpCode.F64_PROMOTE_F32:
+                return (machine, stack, fp) -> {
+                    stack[fp + i0] = executeUnary(op, stack[fp + i1]);
+                    return next;
+                };
+            default:
+                throw new ChicoryException("Unknown bytecode " + op);
+        }
+    }
+}
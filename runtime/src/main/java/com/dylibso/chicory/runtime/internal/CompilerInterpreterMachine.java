@@ -47,10 +47,7 @@ public class CompilerInterpreterMachine extends InterpreterMachine {
             FunctionType callType,
             boolean popResults)
             throws ChicoryException {
-        if (usedInterpretedFunctions != null && !usedInterpretedFunctions.contains(funcId)) {
-            usedInterpretedFunctions.add(funcId);
-            System.err.println("Chicory: calling interpreted function " + funcId);
-        }
+        printUse(funcId);
         return super.call(stack, instance, callStack, funcId, args, callType, popResults);
     }
 
@@ -58,8 +55,10 @@ public class CompilerInterpreterMachine extends InterpreterMachine {
     protected void CALL(Operands operands) {
         var instance = instance();
         var funcId = (int) operands.get(0);
-        if (interpretedFuncIds.contains(funcId) || instance.function(funcId) == null) {
-            // continue interpreting for interpreted functions or imported functions
+        if (isInterpreted(funcId) || instance.function(funcId) == null) {
+            // continue interpreting for interpreted functions or imported functions,
+            // the interpreted functions run in the current evaluation, without going through call
+            printUse(funcId);
             super.CALL(operands);
         } else {
             // We end up here after a function switched to interpreted mode,
@@ -85,17 +84,32 @@ public class CompilerInterpreterMachine extends InterpreterMachine {
             } catch (WasmException e) {
                 // we need at least an empty frame
                 var stackFrame = new StackFrame(instance, funcId, args);
-                THROW_REF(instance, instance.registerException(e), stack, stackFrame, callStack);
+                unwind(instance.registerException(e), stackFrame);
             }
         }
     }
 
+    private static void printUse(int funcId) {
+        if (usedInterpretedFunctions != null && !usedInterpretedFunctions.contains(funcId)) {
+            usedInterpretedFunctions.add(funcId);
+            System.err.println("Chicory: calling interpreted function " + funcId);
+        }
+    }
+
     @Override
     protected boolean useCurrentInstanceInterpreter(
             Instance instance, Instance refInstance, int funcId) {
         // this function influence the behavior of CALL_INDIRECT without rewriting it
         // if we are on the same instance and the next invoked function needs to stay
         // in interpreted mode, alternatively go through `Machine::call`
-        return refInstance.equals(instance) && interpretedFuncIds.contains(funcId);
+        return refInstance.equals(instance) && isInterpreted(funcId);
+    }
+
+    /**
+     * @return whether the function runs in this interpreter, instead of going through
+     *     {@code Machine::call} of the instance
+     */
+    protected boolean isInterpreted(int funcId) {
+        return interpretedFuncIds.contains(funcId);
     }
 }
@@ -0,0 +1,90 @@
+package com.dylibso.chicory.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+public class AtomicOpsTest {
+
+    private static final List<Function<MemoryLimits, Memory>> MEMORIES =
+            List.of(ByteArrayMemory::new, ByteBufferMemory::new, ChunkedMemory::new);
+
+    private static final MemoryLimits SHARED = new MemoryLimits(1, 1, true);
+
+    @Test
+    public void shouldUpdateTheNarrowValuesOnly() {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(SHARED);
+            memory.writeI32(0, 0x44332211);
+
+            assertEquals(0x33, AtomicOps.load8(memory, 2));
+            assertEquals(0x4433, AtomicOps.load16(memory, 2));
+            assertEquals(0x22, AtomicOps.rmw8(memory, 1, 0xFF, AtomicOps.ADD));
+            assertEquals(0x44332111, memory.readInt(0));
+            assertEquals(0x4433, AtomicOps.rmw16(memory, 2, 0x10F0F, AtomicOps.XOR));
+            assertEquals(0x4B3C2111, memory.readInt(0));
+            AtomicOps.store8(memory, 3, -1);
+            assertEquals(0xFF3C2111, memory.readInt(0));
+            assertEquals(0x11, AtomicOps.rmw8(memory, 0, 0x12, AtomicOps.SUB));
+            assertEquals(0xFF3C21FF, memory.readInt(0));
+
+            // the expected value is wrapped to the width of the access
+            assertEquals(0xFF3C, AtomicOps.cmpxchg16(memory, 2, 0xFF3B, 0));
+            assertEquals(0xFF3C, AtomicOps.cmpxchg16(memory, 2, 0x1FF3C, 0x1234));
+            assertEquals(0x123421FF, memory.readInt(0));
+        }
+    }
+
+    @Test
+    public void shouldApplyTheWideOperations() {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(SHARED);
+            memory.writeLong(8, -1L);
+
+            assertEquals(-1L, AtomicOps.rmw64(memory, 8, 0xF0L, AtomicOps.AND));
+            assertEquals(0xF0L, AtomicOps.rmw64(memory, 8, 1L, AtomicOps.SUB));
+            assertEquals(0xEF, AtomicOps.rmw32(memory, 8, 0x100, AtomicOps.OR));
+            assertEquals(0x1EF, AtomicOps.rmw32(memory, 8, 7, AtomicOps.XCHG));
+            assertEquals(7, memory.atomicCompareAndExchangeInt(8, 7, 8));
+            assertEquals(8L, memory.atomicCompareAndExchangeLong(8, 7L, 9L));
+            assertEquals(8L, memory.atomicReadLong(8));
+
+            assertThrows(WasmRuntimeException.class, () -> memory.atomicReadInt(Memory.PAGE_SIZE));
+            assertThrows(
+                    WasmRuntimeException.class,
+                    () -> AtomicOps.rmw8(memory, Memory.PAGE_SIZE + 1, 1, AtomicOps.ADD));
+        }
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentUpdates() throws InterruptedException {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(SHARED);
+            var threads = new ArrayList<Thread>();
+            for (int i = 0; i < 4; i++) {
+                var t =
+                        new Thread(
+                                () -> {
+                                    for (int j = 0; j < 10_000; j++) {
+                                        memory.atomicGetAndAddInt(0, 1);
+                                        AtomicOps.rmw8(memory, 5, 1, AtomicOps.ADD);
+                                        AtomicOps.rmw16(memory, 6, 1, AtomicOps.ADD);
+                                    }
+                                });
+                threads.add(t);
+                t.start();
+            }
+            for (var t : threads) {
+                t.join();
+            }
+            assertEquals(40_000, memory.readInt(0));
+            assertEquals(40_000 & 0xFF, memory.read(5) & 0xFF);
+            assertEquals(40_000, memory.readU16(6));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.runtime.Memory.PAGE_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.runtime.alloc.ExactMemAllocStrategy;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+public class BulkMemoryTest {
+
+    private static final List<Function<MemoryLimits, Memory>> MEMORIES =
+            List.of(
+                    limits -> new ByteArrayMemory(limits, new ExactMemAllocStrategy()),
+                    limits -> new ByteBufferMemory(limits, new ExactMemAllocStrategy()),
+                    ChunkedMemory::new);
+
+    private static byte[] bytes(int length) {
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void shouldReadIntoArraysAndBuffers() {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(new MemoryLimits(2));
+            var data = bytes(200);
+            memory.write(PAGE_SIZE - 100, ByteBuffer.wrap(data));
+
+            var dest = new byte[210];
+            memory.readInto(PAGE_SIZE - 100, dest, 10, 200);
+            assertArrayEquals(data, Arrays.copyOfRange(dest, 10, 210));
+
+            var buffer = ByteBuffer.allocateDirect(200);
+            memory.readInto(PAGE_SIZE - 100, buffer);
+            assertEquals(200, buffer.position());
+            assertEquals(ByteBuffer.wrap(data), buffer.flip());
+
+            assertThrows(
+                    WasmRuntimeException.class,
+                    () -> memory.readInto(2 * PAGE_SIZE - 100, new byte[101]));
+            assertThrows(
+                    WasmRuntimeException.class,
+                    () -> memory.write(2 * PAGE_SIZE - 100, ByteBuffer.allocate(101)));
+        }
+    }
+
+    @Test
+    public void shouldViewTheMemory() {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(new MemoryLimits(1));
+            var view = memory.view(16, 8);
+            assertEquals(ByteOrder.LITTLE_ENDIAN, view.order());
+            view.putInt(0, 42);
+            assertEquals(42, memory.readInt(16));
+            memory.writeI32(20, 7);
+            assertEquals(7, view.getInt(4));
+
+            var readOnly = memory.readOnlyView(16, 8);
+            assertEquals(ByteOrder.LITTLE_ENDIAN, readOnly.order());
+            assertEquals(42, readOnly.getInt(0));
+            assertThrows(ReadOnlyBufferException.class, () -> readOnly.putInt(0, 1));
+
+            assertThrows(WasmRuntimeException.class, () -> memory.view(PAGE_SIZE - 4, 8));
+            assertThrows(WasmRuntimeException.class, () -> memory.readOnlyView(-4, 8));
+        }
+    }
+
+    @Test
+    public void shouldAccessTypedArrays() {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(new MemoryLimits(2));
+            var addr = PAGE_SIZE - 6;
+
+            memory.writeInts(addr, new int[] {0, 1, -2, 3}, 1, 3);
+            var ints = new int[4];
+            memory.readInts(addr, ints, 1, 3);
+            assertArrayEquals(new int[] {0, 1, -2, 3}, ints);
+
+            memory.writeLongs(addr, new long[] {Long.MIN_VALUE, 5L}, 0, 2);
+            var longs = new long[2];
+            memory.readLongs(addr, longs, 0, 2);
+            assertArrayEquals(new long[] {Long.MIN_VALUE, 5L}, longs);
+            assertEquals(5L, memory.readLong(addr + 8));
+
+            memory.writeFloats(addr, new float[] {1.5f, -0.0f}, 0, 2);
+            var floats = new float[2];
+            memory.readFloats(addr, floats, 0, 2);
+            assertArrayEquals(new float[] {1.5f, -0.0f}, floats);
+
+            // nothing is written when the access is partially out of bounds
+            assertThrows(
+                    WasmRuntimeException.class,
+                    () -> memory.writeInts(2 * PAGE_SIZE - 8, new int[] {9, 9, 9}, 0, 3));
+            assertEquals(0, memory.readInt(2 * PAGE_SIZE - 8));
+            assertThrows(WasmRuntimeException.class, () -> memory.readLongs(-8, new long[1], 0, 1));
+            assertThrows(
+                    IndexOutOfBoundsException.class,
+                    () -> memory.readFloats(0, new float[2], 1, 2));
+        }
+    }
+
+    @Test
+    public void shouldTransferToAndFromChannels() throws IOException {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(new MemoryLimits(3));
+            var data = bytes(PAGE_SIZE + 1000);
+            var addr = PAGE_SIZE - 500;
+
+            var in = Channels.newChannel(new ByteArrayInputStream(data));
+            assertEquals(data.length, memory.transferFrom(in, addr, data.length));
+            assertArrayEquals(data, memory.readBytes(addr, data.length));
+            // stops at the end of the stream
+            assertEquals(0, memory.transferFrom(in, addr, 10));
+
+            var out = new ByteArrayOutputStream();
+            assertEquals(
+                    data.length, memory.transferTo(addr, data.length, Channels.newChannel(out)));
+            assertArrayEquals(data, out.toByteArray());
+
+            assertThrows(
+                    WasmRuntimeException.class,
+                    () -> memory.transferTo(3 * PAGE_SIZE - 10, 11, Channels.newChannel(out)));
+        }
+    }
+
+    @Test
+    public void shouldCopyOverlappingRanges() {
+        for (var factory : MEMORIES) {
+            var memory = factory.apply(new MemoryLimits(2));
+            memory.write(PAGE_SIZE - 4, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+            memory.copy(PAGE_SIZE - 2, PAGE_SIZE - 4, 8);
+            assertArrayEquals(
+                    new byte[] {1, 2, 1, 2, 3, 4, 5, 6, 7, 8}, memory.readBytes(PAGE_SIZE - 4, 10));
+            memory.copy(PAGE_SIZE - 4, PAGE_SIZE - 2, 8);
+            assertArrayEquals(
+                    new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, memory.readBytes(PAGE_SIZE - 4, 8));
+            assertThrows(WasmRuntimeException.class, () -> memory.copy(0, 2 * PAGE_SIZE - 4, 8));
+            assertEquals(0, memory.read(0));
+        }
+    }
+}
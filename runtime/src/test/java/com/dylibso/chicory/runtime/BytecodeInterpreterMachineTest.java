@@ -0,0 +1,85 @@
+package com.dylibso.chicory.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.Parser;
+import com.dylibso.chicory.wasm.WasmModule;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+// the spec tests run on these machines too, see InterpreterMachineFactory in runtime-tests
+public class BytecodeInterpreterMachineTest {
+
+    // the machines keeping the Wasm frames on the heap
+    private static final List<Function<Instance, Machine>> MACHINES =
+            List.of(
+                    InterpreterMachine::new,
+                    BytecodeInterpreterMachine::new,
+                    RegisterInterpreterMachine::new,
+                    ThreadedInterpreterMachine::new);
+
+    private static Instance.Builder builder(
+            String fileName, Function<Instance, Machine> machineFactory) {
+        WasmModule module =
+                Parser.parse(
+                        BytecodeInterpreterMachineTest.class.getResourceAsStream("/" + fileName));
+        return Instance.builder(module).withMachineFactory(machineFactory);
+    }
+
+    @Test
+    public void shouldTailCallWithoutGrowingTheStack() {
+        for (var machine : MACHINES) {
+            var f =
+                    builder("compiled/tail_call_return_call_count_acc.wat.wasm", machine)
+                            .build()
+                            .export("f");
+            var result = f.apply(1000_000);
+            assertEquals(0, result[0]);
+            assertEquals(1000_000, result[1]);
+        }
+    }
+
+    @Test
+    public void shouldRecurseBeyondTheJavaStack() throws InterruptedException {
+        for (var machine : MACHINES) {
+            var count =
+                    builder("compiled/recursion.wat.wasm", machine)
+                            .withMaxCallDepth(1_000_000)
+                            .build()
+                            .export("count");
+            // the Wasm frames live on the heap, so a small thread stack is enough
+            var result = new long[1];
+            var thread =
+                    new Thread(
+                            null, () -> result[0] = count.apply(500_000)[0], "calls", 256 * 1024);
+            thread.start();
+            thread.join();
+            assertEquals(500_000L, result[0]);
+        }
+    }
+
+    @Test
+    public void shouldLimitTheCallDepth() {
+        for (var machine : MACHINES) {
+            var count =
+                    builder("compiled/recursion.wat.wasm", machine)
+                            .withMaxCallDepth(100)
+                            .build()
+                            .export("count");
+            assertEquals(99L, count.apply(99)[0]);
+            var exception = assertThrows(ChicoryException.class, () -> count.apply(100));
+            assertEquals("call stack exhausted", exception.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldRunSuperinstructions() {
+        var instance = builder("compiled/fusion.wat.wasm", BytecodeInterpreterMachine::new).build();
+        assertEquals(499500L, instance.export("add_locals").apply(1000)[0]);
+        assertEquals(2000L, instance.export("count_down").apply(1000)[0]);
+        assertEquals(499500L, instance.export("load").apply(1000)[0]);
+    }
+}
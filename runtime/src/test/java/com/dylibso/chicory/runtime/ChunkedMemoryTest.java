@@ -0,0 +1,91 @@
+package com.dylibso.chicory.runtime;
+
+import static com.dylibso.chicory.runtime.Memory.PAGE_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import org.junit.jupiter.api.Test;
+
+public class ChunkedMemoryTest {
+
+    @Test
+    public void shouldGrowWithoutLosingTheContent() {
+        var memory = new ChunkedMemory(new MemoryLimits(1, 10));
+        memory.writeLong(8, 0x0102030405060708L);
+
+        for (int i = 1; i < 10; i++) {
+            assertEquals(i, memory.grow(1));
+            memory.writeI32(i * PAGE_SIZE, i);
+        }
+        assertEquals(10, memory.pages());
+        assertEquals(-1, memory.grow(1));
+        assertEquals(0x0102030405060708L, memory.readLong(8));
+        for (int i = 1; i < 10; i++) {
+            assertEquals(i, memory.readInt(i * PAGE_SIZE));
+            assertEquals(0L, memory.readLong(i * PAGE_SIZE + 8));
+        }
+    }
+
+    @Test
+    public void shouldAccessAcrossTwoChunks() {
+        var memory = new ChunkedMemory(new MemoryLimits(2));
+        memory.writeLong(PAGE_SIZE - 3, 0x0102030405060708L);
+        assertEquals(0x0102030405060708L, memory.readLong(PAGE_SIZE - 3));
+        assertEquals(0x05060708, memory.readInt(PAGE_SIZE - 3));
+        assertEquals(0x0708, memory.readShort(PAGE_SIZE - 3));
+        assertEquals(0x06, memory.read(PAGE_SIZE - 1));
+        assertEquals(0x05, memory.read(PAGE_SIZE));
+
+        memory.writeF64(PAGE_SIZE - 1, 1.5);
+        assertEquals(1.5, memory.readDouble(PAGE_SIZE - 1));
+        memory.writeF32(PAGE_SIZE - 2, -2.5f);
+        assertEquals(-2.5f, memory.readFloat(PAGE_SIZE - 2));
+        memory.writeShort(PAGE_SIZE - 1, (short) 0xABCD);
+        assertEquals(0xABCDL, memory.readU16(PAGE_SIZE - 1));
+    }
+
+    @Test
+    public void shouldTrapOutOfBounds() {
+        var memory = new ChunkedMemory(new MemoryLimits(1));
+        memory.writeI32(PAGE_SIZE - 4, 42);
+
+        assertThrows(WasmRuntimeException.class, () -> memory.read(PAGE_SIZE));
+        assertThrows(WasmRuntimeException.class, () -> memory.readInt(-4));
+        assertThrows(WasmRuntimeException.class, () -> memory.readLong(PAGE_SIZE));
+        // nothing is written by a store partially out of bounds
+        assertThrows(WasmRuntimeException.class, () -> memory.writeLong(PAGE_SIZE - 4, -1L));
+        assertEquals(42, memory.readInt(PAGE_SIZE - 4));
+        assertThrows(
+                WasmRuntimeException.class,
+                () -> memory.write(PAGE_SIZE - 2, new byte[] {1, 2, 3}));
+        assertEquals(42, memory.readInt(PAGE_SIZE - 4));
+        assertThrows(WasmRuntimeException.class, () -> memory.readBytes(PAGE_SIZE - 2, 3));
+        assertThrows(WasmRuntimeException.class, () -> memory.fill((byte) 1, PAGE_SIZE + 1, 0));
+    }
+
+    @Test
+    public void shouldUseTheBulkOperationsAcrossChunks() {
+        var memory = new ChunkedMemory(new MemoryLimits(4));
+        var data = new byte[PAGE_SIZE + 100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        memory.write(PAGE_SIZE - 50, data);
+        assertArrayEquals(data, memory.readBytes(PAGE_SIZE - 50, data.length));
+
+        // overlapping copies, in both directions
+        memory.copy(PAGE_SIZE - 20, PAGE_SIZE - 50, data.length);
+        assertArrayEquals(data, memory.readBytes(PAGE_SIZE - 20, data.length));
+        memory.copy(PAGE_SIZE - 50, PAGE_SIZE - 20, data.length);
+        assertArrayEquals(data, memory.readBytes(PAGE_SIZE - 50, data.length));
+
+        memory.fill((byte) 7, PAGE_SIZE - 2, 3 * PAGE_SIZE + 2);
+        assertArrayEquals(new byte[] {47, 7, 7}, memory.readBytes(PAGE_SIZE - 3, 3));
+        assertArrayEquals(new byte[] {7, 7, 0}, memory.readBytes(3 * PAGE_SIZE, 3));
+
+        memory.zero();
+        assertArrayEquals(new byte[4 * PAGE_SIZE], memory.readBytes(0, 4 * PAGE_SIZE));
+    }
+}
@@ -0,0 +1,92 @@
+package com.dylibso.chicory.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylibso.chicory.wasm.Parser;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+public class FuelTest {
+
+    private static final List<Function<Instance, Machine>> MACHINES =
+            List.of(
+                    InterpreterMachine::new,
+                    BytecodeInterpreterMachine::new,
+                    RegisterInterpreterMachine::new,
+                    ThreadedInterpreterMachine::new);
+
+    private static Instance instance(
+            String fileName, Function<Instance, Machine> machineFactory, long fuel) {
+        return Instance.builder(Parser.parse(FuelTest.class.getResourceAsStream("/" + fileName)))
+                .withMachineFactory(machineFactory)
+                .withFuel(fuel)
+                .build();
+    }
+
+    @Test
+    public void shouldRunOutOfFuelInAnInfiniteLoop() {
+        for (var machineFactory : MACHINES) {
+            var instance = instance("compiled/infinite-loop.c.wasm", machineFactory, 10_000);
+            var run = instance.export("run");
+            var e = assertThrows(OutOfFuelException.class, run::apply);
+            assertEquals("out of fuel", e.getMessage());
+            assertEquals(0, instance.fuel());
+        }
+    }
+
+    @Test
+    public void shouldConsumeTheSameFuelOnEveryMachine() {
+        for (var machineFactory : MACHINES) {
+            // one unit per function entry and per loop back-edge:
+            // 1 + 4 nested calls per iteration * 5 iterations + 4 back-edges
+            var facSsa = instance("compiled/fac.wat.wasm", machineFactory, 1000);
+            assertEquals(120L, facSsa.export("fac-ssa").apply(5)[0]);
+            assertEquals(1000 - 25, facSsa.fuel());
+
+            // 1 + 4 back-edges
+            var iterFact = instance("compiled/iterfact.wat.wasm", machineFactory, 1000);
+            assertEquals(120L, iterFact.export("iterFact").apply(5)[0]);
+            assertEquals(1000 - 5, iterFact.fuel());
+
+            // 1 + 5 calls + 4 back-edges taken through a br_table
+            var sum = instance("compiled/fuel.wat.wasm", machineFactory, 1000);
+            assertEquals(15L, sum.export("sum-entry").apply(5)[0]);
+            assertEquals(1000 - 10, sum.fuel());
+            assertEquals(15L, sum.export("sum-default").apply(5)[0]);
+            assertEquals(1000 - 20, sum.fuel());
+        }
+    }
+
+    @Test
+    public void shouldRunAgainAfterAddingFuel() {
+        for (var machineFactory : MACHINES) {
+            var instance = instance("compiled/iterfact.wat.wasm", machineFactory, 3);
+            var iterFact = instance.export("iterFact");
+            assertThrows(OutOfFuelException.class, () -> iterFact.apply(5));
+
+            instance.addFuel(5);
+            assertEquals(120L, iterFact.apply(5)[0]);
+            assertEquals(0, instance.fuel());
+        }
+    }
+
+    @Test
+    public void shouldNotMeterByDefault() {
+        var instance =
+                Instance.builder(
+                                Parser.parse(
+                                        FuelTest.class.getResourceAsStream(
+                                                "/compiled/iterfact.wat.wasm")))
+                        .build();
+        assertFalse(instance.isFuelMetered());
+        assertEquals(120L, instance.export("iterFact").apply(5)[0]);
+        assertThrows(IllegalStateException.class, () -> instance.addFuel(1));
+
+        var metered = instance("compiled/iterfact.wat.wasm", InterpreterMachine::new, 1);
+        assertTrue(metered.isFuelMetered());
+    }
+}
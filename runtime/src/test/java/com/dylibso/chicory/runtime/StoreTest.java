@@ -1,6 +1,7 @@
 package com.dylibso.chicory.runtime;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -155,4 +156,26 @@ public class StoreTest {
 
         assertEquals(2, store.memories.size());
     }
+
+    @Test
+    public void instancesShouldShareTheTypeIdsOfTheStore() {
+        var store = new Store();
+        var exporter =
+                store.instantiate("test", loadModule("compiled/call_indirect-export.wat.wasm"));
+        var importer =
+                store.instantiate("other", loadModule("compiled/call_indirect-import.wat.wasm"));
+
+        assertEquals(store.typeRegistry(), importer.typeRegistry());
+        // $other of the importer has the type $x of the exporter
+        assertTrue(importer.hasCanonicalType(0, exporter, 0));
+        assertEquals(88L, exporter.export("call-other").apply()[0]);
+
+        // another registry: the types themselves are compared
+        var alone =
+                Instance.builder(loadModule("compiled/call_indirect-import.wat.wasm"))
+                        .withImportValues(store.toImportValues())
+                        .build();
+        assertFalse(alone.hasCanonicalType(0, exporter, 0));
+        assertEquals(88L, exporter.export("call-other").apply()[0]);
+    }
 }
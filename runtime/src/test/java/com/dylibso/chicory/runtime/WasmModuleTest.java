@@ -9,6 +9,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.dylibso.chicory.wasm.ChicoryException;
 import com.dylibso.chicory.wasm.InvalidException;
 import com.dylibso.chicory.wasm.Parser;
 import com.dylibso.chicory.wasm.UninstantiableException;
@@ -713,4 +714,44 @@ public class WasmModuleTest {
         assertEquals(0, result[0]);
         assertEquals(1000_000, result[1]);
     }
+
+    @Test
+    public void shouldLimitTheCallDepthWhenSet() {
+        var count =
+                Instance.builder(loadModule("compiled/recursion.wat.wasm"))
+                        .withMaxCallDepth(100)
+                        .build()
+                        .export("count");
+        assertEquals(99L, count.apply(99)[0]);
+        var exception = assertThrows(ChicoryException.class, () -> count.apply(100));
+        assertEquals("call stack exhausted", exception.getMessage());
+    }
+
+    @Test
+    public void shouldInvalidateIndirectCallsWhenTheTableChanges() {
+        var instance =
+                Instance.builder(loadModule("compiled/call_indirect-cache.wat.wasm")).build();
+        var dispatch = instance.export("dispatch");
+        var sum = instance.export("sum");
+        var table = instance.exports().table("table");
+
+        assertEquals(1L, dispatch.apply(0)[0]);
+        assertEquals(1L, dispatch.apply(0)[0]);
+        assertEquals(150L, sum.apply(100)[0]);
+
+        // the slot now refers to $three
+        table.setRef(0, 2, instance);
+        assertEquals(3L, dispatch.apply(0)[0]);
+        assertEquals(250L, sum.apply(100)[0]);
+
+        // the type is verified again for a different function
+        table.setRef(0, 3, instance);
+        var exception = assertThrows(ChicoryException.class, () -> dispatch.apply(0));
+        assertEquals("indirect call type mismatch", exception.getMessage());
+
+        table.grow(1, 1, instance);
+        assertEquals(2L, dispatch.apply(4)[0]);
+        table.reset();
+        assertThrows(ChicoryException.class, () -> dispatch.apply(4));
+    }
 }
@@ -0,0 +1,15 @@
+(module
+  (import "env" "memory" (memory 1 1 shared))
+
+  ;; Atomically adds 1 to the counter at the address, n times.
+  ;; Returns the value of the counter before the last increment.
+  (func (export "increment") (param $addr i32) (param $n i32) (result i32)
+    (local $old i32)
+    (loop $loop
+      (local.set $old
+        (i32.atomic.rmw.add (local.get $addr) (i32.const 1)))
+      (br_if $loop
+        (local.tee $n (i32.sub (local.get $n) (i32.const 1)))))
+    (local.get $old)
+  )
+)
@@ -0,0 +1,47 @@
+;; The table has slots for functions:
+;; - 0: $one
+;; - 1: $two
+;; - 2: $three
+;; - 3: $wrong (a different type)
+;; "dispatch" calls the slot it is given, "sum" calls the slots 0 and 1 in turn.
+(module
+  (type $x (func (result i32)))
+  (type $y (func (param i32) (result i32)))
+  (func $one (result i32)
+    i32.const 1)
+  (func $two (result i32)
+    i32.const 2)
+  (func $three (result i32)
+    i32.const 3)
+  (func $wrong (param i32) (result i32)
+    local.get 0)
+  (func $dispatch (param i32) (result i32)
+    local.get 0
+    call_indirect (type $x))
+  (func $sum (param i32) (result i32)
+    (local i32)
+    block
+      loop
+        local.get 0
+        i32.eqz
+        br_if 1
+        local.get 1
+        local.get 0
+        i32.const 1
+        i32.and
+        call_indirect (type $x)
+        i32.add
+        local.set 1
+        local.get 0
+        i32.const 1
+        i32.sub
+        local.set 0
+        br 0
+      end
+    end
+    local.get 1)
+  (table 4 funcref)
+  (export "table" (table 0))
+  (export "dispatch" (func $dispatch))
+  (export "sum" (func $sum))
+  (elem (i32.const 0) func $one $two $three $wrong))
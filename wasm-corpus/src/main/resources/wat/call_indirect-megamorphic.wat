@@ -0,0 +1,42 @@
+;; The table has slots for six functions of the same type, more than
+;; a call site caches before falling back to the generic dispatch.
+;; "sum" calls the slots 0 to 5 in turn.
+(module
+  (type $x (func (result i32)))
+  (func $one (result i32)
+    i32.const 1)
+  (func $two (result i32)
+    i32.const 2)
+  (func $three (result i32)
+    i32.const 3)
+  (func $four (result i32)
+    i32.const 4)
+  (func $five (result i32)
+    i32.const 5)
+  (func $six (result i32)
+    i32.const 6)
+  (func $sum (param i32) (result i32)
+    (local i32)
+    block
+      loop
+        local.get 0
+        i32.eqz
+        br_if 1
+        local.get 1
+        local.get 0
+        i32.const 6
+        i32.rem_u
+        call_indirect (type $x)
+        i32.add
+        local.set 1
+        local.get 0
+        i32.const 1
+        i32.sub
+        local.set 0
+        br 0
+      end
+    end
+    local.get 1)
+  (table 6 funcref)
+  (export "sum" (func $sum))
+  (elem (i32.const 0) func $one $two $three $four $five $six))
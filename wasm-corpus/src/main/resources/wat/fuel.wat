@@ -0,0 +1,35 @@
+(module
+  ;; loops whose back-edges are br_table entries, to check that
+  ;; only the taken entry consumes fuel
+
+  (func $add (param i32 i32) (result i32)
+    local.get 0
+    local.get 1
+    i32.add)
+
+  ;; sum of 1..n, looping back through a table entry
+  (func $sum-entry (export "sum-entry") (param $n i32) (result i32)
+    (local $acc i32)
+    (block $done
+      (loop $step
+        (local.set $acc (call $add (local.get $acc) (local.get $n)))
+        (local.set $n (i32.sub (local.get $n) (i32.const 1)))
+        (br_table $step $done (i32.eqz (local.get $n)))))
+    (local.get $acc))
+
+  ;; sum of 1..n, looping back through the table default
+  (func (export "sum-default") (param $n i32) (result i32)
+    (local $acc i32)
+    (block $done
+      (loop $step
+        (local.set $acc (call $add (local.get $acc) (local.get $n)))
+        (local.set $n (i32.sub (local.get $n) (i32.const 1)))
+        (br_table $done $step (local.get $n))))
+    (local.get $acc))
+
+  ;; the fuel consumed before a trap stays consumed
+  (func (export "sum-trap") (param $n i32) (result i32)
+    (drop (call $sum-entry (local.get $n)))
+    (drop (call $add (i32.const 1) (i32.const 2)))
+    unreachable)
+)
@@ -0,0 +1,83 @@
+(module
+  (memory 1)
+
+  ;; the sum of 0 .. n - 1, adding two locals
+  (func (export "add_locals") (param $n i32) (result i32)
+    (local $i i32) (local $sum i32)
+    (block $exit
+      (loop $loop
+        local.get $i
+        local.get $n
+        i32.ge_u
+        br_if $exit
+        local.get $sum
+        local.get $i
+        i32.add
+        local.set $sum
+        local.get $i
+        i32.const 1
+        i32.add
+        local.set $i
+        br $loop))
+    local.get $sum)
+
+  ;; counts n down to zero, adding 3 for even values and 1 for odd ones
+  (func (export "count_down") (param $n i32) (result i32)
+    (local $steps i32)
+    (block $exit
+      (loop $loop
+        local.get $n
+        i32.eqz
+        br_if $exit
+        local.get $n
+        i32.const 1
+        i32.and
+        i32.eqz
+        if
+          local.get $steps
+          i32.const 3
+          i32.add
+          local.set $steps
+        else
+          local.get $steps
+          i32.const 1
+          i32.add
+          local.set $steps
+        end
+        local.get $n
+        i32.const 1
+        i32.sub
+        local.set $n
+        br $loop))
+    local.get $steps)
+
+  ;; stores 0 .. n - 1 in memory and sums them back
+  (func (export "load") (param $n i32) (result i32)
+    (local $i i32) (local $p i32) (local $sum i32)
+    (block $exit
+      (loop $loop
+        local.get $i
+        local.get $n
+        i32.ge_u
+        br_if $exit
+        local.get $i
+        i32.const 2
+        i32.shl
+        i32.const 0x7ffc
+        i32.and
+        local.set $p
+        local.get $p
+        local.get $i
+        i32.store offset=4
+        local.get $p
+        i32.load offset=4
+        local.get $sum
+        i32.add
+        local.set $sum
+        local.get $i
+        i32.const 1
+        i32.add
+        local.set $i
+        br $loop))
+    local.get $sum)
+)
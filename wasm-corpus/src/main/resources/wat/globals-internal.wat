@@ -0,0 +1,43 @@
+(module
+  (import "env" "callback" (func $callback))
+  (import "env" "peek" (func $peek (result i32)))
+  (import "env" "poke" (func $poke (param i32)))
+
+  (global $counter (mut i32) (i32.const 0))
+  (global $total (mut i64) (i64.const 0))
+  (global $step i32 (i32.const 3))
+  (global $scale f64 (f64.const 2.5))
+
+  ;; calls back the host, that can call the module again
+  (func (export "count") (result i32)
+    global.get $counter
+    global.get $step
+    i32.add
+    global.set $counter
+    call $callback
+    global.get $counter
+  )
+
+  (func (export "add") (param i64) (result i64)
+    global.get $total
+    local.get 0
+    i64.add
+    global.set $total
+    global.get $total
+  )
+
+  (func (export "scale") (param f64) (result f64)
+    local.get 0
+    global.get $scale
+    f64.mul
+  )
+
+  ;; the host reads and writes the counter through the instance
+  (func (export "peek_and_poke") (param i32) (result i32)
+    local.get 0
+    global.set $counter
+    call $peek
+    call $poke
+    global.get $counter
+  )
+)
@@ -0,0 +1,19 @@
+(module
+  (memory (export "memory") 1 65536)
+
+  (func (export "grow") (param $pages i32) (result i32)
+    (memory.grow (local.get $pages)))
+
+  (func (export "store") (param $addr i32) (param $value i64)
+    (i64.store (local.get $addr) (local.get $value)))
+
+  (func (export "load") (param $addr i32) (result i64)
+    (i64.load (local.get $addr)))
+
+  ;; the offset alone is beyond 2 GiB
+  (func (export "load_high") (param $addr i32) (result i64)
+    (i64.load offset=0x80000000 (local.get $addr)))
+
+  (func (export "fill") (param $addr i32) (param $value i32) (param $size i32)
+    (memory.fill (local.get $addr) (local.get $value) (local.get $size)))
+)
@@ -0,0 +1,35 @@
+(module
+  (memory (export "memory") i64 1 65536)
+  (data (i64.const 16) "memory64")
+
+  (func (export "size") (result i64)
+    (memory.size))
+
+  (func (export "grow") (param $delta i64) (result i64)
+    (memory.grow (local.get $delta)))
+
+  (func (export "store") (param $addr i64) (param $value i64)
+    (i64.store (local.get $addr) (local.get $value)))
+
+  (func (export "load") (param $addr i64) (result i64)
+    (i64.load (local.get $addr)))
+
+  (func (export "load8_u") (param $addr i64) (result i32)
+    (i32.load8_u offset=16 (local.get $addr)))
+
+  (func (export "store_f64") (param $addr i64) (param $value f64)
+    (f64.store offset=8 (local.get $addr) (local.get $value)))
+
+  (func (export "load_f64") (param $addr i64) (result f64)
+    (f64.load offset=8 (local.get $addr)))
+
+  ;; the offset alone is beyond 4 GiB
+  (func (export "load_far") (param $addr i64) (result i32)
+    (i32.load offset=0x100000000 (local.get $addr)))
+
+  (func (export "fill") (param $addr i64) (param $value i32) (param $size i64)
+    (memory.fill (local.get $addr) (local.get $value) (local.get $size)))
+
+  (func (export "copy") (param $dest i64) (param $src i64) (param $size i64)
+    (memory.copy (local.get $dest) (local.get $src) (local.get $size)))
+)
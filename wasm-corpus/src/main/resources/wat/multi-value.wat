@@ -0,0 +1,97 @@
+(module
+  (type $pair (func (param i32) (result i32 i64)))
+  (import "env" "swap" (func $swap (param i64 f64) (result f64 i64)))
+
+  (table 2 funcref)
+  (elem (i32.const 0) $pair $pair_rec)
+
+  ;; returns (x, x * 2)
+  (func $pair (export "pair") (type $pair)
+    local.get 0
+    local.get 0
+    i64.extend_i32_s
+    i64.const 2
+    i64.mul
+  )
+
+  ;; returns (x + 1, x * 2, x * 3.5), calling $pair with the long[] of its caller
+  (func (export "triple") (param i32) (result i32 i64 f64)
+    (local $doubled i64)
+    local.get 0
+    call $pair
+    local.set $doubled
+    i32.const 1
+    i32.add
+    local.get $doubled
+    local.get 0
+    f64.convert_i32_s
+    f64.const 3.5
+    f64.mul
+  )
+
+  ;; sums the results of $pair for x, x - 1, ... 1
+  (func $pair_rec (export "pair_rec") (type $pair)
+    (local $a i32)
+    (local $b i64)
+    local.get 0
+    i32.eqz
+    if (result i32 i64)
+      i32.const 0
+      i64.const 0
+    else
+      local.get 0
+      i32.const 1
+      i32.sub
+      call $pair_rec
+      local.set $b
+      local.set $a
+      local.get 0
+      call $pair
+      local.get $b
+      i64.add
+      local.set $b
+      local.get $a
+      i32.add
+      local.get $b
+    end
+  )
+
+  (func (export "indirect") (param $idx i32) (param $x i32) (result i32 i64)
+    local.get $x
+    local.get $idx
+    call_indirect (type $pair)
+  )
+
+  ;; a single result, calling $pair in a loop
+  (func (export "sum") (param $n i32) (result i64)
+    (local $acc i64)
+    block $done
+      loop $next
+        local.get $n
+        i32.eqz
+        br_if $done
+        local.get $n
+        call $pair
+        local.get $acc
+        i64.add
+        local.set $acc
+        i64.extend_i32_s
+        local.get $acc
+        i64.add
+        local.set $acc
+        local.get $n
+        i32.const 1
+        i32.sub
+        local.set $n
+        br $next
+      end
+    end
+    local.get $acc
+  )
+
+  (func (export "swap") (param i64 f64) (result f64 i64)
+    local.get 0
+    local.get 1
+    call $swap
+  )
+)
@@ -53,6 +53,24 @@ public final class Encoding {
         return value;
     }
 
+    /**
+     * Read an unsigned I64 from the buffer, e.g. the offsets of the 64-bit memories.
+     * The result is an unsigned long.
+     *
+     * @param buffer the byte buffer
+     * @return the resulting long
+     */
+    public static long readVarUInt64(ByteBuffer buffer) {
+        var start = buffer.position();
+        var value = readUnsignedLeb128(buffer, MAX_VARINT_LEN_64);
+        // the 10th byte only holds the last bit
+        if (buffer.position() - start == MAX_VARINT_LEN_64
+                && (buffer.get(buffer.position() - 1) & 0x7E) != 0) {
+            throw new MalformedException("integer too large");
+        }
+        return value;
+    }
+
     /**
      * Read a signed I32 from the buffer. We can't fit an unsigned 32bit int into a java int, so we must use a long to use the same type as unsigned.
      * See <a href="https://www.w3.org/TR/wasm-core-1/#integers">2.2.2. Integers</a> of the WebAssembly Core Specification.
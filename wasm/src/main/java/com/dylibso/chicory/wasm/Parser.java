@@ -8,6 +8,7 @@ import static com.dylibso.chicory.wasm.Encoding.readName;
 import static com.dylibso.chicory.wasm.Encoding.readVarSInt32;
 import static com.dylibso.chicory.wasm.Encoding.readVarSInt64;
 import static com.dylibso.chicory.wasm.Encoding.readVarUInt32;
+import static com.dylibso.chicory.wasm.Encoding.readVarUInt64;
 import static com.dylibso.chicory.wasm.WasmLimits.MAX_FUNCTION_LOCALS;
 import static com.dylibso.chicory.wasm.types.Instruction.EMPTY_OPERANDS;
 import static java.util.Objects.requireNonNull;
@@ -89,6 +90,8 @@ public final class Parser {
     static final byte[] MAGIC_BYTES = {0x00, 0x61, 0x73, 0x6D}; // Magic prefix \0asm
     static final byte[] VERSION_BYTES = {0x01, 0x00, 0x00, 0x00}; // Version 1
 
+    private static final long MAX_MEMORY64_PAGES = 1L << 48;
+
     private final Map<String, Function<byte[], CustomSection>> customParsers;
     private final BitSet includeSections;
 
@@ -277,6 +280,8 @@ public final class Parser {
 
         // check if the custom section has malformed names only the first time that is parsed
         var firstTime = true;
+        // the offsets of the memory instructions are u64 with a 64-bit memory
+        var memory64 = false;
 
         while (buffer.hasRemaining()) {
             var sectionId = readByte(buffer);
@@ -322,6 +327,14 @@ public final class Parser {
                     case SectionId.IMPORT:
                         {
                             var importSection = parseImportSection(sectionByteBuffer, typeSection);
+                            memory64 |=
+                                    importSection.stream()
+                                            .anyMatch(
+                                                    i ->
+                                                            i instanceof MemoryImport
+                                                                    && is64(
+                                                                            ((MemoryImport) i)
+                                                                                    .limits()));
                             listener.onSection(importSection);
                             break;
                         }
@@ -340,6 +353,9 @@ public final class Parser {
                     case SectionId.MEMORY:
                         {
                             var memorySection = parseMemorySection(sectionByteBuffer);
+                            for (int i = 0; i < memorySection.memoryCount(); i++) {
+                                memory64 |= is64(memorySection.getMemory(i).limits());
+                            }
                             listener.onSection(memorySection);
                             break;
                         }
@@ -377,7 +393,8 @@ public final class Parser {
                         }
                     case SectionId.CODE:
                         {
-                            var codeSection = parseCodeSection(sectionByteBuffer, typeSection);
+                            var codeSection =
+                                    parseCodeSection(sectionByteBuffer, typeSection, memory64);
                             listener.onSection(codeSection);
                             break;
                         }
@@ -682,6 +699,9 @@ public final class Parser {
 
     private static MemoryLimits parseMemoryLimits(ByteBuffer buffer) {
         var limitType = readByte(buffer);
+        if (limitType >= 0x04 && limitType <= 0x07) {
+            return parseMemory64Limits(buffer, limitType);
+        }
         var initial = (int) readVarUInt32(buffer);
         switch (limitType) {
             case 0x00:
@@ -702,6 +722,35 @@ public final class Parser {
         }
     }
 
+    // https://github.com/WebAssembly/memory64/blob/main/proposals/memory64/Overview.md
+    private static MemoryLimits parseMemory64Limits(ByteBuffer buffer, byte limitType) {
+        var initial = readVarUInt64(buffer);
+        boolean hasMaximum = (limitType & 0x01) != 0;
+        var maximum = hasMaximum ? readVarUInt64(buffer) : MAX_MEMORY64_PAGES;
+        if (Long.compareUnsigned(initial, MAX_MEMORY64_PAGES) > 0
+                || Long.compareUnsigned(maximum, MAX_MEMORY64_PAGES) > 0) {
+            throw new InvalidException("memory size must be at most 2^48 pages (2^64 bytes)");
+        }
+        if (initial > maximum) {
+            throw new InvalidException("size minimum must not be greater than maximum");
+        }
+        boolean shared = (limitType & 0x02) != 0;
+        if (shared && !hasMaximum) {
+            throw new InvalidException("shared memory must have maximum");
+        }
+        // the memories are addressed by 32-bit offsets at runtime, the pages above
+        // 4 GiB can't be allocated and growing the memory beyond them fails
+        if (initial > MemoryLimits.MAX_PAGES) {
+            throw new UninstantiableException(
+                    "memory size must be at most 65536 pages (4GiB), found " + initial);
+        }
+        return new MemoryLimits(
+                (int) initial,
+                (int) Math.min(maximum, MemoryLimits.MAX_PAGES),
+                shared,
+                ValType.I64);
+    }
+
     private static GlobalSection parseGlobalSection(ByteBuffer buffer, TypeSection typeSection) {
 
         var globalCount = readVarUInt32(buffer);
@@ -867,7 +916,8 @@ public final class Parser {
         return locals;
     }
 
-    private static CodeSection parseCodeSection(ByteBuffer buffer, TypeSection typeSection) {
+    private static CodeSection parseCodeSection(
+            ByteBuffer buffer, TypeSection typeSection, boolean memory64) {
         var funcBodyCount = readVarUInt32(buffer);
 
         var root = new ControlTree();
@@ -884,7 +934,7 @@ public final class Parser {
             ControlTree currentControlFlow = null;
 
             do {
-                var baseInstruction = parseInstruction(buffer);
+                var baseInstruction = parseInstruction(buffer, memory64);
                 var instruction = AnnotatedInstruction.builder().from(baseInstruction);
                 lastInstruction = buffer.position() >= funcEndPoint;
                 if (instructions.isEmpty()) {
@@ -1116,7 +1166,7 @@ public final class Parser {
         return tagSection.build();
     }
 
-    private static Instruction parseInstruction(ByteBuffer buffer) {
+    private static Instruction parseInstruction(ByteBuffer buffer, boolean memory64) {
 
         var address = buffer.position();
         int b = (int) readByte(buffer) & 0xff;
@@ -1154,6 +1204,7 @@ public final class Parser {
             return new Instruction(address, op, EMPTY_OPERANDS);
         }
 
+        var offset64 = memory64 && hasMemArg(b);
         var operands = new ArrayList<Long>();
         for (var sig : signature) {
             switch (sig) {
@@ -1161,7 +1212,11 @@ public final class Parser {
                     operands.add(Byte.toUnsignedLong(readByte(buffer)));
                     break;
                 case VARUINT:
-                    operands.add(readVarUInt32(buffer));
+                    if (offset64 && operands.size() == 1) {
+                        operands.add(readVarUInt64(buffer));
+                    } else {
+                        operands.add(readVarUInt32(buffer));
+                    }
                     break;
                 case VARSINT32:
                     operands.add(readVarSInt32(buffer));
@@ -1241,6 +1296,18 @@ public final class Parser {
         return new Instruction(address, op, operandsArray);
     }
 
+    private static boolean is64(MemoryLimits limits) {
+        return limits.addressType().equals(ValType.I64);
+    }
+
+    // the loads, stores and atomic accesses, with the alignment and the offset as operands
+    private static boolean hasMemArg(int opcode) {
+        return (opcode >= 0x28 && opcode <= 0x3E)
+                || (opcode >= 0xFD00 && opcode <= 0xFD0B)
+                || (opcode >= 0xFD54 && opcode <= 0xFD5D)
+                || (opcode >= 0xFE00 && opcode <= 0xFE4E && opcode != 0xFE03);
+    }
+
     private static void verifyAlignment(OpCode op, long[] operands) {
         var align = -1;
         switch (op) {
@@ -1340,7 +1407,7 @@ public final class Parser {
     private static Instruction[] parseExpression(ByteBuffer buffer) {
         var expr = new ArrayList<Instruction>();
         while (buffer.hasRemaining()) {
-            var i = parseInstruction(buffer);
+            var i = parseInstruction(buffer, false);
             if (i.opcode() == OpCode.END) {
                 return expr.toArray(new Instruction[0]);
             }
@@ -18,6 +18,7 @@ import com.dylibso.chicory.wasm.types.FunctionType;
 import com.dylibso.chicory.wasm.types.Global;
 import com.dylibso.chicory.wasm.types.GlobalImport;
 import com.dylibso.chicory.wasm.types.Instruction;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
 import com.dylibso.chicory.wasm.types.MutabilityType;
 import com.dylibso.chicory.wasm.types.OpCode;
 import com.dylibso.chicory.wasm.types.Table;
@@ -97,6 +98,8 @@ final class Validator {
     private final List<ValType> tableImports;
     private final List<TagType> tagImports;
     private final int memoryImports;
+    // the type of the addresses of the memory, I64 for a 64-bit memory
+    private final ValType addressType;
     private final Set<Integer> declaredFunctions;
 
     Validator(WasmModule module) {
@@ -127,6 +130,7 @@ final class Validator {
                         .collect(toList());
 
         this.memoryImports = module.importSection().count(ExternalType.MEMORY);
+        this.addressType = module.memoryLimits().map(MemoryLimits::addressType).orElse(ValType.I32);
 
         this.declaredFunctions =
                 module.elementSection().stream()
@@ -449,7 +453,7 @@ final class Validator {
                 if (ads.index() != 0) {
                     throw new InvalidException("unknown memory " + ads.index());
                 }
-                validateConstantExpression(ads.offsetInstructions(), ValType.I32);
+                validateConstantExpression(ads.offsetInstructions(), addressType);
             }
         }
     }
@@ -1168,7 +1172,7 @@ final class Validator {
                 case MEM_ATOMIC_NOTIFY:
                     {
                         popVal(ValType.I32);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I32);
                         break;
                     }
@@ -1176,7 +1180,7 @@ final class Validator {
                     {
                         popVal(ValType.I64);
                         popVal(ValType.I32);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I32);
                         break;
                     }
@@ -1184,7 +1188,7 @@ final class Validator {
                     {
                         popVal(ValType.I64);
                         popVal(ValType.I64);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I32);
                         break;
                     }
@@ -1196,7 +1200,18 @@ final class Validator {
                 case I32_ATOMIC_STORE16:
                     {
                         popVal(ValType.I32);
+                        popVal(addressType);
+                        break;
+                    }
+                case I32_CLZ:
+                case I32_CTZ:
+                case I32_POPCNT:
+                case I32_EXTEND_8_S:
+                case I32_EXTEND_16_S:
+                case I32_EQZ:
+                    {
                         popVal(ValType.I32);
+                        pushVal(ValType.I32);
                         break;
                     }
                 case I32_LOAD:
@@ -1206,33 +1221,36 @@ final class Validator {
                 case I32_LOAD16_U:
                 case I32_ATOMIC_LOAD16_U:
                 case I32_LOAD16_S:
-                case I32_CLZ:
-                case I32_CTZ:
-                case I32_POPCNT:
-                case I32_EXTEND_8_S:
-                case I32_EXTEND_16_S:
-                case I32_EQZ:
-                case MEMORY_GROW:
                 case I32_ATOMIC_LOAD:
                     {
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I32);
                         break;
                     }
+                case MEMORY_GROW:
+                    {
+                        popVal(addressType);
+                        pushVal(addressType);
+                        break;
+                    }
                 case TABLE_SIZE:
                 case I32_CONST:
-                case MEMORY_SIZE:
                     {
                         pushVal(ValType.I32);
                         break;
                     }
+                case MEMORY_SIZE:
+                    {
+                        pushVal(addressType);
+                        break;
+                    }
                 case I32_ATOMIC_RMW_CMPXCHG:
                 case I32_ATOMIC_RMW8_CMPXCHG_U:
                 case I32_ATOMIC_RMW16_CMPXCHG_U:
                     {
                         popVal(ValType.I32);
                         popVal(ValType.I32);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I32);
                         break;
                     }
@@ -1243,17 +1261,11 @@ final class Validator {
                     {
                         popVal(ValType.I64);
                         popVal(ValType.I64);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I64);
                         break;
                     }
                 case I32_ADD:
-                case I32_ATOMIC_RMW_ADD:
-                case I32_ATOMIC_RMW_XCHG:
-                case I32_ATOMIC_RMW_OR:
-                case I32_ATOMIC_RMW_XOR:
-                case I32_ATOMIC_RMW_SUB:
-                case I32_ATOMIC_RMW_AND:
                 case I32_SUB:
                 case I32_MUL:
                 case I32_DIV_S:
@@ -1278,6 +1290,18 @@ final class Validator {
                 case I32_SHR_S:
                 case I32_ROTL:
                 case I32_ROTR:
+                    {
+                        popVal(ValType.I32);
+                        popVal(ValType.I32);
+                        pushVal(ValType.I32);
+                        break;
+                    }
+                case I32_ATOMIC_RMW_ADD:
+                case I32_ATOMIC_RMW_XCHG:
+                case I32_ATOMIC_RMW_OR:
+                case I32_ATOMIC_RMW_XOR:
+                case I32_ATOMIC_RMW_SUB:
+                case I32_ATOMIC_RMW_AND:
                 case I32_ATOMIC_RMW8_ADD_U:
                 case I32_ATOMIC_RMW8_XCHG_U:
                 case I32_ATOMIC_RMW8_OR_U:
@@ -1292,7 +1316,7 @@ final class Validator {
                 case I32_ATOMIC_RMW16_SUB_U:
                     {
                         popVal(ValType.I32);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I32);
                         break;
                     }
@@ -1322,6 +1346,13 @@ final class Validator {
                         pushVal(ValType.I32);
                         break;
                     }
+                case I64_EXTEND_I32_U:
+                case I64_EXTEND_I32_S:
+                    {
+                        popVal(ValType.I32);
+                        pushVal(ValType.I64);
+                        break;
+                    }
                 case I64_LOAD:
                 case I64_LOAD8_S:
                 case I64_LOAD8_U:
@@ -1332,11 +1363,9 @@ final class Validator {
                 case I64_LOAD32_S:
                 case I64_LOAD32_U:
                 case I64_ATOMIC_LOAD32_U:
-                case I64_EXTEND_I32_U:
-                case I64_EXTEND_I32_S:
                 case I64_ATOMIC_LOAD:
                     {
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I64);
                         break;
                     }
@@ -1366,7 +1395,7 @@ final class Validator {
                 case I64_ATOMIC_RMW32_SUB_U:
                     {
                         popVal(ValType.I64);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.I64);
                         break;
                     }
@@ -1385,7 +1414,7 @@ final class Validator {
                 case I64_ATOMIC_STORE32:
                     {
                         popVal(ValType.I64);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         break;
                     }
                 case I64_ADD:
@@ -1458,7 +1487,7 @@ final class Validator {
                 case F32_STORE:
                     {
                         popVal(ValType.F32);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         break;
                     }
                 case F32_CONST:
@@ -1466,7 +1495,6 @@ final class Validator {
                         pushVal(ValType.F32);
                         break;
                     }
-                case F32_LOAD:
                 case F32_CONVERT_I32_S:
                 case F32_CONVERT_I32_U:
                 case F32_REINTERPRET_I32:
@@ -1475,6 +1503,12 @@ final class Validator {
                         pushVal(ValType.F32);
                         break;
                     }
+                case F32_LOAD:
+                    {
+                        popVal(addressType);
+                        pushVal(ValType.F32);
+                        break;
+                    }
                 case F32_CONVERT_I64_S:
                 case F32_CONVERT_I64_U:
                     {
@@ -1482,7 +1516,6 @@ final class Validator {
                         pushVal(ValType.F32);
                         break;
                     }
-                case F64_LOAD:
                 case F64_CONVERT_I32_S:
                 case F64_CONVERT_I32_U:
                     {
@@ -1490,6 +1523,12 @@ final class Validator {
                         pushVal(ValType.F64);
                         break;
                     }
+                case F64_LOAD:
+                    {
+                        popVal(addressType);
+                        pushVal(ValType.F64);
+                        break;
+                    }
                 case F64_CONVERT_I64_S:
                 case F64_CONVERT_I64_U:
                 case F64_REINTERPRET_I64:
@@ -1550,7 +1589,7 @@ final class Validator {
                 case F64_STORE:
                     {
                         popVal(ValType.F64);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         break;
                     }
                 case F64_CONST:
@@ -1764,12 +1803,24 @@ final class Validator {
                         break;
                     }
                 case MEMORY_COPY:
+                    {
+                        popVal(addressType);
+                        popVal(addressType);
+                        popVal(addressType);
+                        break;
+                    }
                 case MEMORY_FILL:
-                case MEMORY_INIT:
                     {
+                        popVal(addressType);
                         popVal(ValType.I32);
+                        popVal(addressType);
+                        break;
+                    }
+                case MEMORY_INIT:
+                    {
                         popVal(ValType.I32);
                         popVal(ValType.I32);
+                        popVal(addressType);
                         break;
                     }
                 case TABLE_FILL:
@@ -1804,6 +1855,14 @@ final class Validator {
                         getElement(index);
                         break;
                     }
+                case I8x16_SPLAT:
+                case I16x8_SPLAT:
+                case I32x4_SPLAT:
+                    {
+                        popVal(ValType.I32);
+                        pushVal(ValType.V128);
+                        break;
+                    }
                 case V128_LOAD:
                 case V128_LOAD8x8_S:
                 case V128_LOAD8x8_U:
@@ -1817,11 +1876,8 @@ final class Validator {
                 case V128_LOAD64_SPLAT:
                 case V128_LOAD32_ZERO:
                 case V128_LOAD64_ZERO:
-                case I8x16_SPLAT:
-                case I16x8_SPLAT:
-                case I32x4_SPLAT:
                     {
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.V128);
                         break;
                     }
@@ -2129,7 +2185,7 @@ final class Validator {
                 case V128_STORE64_LANE:
                     {
                         popVal(ValType.V128);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         break;
                     }
                 case V128_LOAD8_LANE:
@@ -2138,7 +2194,7 @@ final class Validator {
                 case V128_LOAD64_LANE:
                     {
                         popVal(ValType.V128);
-                        popVal(ValType.I32);
+                        popVal(addressType);
                         pushVal(ValType.V128);
                         break;
                     }
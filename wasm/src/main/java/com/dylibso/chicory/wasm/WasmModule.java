@@ -11,6 +11,8 @@ import com.dylibso.chicory.wasm.types.ExportSection;
 import com.dylibso.chicory.wasm.types.FunctionSection;
 import com.dylibso.chicory.wasm.types.GlobalSection;
 import com.dylibso.chicory.wasm.types.ImportSection;
+import com.dylibso.chicory.wasm.types.MemoryImport;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
 import com.dylibso.chicory.wasm.types.MemorySection;
 import com.dylibso.chicory.wasm.types.NameCustomSection;
 import com.dylibso.chicory.wasm.types.StartSection;
@@ -111,6 +113,21 @@ public final class WasmModule {
         return memorySection;
     }
 
+    /**
+     * @return the limits of the memory of the module, imported or defined, if any
+     */
+    public Optional<MemoryLimits> memoryLimits() {
+        var imported =
+                importSection.stream()
+                        .filter(MemoryImport.class::isInstance)
+                        .map(i -> ((MemoryImport) i).limits())
+                        .findFirst();
+        if (imported.isPresent()) {
+            return imported;
+        }
+        return memorySection.filter(m -> m.memoryCount() > 0).map(m -> m.getMemory(0).limits());
+    }
+
     public GlobalSection globalSection() {
         return globalSection;
     }
@@ -36,7 +36,7 @@ public final class FunctionType {
     }
 
     public boolean equals(FunctionType other) {
-        return hashCode == other.hashCode && paramsMatch(other) && returnsMatch(other);
+        return typesMatch(other);
     }
 
     @Override
@@ -54,8 +54,13 @@ public final class FunctionType {
         return new FunctionType(List.of(valType), List.of());
     }
 
+    /**
+     * Compares the signatures: the same instance and the different hash codes are answered
+     * right away, the params and returns are only compared when the hash codes collide.
+     */
     public boolean typesMatch(FunctionType other) {
-        return paramsMatch(other) && returnsMatch(other);
+        return this == other
+                || (hashCode == other.hashCode && paramsMatch(other) && returnsMatch(other));
     }
 
     public static FunctionType of(List<ValType> params, List<ValType> returns) {
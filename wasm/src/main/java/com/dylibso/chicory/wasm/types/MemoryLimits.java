@@ -30,6 +30,8 @@ public final class MemoryLimits {
 
     private final boolean shared;
 
+    private final ValType addressType;
+
     /**
      * Construct a new instance.
      * The maximum size will be {@link #MAX_PAGES}.
@@ -58,6 +60,21 @@ public final class MemoryLimits {
      * @param shared if this memory is shared
      */
     public MemoryLimits(int initial, int maximum, boolean shared) {
+        this(initial, maximum, shared, ValType.I32);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param initial the initial size, in pages
+     * @param maximum the maximum size, in pages
+     * @param shared if this memory is shared
+     * @param addressType the type of the addresses, {@link ValType#I64} for a 64-bit memory
+     */
+    public MemoryLimits(int initial, int maximum, boolean shared, ValType addressType) {
+        if (!addressType.equals(ValType.I32) && !addressType.equals(ValType.I64)) {
+            throw new IllegalArgumentException("Invalid address type: " + addressType);
+        }
         if (initial > MAX_PAGES || maximum > MAX_PAGES || initial < 0 || maximum < 0) {
             throw new InvalidException("memory size must be at most 65536 pages (4GiB)");
         }
@@ -68,6 +85,7 @@ public final class MemoryLimits {
         this.initial = initial;
         this.maximum = maximum;
         this.shared = shared;
+        this.addressType = addressType;
     }
 
     /**
@@ -95,6 +113,13 @@ public final class MemoryLimits {
         return shared;
     }
 
+    /**
+     * @return the type of the addresses, {@link ValType#I64} for a 64-bit memory
+     */
+    public ValType addressType() {
+        return addressType;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof MemoryLimits && equals((MemoryLimits) obj);
@@ -102,7 +127,10 @@ public final class MemoryLimits {
 
     public boolean equals(MemoryLimits other) {
         return this == other
-                || other != null && initial == other.initial && maximum == other.maximum;
+                || other != null
+                        && initial == other.initial
+                        && maximum == other.maximum
+                        && addressType.equals(other.addressType);
     }
 
     @Override
@@ -116,6 +144,9 @@ public final class MemoryLimits {
     }
 
     public StringBuilder toString(StringBuilder b) {
+        if (addressType.equals(ValType.I64)) {
+            b.append("i64");
+        }
         b.append("[").append(initial).append(',');
         if (maximum == MAX_PAGES) {
             b.append("max");
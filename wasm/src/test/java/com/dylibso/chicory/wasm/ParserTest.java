@@ -10,6 +10,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 import com.dylibso.chicory.wasm.types.ActiveDataSegment;
 import com.dylibso.chicory.wasm.types.CustomSection;
 import com.dylibso.chicory.wasm.types.ExternalType;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
 import com.dylibso.chicory.wasm.types.OpCode;
 import com.dylibso.chicory.wasm.types.SectionId;
 import com.dylibso.chicory.wasm.types.ValType;
@@ -184,6 +185,22 @@ public class ParserTest {
         }
     }
 
+    @Test
+    public void shouldParseMemory64() throws IOException {
+        try (InputStream is = getClass().getResourceAsStream("/compiled/memory64.wat.wasm")) {
+            var module = Parser.parse(is);
+            var limits = module.memorySection().get().getMemory(0).limits();
+            assertEquals(ValType.I64, limits.addressType());
+            assertEquals(1, limits.initialPages());
+            assertEquals(MemoryLimits.MAX_PAGES, limits.maximumPages());
+
+            // the offset of the memory accesses is a u64
+            var loadFar = module.codeSection().getFunctionBody(7).instructions().get(1);
+            assertEquals(OpCode.I32_LOAD, loadFar.opcode());
+            assertEquals(0x1_0000_0000L, loadFar.operand(1));
+        }
+    }
+
     @Test
     public void shouldParseLocalDefinitions() throws Exception {
         try (InputStream is = getClass().getResourceAsStream("/compiled/define-locals.wat.wasm")) {
@@ -5,6 +5,9 @@ import static com.dylibso.chicory.wasm.types.ValType.I32;
 import static com.dylibso.chicory.wasm.types.ValType.I64;
 import static com.dylibso.chicory.wasm.types.ValType.V128;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
 import org.junit.jupiter.api.Test;
@@ -21,4 +24,19 @@ class FunctionTypeTest {
         var v128ToI32I32 = FunctionType.of(List.of(V128), List.of(I32, I32));
         assertEquals("(V128) -> (I32,I32)", v128ToI32I32.toString());
     }
+
+    @Test
+    public void sameSignaturesMatch() {
+        var i32I64ToF32 = FunctionType.of(List.of(I32, I64), List.of(F32));
+        var other = FunctionType.of(new ValType[] {I32, I64}, new ValType[] {F32});
+        assertEquals(i32I64ToF32, other);
+        assertEquals(i32I64ToF32.hashCode(), other.hashCode());
+        assertTrue(i32I64ToF32.typesMatch(other));
+        assertTrue(FunctionType.returning(I32).typesMatch(FunctionType.returning(I32)));
+
+        var i64I32ToF32 = FunctionType.of(List.of(I64, I32), List.of(F32));
+        assertNotEquals(i32I64ToF32, i64I32ToF32);
+        assertFalse(i32I64ToF32.typesMatch(i64I32ToF32));
+        assertFalse(FunctionType.returning(I32).typesMatch(FunctionType.accepting(I32)));
+    }
 }